@@ -182,13 +182,14 @@ public class BatchedArrayBlockingQueue<T>
     @Override
     public void putAll(T[] a, int offset, int len) throws InterruptedException {
         while (len > 0) {
-            int published = internalPutAll(a, offset, len);
+            int published = putAvailable(a, offset, len);
             offset += published;
             len -= published;
         }
     }
 
-    private int internalPutAll(T[] a, int offset, int len) throws InterruptedException {
+    @Override
+    public int putAvailable(T[] a, int offset, int len) throws InterruptedException {
         lock.lockInterruptibly();
 
         try {
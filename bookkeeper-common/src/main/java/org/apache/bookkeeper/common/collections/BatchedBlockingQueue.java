@@ -26,6 +26,21 @@ import java.util.concurrent.TimeUnit;
 public interface BatchedBlockingQueue<T> extends BlockingQueue<T> {
     void putAll(T[] a, int offset, int len) throws InterruptedException;
 
+    /**
+     * Insert as many items of an array as the queue has room for, with a single operation.
+     * Wait if the queue is full.
+     *
+     * <p>Unlike {@link #putAll}, nothing is inserted when the thread is interrupted, so that the caller knows
+     * which items are in the queue.
+     *
+     * @param a
+     * @param offset
+     * @param len
+     * @return the number of items inserted, at least 1 if len is positive
+     * @throws InterruptedException
+     */
+    int putAvailable(T[] a, int offset, int len) throws InterruptedException;
+
     /**
      * Drain the queue into an array.
      * Wait if there are no items in the queue.
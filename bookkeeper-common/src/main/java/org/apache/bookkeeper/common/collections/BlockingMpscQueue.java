@@ -130,6 +130,19 @@ public class BlockingMpscQueue<T> extends MpscArrayQueue<T> implements BlockingQ
         }
     }
 
+    @Override
+    public int putAvailable(T[] a, int offset, int len) throws InterruptedException {
+        if (len == 0) {
+            return 0;
+        }
+        put(a[offset]);
+        int published = 1;
+        while (published < len && this.relaxedOffer(a[offset + published])) {
+            published++;
+        }
+        return published;
+    }
+
     @Override
     public int takeAll(T[] array) throws InterruptedException {
         int items = 0;
@@ -39,6 +39,7 @@ public interface BookKeeperServerStats {
 
     // Stats
     String CHANNEL_WRITE = "CHANNEL_WRITE";
+    String EVENT_LOOP_LATENCY = "EVENT_LOOP_LATENCY";
 
     //
     // Server Operations
@@ -90,6 +91,9 @@ public interface BookKeeperServerStats {
     String BOOKIE_ADD_ENTRY_BYTES = "BOOKIE_ADD_ENTRY_BYTES";
     String BOOKIE_READ_ENTRY_BYTES = "BOOKIE_READ_ENTRY_BYTES";
     String BOOKIE_GET_LIST_OF_ENTRIES_OF_LEDGER = "BOOKIE_GET_LIST_OF_ENTRIES_OF_LEDGER";
+    String BOOKIE_JOURNAL_REPLAY_SCAN = "BOOKIE_JOURNAL_REPLAY_SCAN";
+    String BOOKIE_JOURNAL_REPLAY_APPLY = "BOOKIE_JOURNAL_REPLAY_APPLY";
+    String BOOKIE_JOURNAL_REPLAY_FLUSH = "BOOKIE_JOURNAL_REPLAY_FLUSH";
 
     String ADD_ENTRY_IN_PROGRESS = "ADD_ENTRY_IN_PROGRESS";
     String ADD_ENTRY_BLOCKED = "ADD_ENTRY_BLOCKED";
@@ -117,6 +121,10 @@ public interface BookKeeperServerStats {
     String JOURNAL_CREATION_LATENCY = "JOURNAL_CREATION_LATENCY";
     String JOURNAL_MEMORY_MAX = "JOURNAL_MEMORY_MAX";
     String JOURNAL_MEMORY_USED = "JOURNAL_MEMORY_USED";
+    String JOURNAL_GROUP_WAIT_USEC = "JOURNAL_GROUP_WAIT_USEC";
+    String JOURNAL_ADD_LATENCY_P99_USEC = "JOURNAL_ADD_LATENCY_P99_USEC";
+    String JOURNAL_ARRIVAL_RATE = "JOURNAL_ARRIVAL_RATE";
+    String JOURNAL_SYNC_LATENCY_USEC = "JOURNAL_SYNC_LATENCY_USEC";
 
     // Ledger Storage Stats
     String STORAGE_GET_OFFSET = "STORAGE_GET_OFFSET";
@@ -19,7 +19,9 @@
 package org.apache.bookkeeper.bookie;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.FileRegion;
 import java.io.IOException;
+import java.util.List;
 import java.util.PrimitiveIterator;
 import java.util.concurrent.CompletableFuture;
 import org.apache.bookkeeper.common.util.Watcher;
@@ -43,6 +45,24 @@ public interface Bookie {
     // TODO: replace ackBeforeSync with flags
     void addEntry(ByteBuf entry, boolean ackBeforeSync, WriteCallback cb, Object ctx, byte[] masterKey)
             throws IOException, BookieException, InterruptedException;
+
+    /**
+     * Add several entries, enqueuing with a single operation the journal records of the entries that go to the
+     * same journal.
+     *
+     * <p>Each entry is released once processed. A failure to add one entry is reported through
+     * {@link PendingAdd#addFailed} and does not prevent the following entries from being added.
+     */
+    default void addEntries(List<? extends PendingAdd> adds, Object ctx) {
+        for (PendingAdd add : adds) {
+            try {
+                addEntry(add.getEntry(), false /* ackBeforeSync */, add, ctx, add.getMasterKey());
+            } catch (Throwable t) {
+                add.addFailed(t);
+            }
+        }
+    }
+
     void recoveryAddEntry(ByteBuf entry, WriteCallback cb, Object ctx, byte[] masterKey)
             throws IOException, BookieException, InterruptedException;
     void forceLedger(long ledgerId, WriteCallback cb, Object ctx);
@@ -57,6 +77,18 @@ public interface Bookie {
     // TODO: Shouldn't this be async?
     ByteBuf readEntry(long ledgerId, long entryId)
             throws IOException, NoLedgerException, BookieException;
+
+    /**
+     * Get the region of the storage file holding an entry that is not cached in memory, so that it can be sent
+     * without copying it.
+     *
+     * @return the region of the entry, or null if the entry should be read with {@link #readEntry}
+     */
+    default FileRegion readEntryRegion(long ledgerId, long entryId, int minEntrySize)
+            throws IOException, NoLedgerException, BookieException {
+        return null;
+    }
+
     long readLastAddConfirmed(long ledgerId) throws IOException, BookieException;
     PrimitiveIterator.OfLong getListOfEntriesOfLedger(long ledgerId) throws IOException, NoLedgerException;
 
@@ -86,6 +118,19 @@ public interface Bookie {
     // TODO: Should be constructed and passed in as a parameter
     LedgerStorage getLedgerStorage();
 
+    /**
+     * An entry to add with {@link #addEntries}, which is also notified of the outcome of the add.
+     */
+    interface PendingAdd extends WriteCallback {
+        ByteBuf getEntry();
+        byte[] getMasterKey();
+
+        /**
+         * Called, instead of {@link WriteCallback#writeComplete}, when the entry could not be added.
+         */
+        void addFailed(Throwable t);
+    }
+
     // TODO: Move this exceptions somewhere else
     /**
      * Exception is thrown when no such a ledger is found in this bookie.
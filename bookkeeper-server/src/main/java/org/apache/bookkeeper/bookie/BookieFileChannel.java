@@ -52,6 +52,14 @@ public interface BookieFileChannel {
      */
     FileDescriptor getFD() throws IOException;
 
+    /**
+     * Complete the writes that the file channel queued, if it queues them, and wait for them. It is called by the
+     * journal at the end of each flush, before the entries of the flush are acknowledged. Regular file channels
+     * write synchronously, so there is nothing to do by default.
+     */
+    default void completeWrites() throws IOException {
+    }
+
     /**
      * Close file channel and release all resources.
      */
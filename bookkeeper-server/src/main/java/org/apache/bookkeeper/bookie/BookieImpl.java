@@ -32,7 +32,9 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.FileRegion;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
@@ -49,8 +51,12 @@ import java.util.Optional;
 import java.util.PrimitiveIterator.OfLong;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -97,6 +103,7 @@ public class BookieImpl implements Bookie {
     final LedgerStorage ledgerStorage;
     final RegistrationManager registrationManager;
     final List<Journal> journals;
+    final JournalRouter journalRouter;
 
     final HandleFactory handles;
     final boolean entryLogPerLedgerEnabled;
@@ -435,11 +442,26 @@ public class BookieImpl implements Bookie {
 
         JournalAliveListener journalAliveListener =
                 () -> BookieImpl.this.triggerBookieShutdown(ExitCode.BOOKIE_EXCEPTION);
-        // instantiate the journals
+        // instantiate the journals, with the journal writer stripes of each directory
+        int journalWriterStripes = conf.getJournalWriterStripes();
+        if (journalWriterStripes < 1) {
+            throw new IllegalArgumentException("Invalid number of journal writer stripes: " + journalWriterStripes);
+        }
         journals = Lists.newArrayList();
+        for (int stripe = 0; stripe < journalWriterStripes; stripe++) {
+            for (int i = 0; i < journalDirectories.size(); i++) {
+                File journalDirectory = Journal.getStripeDirectory(journalDirectories.get(i), stripe);
+                if (!journalDirectory.exists() && !journalDirectory.mkdirs()) {
+                    throw new IOException("Failed to create journal stripe directory " + journalDirectory);
+                }
+                journals.add(Journal.newJournal(Journal.getJournalIndex(i, stripe, journalDirectories.size()),
+                        journalDirectory, conf, ledgerDirsManager, statsLogger.scope(JOURNAL_SCOPE), allocator,
+                        journalAliveListener));
+            }
+        }
+        journalRouter = new JournalRouter(journals, conf.getJournalLoadAwareRouting());
         for (int i = 0; i < journalDirectories.size(); i++) {
-            journals.add(Journal.newJournal(i, journalDirectories.get(i),
-                    conf, ledgerDirsManager, statsLogger.scope(JOURNAL_SCOPE), allocator, journalAliveListener));
+            checkUnusedJournalStripes(i, journalWriterStripes, ledgerDirsManager);
         }
 
         this.entryLogPerLedgerEnabled = conf.isEntryLogPerLedgerEnabled();
@@ -615,21 +637,110 @@ public class BookieImpl implements Bookie {
             }
         };
 
-        for (Journal journal : journals) {
-            replay(journal, scanner);
+        LongAdder scanTimeNanos = new LongAdder();
+        // Records of memory mapped journals are views of the file, the other ones reuse the same buffer
+        try (JournalReplayApplier applier = new JournalReplayApplier(scanner,
+                conf.getNumJournalReplayApplyThreads(), conf.getJournalMaxMemorySizeMb() * 1024 * 1024,
+                !conf.getJournalReplayMemoryMapped())) {
+            int replayThreads = Math.min(conf.getNumJournalReplayThreads(), journals.size());
+            if (replayThreads <= 1) {
+                for (Journal journal : journals) {
+                    replay(journal, applier, scanTimeNanos);
+                }
+            } else {
+                replayInParallel(replayThreads, applier, scanTimeNanos);
+            }
+
+            long applyTimeNanos = applier.getApplyTimeNanos();
+            long scanOnlyTimeNanos = scanTimeNanos.sum() - (applier.isApplyingInline() ? applyTimeNanos : 0);
+            bookieStats.getJournalReplayScanStats().registerSuccessfulEvent(scanOnlyTimeNanos, TimeUnit.NANOSECONDS);
+            bookieStats.getJournalReplayApplyStats().registerSuccessfulEvent(applyTimeNanos, TimeUnit.NANOSECONDS);
+            LOG.info("Journal replay spent {} ms scanning the journals and {} ms applying the records",
+                    TimeUnit.NANOSECONDS.toMillis(scanOnlyTimeNanos), TimeUnit.NANOSECONDS.toMillis(applyTimeNanos));
         }
         long elapsedTs = System.currentTimeMillis() - startTs;
         LOG.info("Finished replaying journal in {} ms.", elapsedTs);
     }
 
+    /**
+     * Check the stripe directories of a journal directory that are beyond the configured number of journal writer
+     * stripes, which are left behind when the number of stripes is lowered. Their journal files are not replayed,
+     * so the bookie does not start while they hold records that are not covered by a checkpoint.
+     */
+    private void checkUnusedJournalStripes(int directoryIndex, int journalWriterStripes,
+                                           LedgerDirsManager ledgerDirsManager) throws IOException {
+        File[] stripeDirectories = journalDirectories.get(directoryIndex).listFiles();
+        if (stripeDirectories == null) {
+            return;
+        }
+        for (File stripeDirectory : stripeDirectories) {
+            int stripe = Journal.getStripe(stripeDirectory);
+            if (stripe < journalWriterStripes) {
+                continue;
+            }
+            Journal journal = Journal.newJournal(
+                    Journal.getJournalIndex(directoryIndex, stripe, journalDirectories.size()), stripeDirectory,
+                    conf, ledgerDirsManager, NullStatsLogger.INSTANCE, allocator, null);
+            LogMark markedLog = journal.getLastLogMark().getCurMark();
+            List<Long> logs = Journal.listJournalIds(stripeDirectory,
+                    journalId -> journalId >= markedLog.getLogFileId());
+            MutableBoolean hasRecords = new MutableBoolean(false);
+            for (Long id : logs) {
+                long logPosition = id == markedLog.getLogFileId() ? markedLog.getLogFileOffset() : 0L;
+                journal.scanJournal(id, logPosition, (journalVersion, offset, entry) -> hasRecords.setTrue(), false);
+                if (hasRecords.isTrue()) {
+                    throw new IOException("Journal stripe directory " + stripeDirectory
+                            + " holds records that are not covered by a checkpoint, but only "
+                            + journalWriterStripes + " journal writer stripes are configured. Set "
+                            + "journalWriterStripes to at least " + (stripe + 1) + " to replay them.");
+                }
+            }
+            LOG.warn("Journal stripe directory {} is not used with {} journal writer stripes and can be removed",
+                    stripeDirectory, journalWriterStripes);
+        }
+    }
+
+    /**
+     * Replay the journals with a pool of threads. The journals are independent from each other, since each one
+     * has its own files and its own lastLogMark, and the scanner only updates thread safe structures.
+     */
+    private void replayInParallel(int replayThreads, JournalReplayApplier applier, LongAdder scanTimeNanos)
+            throws IOException {
+        ExecutorService replayExecutor = Executors.newFixedThreadPool(replayThreads,
+                new DefaultThreadFactory("BookieJournalReplay"));
+        try {
+            List<Future<?>> replays = new ArrayList<>(journals.size());
+            for (Journal journal : journals) {
+                replays.add(replayExecutor.submit(() -> {
+                    replay(journal, applier, scanTimeNanos);
+                    return null;
+                }));
+            }
+            for (Future<?> replay : replays) {
+                replay.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to replay journal", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while replaying journals", e);
+        } finally {
+            replayExecutor.shutdownNow();
+        }
+    }
+
     /**
      * Replay journal files and updates journal's in-memory lastLogMark object.
      *
      * @param journal Journal object corresponding to a journalDir
-     * @param scanner Scanner to process replayed entries.
+     * @param applier Applier of the replayed entries.
+     * @param scanTimeNanos Total time spent scanning the journals.
      * @throws IOException
      */
-    private void replay(Journal journal, JournalScanner scanner) throws IOException {
+    private void replay(Journal journal, JournalReplayApplier applier, LongAdder scanTimeNanos) throws IOException {
         final LogMark markedLog = journal.getLastLogMark().getCurMark();
         List<Long> logs = Journal.listJournalIds(journal.getJournalDirectory(), journalId ->
             journalId >= markedLog.getLogFileId());
@@ -642,6 +753,7 @@ public class BookieImpl implements Bookie {
             }
         }
 
+        JournalReplayApplier.Replay replay = applier.newReplay();
         // TODO: When reading in the journal logs that need to be synced, we
         // should use BufferedChannels instead to minimize the amount of
         // system calls done.
@@ -651,7 +763,11 @@ public class BookieImpl implements Bookie {
                 logPosition = markedLog.getLogFileOffset();
             }
             LOG.info("Replaying journal {} from position {}", id, logPosition);
-            long scanOffset = journal.scanJournal(id, logPosition, scanner, conf.isSkipReplayJournalInvalidRecord());
+            long startTime = MathUtils.nowInNano();
+            long scanOffset = journal.scanJournal(id, logPosition, replay, conf.isSkipReplayJournalInvalidRecord());
+            scanTimeNanos.add(MathUtils.elapsedNanos(startTime));
+            // The entries of this journal file must be in the ledger storage before the LastLogMark moves past it
+            replay.awaitApplied();
             // Update LastLogMark after completely replaying journal
             // scanOffset will point to EOF position
             // After LedgerStorage flush, SyncThread should persist this to disk
@@ -683,7 +799,10 @@ public class BookieImpl implements Bookie {
 
         // Do a fully flush after journal replay
         try {
+            long flushStartTime = MathUtils.nowInNano();
             syncThread.requestFlush().get();
+            bookieStats.getJournalReplayFlushStats().registerSuccessfulEvent(MathUtils.elapsedNanos(flushStartTime),
+                    TimeUnit.NANOSECONDS);
         } catch (InterruptedException e) {
             LOG.warn("Interrupting the fully flush after replaying journals : ", e);
             Thread.currentThread().interrupt();
@@ -941,7 +1060,18 @@ public class BookieImpl implements Bookie {
     }
 
     private Journal getJournal(long ledgerId) {
-        return journals.get(MathUtils.signSafeMod(ledgerId, journals.size()));
+        return journalRouter.getJournal(ledgerId);
+    }
+
+    /**
+     * Get the journal in which to write the next entry of the ledger. The caller must hold the ledger handle
+     * lock, and record the write in the journal router.
+     *
+     * <p>With load aware routing, a ledger only moves to another journal once its previous records are
+     * checkpointed, and its master key with them, so the master key does not need to be written again.
+     */
+    private Journal getJournalForWrite(long ledgerId) {
+        return journalRouter.selectJournal(ledgerId);
     }
 
     @VisibleForTesting
@@ -961,11 +1091,26 @@ public class BookieImpl implements Bookie {
     private void addEntryInternal(LedgerDescriptor handle, ByteBuf entry,
                                   boolean ackBeforeSync, WriteCallback cb, Object ctx, byte[] masterKey)
             throws IOException, BookieException, InterruptedException {
+        addEntryInternal(handle, entry, ackBeforeSync, cb, ctx, masterKey, null);
+    }
+
+    /**
+     * Add an entry to a ledger as specified by handle.
+     *
+     * <p>If journalBatch is not null, the journal record of the entry is not enqueued but collected in it, keyed by
+     * journal, and it is up to the caller to enqueue it.
+     */
+    private void addEntryInternal(LedgerDescriptor handle, ByteBuf entry,
+                                  boolean ackBeforeSync, WriteCallback cb, Object ctx, byte[] masterKey,
+                                  Map<Journal, List<Journal.QueueEntry>> journalBatch)
+            throws IOException, BookieException, InterruptedException {
         long ledgerId = handle.getLedgerId();
         long entryId = handle.addEntry(entry);
 
         bookieStats.getWriteBytes().addCount(entry.readableBytes());
 
+        Journal journal = getJournalForWrite(ledgerId);
+
         // journal `addEntry` should happen after the entry is added to ledger storage.
         // otherwise the journal entry can potentially be rolled before the ledger is created in ledger storage.
         if (masterKeyCache.get(ledgerId) == null) {
@@ -974,11 +1119,11 @@ public class BookieImpl implements Bookie {
             if (oldValue == null) {
                 ByteBuf masterKeyEntry = createMasterKeyEntry(ledgerId, masterKey);
                 try {
-                    getJournal(ledgerId).logAddEntry(
-                            masterKeyEntry, false /* ackBeforeSync */, new NopWriteCallback(), null);
+                    journal.logAddEntry(masterKeyEntry, false /* ackBeforeSync */, new NopWriteCallback(), null);
                 } finally {
                     ReferenceCountUtil.release(masterKeyEntry);
                 }
+                journalRouter.recordWrite(ledgerId, journal);
             }
         }
 
@@ -993,7 +1138,15 @@ public class BookieImpl implements Bookie {
         if (LOG.isTraceEnabled()) {
             LOG.trace("Adding {}@{}", entryId, ledgerId);
         }
-        getJournal(ledgerId).logAddEntry(entry, ackBeforeSync, cb, ctx);
+        if (journalBatch != null) {
+            journalBatch.computeIfAbsent(journal, j -> new ArrayList<>())
+                    .add(journal.prepareAddEntry(entry, ackBeforeSync, cb, ctx));
+            // The write is only recorded once the entry is enqueued, until then the ledger sticks to the journal
+            journalRouter.recordPendingWrite(ledgerId, journal);
+        } else {
+            journal.logAddEntry(entry, ackBeforeSync, cb, ctx);
+            journalRouter.recordWrite(ledgerId, journal);
+        }
     }
 
     /**
@@ -1052,7 +1205,9 @@ public class BookieImpl implements Bookie {
                 handle.setExplicitLac(entry);
                 entry.resetReaderIndex();
                 explicitLACEntry = createExplicitLACEntry(ledgerId, entry);
-                getJournal(ledgerId).logAddEntry(explicitLACEntry, false /* ackBeforeSync */, writeCallback, ctx);
+                Journal journal = getJournalForWrite(ledgerId);
+                journal.logAddEntry(explicitLACEntry, false /* ackBeforeSync */, writeCallback, ctx);
+                journalRouter.recordWrite(ledgerId, journal);
             }
         } catch (NoWritableLedgerDirException e) {
             stateManager.transitionToReadOnlyMode();
@@ -1125,6 +1280,81 @@ public class BookieImpl implements Bookie {
         }
     }
 
+    /**
+     * Add several entries, with a single journal enqueue for the entries that go to the same journal.
+     */
+    @Override
+    public void addEntries(List<? extends PendingAdd> adds, Object ctx) {
+        Map<Journal, List<Journal.QueueEntry>> journalBatch = new HashMap<>();
+        try {
+            for (PendingAdd add : adds) {
+                ByteBuf entry = add.getEntry();
+                long requestNanos = MathUtils.nowInNano();
+                boolean success = false;
+                int entrySize = 0;
+                try {
+                    LedgerDescriptor handle = getLedgerForEntry(entry, add.getMasterKey());
+                    synchronized (handle) {
+                        if (handle.isFenced()) {
+                            throw BookieException
+                                    .create(BookieException.Code.LedgerFencedException);
+                        }
+                        entrySize = entry.readableBytes();
+                        addEntryInternal(handle, entry, false /* ackBeforeSync */, add, ctx, add.getMasterKey(),
+                                journalBatch);
+                    }
+                    success = true;
+                } catch (NoWritableLedgerDirException e) {
+                    stateManager.transitionToReadOnlyMode();
+                    add.addFailed(new IOException(e));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    add.addFailed(e);
+                } catch (Throwable t) {
+                    add.addFailed(t);
+                } finally {
+                    long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+                    if (success) {
+                        bookieStats.getAddEntryStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                        bookieStats.getAddBytesStats().registerSuccessfulValue(entrySize);
+                    } else {
+                        bookieStats.getAddEntryStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                        bookieStats.getAddBytesStats().registerFailedValue(entrySize);
+                    }
+
+                    ReferenceCountUtil.release(entry);
+                }
+            }
+        } finally {
+            for (Map.Entry<Journal, List<Journal.QueueEntry>> e : journalBatch.entrySet()) {
+                Journal journal = e.getKey();
+                List<Journal.QueueEntry> entries = e.getValue();
+                // The queue entries are recycled once processed by the journal, so the ledger ids are read first
+                long[] ledgerIds = new long[entries.size()];
+                for (int i = 0; i < ledgerIds.length; i++) {
+                    ledgerIds[i] = entries.get(i).ledgerId;
+                }
+                try {
+                    journal.logAddEntries(entries);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    LOG.error("Interrupted while adding {} entries to journal {}",
+                            entries.size(), journal.getJournalDirectory(), ie);
+                    // The entries left in the list are not in the journal queue
+                    for (Journal.QueueEntry qe : entries) {
+                        PendingAdd add = (PendingAdd) qe.cb;
+                        journal.cancelAddEntry(qe);
+                        add.addFailed(ie);
+                    }
+                }
+                int enqueued = ledgerIds.length - entries.size();
+                for (int i = 0; i < ledgerIds.length; i++) {
+                    journalRouter.completePendingWrite(ledgerIds[i], journal, i < enqueued);
+                }
+            }
+        }
+    }
+
     /**
      * Fences a ledger. From this point on, clients will be unable to
      * write to this ledger. Only recoveryAddEntry will be
@@ -1136,7 +1366,16 @@ public class BookieImpl implements Bookie {
     public CompletableFuture<Boolean> fenceLedger(long ledgerId, byte[] masterKey)
             throws IOException, BookieException {
         LedgerDescriptor handle = handles.getHandle(ledgerId, masterKey, false);
-        return handle.fenceAndLogInJournal(getJournal(ledgerId));
+        if (!journalRouter.isLoadAware()) {
+            return handle.fenceAndLogInJournal(getJournal(ledgerId));
+        }
+
+        synchronized (handle) {
+            Journal journal = getJournalForWrite(ledgerId);
+            CompletableFuture<Boolean> result = handle.fenceAndLogInJournal(journal);
+            journalRouter.recordWrite(ledgerId, journal);
+            return result;
+        }
     }
 
     public ByteBuf readEntry(long ledgerId, long entryId)
@@ -1166,6 +1405,22 @@ public class BookieImpl implements Bookie {
         }
     }
 
+    @Override
+    public FileRegion readEntryRegion(long ledgerId, long entryId, int minEntrySize)
+            throws IOException, NoLedgerException, BookieException {
+        long requestNanos = MathUtils.nowInNano();
+        // Check that the ledger exists, like a regular read
+        handles.getReadOnlyHandle(ledgerId);
+        FileRegion region = ledgerStorage.getEntryRegion(ledgerId, entryId, minEntrySize);
+        if (region != null) {
+            bookieStats.getReadBytes().addCount(region.count());
+            bookieStats.getReadEntryStats().registerSuccessfulEvent(MathUtils.elapsedNanos(requestNanos),
+                    TimeUnit.NANOSECONDS);
+            bookieStats.getReadBytesStats().registerSuccessfulValue(region.count());
+        }
+        return region;
+    }
+
     public long readLastAddConfirmed(long ledgerId) throws IOException, BookieException {
         LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
         return handle.getLastAddConfirmed();
@@ -71,6 +71,30 @@ public class BufferedReadChannel extends BufferedChannelBase {
         return read(dest, pos, dest.writableBytes());
     }
 
+    /**
+     * Read as many bytes into dest as dest.writableBytes() starting at position pos, directly
+     * from the FileChannel. The read buffer is bypassed, so that large reads are not split in
+     * many reads of the read buffer capacity.
+     * @param dest
+     * @param pos
+     * @return The total number of bytes read.
+     *         -1 if the given position is greater than or equal to the file's current size.
+     * @throws IOException if I/O error occurs
+     */
+    public int readUnbuffered(ByteBuf dest, long pos) throws IOException {
+        FileChannel fc = validateAndGetFileChannel();
+        long currentPosition = pos;
+        while (dest.isWritable()) {
+            int readBytes = dest.writeBytes(fc, currentPosition, dest.writableBytes());
+            if (readBytes <= 0) {
+                // here we reached eof.
+                break;
+            }
+            currentPosition += readBytes;
+        }
+        return currentPosition == pos ? -1 : (int) (currentPosition - pos);
+    }
+
     @Override
     public long size() throws IOException {
         if (sealed) {
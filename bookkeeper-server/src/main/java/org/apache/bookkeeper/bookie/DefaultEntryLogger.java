@@ -31,7 +31,12 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.FileRegion;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.IllegalReferenceCountException;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
 import io.netty.util.concurrent.FastThreadLocal;
 import java.io.BufferedReader;
 import java.io.File;
@@ -418,7 +423,47 @@ public class DefaultEntryLogger implements EntryLogger {
      * and don't cause a change in the channel's position. We use this map to store the file channels. Each
      * file channel is mapped to a log id which represents an open log file.
      */
-    private final ConcurrentMap<Long, FileChannel> logid2FileChannel = new ConcurrentHashMap<Long, FileChannel>();
+    private final ConcurrentMap<Long, SharedLogChannel> logid2FileChannel =
+            new ConcurrentHashMap<Long, SharedLogChannel>();
+
+    /**
+     * File channel of an entry log, shared by the readers of the log and the regions of its entries being sent.
+     * The map holds a reference, and the channel is closed once the log is removed and the regions are released.
+     */
+    static class SharedLogChannel extends AbstractReferenceCounted {
+        final FileChannel fc;
+
+        SharedLogChannel(FileChannel fc) {
+            this.fc = fc;
+        }
+
+        @Override
+        protected void deallocate() {
+            IOUtils.close(LOG, fc);
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            return this;
+        }
+    }
+
+    /**
+     * Region of an entry, which holds a reference on the shared channel of its log instead of closing it.
+     */
+    static class EntryRegion extends DefaultFileRegion {
+        final SharedLogChannel channel;
+
+        EntryRegion(SharedLogChannel channel, long position, long count) {
+            super(channel.fc, position, count);
+            this.channel = channel;
+        }
+
+        @Override
+        protected void deallocate() {
+            channel.release();
+        }
+    }
 
     /**
      * Put the logId, bc pair in the map responsible for the current thread.
@@ -435,13 +480,10 @@ public class DefaultEntryLogger implements EntryLogger {
      * @param logId
      */
     public void removeFromChannelsAndClose(long logId) {
-        FileChannel fileChannel = logid2FileChannel.remove(logId);
+        SharedLogChannel fileChannel = logid2FileChannel.remove(logId);
         if (null != fileChannel) {
-            try {
-                fileChannel.close();
-            } catch (IOException e) {
-                LOG.warn("Exception while closing channel for log file:" + logId);
-            }
+            // Closed once the regions being sent are released
+            fileChannel.release();
         }
     }
 
@@ -871,6 +913,80 @@ public class DefaultEntryLogger implements EntryLogger {
         return data;
     }
 
+    @Override
+    public FileRegion readEntryRegion(long ledgerId, long entryId, long entryLocation, int minEntrySize)
+            throws IOException, Bookie.NoEntryException {
+        long entryLogId = logIdForOffset(entryLocation);
+        long pos = posForOffset(entryLocation);
+        if (entryLogManager.getCurrentLogIfPresent(entryLogId) != null) {
+            // The entry might still be in the write buffer of the current log
+            return null;
+        }
+
+        int entrySize;
+        try {
+            BufferedReadChannel fc = getFCForEntryInternal(ledgerId, entryId, entryLogId, pos);
+            ByteBuf sizeBuff = readEntrySize(ledgerId, entryId, entryLogId, pos, fc);
+            entrySize = sizeBuff.getInt(0);
+            validateEntry(ledgerId, entryId, entryLogId, pos, sizeBuff);
+        } catch (EntryLookupException e) {
+            throw new IOException("Bad entry read from log file id: " + entryLogId, e);
+        }
+        if (entrySize < minEntrySize) {
+            return null;
+        }
+
+        // The region shares the channel of the log, which stays open until the entry is sent
+        SharedLogChannel channel = logid2FileChannel.get(entryLogId);
+        if (channel == null) {
+            // The log was removed after the entry size was read
+            return null;
+        }
+        try {
+            channel.retain();
+        } catch (IllegalReferenceCountException e) {
+            return null;
+        }
+        return new EntryRegion(channel, pos, entrySize);
+    }
+
+    @Override
+    public ByteBuf readEntriesRange(long entryLocation, int maxBytes) throws IOException, Bookie.NoEntryException {
+        long entryLogId = logIdForOffset(entryLocation);
+        long pos = posForOffset(entryLocation) - 4; // include the size header of the first entry
+
+        ByteBuf data = allocator.directBuffer(maxBytes, maxBytes);
+        try {
+            int rc;
+            BufferedLogChannel bc = entryLogManager.getCurrentLogIfPresent(entryLogId);
+            if (null != bc) {
+                // The range might overlap with the write buffer of the current log, don't read past its end
+                synchronized (bc) {
+                    int length = (int) Math.min(maxBytes, bc.position() - pos);
+                    rc = length > 0 ? bc.read(data, pos, length) : -1;
+                }
+            } else {
+                BufferedReadChannel fc;
+                try {
+                    fc = getFCForEntryInternal(-1L, -1L, entryLogId, pos);
+                } catch (EntryLookupException e) {
+                    throw new IOException("Bad entries range read from log file id: " + entryLogId, e);
+                }
+                rc = fc.readUnbuffered(data, pos);
+            }
+
+            if (rc <= 0) {
+                throw new Bookie.NoEntryException("No entries found at location " + entryLocation,
+                        -1L, -1L);
+            }
+        } catch (IOException e) {
+            ReferenceCountUtil.release(data);
+            throw e;
+        }
+
+        return data;
+    }
+
     /**
      * Read the header of an entry log.
      */
@@ -908,10 +1024,10 @@ public class DefaultEntryLogger implements EntryLogger {
         // get channel is used to open an existing entry log file
         // it would be better to open using read mode
         FileChannel newFc = new RandomAccessFile(file, "r").getChannel();
-        FileChannel oldFc = logid2FileChannel.putIfAbsent(entryLogId, newFc);
+        SharedLogChannel oldFc = logid2FileChannel.putIfAbsent(entryLogId, new SharedLogChannel(newFc));
         if (null != oldFc) {
             newFc.close();
-            newFc = oldFc;
+            newFc = oldFc.fc;
         }
         // We set the position of the write buffer of this buffered channel to Long.MAX_VALUE
         // so that there are no overlaps with the write buffer while reading
@@ -1195,11 +1311,11 @@ public class DefaultEntryLogger implements EntryLogger {
         LOG.info("Stopping EntryLogger");
         try {
             flush();
-            for (FileChannel fc : logid2FileChannel.values()) {
-                fc.close();
+            // remove the channels from the mapping, so we don't need to go through them again in finally block in
+            // normal case.
+            for (Long logId : logid2FileChannel.keySet()) {
+                removeFromChannelsAndClose(logId);
             }
-            // clear the mapping, so we don't need to go through the channels again in finally block in normal case.
-            logid2FileChannel.clear();
             entryLogManager.close();
             synchronized (compactionLogLock) {
                 if (compactionLogChannel != null) {
@@ -1211,8 +1327,8 @@ public class DefaultEntryLogger implements EntryLogger {
             // we have no idea how to avoid io exception during shutting down, so just ignore it
             LOG.error("Error flush entry log during shutting down, which may cause entry log corrupted.", ie);
         } finally {
-            for (FileChannel fc : logid2FileChannel.values()) {
-                IOUtils.close(LOG, fc);
+            for (Long logId : logid2FileChannel.keySet()) {
+                removeFromChannelsAndClose(logId);
             }
 
             entryLogManager.forceClose();
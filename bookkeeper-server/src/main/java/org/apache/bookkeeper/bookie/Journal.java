@@ -32,16 +32,20 @@ import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
 import io.netty.util.ReferenceCountUtil;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import org.apache.bookkeeper.bookie.LedgerDirsManager.NoWritableLedgerDirException;
 import org.apache.bookkeeper.bookie.stats.JournalStats;
@@ -134,9 +138,12 @@ public class Journal implements CheckpointSource {
      */
     private static class LogMarkCheckpoint implements Checkpoint {
         final LastLogMark mark;
+        // Number of entries, in queue order, covered by the mark
+        final long syncedEntries;
 
-        public LogMarkCheckpoint(LastLogMark checkpoint) {
+        public LogMarkCheckpoint(LastLogMark checkpoint, long syncedEntries) {
             this.mark = checkpoint;
+            this.syncedEntries = syncedEntries;
         }
 
         @Override
@@ -307,6 +314,7 @@ public class Journal implements CheckpointSource {
 
         OpStatsLogger journalAddEntryStats;
         Counter callbackTime;
+        JournalGroupCommitController groupCommitController;
 
         static QueueEntry create(ByteBuf entry, boolean ackBeforeSync, long ledgerId, long entryId,
                 WriteCallback cb, Object ctx, long enqueueTime, OpStatsLogger journalAddEntryStats,
@@ -330,7 +338,11 @@ public class Journal implements CheckpointSource {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Acknowledge Ledger: {}, Entry: {}", ledgerId, entryId);
             }
-            journalAddEntryStats.registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueTime), TimeUnit.NANOSECONDS);
+            long latencyNanos = MathUtils.elapsedNanos(enqueueTime);
+            journalAddEntryStats.registerSuccessfulEvent(latencyNanos, TimeUnit.NANOSECONDS);
+            if (groupCommitController != null) {
+                groupCommitController.recordAddLatency(latencyNanos);
+            }
             cb.writeComplete(0, ledgerId, entryId, null, ctx);
             callbackTime.addLatency(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
             recycle();
@@ -359,6 +371,7 @@ public class Journal implements CheckpointSource {
             this.ctx = null;
             this.journalAddEntryStats = null;
             this.callbackTime = null;
+            this.groupCommitController = null;
             recyclerHandle.recycle(this);
         }
     }
@@ -373,6 +386,7 @@ public class Journal implements CheckpointSource {
         private boolean shouldClose;
         private long lastFlushedPosition;
         private long logId;
+        private long processedEntries;
         private boolean flushed;
 
         public int process(ObjectHashSet<BookieRequestHandler> writeHandlers) {
@@ -437,12 +451,14 @@ public class Journal implements CheckpointSource {
                           long logId,
                           long lastFlushedPosition,
                           RecyclableArrayList<QueueEntry> forceWriteWaiters,
-                          boolean shouldClose) {
+                          boolean shouldClose,
+                          long processedEntries) {
         ForceWriteRequest req = forceWriteRequestsRecycler.get();
         req.forceWriteWaiters = forceWriteWaiters;
         req.logFile = logFile;
         req.logId = logId;
         req.lastFlushedPosition = lastFlushedPosition;
+        req.processedEntries = processedEntries;
         req.shouldClose = shouldClose;
         journalStats.getForceWriteQueueSize().inc();
         return req;
@@ -541,9 +557,13 @@ public class Journal implements CheckpointSource {
             long fsyncStartTime = MathUtils.nowInNano();
             try {
                 lastRequest.flushFileToDisk();
-                journalStats.getJournalSyncStats().registerSuccessfulEvent(MathUtils.elapsedNanos(fsyncStartTime),
-                        TimeUnit.NANOSECONDS);
+                long fsyncNanos = MathUtils.elapsedNanos(fsyncStartTime);
+                journalStats.getJournalSyncStats().registerSuccessfulEvent(fsyncNanos, TimeUnit.NANOSECONDS);
                 lastLogMark.setCurLogMark(lastRequest.logId, lastRequest.lastFlushedPosition);
+                syncedEntries = lastRequest.processedEntries;
+                // Moving average of the fsync latency, weighting the last sample by 1/8
+                long lastSyncLatencyNanos = syncLatencyNanos;
+                syncLatencyNanos = lastSyncLatencyNanos + (fsyncNanos - lastSyncLatencyNanos) / 8;
             } catch (IOException ioe) {
                 journalStats.getJournalSyncStats()
                         .registerFailedEvent(MathUtils.elapsedNanos(fsyncStartTime), TimeUnit.NANOSECONDS);
@@ -603,6 +623,8 @@ public class Journal implements CheckpointSource {
 
     // Time after which we will stop grouping and issue the flush
     private final long maxGroupWaitInNanos;
+    // Tunes the time to wait for grouping below maxGroupWaitInNanos, if a target add latency is set
+    private final JournalGroupCommitController groupCommitController;
     // Threshold after which we flush any buffered journal entries
     private final long bufferedEntriesThreshold;
     // Threshold after which we flush any buffered journal writes
@@ -617,13 +639,27 @@ public class Journal implements CheckpointSource {
     private final long journalPageCacheFlushIntervalMSec;
     // Whether reuse journal files, it will use maxBackupJournal as the journal file pool.
     private final boolean journalReuseFiles;
+    // Whether the journal files are memory mapped when they are scanned
+    private final boolean replayMemoryMapped;
+    // Whether the records of each group commit are compressed together
+    private final boolean compressRecords;
 
     // Should data be fsynced on disk before triggering the callback
     private final boolean syncData;
 
     private final LastLogMark lastLogMark = new LastLogMark(0, 0);
 
+    private final int journalIndex;
+
+    // Number of entries added to the queue, and number of those entries that are synced on disk and that are
+    // covered by a completed checkpoint
+    private final AtomicLong enqueuedEntries = new AtomicLong();
+    private volatile long syncedEntries = 0;
+    private final AtomicLong checkpointedEntries = new AtomicLong();
+    private volatile long syncLatencyNanos = 0;
+
     private static final String LAST_MARK_DEFAULT_NAME = "lastMark";
+    private static final String STRIPE_DIR_PREFIX = "stripe-";
 
     private final String lastMarkFileName;
 
@@ -655,6 +691,7 @@ public class Journal implements CheckpointSource {
     public Journal(int journalIndex, File journalDirectory, ServerConfiguration conf,
             LedgerDirsManager ledgerDirsManager, StatsLogger statsLogger, ByteBufAllocator allocator) {
         this.allocator = allocator;
+        this.journalIndex = journalIndex;
 
         StatsLogger journalStatsLogger = statsLogger.scopeLabel("journalIndex", String.valueOf(journalIndex));
 
@@ -684,6 +721,9 @@ public class Journal implements CheckpointSource {
         this.bufferedWritesThreshold = conf.getJournalBufferedWritesThreshold();
         this.bufferedEntriesThreshold = conf.getJournalBufferedEntriesThreshold();
         this.journalFormatVersionToWrite = conf.getJournalFormatVersionToWrite();
+        this.replayMemoryMapped = conf.getJournalReplayMemoryMapped();
+        this.compressRecords = journalFormatVersionToWrite >= JournalChannel.V7
+                && JournalBatchCompressor.isAvailable();
         this.journalAlignmentSize = conf.getJournalAlignmentSize();
         this.journalPageCacheFlushIntervalMSec = conf.getJournalPageCacheFlushIntervalMSec();
         this.journalReuseFiles = conf.getJournalReuseFiles();
@@ -694,7 +734,7 @@ public class Journal implements CheckpointSource {
 
         this.removePagesFromCache = conf.getJournalRemovePagesFromCache();
         // read last log mark
-        if (conf.getJournalDirs().length == 1) {
+        if (conf.getJournalDirs().length == 1 && journalIndex == 0) {
             lastMarkFileName = LAST_MARK_DEFAULT_NAME;
         } else {
             lastMarkFileName = LAST_MARK_DEFAULT_NAME + "." + journalIndex;
@@ -714,6 +754,12 @@ public class Journal implements CheckpointSource {
         // Expose Stats
         this.journalStats = new JournalStats(journalStatsLogger, journalMaxMemory,
                 () -> memoryLimitController.currentUsage());
+        if (maxGroupWaitInNanos > 0 && conf.getJournalTargetAddLatencyMSec() > 0) {
+            this.groupCommitController = new JournalGroupCommitController(maxGroupWaitInNanos,
+                    TimeUnit.MILLISECONDS.toNanos(conf.getJournalTargetAddLatencyMSec()), journalStatsLogger);
+        } else {
+            this.groupCommitController = null;
+        }
     }
 
     public Journal(int journalIndex, File journalDirectory, ServerConfiguration conf,
@@ -723,6 +769,40 @@ public class Journal implements CheckpointSource {
         this.journalAliveListener = journalAliveListener;
     }
 
+    /**
+     * Get the directory of a journal writer stripe. The first stripe writes in the journal directory itself,
+     * so that the journal files written before enabling stripes are still replayed.
+     */
+    public static File getStripeDirectory(File journalDirectory, int stripe) {
+        return stripe == 0 ? journalDirectory : new File(journalDirectory, STRIPE_DIR_PREFIX + stripe);
+    }
+
+    /**
+     * Get the stripe written in a sub directory of a journal directory.
+     *
+     * @return the stripe, or -1 if the directory is not the directory of a stripe
+     */
+    public static int getStripe(File stripeDirectory) {
+        String name = stripeDirectory.getName();
+        if (!name.startsWith(STRIPE_DIR_PREFIX) || !stripeDirectory.isDirectory()) {
+            return -1;
+        }
+        try {
+            int stripe = Integer.parseInt(name.substring(STRIPE_DIR_PREFIX.length()));
+            return stripe > 0 ? stripe : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Get the index of a journal writer stripe among all the journals of the bookie. The first stripe of each
+     * journal directory keeps the index of the directory, and with it the name of its last mark file.
+     */
+    public static int getJournalIndex(int directoryIndex, int stripe, int directoriesCount) {
+        return stripe * directoriesCount + directoryIndex;
+    }
+
     @VisibleForTesting
     static Journal newJournal(int journalIndex, File journalDirectory, ServerConfiguration conf,
                                      LedgerDirsManager ledgerDirsManager, StatsLogger statsLogger,
@@ -760,7 +840,9 @@ public class Journal implements CheckpointSource {
      */
     @Override
     public Checkpoint newCheckpoint() {
-        return new LogMarkCheckpoint(lastLogMark.markLog());
+        // The synced entries are read before the mark, which is updated first, so the mark covers all of them
+        long synced = syncedEntries;
+        return new LogMarkCheckpoint(lastLogMark.markLog(), synced);
     }
 
     /**
@@ -777,6 +859,7 @@ public class Journal implements CheckpointSource {
         LastLogMark mark = lmcheckpoint.mark;
 
         mark.rollLog(mark);
+        checkpointedEntries.accumulateAndGet(lmcheckpoint.syncedEntries, Math::max);
         if (compact) {
             // list the journals that have been marked
             List<Long> logs = listJournalIds(journalDirectory, new JournalRollingFilter(mark));
@@ -819,6 +902,15 @@ public class Journal implements CheckpointSource {
                     journalPos, conf, fileChannelProvider);
         }
         int journalVersion = recLog.getFormatVersion();
+        if (replayMemoryMapped) {
+            try {
+                File journalFile = new File(journalDirectory, Long.toHexString(journalId) + ".txn");
+                return scanMappedJournal(journalFile, journalVersion, recLog.fc.position(), scanner,
+                        skipInvalidRecord);
+            } finally {
+                recLog.close();
+            }
+        }
         try {
             ByteBuffer lenBuff = ByteBuffer.allocate(4);
             ByteBuffer recBuff = ByteBuffer.allocate(64 * 1024);
@@ -837,6 +929,7 @@ public class Journal implements CheckpointSource {
                     break;
                 }
                 boolean isPaddingRecord = false;
+                boolean isCompressedBatch = false;
                 if (len < 0) {
                     if (len == PADDING_MASK && journalVersion >= JournalChannel.V5) {
                         // skip padding bytes
@@ -851,11 +944,28 @@ public class Journal implements CheckpointSource {
                             continue;
                         }
                         isPaddingRecord = true;
+                    } else if (len == JournalBatchCompressor.COMPRESSED_BATCH_MASK
+                            && journalVersion >= JournalChannel.V7) {
+                        lenBuff.clear();
+                        fullRead(recLog, lenBuff);
+                        if (lenBuff.remaining() != 0) {
+                            break;
+                        }
+                        lenBuff.flip();
+                        len = lenBuff.getInt();
+                        isCompressedBatch = true;
                     } else {
                         LOG.error("Invalid record found with negative length: {}", len);
                         throw new IOException("Invalid record found with negative length " + len);
                     }
                 }
+                if (len < 0) {
+                    throw new IOException("Invalid record found with negative length " + len);
+                }
+                if (len > recLog.fc.size() - recLog.fc.position()) {
+                    // The record goes past the end of the file, this is where we left off writing
+                    break;
+                }
                 recBuff.clear();
                 if (recBuff.remaining() < len) {
                     recBuff = ByteBuffer.allocate(len);
@@ -867,7 +977,9 @@ public class Journal implements CheckpointSource {
                     break;
                 }
                 recBuff.flip();
-                if (!isPaddingRecord) {
+                if (isCompressedBatch) {
+                    JournalBatchCompressor.scanBatch(journalVersion, offset, recBuff, scanner);
+                } else if (!isPaddingRecord) {
                     scanner.process(journalVersion, offset, recBuff);
                 }
             }
@@ -884,6 +996,137 @@ public class Journal implements CheckpointSource {
         }
     }
 
+    /**
+     * Scan a journal file through a memory mapping of the file. The records are handed to the scanner as views
+     * of the mapping, instead of being copied into a buffer.
+     */
+    private long scanMappedJournal(File journalFile, int journalVersion, long journalPos, JournalScanner scanner,
+                                   boolean skipInvalidRecord) throws IOException {
+        try (MappedJournalFile recLog = new MappedJournalFile(journalFile)) {
+            long position = journalPos;
+            try {
+                while (true) {
+                    // entry start offset
+                    long offset = position;
+                    ByteBuffer lenBuff = recLog.slice(position, 4);
+                    position += lenBuff.remaining();
+                    if (lenBuff.remaining() != 4) {
+                        break;
+                    }
+                    int len = lenBuff.getInt();
+                    if (len == 0) {
+                        break;
+                    }
+                    boolean isPaddingRecord = false;
+                    boolean isCompressedBatch = false;
+                    if (len < 0) {
+                        if (len == PADDING_MASK && journalVersion >= JournalChannel.V5) {
+                            // skip padding bytes
+                            lenBuff = recLog.slice(position, 4);
+                            position += lenBuff.remaining();
+                            if (lenBuff.remaining() != 4) {
+                                break;
+                            }
+                            len = lenBuff.getInt();
+                            if (len == 0) {
+                                continue;
+                            }
+                            isPaddingRecord = true;
+                        } else if (len == JournalBatchCompressor.COMPRESSED_BATCH_MASK
+                                && journalVersion >= JournalChannel.V7) {
+                            lenBuff = recLog.slice(position, 4);
+                            position += lenBuff.remaining();
+                            if (lenBuff.remaining() != 4) {
+                                break;
+                            }
+                            len = lenBuff.getInt();
+                            isCompressedBatch = true;
+                        } else {
+                            LOG.error("Invalid record found with negative length: {}", len);
+                            throw new IOException("Invalid record found with negative length " + len);
+                        }
+                    }
+                    if (len < 0) {
+                        throw new IOException("Invalid record found with negative length " + len);
+                    }
+                    if (len > recLog.size - position) {
+                        // The record goes past the end of the file, this is where we left off writing
+                        break;
+                    }
+                    ByteBuffer recBuff = recLog.slice(position, len);
+                    position += recBuff.remaining();
+                    if (recBuff.remaining() != len) {
+                        // This is where we left off writing
+                        break;
+                    }
+                    if (isCompressedBatch) {
+                        JournalBatchCompressor.scanBatch(journalVersion, offset, recBuff, scanner);
+                    } else if (!isPaddingRecord) {
+                        scanner.process(journalVersion, offset, recBuff);
+                    }
+                }
+                return position;
+            } catch (IOException e) {
+                if (skipInvalidRecord) {
+                    LOG.warn("Failed to parse journal file, and skipInvalidRecord is true, skip this journal file"
+                            + " reply");
+                } else {
+                    throw e;
+                }
+                return position;
+            }
+        }
+    }
+
+    /**
+     * Read only memory mapping of a journal file.
+     *
+     * <p>A mapping can not be larger than 2GB, so the file is mapped in regions of up to
+     * {@link #MAX_REGION_SIZE} bytes. A new region is mapped at the first record that does not fit in the
+     * current one. The regions are unmapped once they are garbage collected, which also keeps the views handed
+     * to the scanner valid for as long as they are referenced.
+     */
+    private static class MappedJournalFile implements Closeable {
+        private static final int MAX_REGION_SIZE = 1024 * 1024 * 1024;
+
+        private final FileChannel fc;
+        private final long size;
+        private MappedByteBuffer region;
+        private long regionOffset;
+
+        MappedJournalFile(File file) throws IOException {
+            this.fc = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.size = fc.size();
+        }
+
+        /**
+         * @return a view of the length bytes of the file at the given position, which is shorter when the file
+         *         ends before
+         */
+        ByteBuffer slice(long position, int length) throws IOException {
+            int available = (int) Math.max(0, Math.min(length, size - position));
+            if (available == 0) {
+                return ByteBuffer.allocate(0);
+            } else if (available > MAX_REGION_SIZE) {
+                throw new IOException("Invalid record found with length " + length);
+            }
+            if (region == null || position < regionOffset
+                    || position + available > regionOffset + region.capacity()) {
+                regionOffset = position;
+                region = fc.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, MAX_REGION_SIZE));
+            }
+            ByteBuffer view = region.duplicate();
+            view.position((int) (position - regionOffset));
+            view.limit(view.position() + available);
+            return view.slice();
+        }
+
+        @Override
+        public void close() throws IOException {
+            fc.close();
+        }
+    }
+
     /**
      * record an add entry operation in journal.
      */
@@ -898,6 +1141,59 @@ public class Journal implements CheckpointSource {
     public void logAddEntry(long ledgerId, long entryId, ByteBuf entry,
                             boolean ackBeforeSync, WriteCallback cb, Object ctx)
             throws InterruptedException {
+        queue.put(newAddEntry(ledgerId, entryId, entry, ackBeforeSync, cb, ctx));
+    }
+
+    /**
+     * Prepare the record of an add entry operation, to be enqueued later with {@link #logAddEntries}.
+     *
+     * <p>The entry is counted in {@link #getEnqueuedEntries()} right away, so it must be enqueued shortly after.
+     * The counter only covers the entry once it is enqueued.
+     */
+    QueueEntry prepareAddEntry(ByteBuf entry, boolean ackBeforeSync, WriteCallback cb, Object ctx)
+            throws InterruptedException {
+        long ledgerId = entry.getLong(entry.readerIndex() + 0);
+        long entryId = entry.getLong(entry.readerIndex() + 8);
+        return newAddEntry(ledgerId, entryId, entry, ackBeforeSync, cb, ctx);
+    }
+
+    /**
+     * Record several add entry operations, prepared with {@link #prepareAddEntry}, with a single enqueue if the
+     * queue has room for all of them.
+     *
+     * <p>If the thread is interrupted while waiting for room in the queue, the entries that are enqueued are
+     * removed from the list, and it is up to the caller to {@link #cancelAddEntry cancel} the others. If it
+     * returns normally, the list is left as is, but the entries may already be processed and recycled.
+     */
+    void logAddEntries(List<QueueEntry> entries) throws InterruptedException {
+        QueueEntry[] toEnqueue = entries.toArray(new QueueEntry[0]);
+        int enqueued = 0;
+        try {
+            while (enqueued < toEnqueue.length) {
+                enqueued += queue.putAvailable(toEnqueue, enqueued, toEnqueue.length - enqueued);
+            }
+        } finally {
+            if (enqueued < toEnqueue.length) {
+                entries.subList(0, enqueued).clear();
+            }
+        }
+    }
+
+    /**
+     * Undo the {@link #prepareAddEntry} of an entry that could not be enqueued. The callback of the entry is not
+     * called.
+     */
+    void cancelAddEntry(QueueEntry qe) {
+        memoryLimitController.releaseMemory(qe.entry.readableBytes());
+        ReferenceCountUtil.release(qe.entry);
+        enqueuedEntries.decrementAndGet();
+        journalStats.getJournalQueueSize().dec();
+        qe.recycle();
+    }
+
+    private QueueEntry newAddEntry(long ledgerId, long entryId, ByteBuf entry,
+                                   boolean ackBeforeSync, WriteCallback cb, Object ctx)
+            throws InterruptedException {
         // Retain entry until it gets written to journal
         entry.retain();
 
@@ -905,13 +1201,19 @@ public class Journal implements CheckpointSource {
 
         memoryLimitController.reserveMemory(entry.readableBytes());
 
-        queue.put(QueueEntry.create(
+        enqueuedEntries.incrementAndGet();
+        QueueEntry qe = QueueEntry.create(
                 entry, ackBeforeSync, ledgerId, entryId, cb, ctx, MathUtils.nowInNano(),
                 journalStats.getJournalAddEntryStats(),
-                callbackTime));
+                callbackTime);
+        if (qe != null) {
+            qe.groupCommitController = groupCommitController;
+        }
+        return qe;
     }
 
     void forceLedger(long ledgerId, WriteCallback cb, Object ctx) {
+        enqueuedEntries.incrementAndGet();
         queue.add(QueueEntry.create(
                 null, false /* ackBeforeSync */, ledgerId,
                 BookieImpl.METAENTRY_ID_FORCE_LEDGER, cb, ctx, MathUtils.nowInNano(),
@@ -921,6 +1223,45 @@ public class Journal implements CheckpointSource {
         journalStats.getJournalQueueSize().inc();
     }
 
+    /**
+     * Get the number of entries added to the journal queue so far.
+     *
+     * <p>Once {@link #getSyncedEntries()} reaches the value returned by this method, all the entries that were
+     * in the queue when this method was called are synced on disk, since the queue is processed in order.
+     */
+    long getEnqueuedEntries() {
+        return enqueuedEntries.get();
+    }
+
+    /**
+     * Get the number of entries, in queue order, that are synced on disk.
+     */
+    long getSyncedEntries() {
+        return syncedEntries;
+    }
+
+    /**
+     * Get the number of entries, in queue order, that are covered by a completed checkpoint, i.e. that are not
+     * replayed anymore if the bookie restarts.
+     */
+    long getCheckpointedEntries() {
+        return checkpointedEntries.get();
+    }
+
+    /**
+     * Get the index of the journal among all the journals of the bookie.
+     */
+    int getIndex() {
+        return journalIndex;
+    }
+
+    /**
+     * Get the moving average of the journal fsync latency.
+     */
+    long getSyncLatencyNanos() {
+        return syncLatencyNanos;
+    }
+
     /**
      * Get the length of journal entries queue.
      *
@@ -970,6 +1311,7 @@ public class Journal implements CheckpointSource {
         ByteBuf lenBuff = Unpooled.buffer(4);
         ByteBuf paddingBuff = Unpooled.buffer(2 * conf.getJournalAlignmentSize());
         paddingBuff.writeZero(paddingBuff.capacity());
+        JournalBatchCompressor batchCompressor = compressRecords ? new JournalBatchCompressor() : null;
 
         BufferedChannel bc = null;
         JournalChannel logFile = null;
@@ -985,8 +1327,10 @@ public class Journal implements CheckpointSource {
             long logId = journalIds.isEmpty() ? System.currentTimeMillis() : journalIds.get(journalIds.size() - 1);
             long lastFlushPosition = 0;
             boolean groupWhenTimeout = false;
+            long groupWaitInNanos = maxGroupWaitInNanos;
 
             long dequeueStartTime = 0L;
+            long processedEntries = 0L;
             long lastFlushTimeMs = System.currentTimeMillis();
 
             final ObjectHashSet<BookieRequestHandler> writeHandlers = new ObjectHashSet<>();
@@ -1031,7 +1375,7 @@ public class Journal implements CheckpointSource {
                     } else {
                         // There are already some entries pending. We must adjust
                         // the waiting time to the remaining groupWait time
-                        long pollWaitTimeNanos = maxGroupWaitInNanos
+                        long pollWaitTimeNanos = groupWaitInNanos
                                 - MathUtils.elapsedNanos(toFlush.get(0).enqueueTime);
                         if (flushWhenQueueEmpty || pollWaitTimeNanos < 0) {
                             pollWaitTimeNanos = 0;
@@ -1042,6 +1386,10 @@ public class Journal implements CheckpointSource {
                     }
 
                     dequeueStartTime = MathUtils.nowInNano();
+                    if (groupCommitController != null) {
+                        groupCommitController.onDequeue(localQueueEntriesLen, dequeueStartTime, syncLatencyNanos);
+                        groupWaitInNanos = groupCommitController.getGroupWaitNanos();
+                    }
 
                     if (localQueueEntriesLen > 0) {
                         qe = localQueueEntries[localQueueEntriesIdx];
@@ -1054,11 +1402,11 @@ public class Journal implements CheckpointSource {
                     // We should issue a forceWrite if any of the three conditions below holds good
                     // 1. If the oldest pending entry has been pending for longer than the max wait time
                     if (maxGroupWaitInNanos > 0 && !groupWhenTimeout && (MathUtils
-                            .elapsedNanos(toFlush.get(0).enqueueTime) > maxGroupWaitInNanos)) {
+                            .elapsedNanos(toFlush.get(0).enqueueTime) > groupWaitInNanos)) {
                         groupWhenTimeout = true;
                     } else if (maxGroupWaitInNanos > 0 && groupWhenTimeout
                         && (qe == null // no entry to group
-                            || MathUtils.elapsedNanos(qe.enqueueTime) < maxGroupWaitInNanos)) {
+                            || MathUtils.elapsedNanos(qe.enqueueTime) < groupWaitInNanos)) {
                         // when group timeout, it would be better to look forward, as there might be lots of
                         // entries already timeout
                         // due to a previous slow write (writing to filesystem which impacted by force write).
@@ -1070,7 +1418,8 @@ public class Journal implements CheckpointSource {
                         journalStats.getFlushMaxWaitCounter().inc();
                     } else if (qe != null
                             && ((bufferedEntriesThreshold > 0 && toFlush.size() > bufferedEntriesThreshold)
-                            || (bc.position() > lastFlushPosition + bufferedWritesThreshold))) {
+                            || (bc.position() + (batchCompressor != null ? batchCompressor.pendingBytes() : 0)
+                                > lastFlushPosition + bufferedWritesThreshold))) {
                         // 2. If we have buffered more than the buffWriteThreshold or bufferedEntriesThreshold
                         groupWhenTimeout = false;
                         shouldFlush = true;
@@ -1087,11 +1436,14 @@ public class Journal implements CheckpointSource {
 
                     // toFlush is non null and not empty so should be safe to access getFirst
                     if (shouldFlush) {
+                        if (batchCompressor != null) {
+                            batchCompressor.write(logFile);
+                        }
                         if (journalFormatVersionToWrite >= JournalChannel.V5) {
                             writePaddingBytes(logFile, paddingBuff, journalAlignmentSize);
                         }
                         journalFlushWatcher.reset().start();
-                        bc.flush();
+                        logFile.flush();
 
                         for (int i = 0; i < toFlush.size(); i++) {
                             QueueEntry entry = toFlush.get(i);
@@ -1143,7 +1495,7 @@ public class Journal implements CheckpointSource {
                                 || (System.currentTimeMillis() - lastFlushTimeMs
                                 >= journalPageCacheFlushIntervalMSec)) {
                             forceWriteRequests.put(createForceWriteRequest(logFile, logId, lastFlushPosition,
-                                    toFlush, shouldRolloverJournal));
+                                    toFlush, shouldRolloverJournal, processedEntries));
                             lastFlushTimeMs = System.currentTimeMillis();
                         }
                         toFlush = entryListRecycler.newInstance();
@@ -1190,20 +1542,25 @@ public class Journal implements CheckpointSource {
 
                     batchSize += (4 + entrySize);
 
-                    lenBuff.clear();
-                    lenBuff.writeInt(entrySize);
+                    if (batchCompressor != null) {
+                        batchCompressor.add(qe.entry);
+                    } else {
+                        lenBuff.clear();
+                        lenBuff.writeInt(entrySize);
 
-                    // preAlloc based on size
-                    logFile.preAllocIfNeeded(4 + entrySize);
+                        // preAlloc based on size
+                        logFile.preAllocIfNeeded(4 + entrySize);
 
-                    bc.write(lenBuff);
-                    bc.write(qe.entry);
+                        bc.write(lenBuff);
+                        bc.write(qe.entry);
+                    }
                     memoryLimitController.releaseMemory(qe.entry.readableBytes());
                     ReferenceCountUtil.release(qe.entry);
                 }
 
                 toFlush.add(qe);
                 numEntriesToFlush++;
+                processedEntries++;
 
                 if (localQueueEntriesIdx < localQueueEntriesLen) {
                     qe = localQueueEntries[localQueueEntriesIdx];
@@ -0,0 +1,168 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.apache.bookkeeper.bookie.Journal.JournalScanner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xerial.snappy.Snappy;
+import org.xerial.snappy.SnappyError;
+
+/**
+ * Compression of the journal records of a group commit, available from journal format {@link JournalChannel#V7}.
+ *
+ * <p>The records added since the last flush are buffered, and written at flush time as a single batch:
+ * {@link #COMPRESSED_BATCH_MASK}, the length of the compressed data, then the records, each one with its length,
+ * compressed with Snappy. When the batch does not get smaller, the records are written as they are, which is
+ * still valid in this format. The batches always end at a flush, so the journal positions given to the
+ * LastLogMark are still at record boundaries.
+ */
+class JournalBatchCompressor {
+    private static final Logger LOG = LoggerFactory.getLogger(JournalBatchCompressor.class);
+
+    static final int COMPRESSED_BATCH_MASK = -0x200;
+    static final int HEADER_SIZE = 8;
+
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+    // Buffers grown above this size by a large batch are not kept for the next batches
+    private static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+    // A Snappy copy element of 3 bytes expands to at most 64 bytes, so a valid batch can not be more than
+    // 22 times larger once uncompressed
+    private static final int MAX_EXPANSION = 22;
+
+    private ByteBuf records = Unpooled.buffer(INITIAL_CAPACITY);
+    private final ByteBuf header = Unpooled.buffer(HEADER_SIZE);
+    private ByteBuf compressed = Unpooled.buffer(0);
+
+    /**
+     * Buffer a record, to be written with the next batch.
+     */
+    void add(ByteBuf entry) {
+        int entrySize = entry.readableBytes();
+        records.writeInt(entrySize);
+        records.writeBytes(entry, entry.readerIndex(), entrySize);
+    }
+
+    /**
+     * @return the size of the records waiting for the next batch
+     */
+    int pendingBytes() {
+        return records.readableBytes();
+    }
+
+    /**
+     * Write the buffered records to the journal channel.
+     */
+    void write(JournalChannel jc) throws IOException {
+        int size = records.readableBytes();
+        if (size == 0) {
+            return;
+        }
+
+        int maxCompressedSize = Snappy.maxCompressedLength(size);
+        if (compressed.capacity() < maxCompressedSize) {
+            compressed = Unpooled.buffer(maxCompressedSize, maxCompressedSize);
+        }
+        int compressedSize = Snappy.rawCompress(records.array(), records.arrayOffset() + records.readerIndex(),
+                size, compressed.array(), compressed.arrayOffset());
+
+        if (HEADER_SIZE + compressedSize < size) {
+            header.clear();
+            header.writeInt(COMPRESSED_BATCH_MASK);
+            header.writeInt(compressedSize);
+            compressed.setIndex(0, compressedSize);
+            jc.preAllocIfNeeded(HEADER_SIZE + compressedSize);
+            jc.bc.write(header);
+            jc.bc.write(compressed);
+        } else {
+            jc.preAllocIfNeeded(size);
+            jc.bc.write(records);
+        }
+        records.clear();
+        if (records.capacity() > MAX_RETAINED_CAPACITY) {
+            records = Unpooled.buffer(INITIAL_CAPACITY);
+        }
+        if (compressed.capacity() > MAX_RETAINED_CAPACITY) {
+            compressed = Unpooled.buffer(0);
+        }
+    }
+
+    /**
+     * Pass the records of a compressed batch to the scanner. The records are all given the offset of the batch.
+     */
+    static void scanBatch(int journalVersion, long offset, ByteBuffer batch, JournalScanner scanner)
+            throws IOException {
+        byte[] input;
+        int inputOffset;
+        int inputLength = batch.remaining();
+        if (batch.hasArray()) {
+            input = batch.array();
+            inputOffset = batch.arrayOffset() + batch.position();
+        } else {
+            input = new byte[inputLength];
+            batch.duplicate().get(input);
+            inputOffset = 0;
+        }
+
+        byte[] uncompressed;
+        try {
+            int uncompressedLength = Snappy.uncompressedLength(input, inputOffset, inputLength);
+            if (uncompressedLength < 0 || uncompressedLength > (long) inputLength * MAX_EXPANSION) {
+                throw new IOException("Invalid uncompressed length " + uncompressedLength);
+            }
+            uncompressed = new byte[uncompressedLength];
+            if (Snappy.rawUncompress(input, inputOffset, inputLength, uncompressed, 0) != uncompressedLength) {
+                throw new IOException("Compressed batch shorter than its uncompressed length");
+            }
+        } catch (IOException | RuntimeException | SnappyError e) {
+            throw new IOException("Invalid compressed batch found at offset " + offset, e);
+        }
+
+        ByteBuffer records = ByteBuffer.wrap(uncompressed);
+        while (records.hasRemaining()) {
+            int len = records.remaining() >= 4 ? records.getInt() : -1;
+            if (len < 0 || len > records.remaining()) {
+                throw new IOException("Invalid record found in the compressed batch at offset " + offset);
+            }
+            ByteBuffer record = records.slice();
+            record.limit(len);
+            records.position(records.position() + len);
+            scanner.process(journalVersion, offset, record);
+        }
+    }
+
+    /**
+     * @return whether the Snappy native library can be loaded on this platform
+     */
+    static boolean isAvailable() {
+        try {
+            Snappy.maxCompressedLength(1);
+            return true;
+        } catch (Throwable t) {
+            LOG.warn("Snappy is not available, journal records are written without compression", t);
+            return false;
+        }
+    }
+}
@@ -69,11 +69,13 @@ class JournalChannel implements Closeable {
     static final int V5 = 5;
     // Adding explicit lac entry
     public static final int V6 = 6;
+    // Compressing the records of each group commit
+    public static final int V7 = 7;
 
     static final int HEADER_SIZE = SECTOR_SIZE; // align header to sector size
     static final int VERSION_HEADER_SIZE = 8; // 4byte magic word, 4 byte version
     static final int MIN_COMPAT_JOURNAL_FORMAT_VERSION = V1;
-    static final int CURRENT_JOURNAL_FORMAT_VERSION = V6;
+    static final int CURRENT_JOURNAL_FORMAT_VERSION = V7;
 
     private final long preAllocSize;
     private final int journalAlignSize;
@@ -282,6 +284,14 @@ class JournalChannel implements Closeable {
         return bc;
     }
 
+    /**
+     * Write the buffered data to the file, and complete the writes queued by the file channel.
+     */
+    void flush() throws IOException {
+        bc.flush();
+        channel.completeWrites();
+    }
+
     void preAllocIfNeeded(long size) throws IOException {
         if (bc.position() + size > nextPrealloc) {
             nextPrealloc += preAllocSize;
@@ -0,0 +1,202 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_ADD_LATENCY_P99_USEC;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_ARRIVAL_RATE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_GROUP_WAIT_USEC;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SYNC_LATENCY_USEC;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+
+/**
+ * Tunes the group wait of a journal online, to keep the p99 add entry latency below a target.
+ *
+ * <p>Every control interval, the journal thread feeds the number of entries it dequeued and the moving average
+ * of the fsync latency. Waiting to group entries only pays off when more than one entry is expected to arrive
+ * during an fsync: in that case the wait suggested by the model is the fsync latency, otherwise it is 0. The
+ * model is then capped by the latency budget left by the p99 add entry latency observed during the interval,
+ * so that the wait shrinks as soon as the target is missed, and it never goes past the max group wait.
+ */
+class JournalGroupCommitController {
+
+    static final long CONTROL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // Below this number of samples in an interval, the observed p99 is not updated
+    private static final long MIN_LATENCY_SAMPLES = 20;
+
+    // Latencies are recorded in buckets of 4 sub-buckets per power of 2, which gives a precision of 25%
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long maxGroupWaitNanos;
+    private final long targetLatencyNanos;
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(BUCKETS);
+
+    // Only updated by the journal thread
+    private long intervalStartNanos;
+    private long intervalArrivals;
+
+    private volatile long groupWaitNanos;
+    private volatile long observedP99Nanos;
+    private volatile double arrivalRate;
+    private volatile long syncLatencyNanos;
+
+    JournalGroupCommitController(long maxGroupWaitNanos, long targetLatencyNanos, StatsLogger statsLogger) {
+        this.maxGroupWaitNanos = maxGroupWaitNanos;
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.groupWaitNanos = maxGroupWaitNanos;
+        this.intervalStartNanos = System.nanoTime();
+
+        statsLogger.registerGauge(JOURNAL_GROUP_WAIT_USEC, new LongGauge() {
+            @Override
+            public Long getSample() {
+                return TimeUnit.NANOSECONDS.toMicros(groupWaitNanos);
+            }
+        });
+        statsLogger.registerGauge(JOURNAL_ADD_LATENCY_P99_USEC, new LongGauge() {
+            @Override
+            public Long getSample() {
+                return TimeUnit.NANOSECONDS.toMicros(observedP99Nanos);
+            }
+        });
+        statsLogger.registerGauge(JOURNAL_SYNC_LATENCY_USEC, new LongGauge() {
+            @Override
+            public Long getSample() {
+                return TimeUnit.NANOSECONDS.toMicros(syncLatencyNanos);
+            }
+        });
+        statsLogger.registerGauge(JOURNAL_ARRIVAL_RATE, new LongGauge() {
+            @Override
+            public Long getSample() {
+                return (long) arrivalRate;
+            }
+        });
+    }
+
+    private abstract static class LongGauge implements Gauge<Long> {
+        @Override
+        public Long getDefaultValue() {
+            return 0L;
+        }
+    }
+
+    /**
+     * @return the time the journal should wait for more entries before flushing a group
+     */
+    long getGroupWaitNanos() {
+        return groupWaitNanos;
+    }
+
+    /**
+     * @return the p99 add entry latency observed during the last control interval with enough samples
+     */
+    long getObservedP99Nanos() {
+        return observedP99Nanos;
+    }
+
+    /**
+     * Record the latency of an add entry request, from its enqueue time to its acknowledgement.
+     */
+    void recordAddLatency(long latencyNanos) {
+        latencyBuckets.incrementAndGet(bucket(Math.max(latencyNanos, 0)));
+    }
+
+    /**
+     * Record entries dequeued by the journal thread, and update the group wait at the end of a control interval.
+     */
+    void onDequeue(int entries, long nowNanos, long currentSyncLatencyNanos) {
+        intervalArrivals += entries;
+        long elapsedNanos = nowNanos - intervalStartNanos;
+        if (elapsedNanos < CONTROL_INTERVAL_NANOS) {
+            return;
+        }
+
+        double rate = intervalArrivals * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        arrivalRate = arrivalRate == 0 ? rate : arrivalRate + (rate - arrivalRate) / 4;
+        syncLatencyNanos = currentSyncLatencyNanos;
+        long p99 = takeP99();
+        if (p99 >= 0) {
+            observedP99Nanos = p99;
+        }
+        intervalArrivals = 0;
+        intervalStartNanos = nowNanos;
+
+        long modelWaitNanos = arrivalRate * currentSyncLatencyNanos >= TimeUnit.SECONDS.toNanos(1)
+                ? currentSyncLatencyNanos : 0;
+        // The latency the current group wait can still be raised by without missing the target, which is
+        // negative if the target is already missed
+        long budgetNanos = groupWaitNanos + targetLatencyNanos - observedP99Nanos;
+        long targetWaitNanos = Math.max(0, Math.min(maxGroupWaitNanos, Math.min(modelWaitNanos, budgetNanos)));
+        // Move half way to the new wait, unless the target is missed
+        long lastWaitNanos = groupWaitNanos;
+        groupWaitNanos = targetWaitNanos < lastWaitNanos && budgetNanos < lastWaitNanos
+                ? targetWaitNanos : lastWaitNanos + (targetWaitNanos - lastWaitNanos) / 2;
+    }
+
+    /**
+     * @return the p99 of the latencies recorded since the last call, or -1 if there are not enough of them
+     */
+    private long takeP99() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = latencyBuckets.getAndSet(i, 0);
+            total += counts[i];
+        }
+        if (total < MIN_LATENCY_SAMPLES) {
+            return -1;
+        }
+
+        long rank = total - total / 100;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return bucketUpperBound(i);
+            }
+        }
+        return bucketUpperBound(BUCKETS - 1);
+    }
+
+    @VisibleForTesting
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    @VisibleForTesting
+    static long bucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long upperBound = ((long) (SUB_BUCKETS + bucket % SUB_BUCKETS + 1) << shift) - 1;
+        return upperBound < 0 ? Long.MAX_VALUE : upperBound;
+    }
+}
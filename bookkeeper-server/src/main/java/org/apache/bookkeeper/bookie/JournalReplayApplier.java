@@ -0,0 +1,191 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.bookkeeper.bookie.Journal.JournalScanner;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+
+/**
+ * Applies the records found by the journal replay to the ledger storage.
+ *
+ * <p>With apply threads, the journal files are still scanned sequentially, but each record is handed to a pool of
+ * threads partitioned by ledger id: the records of a ledger are applied in the journal order, while different
+ * ledgers are applied concurrently. The memory taken by the records waiting to be applied is bounded. Each journal
+ * is scanned by its own {@link Replay}, and {@link Replay#awaitApplied()} must be called before moving the
+ * lastLogMark of that journal past the scanned records.
+ *
+ * <p>Without apply threads, the records are applied by the thread scanning the journal.
+ */
+class JournalReplayApplier implements Closeable {
+
+    private final JournalScanner scanner;
+    private final OrderedExecutor applyExecutor;
+    private final MemoryLimitController memoryLimitController;
+    // Whether the scan reuses the buffer of the records, which must then be copied before being queued
+    private final boolean copyRecords;
+    private final LongAdder applyTimeNanos = new LongAdder();
+
+    private IOException applyFailure = null;
+
+    JournalReplayApplier(JournalScanner scanner, int applyThreads, long maxPendingBytes, boolean copyRecords) {
+        this.scanner = scanner;
+        if (applyThreads > 0) {
+            this.applyExecutor = OrderedExecutor.newBuilder().numThreads(applyThreads)
+                    .name("BookieJournalReplayApply").build();
+        } else {
+            this.applyExecutor = null;
+        }
+        this.memoryLimitController = new MemoryLimitController(maxPendingBytes);
+        this.copyRecords = copyRecords;
+    }
+
+    /**
+     * Create the scanner of the replay of one journal. Each replay has its own records waiting to be applied, so
+     * that the journals replayed in parallel do not wait for the records of each other.
+     *
+     * @return the scanner to pass to the scan of the journal files
+     */
+    Replay newReplay() {
+        return new Replay();
+    }
+
+    /**
+     * Scanner of the replay of one journal, which hands its records to the applier.
+     */
+    class Replay implements JournalScanner {
+
+        private long pendingRecords = 0;
+
+        @Override
+        public void process(int journalVersion, long offset, ByteBuffer entry) throws IOException {
+            if (applyExecutor == null) {
+                apply(journalVersion, offset, entry);
+                return;
+            }
+
+            checkApplyFailure();
+            long ledgerId = entry.getLong(entry.position());
+            ByteBuffer record = entry;
+            if (copyRecords) {
+                record = ByteBuffer.allocate(entry.remaining());
+                record.put(entry.duplicate());
+                record.flip();
+            }
+
+            int size = record.remaining();
+            try {
+                memoryLimitController.reserveMemory(size);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while replaying journal", e);
+            }
+            synchronized (this) {
+                pendingRecords++;
+            }
+
+            final ByteBuffer recordToApply = record;
+            applyExecutor.executeOrdered(ledgerId, () -> {
+                try {
+                    apply(journalVersion, offset, recordToApply);
+                } catch (IOException e) {
+                    onApplyFailure(e);
+                } catch (Throwable t) {
+                    onApplyFailure(new IOException("Failed to apply journal record", t));
+                } finally {
+                    memoryLimitController.releaseMemory(size);
+                    synchronized (this) {
+                        if (--pendingRecords == 0) {
+                            notifyAll();
+                        }
+                    }
+                }
+            });
+        }
+
+        /**
+         * Wait until all the records processed so far by this replay are applied. The records of the other
+         * replays are not waited for.
+         *
+         * @throws IOException if any of the records failed to be applied
+         */
+        void awaitApplied() throws IOException {
+            synchronized (this) {
+                try {
+                    while (pendingRecords > 0) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while replaying journal", e);
+                }
+            }
+            checkApplyFailure();
+        }
+    }
+
+    private void apply(int journalVersion, long offset, ByteBuffer entry) throws IOException {
+        long startTime = MathUtils.nowInNano();
+        try {
+            scanner.process(journalVersion, offset, entry);
+        } finally {
+            applyTimeNanos.add(MathUtils.elapsedNanos(startTime));
+        }
+    }
+
+    private synchronized void onApplyFailure(IOException e) {
+        if (applyFailure == null) {
+            applyFailure = e;
+        }
+    }
+
+    private synchronized void checkApplyFailure() throws IOException {
+        if (applyFailure != null) {
+            throw applyFailure;
+        }
+    }
+
+    /**
+     * @return whether the records are applied by the thread scanning the journal
+     */
+    boolean isApplyingInline() {
+        return applyExecutor == null;
+    }
+
+    /**
+     * @return the total time spent applying the records, across all the apply threads
+     */
+    long getApplyTimeNanos() {
+        return applyTimeNanos.sum();
+    }
+
+    @Override
+    public void close() {
+        if (applyExecutor != null) {
+            applyExecutor.shutdown();
+        }
+    }
+}
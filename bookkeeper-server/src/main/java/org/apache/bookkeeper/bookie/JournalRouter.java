@@ -0,0 +1,228 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chooses the journal in which the entries of a ledger are written.
+ *
+ * <p>By default, the journal is given by the ledger id. With load aware routing, a ledger is assigned to the
+ * journal with the lowest load, estimated from the number of entries not synced yet and from the fsync latency
+ * of the journal. The ledger then sticks to its journal until all its entries are covered by a completed
+ * checkpoint of that journal. This way:
+ * <ul>
+ * <li>after a restart, the records of a ledger that are replayed all come from a single journal, in the order in
+ * which they were written, even when the journals are replayed in parallel;
+ * <li>the master key of the ledger is in the ledger storage before the ledger moves to another journal, so it
+ * does not need to be written again in the new journal;
+ * <li>a force ledger request covers all the entries of the ledger.
+ * </ul>
+ * The other side is that a ledger only moves from a journal once per checkpoint at most. With journalSyncData
+ * disabled, entries are only covered by a checkpoint once a forced write of the journal includes them.
+ *
+ * <p>The assignments are kept in a map from the ledger id to the journal index and to the journal queue sequence
+ * after the last entry of the ledger. The sequence is read once the entry is in the journal queue: since the
+ * enqueue counter of the journal is incremented before each entry is added to the queue, it is then at least the
+ * position of the entry in the queue. The entries of ledgers that are fully checkpointed are removed from time to
+ * time.
+ *
+ * <p>An entry can also be prepared for a journal and enqueued later, along with other entries, out of the ledger
+ * handle lock. Until then, the ledger has a pending write and does not move from its journal.
+ *
+ * <p>Callers must not route entries of the same ledger concurrently, i.e. they must hold the ledger handle lock.
+ */
+class JournalRouter {
+    private static final Logger LOG = LoggerFactory.getLogger(JournalRouter.class);
+
+    static final int MAX_JOURNALS = 256;
+    private static final int JOURNAL_INDEX_BITS = 8;
+    private static final long JOURNAL_INDEX_MASK = MAX_JOURNALS - 1;
+    private static final int MIN_SWEEP_THRESHOLD = 4096;
+
+    private final List<Journal> journals;
+    private final boolean loadAware;
+
+    private final ConcurrentLongLongHashMap assignments;
+    // Number of entries of each ledger that are prepared for a journal but not enqueued yet
+    private final ConcurrentLongLongHashMap pendingWrites;
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private volatile long sweepThreshold = MIN_SWEEP_THRESHOLD;
+
+    JournalRouter(List<Journal> journals, boolean loadAwareRouting) {
+        this.journals = journals;
+        if (loadAwareRouting && journals.size() > MAX_JOURNALS) {
+            LOG.warn("Load aware journal routing is not supported with more than {} journals", MAX_JOURNALS);
+        }
+        for (int i = 0; i < journals.size(); i++) {
+            if (journals.get(i).getIndex() != i) {
+                throw new IllegalArgumentException("Journal at position " + i + " has index "
+                        + journals.get(i).getIndex());
+            }
+        }
+        this.loadAware = loadAwareRouting && journals.size() > 1 && journals.size() <= MAX_JOURNALS;
+        this.assignments = loadAware
+                ? ConcurrentLongLongHashMap.newBuilder()
+                    .expectedItems(MIN_SWEEP_THRESHOLD)
+                    .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                    .build()
+                : null;
+        this.pendingWrites = loadAware
+                ? ConcurrentLongLongHashMap.newBuilder()
+                    .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                    .build()
+                : null;
+    }
+
+    boolean isLoadAware() {
+        return loadAware;
+    }
+
+    /**
+     * Get the journal holding the entries of the ledger that are not checkpointed yet, if any.
+     */
+    Journal getJournal(long ledgerId) {
+        if (loadAware) {
+            long assignment = assignments.get(ledgerId);
+            if (assignment != -1) {
+                return journals.get(journalIndex(assignment));
+            }
+        }
+        return journals.get(MathUtils.signSafeMod(ledgerId, journals.size()));
+    }
+
+    /**
+     * Choose the journal in which to write the next entry of the ledger. The entry must then be recorded with
+     * {@link #recordWrite(long, Journal)}, once it is added to the journal queue, or with
+     * {@link #recordPendingWrite(long, Journal)} if it is enqueued later.
+     */
+    Journal selectJournal(long ledgerId) {
+        if (!loadAware) {
+            return journals.get(MathUtils.signSafeMod(ledgerId, journals.size()));
+        }
+
+        long assignment = assignments.get(ledgerId);
+        if (assignment != -1 && (pendingWrites.containsKey(ledgerId) || !isCheckpointed(assignment))) {
+            return journals.get(journalIndex(assignment));
+        }
+
+        // Start from the journal given by the ledger id, so that ties are spread across journals
+        int start = MathUtils.signSafeMod(ledgerId, journals.size());
+        Journal selected = null;
+        double lowestLoad = Double.MAX_VALUE;
+        for (int i = 0; i < journals.size(); i++) {
+            Journal journal = journals.get((start + i) % journals.size());
+            double load = load(journal);
+            if (load < lowestLoad) {
+                lowestLoad = load;
+                selected = journal;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Record that an entry of the ledger was added to the queue of the journal. It must be called after the entry
+     * is in the queue, so that the sequence read from the journal covers it.
+     */
+    void recordWrite(long ledgerId, Journal journal) {
+        if (!loadAware) {
+            return;
+        }
+        long newAssignment = (journal.getEnqueuedEntries() << JOURNAL_INDEX_BITS) | journal.getIndex();
+        // Keep the highest sequence: the pending writes are recorded out of the ledger handle lock
+        while (true) {
+            long assignment = assignments.get(ledgerId);
+            if (assignment == -1) {
+                if (assignments.putIfAbsent(ledgerId, newAssignment) == -1) {
+                    break;
+                }
+            } else if (journalIndex(assignment) == journal.getIndex() && assignment >= newAssignment) {
+                break;
+            } else if (assignments.compareAndSet(ledgerId, assignment, newAssignment)) {
+                break;
+            }
+        }
+
+        if (assignments.size() > sweepThreshold && sweeping.compareAndSet(false, true)) {
+            try {
+                assignments.removeIf((ledger, assignment) ->
+                        !pendingWrites.containsKey(ledger) && isCheckpointed(assignment));
+                sweepThreshold = Math.max(MIN_SWEEP_THRESHOLD, 2 * assignments.size());
+            } finally {
+                sweeping.set(false);
+            }
+        }
+    }
+
+    /**
+     * Record that an entry of the ledger is prepared for the journal, to be added to its queue later. The ledger
+     * does not move from the journal until the write is completed with
+     * {@link #completePendingWrite(long, Journal, boolean)}.
+     */
+    void recordPendingWrite(long ledgerId, Journal journal) {
+        if (!loadAware) {
+            return;
+        }
+        pendingWrites.addAndGet(ledgerId, 1);
+        long assignment = assignments.get(ledgerId);
+        if (assignment == -1 || journalIndex(assignment) != journal.getIndex()) {
+            // The ledger moves to the journal. The sequence is updated once the entry is enqueued.
+            assignments.put(ledgerId, (journal.getEnqueuedEntries() << JOURNAL_INDEX_BITS) | journal.getIndex());
+        }
+    }
+
+    /**
+     * Complete a write recorded with {@link #recordPendingWrite(long, Journal)}, once the entry is added to the
+     * queue of the journal, or once it is cancelled.
+     */
+    void completePendingWrite(long ledgerId, Journal journal, boolean enqueued) {
+        if (!loadAware) {
+            return;
+        }
+        if (enqueued) {
+            recordWrite(ledgerId, journal);
+        }
+        if (pendingWrites.addAndGet(ledgerId, -1) == 0) {
+            pendingWrites.remove(ledgerId, 0);
+        }
+    }
+
+    private boolean isCheckpointed(long assignment) {
+        Journal journal = journals.get(journalIndex(assignment));
+        return journal.getCheckpointedEntries() >= (assignment >>> JOURNAL_INDEX_BITS);
+    }
+
+    private static int journalIndex(long assignment) {
+        return (int) (assignment & JOURNAL_INDEX_MASK);
+    }
+
+    private static double load(Journal journal) {
+        long pendingEntries = journal.getEnqueuedEntries() - journal.getSyncedEntries();
+        return (pendingEntries + 1) * (double) (journal.getSyncLatencyNanos() + 1);
+    }
+}
@@ -24,6 +24,7 @@ package org.apache.bookkeeper.bookie;
 import com.google.common.util.concurrent.RateLimiter;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.FileRegion;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -144,6 +145,17 @@ public interface LedgerStorage {
      */
     ByteBuf getEntry(long ledgerId, long entryId) throws IOException, BookieException;
 
+    /**
+     * Get the region of the storage file holding an entry that is not cached in memory, so that it can be sent
+     * without copying it.
+     *
+     * @return the region of the entry, or null if the entry should be read with {@link #getEntry}
+     */
+    default FileRegion getEntryRegion(long ledgerId, long entryId, int minEntrySize)
+            throws IOException, BookieException {
+        return null;
+    }
+
     /**
      * Get last add confirmed.
      *
@@ -24,6 +24,9 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_ADD_ENTR
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_ADD_ENTRY_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_FORCE_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_GET_LIST_OF_ENTRIES_OF_LEDGER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_JOURNAL_REPLAY_APPLY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_JOURNAL_REPLAY_FLUSH;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_JOURNAL_REPLAY_SCAN;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_READ_ENTRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_READ_ENTRY_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_RECOVERY_ADD_ENTRY;
@@ -88,6 +91,22 @@ public class BookieStats {
     private final OpStatsLogger addBytesStats;
     @StatsDoc(name = BOOKIE_READ_ENTRY_BYTES, help = "bytes stats of ReadEntry on a bookie")
     private final OpStatsLogger readBytesStats;
+    // Startup Stats
+    @StatsDoc(
+        name = BOOKIE_JOURNAL_REPLAY_SCAN,
+        help = "time spent reading the journals on startup, across all the replay threads"
+    )
+    private final OpStatsLogger journalReplayScanStats;
+    @StatsDoc(
+        name = BOOKIE_JOURNAL_REPLAY_APPLY,
+        help = "time spent applying the replayed journal records to the ledger storage, across all the threads"
+    )
+    private final OpStatsLogger journalReplayApplyStats;
+    @StatsDoc(
+        name = BOOKIE_JOURNAL_REPLAY_FLUSH,
+        help = "time spent flushing the ledger storage after the journal replay"
+    )
+    private final OpStatsLogger journalReplayFlushStats;
     @StatsDoc(name = JOURNAL_DIRS, help = "number of configured journal directories")
     private final Gauge<Integer> journalDirsGauge;
     @StatsDoc(name = JOURNAL_QUEUE_MAX_SIZE, help = "maximum length of a journal queue")
@@ -104,6 +123,9 @@ public class BookieStats {
         getListOfEntriesOfLedgerStats = statsLogger.getOpStatsLogger(BOOKIE_GET_LIST_OF_ENTRIES_OF_LEDGER);
         addBytesStats = statsLogger.getOpStatsLogger(BOOKIE_ADD_ENTRY_BYTES);
         readBytesStats = statsLogger.getOpStatsLogger(BOOKIE_READ_ENTRY_BYTES);
+        journalReplayScanStats = statsLogger.getOpStatsLogger(BOOKIE_JOURNAL_REPLAY_SCAN);
+        journalReplayApplyStats = statsLogger.getOpStatsLogger(BOOKIE_JOURNAL_REPLAY_APPLY);
+        journalReplayFlushStats = statsLogger.getOpStatsLogger(BOOKIE_JOURNAL_REPLAY_FLUSH);
         journalDirsGauge = new Gauge<Integer>() {
             @Override
             public Integer getDefaultValue() {
@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.bookie.storage;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.FileRegion;
 import java.io.IOException;
 import java.util.Collection;
 import org.apache.bookkeeper.bookie.AbstractLogCompactor;
@@ -67,6 +68,36 @@ public interface EntryLogger extends AutoCloseable {
     ByteBuf readEntry(long ledgerId, long entryId, long entryLocation)
             throws IOException, NoEntryException;
 
+    /**
+     * Read a contiguous range of an entrylog with a single read operation.
+     * The range starts at the size header of the entry at ```entryLocation```, so the
+     * returned buffer contains a sequence of [size:int][entry] records, as they are laid
+     * out in the entrylog. The last record may be truncated if the range does not end on
+     * an entry boundary, and the range is shorter than requested if the end of the log
+     * is reached.
+     * @param entryLocation the location of the first entry of the range
+     * @param maxBytes the maximum number of bytes to read
+     * @return the raw content of the range (the caller must release it)
+     */
+    ByteBuf readEntriesRange(long entryLocation, int maxBytes)
+            throws IOException, NoEntryException;
+
+    /**
+     * Get the region of the entrylog file holding an entry, and verify that it matches the
+     * expected ledger and entry ID. The region can be sent to a socket without copying the
+     * entry in memory.
+     * @param ledgerId the ledgerID to match
+     * @param entryId the entryID to match
+     * @param entryLocation the location of the entry
+     * @param minEntrySize the minimum size of the entry to return a region for
+     * @return the region of the entry (the caller must release it), or null if the entry is
+     *         smaller than ```minEntrySize``` or cannot be read that way
+     */
+    default FileRegion readEntryRegion(long ledgerId, long entryId, long entryLocation, int minEntrySize)
+            throws IOException, NoEntryException {
+        return null;
+    }
+
     /**
      * Flush any outstanding writes to disk.
      */
@@ -0,0 +1,208 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
+import java.util.Arrays;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+
+/**
+ * Bounded off-heap cache of the aligned blocks read from the entry logs, shared by all the readers of a
+ * {@link DirectEntryLogger}.
+ *
+ * <p>Random reads of small entries only load the block that contains them, rather than a whole read buffer,
+ * and the entries next to them in the same block are then served from memory, whichever thread reads them.
+ *
+ * <p>The cache is split in sections, each one with its own lock, its own memory and its own CLOCK hand:
+ * a block is marked as referenced when it is read, and the hand gives a second chance to the referenced
+ * blocks before evicting the first block that was not read since the hand last went past it.
+ */
+class DirectBlockCache implements AutoCloseable {
+
+    private static final long EMPTY_KEY = -1L;
+    private static final long NOT_FOUND = -1L;
+    private static final int MAX_SECTION_SIZE = Integer.MAX_VALUE & ~(Buffer.ALIGNMENT - 1);
+
+    private final int blockSize;
+    private final Section[] sections;
+    private final ConcurrentLongLongHashMap index;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    private static class Section {
+        final ByteBuf memory;
+        final long[] keys;
+        final int[] lengths;
+        final boolean[] referenced;
+        int clockHand;
+
+        Section(ByteBufAllocator allocator, int slots, int blockSize) {
+            this.memory = allocator.directBuffer(slots * blockSize, slots * blockSize);
+            this.keys = new long[slots];
+            this.lengths = new int[slots];
+            this.referenced = new boolean[slots];
+            Arrays.fill(keys, EMPTY_KEY);
+        }
+    }
+
+    DirectBlockCache(ByteBufAllocator allocator, long maxSize, int blockSize, int concurrencyLevel,
+                     Counter hitCounter, Counter missCounter) {
+        checkArgument(blockSize >= Buffer.ALIGNMENT && Integer.bitCount(blockSize) == 1,
+                      "Block size must be a power of 2, not lower than %s: %s", Buffer.ALIGNMENT, blockSize);
+        long blocks = maxSize / blockSize;
+        checkArgument(blocks > 0, "Block cache size is lower than the block size: %s", maxSize);
+
+        int sectionsCount = (int) Math.min(blocks, Math.max(concurrencyLevel,
+                (blocks * blockSize + MAX_SECTION_SIZE - 1) / MAX_SECTION_SIZE));
+        int slotsPerSection = (int) (blocks / sectionsCount);
+
+        this.blockSize = blockSize;
+        this.sections = new Section[sectionsCount];
+        for (int i = 0; i < sectionsCount; i++) {
+            sections[i] = new Section(allocator, slotsPerSection, blockSize);
+        }
+        this.index = ConcurrentLongLongHashMap.newBuilder()
+                .expectedItems(sectionsCount * slotsPerSection)
+                .concurrencyLevel(sectionsCount)
+                .build();
+        this.hitCounter = hitCounter;
+        this.missCounter = missCounter;
+    }
+
+    int blockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Copy the bytes at the given offset of the log into the buffer, if they are in the cache.
+     *
+     * @return the number of bytes copied, which is lower than size if the read goes past the end of the block,
+     *         or -1 if the block is not in the cache
+     */
+    int read(int logId, long offset, ByteBuf buffer, int size) {
+        long blockStart = offset & ~(blockSize - 1);
+        long key = key(logId, blockStart);
+        int offsetInBlock = (int) (offset - blockStart);
+        Section section = section(key);
+        synchronized (section) {
+            long slot = index.get(key);
+            if (slot == NOT_FOUND || section.lengths[(int) slot] <= offsetInBlock) {
+                missCounter.inc();
+                return -1;
+            }
+
+            int bytesToRead = Math.min(size, section.lengths[(int) slot] - offsetInBlock);
+            buffer.writeBytes(section.memory, (int) slot * blockSize + offsetInBlock, bytesToRead);
+            section.referenced[(int) slot] = true;
+            hitCounter.inc();
+            return bytesToRead;
+        }
+    }
+
+    /**
+     * Add a block of the log to the cache, evicting a block that was not read recently if the section is full.
+     *
+     * @param block the native buffer that holds the block, from its beginning
+     * @param length the number of valid bytes in the block, which is lower than the block size at the end of a log
+     */
+    void put(int logId, long blockStart, Buffer block, int length) {
+        checkArgument(length > 0 && length <= blockSize, "Invalid block length: %s", length);
+        long key = key(logId, blockStart);
+        Section section = section(key);
+        synchronized (section) {
+            long slot = index.get(key);
+            if (slot == NOT_FOUND) {
+                slot = evict(section);
+                section.keys[(int) slot] = key;
+                index.put(key, slot);
+            }
+            section.memory.setBytes((int) slot * blockSize, block.buffer, 0, length);
+            section.lengths[(int) slot] = length;
+            section.referenced[(int) slot] = false;
+        }
+    }
+
+    /**
+     * Remove all the blocks of a log from the cache.
+     */
+    void invalidate(int logId) {
+        for (Section section : sections) {
+            synchronized (section) {
+                for (int slot = 0; slot < section.keys.length; slot++) {
+                    long key = section.keys[slot];
+                    if (key != EMPTY_KEY && (int) (key >>> 32) == logId) {
+                        index.remove(key);
+                        section.keys[slot] = EMPTY_KEY;
+                        section.lengths[slot] = 0;
+                        section.referenced[slot] = false;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of blocks in the cache
+     */
+    long count() {
+        return index.size();
+    }
+
+    @Override
+    public void close() {
+        for (Section section : sections) {
+            synchronized (section) {
+                ReferenceCountUtil.safeRelease(section.memory);
+            }
+        }
+    }
+
+    private int evict(Section section) {
+        while (true) {
+            int slot = section.clockHand;
+            section.clockHand = (slot + 1) % section.keys.length;
+            if (section.keys[slot] == EMPTY_KEY) {
+                return slot;
+            } else if (section.referenced[slot]) {
+                // Second chance
+                section.referenced[slot] = false;
+            } else {
+                index.remove(section.keys[slot]);
+                section.keys[slot] = EMPTY_KEY;
+                return slot;
+            }
+        }
+    }
+
+    private long key(int logId, long blockStart) {
+        return ((long) logId << 32) | (blockStart / blockSize);
+    }
+
+    private Section section(long key) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return sections[(int) ((h ^ (h >>> 32)) & Integer.MAX_VALUE) % sections.length];
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import org.apache.bookkeeper.bookie.BookieFileChannel;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+
+/**
+ * BookieFileChannel backed by a {@link DirectFileChannel}.
+ */
+class DirectBookieFileChannel implements BookieFileChannel {
+    private final File file;
+    private final NativeIO nativeIO;
+    private final int bufferSize;
+    private final boolean useIoUring;
+    private DirectFileChannel fileChannel;
+
+    DirectBookieFileChannel(File file, NativeIO nativeIO, int bufferSize, boolean useIoUring) {
+        this.file = file;
+        this.nativeIO = nativeIO;
+        this.bufferSize = bufferSize;
+        this.useIoUring = useIoUring;
+    }
+
+    @Override
+    public FileChannel getFileChannel() throws IOException {
+        synchronized (this) {
+            if (fileChannel == null) {
+                fileChannel = new DirectFileChannel(file.getPath(), nativeIO, bufferSize, useIoUring);
+            }
+            return fileChannel;
+        }
+    }
+
+    @Override
+    public boolean fileExists(File file) {
+        return file.exists();
+    }
+
+    @Override
+    public FileDescriptor getFD() throws IOException {
+        synchronized (this) {
+            if (fileChannel == null) {
+                throw new IOException("fileChannel is null, please initialize it by calling getFileChannel");
+            }
+            return fileChannel.getReadFile().getFD();
+        }
+    }
+
+    @Override
+    public void completeWrites() throws IOException {
+        DirectFileChannel fileChannel;
+        synchronized (this) {
+            fileChannel = this.fileChannel;
+        }
+        if (fileChannel != null) {
+            fileChannel.completeWrites();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (fileChannel != null) {
+                fileChannel.close();
+            }
+        }
+    }
+}
@@ -77,12 +77,15 @@ public class DirectEntryLogger implements EntryLogger {
     private final int maxSaneEntrySize;
     private final Set<Integer> unflushedLogs;
 
-    private WriterWithMetadata curWriter;
+    // Logs currently written, each one guarded by its lock. The entries of a ledger always go to the same log
+    private final WriterWithMetadata[] curWriters;
+    private final Object[] writerLocks;
 
     private List<Future<?>> pendingFlushes;
     private final NativeIO nativeIO;
     private final List<Cache<?, ?>> allCaches = new CopyOnWriteArrayList<>();
     private final ThreadLocal<Cache<Integer, LogReader>> caches;
+    private final DirectBlockCache blockCache;
 
     private static final int NUMBER_OF_WRITE_BUFFERS = 8;
 
@@ -101,6 +104,37 @@ public class DirectEntryLogger implements EntryLogger {
                              int maxFdCacheTimeSeconds,
                              Slogger slogParent,
                              StatsLogger stats) throws IOException {
+        this(ledgerDir, ids, nativeIO, allocator, writeExecutor, flushExecutor, maxFileSize, maxSaneEntrySize,
+             totalWriteBufferSize, totalReadBufferSize, readBufferSize, numReadThreads, maxFdCacheTimeSeconds,
+             1, 0, Buffer.ALIGNMENT, slogParent, stats);
+    }
+
+    /**
+     * Create an entry logger that writes several logs concurrently, with a block cache of the given size, shared
+     * by the readers of all the threads. A block cache size of 0 disables the block cache.
+     *
+     * <p>The entries of each ledger are always appended to the same one of the {@code numWriters} logs, so that
+     * threads adding the entries of different ledgers can write in parallel, ideally each one to its own log
+     * (see {@link #writerIndex(long, int)}).
+     */
+    public DirectEntryLogger(File ledgerDir,
+                             EntryLogIds ids,
+                             NativeIO nativeIO,
+                             ByteBufAllocator allocator,
+                             ExecutorService writeExecutor,
+                             ExecutorService flushExecutor,
+                             long maxFileSize,
+                             int maxSaneEntrySize,
+                             long totalWriteBufferSize,
+                             long totalReadBufferSize,
+                             int readBufferSize,
+                             int numReadThreads,
+                             int maxFdCacheTimeSeconds,
+                             int numWriters,
+                             long blockCacheSize,
+                             int blockCacheBlockSize,
+                             Slogger slogParent,
+                             StatsLogger stats) throws IOException {
         this.ledgerDir = ledgerDir;
         this.flushExecutor = flushExecutor;
         this.writeExecutor = writeExecutor;
@@ -118,8 +152,17 @@ public class DirectEntryLogger implements EntryLogger {
 
         this.allocator = allocator;
 
-        int singleWriteBufferSize = Buffer.nextAlignment((int) (totalWriteBufferSize / NUMBER_OF_WRITE_BUFFERS));
-        this.writeBuffers = new BufferPool(nativeIO, allocator, singleWriteBufferSize, NUMBER_OF_WRITE_BUFFERS);
+        checkArgument(numWriters > 0, "Number of writers must be positive: %s", numWriters);
+        this.curWriters = new WriterWithMetadata[numWriters];
+        this.writerLocks = new Object[numWriters];
+        for (int i = 0; i < numWriters; i++) {
+            writerLocks[i] = new Object();
+        }
+
+        // Each writer holds a buffer, and needs another one to be free to flush it
+        int numberOfWriteBuffers = Math.max(NUMBER_OF_WRITE_BUFFERS, 4 * numWriters);
+        int singleWriteBufferSize = Buffer.nextAlignment((int) (totalWriteBufferSize / numberOfWriteBuffers));
+        this.writeBuffers = new BufferPool(nativeIO, allocator, singleWriteBufferSize, numberOfWriteBuffers);
 
         // The total read buffer memory needs to get split across all the read threads, since the caches
         // are thread-specific and we want to ensure we don't pass the total memory limit.
@@ -142,6 +185,7 @@ public class DirectEntryLogger implements EntryLogger {
 
         this.slog
             .kv("maxFileSize", maxFileSize)
+            .kv("numWriters", numWriters)
             .kv("maxSaneEntrySize", maxSaneEntrySize)
             .kv("totalWriteBufferSize", totalWriteBufferSize)
             .kv("singleWriteBufferSize", singleWriteBufferSize)
@@ -150,8 +194,20 @@ public class DirectEntryLogger implements EntryLogger {
             .kv("perThreadBufferSize", perThreadBufferSize)
             .kv("maxCachedReadersPerThread", maxCachedReadersPerThread)
             .kv("maxCachedReaders", maxCachedReaders)
+            .kv("blockCacheSize", blockCacheSize)
+            .kv("blockCacheBlockSize", blockCacheBlockSize)
             .info(Events.ENTRYLOGGER_CREATED);
 
+        if (blockCacheSize > 0) {
+            checkArgument(blockCacheBlockSize <= this.readBufferSize,
+                          "Block cache block size (%s) must not be greater than the read buffer size (%s)",
+                          blockCacheBlockSize, this.readBufferSize);
+            this.blockCache = new DirectBlockCache(allocator, blockCacheSize, blockCacheBlockSize,
+                    numReadThreads, this.stats.getBlockCacheHitCounter(), this.stats.getBlockCacheMissCounter());
+        } else {
+            this.blockCache = null;
+        }
+
         this.caches = ThreadLocal.withInitial(() -> {
             RemovalListener<Integer, LogReader> rl = (notification) -> {
                 try {
@@ -178,11 +234,13 @@ public class DirectEntryLogger implements EntryLogger {
         long start = System.nanoTime();
 
         long offset;
-        synchronized (this) {
+        int writer = writerIndex(ledgerId, curWriters.length);
+        synchronized (writerLocks[writer]) {
+            WriterWithMetadata curWriter = curWriters[writer];
             if (curWriter != null
                 && curWriter.shouldRoll(buf, maxFileSize)) {
                 // roll the log. asynchronously flush and close current log
-                flushAndCloseCurrent();
+                flushAndCloseCurrent(writer);
                 curWriter = null;
             }
             if (curWriter == null) {
@@ -190,7 +248,8 @@ public class DirectEntryLogger implements EntryLogger {
                 curWriter = new WriterWithMetadata(newDirectWriter(newId),
                                                    new EntryLogMetadata(newId),
                                                    allocator);
-                slog.kv("newLogId", newId).info(Events.LOG_ROLL);
+                curWriters[writer] = curWriter;
+                slog.kv("newLogId", newId).kv("writer", writer).info(Events.LOG_ROLL);
             }
 
             offset = curWriter.addEntry(ledgerId, buf);
@@ -199,6 +258,14 @@ public class DirectEntryLogger implements EntryLogger {
         return offset;
     }
 
+    /**
+     * Get the index of the log that the entries of a ledger are appended to, among the given number of logs
+     * written concurrently.
+     */
+    public static int writerIndex(long ledgerId, int numWriters) {
+        return (int) Math.floorMod(ledgerId, (long) numWriters);
+    }
+
     @Override
     public ByteBuf readEntry(long entryLocation)
             throws IOException, NoEntryException {
@@ -211,6 +278,34 @@ public class DirectEntryLogger implements EntryLogger {
         return internalReadEntry(ledgerId, entryId, entryLocation, true);
     }
 
+    @Override
+    public ByteBuf readEntriesRange(long entryLocation, int maxBytes)
+            throws IOException, NoEntryException {
+        int logId = (int) (entryLocation >> 32);
+        int pos = (int) (entryLocation & 0xFFFFFFFFL) - Integer.BYTES; // include the size header
+
+        long start = System.nanoTime();
+        LogReader reader = getReader(logId);
+        int size = (int) Math.min(maxBytes, reader.maxOffset() - pos);
+        if (size <= 0) {
+            stats.getReadEntryStats().registerFailedEvent(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw new NoEntryException(
+                    exMsg("Entries range location doesn't exist").kv("location", entryLocation).toString(),
+                    -1L, -1L);
+        }
+
+        try {
+            ByteBuf buf = reader.readBufferAt(pos, size);
+            stats.getReadEntryStats().registerSuccessfulEvent(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return buf;
+        } catch (EOFException eof) {
+            stats.getReadEntryStats().registerFailedEvent(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw new NoEntryException(
+                    exMsg("Entries range location doesn't exist").kv("location", entryLocation).toString(),
+                    -1L, -1L);
+        }
+    }
+
     private LogReader getReader(int logId) throws IOException {
         Cache<Integer, LogReader> cache = caches.get();
         try {
@@ -227,6 +322,12 @@ public class DirectEntryLogger implements EntryLogger {
                 throw new IOException(exMsg("Cached reader already closed").kv("logId", logId).toString());
             }
 
+            // The blocks of the logs still being written would get stale in the block cache, so a reader
+            // created before its log was flushed only starts using the block cache afterwards
+            if (blockCache != null && reader instanceof DirectReader && !unflushedLogs.contains(logId)) {
+                ((DirectReader) reader).useBlockCache(blockCache);
+            }
+
             return reader;
         } catch (ExecutionException ee) {
             if (ee.getCause() instanceof IOException) {
@@ -273,14 +374,17 @@ public class DirectEntryLogger implements EntryLogger {
     @Override
     public void flush() throws IOException {
         long start = System.nanoTime();
-        Future<?> currentFuture = flushCurrent();
+        List<Future<?>> currentFutures = new ArrayList<>(curWriters.length);
+        for (int writer = 0; writer < curWriters.length; writer++) {
+            currentFutures.add(flushCurrent(writer));
+        }
 
         List<Future<?>> outstandingFlushes;
         synchronized (this) {
             outstandingFlushes = this.pendingFlushes;
             this.pendingFlushes = new ArrayList<>();
         }
-        outstandingFlushes.add(currentFuture);
+        outstandingFlushes.addAll(currentFutures);
 
         for (Future<?> f: outstandingFlushes) {
             try {
@@ -299,10 +403,10 @@ public class DirectEntryLogger implements EntryLogger {
         stats.getFlushStats().registerSuccessfulEvent(System.nanoTime() - start, TimeUnit.NANOSECONDS);
     }
 
-    private Future<?> flushCurrent() throws IOException {
+    private Future<?> flushCurrent(int writer) throws IOException {
         WriterWithMetadata flushWriter;
-        synchronized (this) {
-            flushWriter = this.curWriter;
+        synchronized (writerLocks[writer]) {
+            flushWriter = curWriters[writer];
         }
         if (flushWriter != null) {
             return flushExecutor.submit(() -> {
@@ -323,15 +427,17 @@ public class DirectEntryLogger implements EntryLogger {
         }
     }
 
-    private void flushAndCloseCurrent() throws IOException {
+    private void flushAndCloseCurrent(int writer) throws IOException {
         WriterWithMetadata flushWriter;
 
         CompletableFuture<Void> flushPromise = new CompletableFuture<>();
-        synchronized (this) {
-            flushWriter = this.curWriter;
-            this.curWriter = null;
+        synchronized (writerLocks[writer]) {
+            flushWriter = curWriters[writer];
+            curWriters[writer] = null;
 
-            pendingFlushes.add(flushPromise);
+            synchronized (this) {
+                pendingFlushes.add(flushPromise);
+            }
         }
         if (flushWriter != null) {
             flushExecutor.execute(() -> {
@@ -355,7 +461,9 @@ public class DirectEntryLogger implements EntryLogger {
 
     @Override
     public void close() throws IOException {
-        flushAndCloseCurrent(); // appends metadata to current log
+        for (int writer = 0; writer < curWriters.length; writer++) {
+            flushAndCloseCurrent(writer); // appends metadata to current logs
+        }
         flush(); // wait for all outstanding flushes
 
         for (Cache<?, ?> c : allCaches) {
@@ -363,6 +471,9 @@ public class DirectEntryLogger implements EntryLogger {
         }
 
         writeBuffers.close();
+        if (blockCache != null) {
+            blockCache.close();
+        }
     }
 
     @Override
@@ -378,6 +489,9 @@ public class DirectEntryLogger implements EntryLogger {
         checkArgument(entryLogId < Integer.MAX_VALUE, "Entry log id must be an int [%d]", entryLogId);
         File file = logFile(ledgerDir, (int) entryLogId);
         boolean result = file.delete();
+        if (blockCache != null) {
+            blockCache.invalidate((int) entryLogId);
+        }
         slog.kv("file", file).kv("logId", entryLogId).kv("result", result).info(Events.LOG_DELETED);
         return result;
     }
@@ -440,6 +554,11 @@ public class DirectEntryLogger implements EntryLogger {
         return meta;
     }
 
+    @VisibleForTesting
+    DirectBlockCache getBlockCache() {
+        return blockCache;
+    }
+
     @VisibleForTesting
     LogReader newDirectReader(int logId) throws IOException {
         return new DirectReader(logId, logFilename(ledgerDir, logId),
@@ -43,6 +43,8 @@ class DirectEntryLoggerStats {
     private static final String READER_OPEN = "entrylog-open-reader";
     private static final String READER_CLOSE = "entrylog-close-reader";
     private static final String CACHED_READER_SERVED_CLOSED = "entrylog-cached-reader-closed";
+    private static final String BLOCK_CACHE_HIT = "entrylog-block-cache-hit";
+    private static final String BLOCK_CACHE_MISS = "entrylog-block-cache-miss";
 
     @StatsDoc(
               name = ADD_ENTRY,
@@ -94,11 +96,25 @@ class DirectEntryLoggerStats {
     )
     private static ThreadLocal<Counter> cachedReadersServedClosed;
 
+    @StatsDoc(
+            name = BLOCK_CACHE_HIT,
+            help = "Number of reads served by the block cache"
+    )
+    private final Counter blockCacheHitCounter;
+
+    @StatsDoc(
+            name = BLOCK_CACHE_MISS,
+            help = "Number of reads that had to load a block from disk into the block cache"
+    )
+    private final Counter blockCacheMissCounter;
+
     DirectEntryLoggerStats(StatsLogger stats) {
         addEntryStats = stats.getOpStatsLogger(ADD_ENTRY);
 
         flushStats = stats.getOpStatsLogger(FLUSH);
         writerFlushStats = stats.getOpStatsLogger(WRITER_FLUSH);
+        blockCacheHitCounter = stats.getCounter(BLOCK_CACHE_HIT);
+        blockCacheMissCounter = stats.getCounter(BLOCK_CACHE_MISS);
         setStats(stats);
     }
 
@@ -174,4 +190,12 @@ class DirectEntryLoggerStats {
     Counter getCachedReadersServedClosedCounter() {
         return cachedReadersServedClosed.get();
     }
+
+    Counter getBlockCacheHitCounter() {
+        return blockCacheHitCounter;
+    }
+
+    Counter getBlockCacheMissCounter() {
+        return blockCacheMissCounter;
+    }
 }
@@ -0,0 +1,565 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.ByteBufAllocator;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * FileChannel that writes with O_DIRECT and O_DSYNC, so that the written data does not go through the page cache
+ * and is durable once the write returns.
+ *
+ * <p>Writes are copied into an aligned native buffer and written with pwrite of whole aligned blocks. When a write
+ * starts in the middle of a block, the beginning of the block is the data previously written there, which is kept
+ * from the last write or read back from the file. The end of the last block of a write is filled with zeros: this
+ * channel is meant for the journal, which only writes past the end of its data or into preallocated space.
+ *
+ * <p>With io_uring, the file is opened without O_DSYNC and the writes are only queued, each one from its own aligned
+ * buffer. They are submitted together with a single fdatasync, that starts once they are all done, and waited for
+ * with a single system call when {@link #completeWrites()} is called at the end of a journal flush, or when
+ * {@link #force(boolean)} is called. The queued writes never overlap: the last block of a write, when it is only
+ * partially filled, is held back until the next write continues it or until the writes are submitted. The writes
+ * are also submitted when the buffers are all used, before a write elsewhere than after the queued ones, and before
+ * the file is read or changed by other means.
+ *
+ * <p>Reads, and the transfers and read-only mappings, go through a regular file channel, since they only happen when
+ * replaying the journal. Truncation, writable mappings and locks use a second, writable, regular file channel: the
+ * changes made through it do not bypass the page cache, so once there are any {@link #force(boolean)} syncs that
+ * channel even for data only.
+ */
+class DirectFileChannel extends FileChannel {
+    private static final Logger log = LoggerFactory.getLogger(DirectFileChannel.class);
+
+    // Writes queued at most with io_uring, each one with its own buffer
+    static final int IO_URING_QUEUE_DEPTH = 8;
+    // The queued writes, the last block held back and the fdatasync
+    private static final int IO_URING_ENTRIES = IO_URING_QUEUE_DEPTH + 2;
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
+    private final String filename;
+    private final NativeIO nativeIO;
+    private final RandomAccessFile readFile;
+    private final FileChannel readChannel;
+    private final int bufferSize;
+    // A single buffer without io_uring, the others are allocated on demand
+    private final Buffer[] buffers;
+    private boolean useIoUring;
+
+    private int fd = -1;
+    private long ring = 0;
+    // With io_uring, the writes queued and not submitted yet, the bytes they write, and the file offset right
+    // after the last one
+    private int queuedWrites = 0;
+    private long queuedBytes = 0;
+    private long queuedEnd = -1;
+    // Whether the cached block is not written yet, and whether writes were submitted without a sync
+    private boolean pendingBlock = false;
+    private boolean unsyncedWrites = false;
+    // Writable channel, opened on demand for the operations that can't be done with O_DIRECT
+    private FileChannel bufferedChannel;
+    // Whether the file was changed through the page cache since the last force(), or mapped for writing
+    private boolean bufferedChanges = false;
+    private boolean writableMapping = false;
+    private long position = 0;
+    private long size;
+    // File offset of the last block of the last write, kept in a buffer, or -1 if there is none
+    private long cachedBlockOffset = -1;
+    private int cachedBlockBuffer = 0;
+    private int cachedBlockPosition = 0;
+
+    DirectFileChannel(String filename, NativeIO nativeIO, int bufferSize, boolean useIoUring) throws IOException {
+        this.filename = filename;
+        this.nativeIO = nativeIO;
+        this.useIoUring = useIoUring;
+        this.readFile = new RandomAccessFile(filename, "r");
+        this.readChannel = readFile.getChannel();
+        this.size = readChannel.size();
+        // Leave room for the beginning of the first block of a write
+        this.bufferSize = Buffer.nextAlignment(bufferSize) + Buffer.ALIGNMENT;
+        this.buffers = new Buffer[useIoUring ? IO_URING_QUEUE_DEPTH : 1];
+        this.buffers[0] = new Buffer(nativeIO, ByteBufAllocator.DEFAULT, this.bufferSize);
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src) throws IOException {
+        int written = write(src, position);
+        position += written;
+        return written;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src, long position) throws IOException {
+        ensureOpen();
+        openForWrite();
+        int written = 0;
+        while (src.hasRemaining()) {
+            long blockOffset = position & ~(Buffer.ALIGNMENT - 1L);
+            int head = (int) (position - blockOffset);
+            boolean readHead = head > 0 && (blockOffset != cachedBlockOffset || writableMapping);
+            if (useIoUring) {
+                boolean continues = pendingBlock ? blockOffset == cachedBlockOffset : blockOffset == queuedEnd;
+                // The block read back may be in a queued write
+                if (queuedWrites == buffers.length || readHead
+                        || (!continues && (queuedWrites > 0 || pendingBlock))) {
+                    submitQueuedWrites(false);
+                }
+            }
+            int index = useIoUring ? queuedWrites : 0;
+            Buffer buffer = buffer(index);
+            int length = Math.min(src.remaining(), buffer.size() - head);
+            if (readHead) {
+                readBlock(buffer, blockOffset);
+            } else if (head > 0 && (cachedBlockBuffer != index || cachedBlockPosition != 0)) {
+                buffer.buffer.setBytes(0, buffers[cachedBlockBuffer].buffer, cachedBlockPosition, Buffer.ALIGNMENT);
+            }
+
+            int end = head + length;
+            int alignedEnd = Buffer.nextAlignment(end);
+            ByteBuffer data = src.duplicate();
+            data.limit(data.position() + length);
+            buffer.buffer.setBytes(head, data);
+            buffer.buffer.setZero(end, alignedEnd - end);
+            src.position(src.position() + length);
+
+            // Keep the last block, since the next write is likely to continue it
+            int lastBlock = alignedEnd - Buffer.ALIGNMENT;
+            if (useIoUring) {
+                // A partially filled last block is held back, so that it is not written twice by queued writes
+                int toQueue = end < alignedEnd ? lastBlock : alignedEnd;
+                if (toQueue > 0) {
+                    queueWrite(buffer, 0, toQueue, blockOffset);
+                    queuedWrites++;
+                }
+                pendingBlock = end < alignedEnd;
+                queuedEnd = blockOffset + toQueue;
+            } else {
+                pwrite(buffer, alignedEnd, blockOffset);
+            }
+
+            if (end < alignedEnd) {
+                cachedBlockOffset = blockOffset + lastBlock;
+                cachedBlockBuffer = index;
+                cachedBlockPosition = lastBlock;
+            } else {
+                cachedBlockOffset = -1;
+            }
+
+            position += length;
+            written += length;
+            size = Math.max(size, position);
+        }
+        return written;
+    }
+
+    /**
+     * Submit the queued writes with a single fdatasync, and wait for them. Nothing is done without io_uring, since
+     * the writes are then synchronous.
+     */
+    synchronized void completeWrites() throws IOException {
+        if (useIoUring && (queuedWrites > 0 || pendingBlock || unsyncedWrites)) {
+            submitQueuedWrites(true);
+        }
+    }
+
+    private Buffer buffer(int index) throws IOException {
+        if (buffers[index] == null) {
+            buffers[index] = new Buffer(nativeIO, ByteBufAllocator.DEFAULT, bufferSize);
+        }
+        return buffers[index];
+    }
+
+    private void readBlock(Buffer buffer, long blockOffset) throws IOException {
+        buffer.buffer.setZero(0, Buffer.ALIGNMENT);
+        ByteBuffer block = buffer.buffer.nioBuffer(0, Buffer.ALIGNMENT);
+        while (block.hasRemaining()) {
+            if (readChannel.read(block, blockOffset + block.position()) < 0) {
+                break;
+            }
+        }
+    }
+
+    private void openForWrite() throws IOException {
+        if (fd >= 0) {
+            return;
+        }
+        try {
+            if (useIoUring) {
+                try {
+                    ring = nativeIO.io_uring_init(IO_URING_ENTRIES);
+                } catch (NativeIOException | LinkageError e) {
+                    log.warn("io_uring is not available for {} ({}), writing with pwrite and O_DSYNC",
+                            filename, e.getMessage());
+                    useIoUring = false;
+                }
+            }
+            fd = nativeIO.open(filename, NativeIO.O_CREAT | NativeIO.O_WRONLY | NativeIO.O_DIRECT
+                    | (useIoUring ? 0 : NativeIO.O_DSYNC), 00644);
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg("Open error")
+                .kv("filename", filename)
+                .kv("errno", ne.getErrno())
+                .toString(), ne);
+        }
+    }
+
+    private void queueWrite(Buffer buffer, int bufferOffset, int bytesToWrite, long offset) throws IOException {
+        try {
+            nativeIO.io_uring_queue_write(ring, fd, buffer.pointer() + bufferOffset, bytesToWrite, offset);
+            queuedBytes += bytesToWrite;
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg("Write error")
+                .kv("filename", filename)
+                .kv("offset", offset)
+                .kv("writeSize", bytesToWrite)
+                .kv("errno", ne.getErrno())
+                .toString(), ne);
+        }
+    }
+
+    /**
+     * Submit the queued writes, and the block held back, and wait for them. With sync, the file is also
+     * fdatasynced once they are done, in the same system call.
+     */
+    private void submitQueuedWrites(boolean sync) throws IOException {
+        if (!useIoUring) {
+            return;
+        }
+        if (pendingBlock) {
+            queueWrite(buffers[cachedBlockBuffer], cachedBlockPosition, Buffer.ALIGNMENT, cachedBlockOffset);
+            pendingBlock = false;
+        }
+        if (queuedBytes == 0 && !(sync && unsyncedWrites)) {
+            return;
+        }
+        long expected = queuedBytes;
+        queuedWrites = 0;
+        queuedBytes = 0;
+        queuedEnd = -1;
+        try {
+            long written = nativeIO.io_uring_submit(ring, fd, sync);
+            if (written != expected) {
+                throw new IOException(exMsg("Incomplete write")
+                    .kv("filename", filename)
+                    .kv("writeSize", expected)
+                    .kv("bytesWritten", written)
+                    .toString());
+            }
+            unsyncedWrites = !sync;
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg("Write error")
+                .kv("filename", filename)
+                .kv("writeSize", expected)
+                .kv("errno", ne.getErrno())
+                .toString(), ne);
+        }
+    }
+
+    private void pwrite(Buffer buffer, int bytesToWrite, long offset) throws IOException {
+        try {
+            int ret = nativeIO.pwrite(fd, buffer.pointer(), bytesToWrite, offset);
+            if (ret != bytesToWrite) {
+                throw new IOException(exMsg("Incomplete write")
+                    .kv("filename", filename)
+                    .kv("offset", offset)
+                    .kv("writeSize", bytesToWrite)
+                    .kv("bytesWritten", ret)
+                    .toString());
+            }
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg("Write error")
+                .kv("filename", filename)
+                .kv("offset", offset)
+                .kv("writeSize", bytesToWrite)
+                .kv("errno", ne.getErrno())
+                .toString(), ne);
+        }
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+        ensureOpen();
+        int fd;
+        FileChannel bufferedChannel;
+        synchronized (this) {
+            completeWrites();
+            fd = this.fd;
+            bufferedChannel = bufferedChanges || writableMapping ? this.bufferedChannel : null;
+            bufferedChanges = false;
+        }
+
+        if (bufferedChannel != null) {
+            // Some changes went through the page cache, sync them (and the metadata if needed) like a regular channel
+            try {
+                bufferedChannel.force(metaData);
+            } catch (IOException e) {
+                synchronized (this) {
+                    bufferedChanges = true;
+                }
+                throw e;
+            }
+        } else if (metaData && fd >= 0) {
+            // Data writes are already synchronous, or synced by completeWrites, only the file metadata may need a
+            // sync
+            try {
+                nativeIO.fsync(fd);
+            } catch (NativeIOException ne) {
+                throw new IOException(exMsg(ne.getMessage())
+                    .kv("file", filename)
+                    .kv("errno", ne.getErrno()).toString(), ne);
+            }
+        }
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        int read = read(dst, position);
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        ensureOpen();
+        submitBeforeRead();
+        return readChannel.read(dst, position);
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized FileChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        this.position = newPosition;
+        return this;
+    }
+
+    @Override
+    public synchronized long size() throws IOException {
+        ensureOpen();
+        // Including the blocks that are queued or held back
+        long queuedSize = pendingBlock ? cachedBlockOffset + Buffer.ALIGNMENT : queuedEnd;
+        return Math.max(Math.max(size, queuedSize), readChannel.size());
+    }
+
+    @Override
+    public synchronized long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        checkBounds(offset, length, dsts.length);
+        ensureOpen();
+        submitQueuedWrites(false);
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            ByteBuffer dst = dsts[i];
+            if (!dst.hasRemaining()) {
+                continue;
+            }
+            int read = readChannel.read(dst, position);
+            if (read < 0) {
+                return total > 0 ? total : -1;
+            }
+            position += read;
+            total += read;
+            if (dst.hasRemaining()) {
+                // Short read, the end of the file is reached
+                break;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        checkBounds(offset, length, srcs.length);
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            total += write(srcs[i]);
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized FileChannel truncate(long newSize) throws IOException {
+        if (newSize < 0) {
+            throw new IllegalArgumentException("Negative size");
+        }
+        ensureOpen();
+        submitQueuedWrites(false);
+        if (newSize < size()) {
+            bufferedChannel().truncate(newSize);
+            bufferedChanges = true;
+            size = newSize;
+            if (cachedBlockOffset + Buffer.ALIGNMENT > newSize) {
+                // The end of the cached block was cut off
+                cachedBlockOffset = -1;
+            }
+        }
+        if (position > newSize) {
+            position = newSize;
+        }
+        return this;
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        ensureOpen();
+        submitBeforeRead();
+        return readChannel.transferTo(position, count, target);
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException("Negative position or count");
+        }
+        ensureOpen();
+        if (position > size()) {
+            return 0;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min(count, TRANSFER_BUFFER_SIZE));
+        long transferred = 0;
+        while (transferred < count) {
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), count - transferred));
+            if (src.read(buf) <= 0) {
+                break;
+            }
+            buf.flip();
+            transferred += write(buf, position + transferred);
+        }
+        return transferred;
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+        ensureOpen();
+        submitBeforeRead();
+        if (mode == MapMode.READ_ONLY) {
+            return readChannel.map(mode, position, size);
+        }
+
+        synchronized (this) {
+            if (mode == MapMode.READ_WRITE) {
+                writableMapping = true;
+            }
+        }
+        return bufferedChannel().map(mode, position, size);
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+        ensureOpen();
+        return shared ? readChannel.lock(position, size, true) : bufferedChannel().lock(position, size, false);
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+        ensureOpen();
+        return shared ? readChannel.tryLock(position, size, true) : bufferedChannel().tryLock(position, size, false);
+    }
+
+    /**
+     * Submit the queued writes, so that the file can be read or changed by other means.
+     */
+    private synchronized void submitBeforeRead() throws IOException {
+        submitQueuedWrites(false);
+    }
+
+    private synchronized FileChannel bufferedChannel() throws IOException {
+        if (bufferedChannel == null) {
+            bufferedChannel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return bufferedChannel;
+    }
+
+    private static void checkBounds(int offset, int length, int arrayLength) {
+        if (offset < 0 || length < 0 || offset > arrayLength - length) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+    RandomAccessFile getReadFile() {
+        return readFile;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    @Override
+    protected synchronized void implCloseChannel() throws IOException {
+        try {
+            completeWrites();
+        } finally {
+            closeFiles();
+        }
+    }
+
+    private void closeFiles() throws IOException {
+        try {
+            readFile.close();
+            if (bufferedChannel != null) {
+                bufferedChannel.close();
+            }
+            if (ring != 0) {
+                nativeIO.io_uring_close(ring);
+                ring = 0;
+            }
+            if (fd >= 0) {
+                nativeIO.close(fd);
+                fd = -1;
+            }
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg(ne.getMessage())
+                .kv("file", filename)
+                .kv("errno", ne.getErrno()).toString(), ne);
+        } finally {
+            for (Buffer buffer : buffers) {
+                if (buffer != null) {
+                    buffer.free();
+                }
+            }
+        }
+    }
+}
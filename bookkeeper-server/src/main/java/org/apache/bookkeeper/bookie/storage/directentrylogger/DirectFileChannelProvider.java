@@ -0,0 +1,111 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.File;
+import java.io.IOException;
+import org.apache.bookkeeper.bookie.BookieFileChannel;
+import org.apache.bookkeeper.bookie.DefaultFileChannelProvider;
+import org.apache.bookkeeper.bookie.FileChannelProvider;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.commons.lang3.SystemUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * FileChannelProvider for the journal, writing the journal files with O_DIRECT and O_DSYNC.
+ *
+ * <p>The journal data is never read back while the bookie is running, so keeping it out of the page cache
+ * leaves the memory to the read path and avoids the latency spikes of the writeback of dirty pages.
+ * O_DIRECT is only supported on Linux; on other systems, the journal files are opened through the
+ * {@link DefaultFileChannelProvider}.
+ */
+public class DirectFileChannelProvider implements FileChannelProvider {
+    private static final Logger log = LoggerFactory.getLogger(DirectFileChannelProvider.class);
+
+    private final NativeIO nativeIO;
+    private final FileChannelProvider fallbackProvider;
+    private final boolean useIoUring;
+
+    public DirectFileChannelProvider() {
+        this(false);
+    }
+
+    DirectFileChannelProvider(boolean useIoUring) {
+        this(SystemUtils.IS_OS_LINUX ? new NativeIOImpl() : null, useIoUring);
+    }
+
+    DirectFileChannelProvider(NativeIO nativeIO, boolean useIoUring) {
+        if (nativeIO != null) {
+            this.nativeIO = nativeIO;
+            this.fallbackProvider = null;
+            this.useIoUring = useIoUring && isIoUringAvailable(nativeIO);
+        } else {
+            log.warn("O_DIRECT is not available on {}, journal files are written through the page cache",
+                    SystemUtils.OS_NAME);
+            this.nativeIO = null;
+            this.fallbackProvider = new DefaultFileChannelProvider();
+            this.useIoUring = false;
+        }
+    }
+
+    private static boolean isIoUringAvailable(NativeIO nativeIO) {
+        try {
+            nativeIO.io_uring_close(nativeIO.io_uring_init(2));
+            return true;
+        } catch (NativeIOException | LinkageError e) {
+            // Old kernels, seccomp filters and native libraries built without io_uring all end up here
+            log.warn("io_uring is not available ({}), journal files are written with pwrite and O_DSYNC",
+                    e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public BookieFileChannel open(File file, ServerConfiguration configuration) throws IOException {
+        if (fallbackProvider != null) {
+            return fallbackProvider.open(file, configuration);
+        }
+        return new DirectBookieFileChannel(file, nativeIO, configuration.getJournalWriteBufferSizeKB() * 1024,
+                useIoUring);
+    }
+
+    @VisibleForTesting
+    boolean isUsingIoUring() {
+        return useIoUring;
+    }
+
+    @Override
+    public void close(BookieFileChannel bookieFileChannel) throws IOException {
+        bookieFileChannel.close();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fallbackProvider != null) {
+            fallbackProvider.close();
+        }
+    }
+}
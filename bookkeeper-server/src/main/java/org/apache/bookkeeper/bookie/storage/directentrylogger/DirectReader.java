@@ -20,6 +20,7 @@
  */
 package org.apache.bookkeeper.bookie.storage.directentrylogger;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
 
@@ -42,6 +43,7 @@ class DirectReader implements LogReader {
     private final int fd;
     private final int maxSaneEntrySize;
     private final OpStatsLogger readBlockStats;
+    private volatile DirectBlockCache blockCache;
     private long currentBlock = -1;
     private long currentBlockEnd = -1;
     private long maxOffset;
@@ -77,6 +79,25 @@ class DirectReader implements LogReader {
         return logId;
     }
 
+    /**
+     * Read the blocks through the given block cache from now on. The cache must only be used once the log is
+     * not written anymore, since the cached blocks are never refreshed.
+     */
+    void useBlockCache(DirectBlockCache blockCache) {
+        if (this.blockCache != null) {
+            return;
+        }
+        checkArgument(blockCache.blockSize() <= nativeBuffer.size(),
+                      "Block cache size (%s) must not be greater than the buffer size (%s)",
+                      blockCache.blockSize(), nativeBuffer.size());
+        synchronized (nativeBuffer) {
+            // The current block may have been read while the log was still being written
+            currentBlock = -1;
+            currentBlockEnd = -1;
+            this.blockCache = blockCache;
+        }
+    }
+
     private void clearCache() {
         synchronized (nativeBuffer) {
             currentBlock = -1;
@@ -146,7 +167,20 @@ class DirectReader implements LogReader {
     private int readBytesIntoBuf(ByteBuf buf, long offset, int size) throws IOException, EOFException {
         synchronized (nativeBuffer) {
             if (offset < currentBlock || offset >= currentBlockEnd) {
-                readBlock(offset);
+                DirectBlockCache blockCache = this.blockCache;
+                if (blockCache == null) {
+                    readBlock(offset);
+                } else {
+                    int bytesRead = blockCache.read(logId, offset, buf, size);
+                    if (bytesRead > 0) {
+                        return bytesRead;
+                    }
+                    // Only load the cache block, rather than the whole buffer
+                    readBlock(offset, blockCache.blockSize());
+                    if (currentBlockEnd > currentBlock) {
+                        blockCache.put(logId, currentBlock, nativeBuffer, (int) (currentBlockEnd - currentBlock));
+                    }
+                }
             }
             int offsetInBuffer = offsetInBlock(offset);
             int sizeInBuffer = sizeInBlock(offset, size);
@@ -157,7 +191,7 @@ class DirectReader implements LogReader {
                                       .kv("offset", offset)
                                       .kv("size", size).toString());
             }
-            return nativeBuffer.readByteBuf(buf, offsetInBuffer, size);
+            return nativeBuffer.readByteBuf(buf, offsetInBuffer, sizeInBuffer);
         }
     }
 
@@ -192,7 +226,10 @@ class DirectReader implements LogReader {
     }
 
     void readBlock(long offset) throws IOException {
-        final int blockSize = nativeBuffer.size();
+        readBlock(offset, nativeBuffer.size());
+    }
+
+    private void readBlock(long offset, int blockSize) throws IOException {
         assertValidBlockSize(blockSize);
         final long blockStart = offset & ~(blockSize - 1);
 
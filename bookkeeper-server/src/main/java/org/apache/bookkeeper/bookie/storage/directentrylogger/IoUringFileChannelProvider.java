@@ -0,0 +1,37 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+/**
+ * FileChannelProvider for the journal, writing the journal files with O_DIRECT through io_uring.
+ *
+ * <p>The writes of a journal flush, one per filled journal write buffer, are queued and submitted together with a
+ * single fdatasync that starts once they are done, and all of them are completed with a single io_uring_enter call
+ * instead of one synchronous pwrite on a file opened with O_DSYNC per write. io_uring needs Linux 5.6 or later; when
+ * it is not available, for instance on older kernels or when it is blocked by a seccomp filter, this provider
+ * behaves like the {@link DirectFileChannelProvider}.
+ */
+public class IoUringFileChannelProvider extends DirectFileChannelProvider {
+
+    public IoUringFileChannelProvider() {
+        super(true);
+    }
+}
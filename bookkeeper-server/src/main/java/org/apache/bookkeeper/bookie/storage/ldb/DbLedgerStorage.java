@@ -29,6 +29,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.FileRegion;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import io.netty.util.internal.PlatformDependent;
 import java.io.File;
@@ -39,8 +40,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.PrimitiveIterator.OfLong;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.bookie.BookieException;
@@ -67,6 +71,7 @@ import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.slogger.slf4j.Slf4jSlogger;
 import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.annotations.StatsDoc;
 import org.apache.bookkeeper.util.DiskChecker;
@@ -91,9 +96,31 @@ public class DbLedgerStorage implements LedgerStorage {
         "dbStorage_directIOEntryLoggerReadBufferSizeMB";
     public static final String DIRECT_IO_ENTRYLOGGER_MAX_FD_CACHE_TIME_SECONDS =
         "dbStorage_directIOEntryLoggerMaxFdCacheTimeSeconds";
+    public static final String DIRECT_IO_ENTRYLOGGER_WRITERS =
+        "dbStorage_directIOEntryLoggerWriters";
+    public static final String DIRECT_IO_ENTRYLOGGER_BLOCK_CACHE_SIZE_MB =
+        "dbStorage_directIOEntryLoggerBlockCacheSizeMB";
+    public static final String DIRECT_IO_ENTRYLOGGER_BLOCK_CACHE_BLOCK_SIZE_KB =
+        "dbStorage_directIOEntryLoggerBlockCacheBlockSizeKB";
 
     static final String MAX_THROTTLE_TIME_MILLIS = "dbStorage_maxThrottleTimeMs";
 
+    static final String READ_AHEAD_ASYNC = "dbStorage_readAheadAsync";
+    static final String READ_AHEAD_ASYNC_MAX_PENDING_REQUESTS = "dbStorage_readAheadAsyncMaxPendingRequests";
+    static final String READ_AHEAD_ADAPTIVE = "dbStorage_readAheadAdaptive";
+    static final String READ_AHEAD_ADAPTIVE_MIN_BATCH_SIZE = "dbStorage_readAheadAdaptiveMinBatchSize";
+    static final String READ_AHEAD_ADAPTIVE_MAX_BATCH_SIZE = "dbStorage_readAheadAdaptiveMaxBatchSize";
+    static final String READ_CACHE_SCAN_RESISTANT = "dbStorage_readCacheScanResistant";
+    static final String READ_CACHE_PROTECTED_RATIO = "dbStorage_readCacheProtectedRatio";
+    static final String READ_CACHE_ADMISSION_THRESHOLD = "dbStorage_readCacheAdmissionThreshold";
+    static final String ENTRY_LOCATION_CACHE_MAX_SIZE_MB = "dbStorage_entryLocationCacheMaxSizeMb";
+    static final String ENTRY_LOCATION_INDEX_RANGE_ENCODING = "dbStorage_entryLocationIndexRangeEncoding";
+    static final String PARALLEL_CHECKPOINT = "dbStorage_parallelCheckpoint";
+    static final String PIPELINED_FLUSH = "dbStorage_pipelinedFlush";
+    static final String PIPELINED_FLUSH_BATCH_SIZE = "dbStorage_pipelinedFlushBatchSize";
+    static final String WRITE_CACHE_THREAD_ARENAS = "dbStorage_writeCacheThreadArenas";
+    static final String WRITE_CACHE_ARENA_CHUNK_SIZE = "dbStorage_writeCacheArenaChunkSize";
+
     private static final int MB = 1024 * 1024;
 
     private static final long DEFAULT_WRITE_CACHE_MAX_SIZE_MB =
@@ -116,6 +143,10 @@ public class DbLedgerStorage implements LedgerStorage {
     private static final long DEFAULT_DIRECT_IO_READBUFFER_SIZE_MB = 8;
 
     private static final int DEFAULT_DIRECT_IO_MAX_FD_CACHE_TIME_SECONDS = 300;
+    private static final int DEFAULT_DIRECT_IO_WRITERS = 1;
+    // the default value is 0. the block cache is disabled
+    private static final long DEFAULT_DIRECT_IO_BLOCK_CACHE_SIZE_MB = 0;
+    private static final int DEFAULT_DIRECT_IO_BLOCK_CACHE_BLOCK_SIZE_KB = 64;
 
     // use the storage assigned to ledger 0 for flags.
     // if the storage configuration changes, the flags may be lost
@@ -127,11 +158,16 @@ public class DbLedgerStorage implements LedgerStorage {
     private ExecutorService entryLoggerWriteExecutor = null;
     private ExecutorService entryLoggerFlushExecutor = null;
 
+    // Flushes all the directories concurrently on checkpoint, null if the directories are flushed sequentially
+    private ExecutorService checkpointExecutor = null;
+
     protected ByteBufAllocator allocator;
 
     // parent DbLedgerStorage stats (not per directory)
     private static final String MAX_READAHEAD_BATCH_SIZE = "readahead-max-batch-size";
     private static final String MAX_WRITE_CACHE_SIZE = "write-cache-max-size";
+    private static final String CHECKPOINT_DIRECTORY_FLUSH = "checkpoint-directory-flush";
+    private static final String CHECKPOINT_FLUSH_SKEW = "checkpoint-flush-skew";
 
     @StatsDoc(
             name = MAX_READAHEAD_BATCH_SIZE,
@@ -145,6 +181,18 @@ public class DbLedgerStorage implements LedgerStorage {
     )
     private Gauge<Long> writeCacheSizeGauge;
 
+    @StatsDoc(
+            name = CHECKPOINT_DIRECTORY_FLUSH,
+            help = "time taken by each ledger directory to flush on checkpoint"
+    )
+    private List<OpStatsLogger> directoryFlushStats;
+
+    @StatsDoc(
+            name = CHECKPOINT_FLUSH_SKEW,
+            help = "difference between the slowest and the fastest ledger directory flush on checkpoint"
+    )
+    private OpStatsLogger checkpointFlushSkewStats;
+
     @Override
     public void initialize(ServerConfiguration conf, LedgerManager ledgerManager, LedgerDirsManager ledgerDirsManager,
                            LedgerDirsManager indexDirsManager, StatsLogger statsLogger, ByteBufAllocator allocator)
@@ -178,9 +226,14 @@ public class DbLedgerStorage implements LedgerStorage {
                 DEFAULT_READ_AHEAD_CACHE_BATCH_BYTES_SIZE);
 
         ledgerStorageList = Lists.newArrayList();
+        directoryFlushStats = Lists.newArrayList();
         for (int i = 0; i < ledgerDirsManager.getAllLedgerDirs().size(); i++) {
             File ledgerDir = ledgerDirsManager.getAllLedgerDirs().get(i);
             File indexDir = indexDirsManager.getAllLedgerDirs().get(i);
+            directoryFlushStats.add(statsLogger
+                    .scopeLabel("ledgerDir", ledgerDir.getPath())
+                    .scopeLabel("indexDir", indexDir.getPath())
+                    .getOpStatsLogger(CHECKPOINT_DIRECTORY_FLUSH));
             // Create a ledger dirs manager for the single directory
             File[] lDirs = new File[1];
             // Remove the `/current` suffix which will be appended again by LedgersDirManager
@@ -196,6 +249,7 @@ public class DbLedgerStorage implements LedgerStorage {
                     NullStatsLogger.INSTANCE);
 
             EntryLogger entrylogger;
+            int entryLogWriters = 1;
             if (directIOEntryLogger) {
                 long perDirectoryTotalWriteBufferSize = MB * getLongVariableOrDefault(
                     conf,
@@ -213,8 +267,20 @@ public class DbLedgerStorage implements LedgerStorage {
                     conf,
                     DIRECT_IO_ENTRYLOGGER_MAX_FD_CACHE_TIME_SECONDS,
                     DEFAULT_DIRECT_IO_MAX_FD_CACHE_TIME_SECONDS);
+                entryLogWriters = (int) getLongVariableOrDefault(
+                    conf,
+                    DIRECT_IO_ENTRYLOGGER_WRITERS,
+                    DEFAULT_DIRECT_IO_WRITERS);
+                long perDirectoryBlockCacheSize = MB * getLongVariableOrDefault(
+                    conf,
+                    DIRECT_IO_ENTRYLOGGER_BLOCK_CACHE_SIZE_MB,
+                    DEFAULT_DIRECT_IO_BLOCK_CACHE_SIZE_MB) / numberOfDirs;
+                int blockCacheBlockSize = 1024 * (int) getLongVariableOrDefault(
+                    conf,
+                    DIRECT_IO_ENTRYLOGGER_BLOCK_CACHE_BLOCK_SIZE_KB,
+                    DEFAULT_DIRECT_IO_BLOCK_CACHE_BLOCK_SIZE_KB);
                 Slf4jSlogger slog = new Slf4jSlogger(DbLedgerStorage.class);
-                entryLoggerWriteExecutor = Executors.newSingleThreadExecutor(
+                entryLoggerWriteExecutor = Executors.newFixedThreadPool(entryLogWriters,
                     new DefaultThreadFactory("EntryLoggerWrite"));
                 entryLoggerFlushExecutor = Executors.newSingleThreadExecutor(
                     new DefaultThreadFactory("EntryLoggerFlush"));
@@ -234,6 +300,9 @@ public class DbLedgerStorage implements LedgerStorage {
                     readBufferSize,
                     numReadThreads,
                     maxFdCacheTimeSeconds,
+                    entryLogWriters,
+                    perDirectoryBlockCacheSize,
+                    blockCacheBlockSize,
                     slog, statsLogger);
             } else {
                 entrylogger = new DefaultEntryLogger(conf, ldm, null, statsLogger, allocator);
@@ -242,14 +311,21 @@ public class DbLedgerStorage implements LedgerStorage {
                 idm, entrylogger,
                 statsLogger, perDirectoryWriteCacheSize,
                 perDirectoryReadCacheSize,
-                readAheadCacheBatchSize, readAheadCacheBatchBytesSize));
+                readAheadCacheBatchSize, readAheadCacheBatchBytesSize, entryLogWriters));
             ldm.getListeners().forEach(ledgerDirsManager::addLedgerDirsListener);
             if (!lDirs[0].getPath().equals(iDirs[0].getPath())) {
                 idm.getListeners().forEach(indexDirsManager::addLedgerDirsListener);
             }
         }
 
+        if (numberOfDirs > 1 && getBooleanVariableOrDefault(conf, PARALLEL_CHECKPOINT, false)) {
+            checkpointExecutor = Executors.newFixedThreadPool(numberOfDirs,
+                    new DefaultThreadFactory("db-storage-checkpoint"));
+            log.info(" - Parallel checkpoint of {} directories", numberOfDirs);
+        }
+
         // parent DbLedgerStorage stats (not per directory)
+        checkpointFlushSkewStats = statsLogger.getOpStatsLogger(CHECKPOINT_FLUSH_SKEW);
         readaheadBatchSizeGauge = new Gauge<Integer>() {
             @Override
             public Integer getDefaultValue() {
@@ -281,11 +357,12 @@ public class DbLedgerStorage implements LedgerStorage {
     protected SingleDirectoryDbLedgerStorage newSingleDirectoryDbLedgerStorage(ServerConfiguration conf,
             LedgerManager ledgerManager, LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager,
             EntryLogger entryLogger, StatsLogger statsLogger, long writeCacheSize, long readCacheSize,
-            int readAheadCacheBatchSize, long readAheadCacheBatchBytesSize)
+            int readAheadCacheBatchSize, long readAheadCacheBatchBytesSize, int entryLogWriters)
             throws IOException {
         return new SingleDirectoryDbLedgerStorage(conf, ledgerManager, ledgerDirsManager, indexDirsManager, entryLogger,
                                                   statsLogger, allocator, writeCacheSize, readCacheSize,
-                                                  readAheadCacheBatchSize, readAheadCacheBatchBytesSize);
+                                                  readAheadCacheBatchSize, readAheadCacheBatchBytesSize,
+                                                  entryLogWriters);
     }
 
     @Override
@@ -318,6 +395,9 @@ public class DbLedgerStorage implements LedgerStorage {
         if (entryLoggerFlushExecutor != null) {
             entryLoggerFlushExecutor.shutdown();
         }
+        if (checkpointExecutor != null) {
+            checkpointExecutor.shutdown();
+        }
     }
 
     @Override
@@ -361,6 +441,12 @@ public class DbLedgerStorage implements LedgerStorage {
         return getLedgerStorage(ledgerId).getEntry(ledgerId, entryId);
     }
 
+    @Override
+    public FileRegion getEntryRegion(long ledgerId, long entryId, int minEntrySize)
+            throws IOException, BookieException {
+        return getLedgerStorage(ledgerId).getEntryRegion(ledgerId, entryId, minEntrySize);
+    }
+
     @Override
     public long getLastAddConfirmed(long ledgerId) throws IOException, BookieException {
         return getLedgerStorage(ledgerId).getLastAddConfirmed(ledgerId);
@@ -381,18 +467,95 @@ public class DbLedgerStorage implements LedgerStorage {
 
     @Override
     public void flush() throws IOException {
-        for (LedgerStorage ls : ledgerStorageList) {
-            ls.flush();
-        }
+        flushAllDirectories(LedgerStorage::flush);
     }
 
     @Override
     public void checkpoint(Checkpoint checkpoint) throws IOException {
-        for (LedgerStorage ls : ledgerStorageList) {
-            ls.checkpoint(checkpoint);
+        flushAllDirectories(ls -> ls.checkpoint(checkpoint));
+    }
+
+    private interface DirectoryFlushOp {
+        void flush(SingleDirectoryDbLedgerStorage ls) throws IOException;
+    }
+
+    /**
+     * Flush all the ledger directories, concurrently when the checkpoint executor is enabled, and wait for all of
+     * them to complete. In both cases, a failure in one directory does not prevent the flush of the other ones and
+     * the first failure is rethrown once all the directories are done.
+     */
+    private void flushAllDirectories(DirectoryFlushOp op) throws IOException {
+        int size = ledgerStorageList.size();
+        long[] flushTimes = new long[size];
+
+        if (checkpointExecutor == null) {
+            IOException exception = null;
+            for (int i = 0; i < size; i++) {
+                try {
+                    flushTimes[i] = flushDirectory(i, op);
+                } catch (IOException e) {
+                    if (exception == null) {
+                        exception = e;
+                    }
+                }
+            }
+
+            if (exception != null) {
+                throw exception;
+            }
+        } else {
+            List<Future<Long>> futures = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                final int dirIndex = i;
+                futures.add(checkpointExecutor.submit(() -> flushDirectory(dirIndex, op)));
+            }
+
+            IOException exception = null;
+            for (int i = 0; i < size; i++) {
+                try {
+                    flushTimes[i] = futures.get(i).get();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while flushing the ledger directories", ie);
+                } catch (ExecutionException ee) {
+                    if (exception == null) {
+                        exception = ee.getCause() instanceof IOException
+                                ? (IOException) ee.getCause() : new IOException(ee.getCause());
+                    }
+                }
+            }
+
+            if (exception != null) {
+                throw exception;
+            }
+        }
+
+        if (size > 1) {
+            long minFlushTime = Long.MAX_VALUE;
+            long maxFlushTime = 0;
+            for (long flushTime : flushTimes) {
+                minFlushTime = Math.min(minFlushTime, flushTime);
+                maxFlushTime = Math.max(maxFlushTime, flushTime);
+            }
+            checkpointFlushSkewStats.registerSuccessfulEvent(maxFlushTime - minFlushTime, TimeUnit.NANOSECONDS);
         }
     }
 
+    private long flushDirectory(int dirIndex, DirectoryFlushOp op) throws IOException {
+        long startTime = MathUtils.nowInNano();
+        try {
+            op.flush(ledgerStorageList.get(dirIndex));
+        } catch (IOException e) {
+            directoryFlushStats.get(dirIndex).registerFailedEvent(MathUtils.elapsedNanos(startTime),
+                    TimeUnit.NANOSECONDS);
+            throw e;
+        }
+
+        long flushTime = MathUtils.elapsedNanos(startTime);
+        directoryFlushStats.get(dirIndex).registerSuccessfulEvent(flushTime, TimeUnit.NANOSECONDS);
+        return flushTime;
+    }
+
     @Override
     public void deleteLedger(long ledgerId) throws IOException {
         getLedgerStorage(ledgerId).deleteLedger(ledgerId);
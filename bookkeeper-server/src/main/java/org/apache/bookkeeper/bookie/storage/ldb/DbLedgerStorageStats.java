@@ -55,6 +55,10 @@ class DbLedgerStorageStats {
     private static final String READAHEAD_BATCH_COUNT = "readahead-batch-count";
     private static final String READAHEAD_BATCH_SIZE = "readahead-batch-size";
     private static final String READAHEAD_TIME = "readahead-time";
+    private static final String READAHEAD_SKIPPED = "readahead-skipped";
+    private static final String READAHEAD_WINDOW_SIZE = "readahead-window-size";
+    private static final String READAHEAD_SEQUENTIAL = "readahead-sequential";
+    private static final String READAHEAD_RANDOM = "readahead-random";
     private static final String FLUSH = "flush";
     private static final String FLUSH_ENTRYLOG = "flush-entrylog";
     private static final String FLUSH_LOCATIONS_INDEX = "flush-locations-index";
@@ -134,6 +138,28 @@ class DbLedgerStorageStats {
             help = "Time spent on readahead operations"
     )
     private final Counter readAheadTime;
+    @StatsDoc(
+            name = READAHEAD_SKIPPED,
+            help = "number of async readahead requests skipped, because already pending for the ledger"
+                + " or because the readahead executor queue is full"
+    )
+    private final Counter readAheadSkippedCounter;
+    @StatsDoc(
+            name = READAHEAD_WINDOW_SIZE,
+            help = "the distribution of the per-ledger readahead window sizes, in number of entries,"
+                + " when adaptive readahead is enabled"
+    )
+    private final OpStatsLogger readAheadWindowSizeStats;
+    @StatsDoc(
+            name = READAHEAD_SEQUENTIAL,
+            help = "number of read cache misses detected as sequential reads, growing the readahead window"
+    )
+    private final Counter readAheadSequentialCounter;
+    @StatsDoc(
+            name = READAHEAD_RANDOM,
+            help = "number of read cache misses detected as random reads, collapsing the readahead window"
+    )
+    private final Counter readAheadRandomCounter;
     @StatsDoc(
         name = FLUSH,
         help = "operation stats of flushing write cache to entry log files"
@@ -212,6 +238,10 @@ class DbLedgerStorageStats {
         readAheadBatchCountStats = stats.getOpStatsLogger(READAHEAD_BATCH_COUNT);
         readAheadBatchSizeStats = stats.getOpStatsLogger(READAHEAD_BATCH_SIZE);
         readAheadTime = stats.getThreadScopedCounter(READAHEAD_TIME);
+        readAheadSkippedCounter = stats.getCounter(READAHEAD_SKIPPED);
+        readAheadWindowSizeStats = stats.getOpStatsLogger(READAHEAD_WINDOW_SIZE);
+        readAheadSequentialCounter = stats.getCounter(READAHEAD_SEQUENTIAL);
+        readAheadRandomCounter = stats.getCounter(READAHEAD_RANDOM);
         flushStats = stats.getOpStatsLogger(FLUSH);
         flushEntryLogStats = stats.getOpStatsLogger(FLUSH_ENTRYLOG);
         flushLocationIndexStats = stats.getOpStatsLogger(FLUSH_LOCATIONS_INDEX);
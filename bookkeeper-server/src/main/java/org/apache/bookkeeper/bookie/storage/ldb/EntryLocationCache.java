@@ -0,0 +1,215 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
+import java.io.Closeable;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
+
+/**
+ * Bounded off-heap cache of the entry locations, in front of the locations db.
+ *
+ * <p>The cache is an open addressing hash table stored in a direct buffer. Each (ledgerId, entryId) pair is
+ * hashed to a bucket of {@link #BUCKET_SLOTS} slots. When all the slots of a bucket are taken, a new location
+ * replaces one of them, so the memory used by the cache never grows past the configured size.
+ *
+ * <p>Buckets are grouped in sections, each one protected by its own lock, to allow concurrent access.
+ */
+class EntryLocationCache implements Closeable {
+
+    // Each slot holds: ledgerId, entryId, location
+    private static final int SLOT_SIZE = 3 * Long.BYTES;
+    private static final int BUCKET_SLOTS = 4;
+    private static final int BUCKET_SIZE = BUCKET_SLOTS * SLOT_SIZE;
+
+    // A location is never 0, since every entry log starts with a header
+    private static final long EMPTY_LOCATION = 0L;
+
+    private final ByteBuf table;
+    private final int bucketsCount;
+    private final StampedLock[] sectionLocks;
+    private final LongAdder count = new LongAdder();
+
+    EntryLocationCache(ByteBufAllocator allocator, long maxSize, int concurrencyLevel) {
+        checkArgument(maxSize >= BUCKET_SIZE, "Entry location cache size is too small: %s", maxSize);
+        this.bucketsCount = (int) (Math.min(maxSize, Integer.MAX_VALUE) / BUCKET_SIZE);
+        this.table = allocator.directBuffer(bucketsCount * BUCKET_SIZE, bucketsCount * BUCKET_SIZE);
+        this.table.setZero(0, table.capacity());
+
+        this.sectionLocks = new StampedLock[Math.max(1, Math.min(concurrencyLevel, bucketsCount))];
+        for (int i = 0; i < sectionLocks.length; i++) {
+            sectionLocks[i] = new StampedLock();
+        }
+    }
+
+    /**
+     * @return the location of the entry, or 0 if the entry is not in the cache
+     */
+    long get(long ledgerId, long entryId) {
+        long hash = hash(ledgerId, entryId);
+        int bucketOffset = bucketOffset(hash);
+        StampedLock lock = sectionLock(hash);
+
+        long stamp = lock.tryOptimisticRead();
+        long location = lookup(bucketOffset, ledgerId, entryId);
+        if (!lock.validate(stamp)) {
+            // Fallback to regular read lock approach
+            stamp = lock.readLock();
+            try {
+                location = lookup(bucketOffset, ledgerId, entryId);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return location;
+    }
+
+    private long lookup(int bucketOffset, long ledgerId, long entryId) {
+        for (int slot = 0; slot < BUCKET_SLOTS; slot++) {
+            int slotOffset = bucketOffset + slot * SLOT_SIZE;
+            if (table.getLong(slotOffset) == ledgerId && table.getLong(slotOffset + 8) == entryId) {
+                return table.getLong(slotOffset + 16);
+            }
+        }
+        return EMPTY_LOCATION;
+    }
+
+    void put(long ledgerId, long entryId, long location) {
+        put(ledgerId, entryId, location, true);
+    }
+
+    /**
+     * Add the location of the entry, unless the entry is already in the cache.
+     */
+    void putIfAbsent(long ledgerId, long entryId, long location) {
+        put(ledgerId, entryId, location, false);
+    }
+
+    private void put(long ledgerId, long entryId, long location, boolean replaceExisting) {
+        long hash = hash(ledgerId, entryId);
+        int bucketOffset = bucketOffset(hash);
+        StampedLock lock = sectionLock(hash);
+
+        long stamp = lock.writeLock();
+        try {
+            int targetOffset = -1;
+            for (int slot = 0; slot < BUCKET_SLOTS; slot++) {
+                int slotOffset = bucketOffset + slot * SLOT_SIZE;
+                long slotLocation = table.getLong(slotOffset + 16);
+                if (slotLocation != EMPTY_LOCATION
+                        && table.getLong(slotOffset) == ledgerId && table.getLong(slotOffset + 8) == entryId) {
+                    if (replaceExisting) {
+                        // Update the location of the entry
+                        table.setLong(slotOffset + 16, location);
+                    }
+                    return;
+                } else if (slotLocation == EMPTY_LOCATION && targetOffset < 0) {
+                    targetOffset = slotOffset;
+                }
+            }
+
+            if (targetOffset < 0) {
+                // The bucket is full, replace one of the slots
+                targetOffset = bucketOffset + ((int) ((hash >>> 32) ^ entryId) & (BUCKET_SLOTS - 1)) * SLOT_SIZE;
+            } else {
+                count.increment();
+            }
+
+            table.setLong(targetOffset, ledgerId);
+            table.setLong(targetOffset + 8, entryId);
+            table.setLong(targetOffset + 16, location);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove all the locations of the given ledgers.
+     *
+     * <p>This requires a scan of the whole cache, so it is meant to be done in background. Each section is
+     * locked once while its buckets are scanned.
+     */
+    void removeLedgers(ConcurrentLongHashSet ledgerIds) {
+        if (ledgerIds.isEmpty()) {
+            return;
+        }
+
+        for (int section = 0; section < sectionLocks.length; section++) {
+            StampedLock lock = sectionLocks[section];
+            long stamp = lock.writeLock();
+            try {
+                for (int bucket = section; bucket < bucketsCount; bucket += sectionLocks.length) {
+                    for (int slot = 0; slot < BUCKET_SLOTS; slot++) {
+                        int slotOffset = bucket * BUCKET_SIZE + slot * SLOT_SIZE;
+                        if (table.getLong(slotOffset + 16) != EMPTY_LOCATION
+                                && ledgerIds.contains(table.getLong(slotOffset))) {
+                            table.setZero(slotOffset, SLOT_SIZE);
+                            count.decrement();
+                        }
+                    }
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * @return the number of locations in the cache
+     */
+    long count() {
+        return count.sum();
+    }
+
+    /**
+     * @return the memory used by the cache, in bytes
+     */
+    long size() {
+        return table.capacity();
+    }
+
+    @Override
+    public void close() {
+        ReferenceCountUtil.safeRelease(table);
+    }
+
+    private int bucketOffset(long hash) {
+        return (int) ((hash & Long.MAX_VALUE) % bucketsCount) * BUCKET_SIZE;
+    }
+
+    private StampedLock sectionLock(long hash) {
+        return sectionLocks[(int) ((hash & Long.MAX_VALUE) % bucketsCount) % sectionLocks.length];
+    }
+
+    private static long hash(long ledgerId, long entryId) {
+        long h = ledgerId * 0x9e3779b97f4a7c15L + entryId;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
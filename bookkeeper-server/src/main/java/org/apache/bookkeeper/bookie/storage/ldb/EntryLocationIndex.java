@@ -20,12 +20,19 @@
  */
 package org.apache.bookkeeper.bookie.storage.ldb;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Iterables;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashSet;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.bookie.EntryLocation;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
@@ -34,6 +41,7 @@ import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,17 +50,60 @@ import org.slf4j.LoggerFactory;
  *
  * <p>For each ledger multiple entries are stored in the same "record", represented
  * by the {@link LedgerIndexPage} class.
+ *
+ * <p>When range encoding is enabled, the runs of consecutive entries written contiguously into the same entry log
+ * are stored as a single {@link EntryLocationRange} record, in a separate db. Single locations, including the
+ * ones updated by the compaction, are always stored in the locations db. An entry written again, e.g. on journal
+ * replay, can have both a single location and a range: since the entry log ids only grow, the greatest location is
+ * the most recently written one. The ranges are removed along with their ledger, or once all their entries were
+ * moved by the compaction.
  */
 public class EntryLocationIndex implements Closeable {
 
+    static final String LOCATIONS_DB = "locations";
+    static final String LOCATION_RANGES_DB = "location-ranges";
+
     private final KeyValueStorage locationsDb;
+    // Null if range encoding was never enabled on this index
+    private final KeyValueStorage locationRangesDb;
+    private final boolean rangeEncoding;
     private final ConcurrentLongHashSet deletedLedgers = ConcurrentLongHashSet.newBuilder().build();
     private final EntryLocationIndexStats stats;
     private boolean isCompacting;
 
+    // Optional cache of the entry locations, null when disabled
+    private final EntryLocationCache locationCache;
+
+    // Odd while locations are being updated or removed. Lookups only fill the location cache with locations read
+    // from the db when no update happened in the meantime, to never cache a stale location.
+    private final AtomicLong locationUpdatesSequence = new AtomicLong();
+
     public EntryLocationIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
             StatsLogger stats) throws IOException {
-        locationsDb = storageFactory.newKeyValueStorage(basePath, "locations", DbConfigType.EntryLocation, conf);
+        this(conf, storageFactory, basePath, stats, PooledByteBufAllocator.DEFAULT, 0);
+    }
+
+    public EntryLocationIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
+            StatsLogger stats, ByteBufAllocator allocator, long locationCacheMaxSize) throws IOException {
+        locationsDb = storageFactory.newKeyValueStorage(basePath, LOCATIONS_DB, DbConfigType.EntryLocation, conf);
+
+        rangeEncoding = conf.getBoolean(DbLedgerStorage.ENTRY_LOCATION_INDEX_RANGE_ENCODING, false);
+        if (rangeEncoding || Files.exists(Paths.get(basePath, LOCATION_RANGES_DB))) {
+            // Keep reading the existing ranges even after disabling range encoding
+            locationRangesDb = storageFactory.newKeyValueStorage(basePath, LOCATION_RANGES_DB,
+                    DbConfigType.EntryLocation, conf);
+        } else {
+            locationRangesDb = null;
+        }
+
+        if (locationCacheMaxSize > 0) {
+            locationCache = new EntryLocationCache(allocator, locationCacheMaxSize,
+                    Runtime.getRuntime().availableProcessors() * 2);
+            log.info("Entry location cache enabled in {} - size: {} MB", basePath,
+                    locationCache.size() / (1024 * 1024));
+        } else {
+            locationCache = null;
+        }
 
         this.stats = new EntryLocationIndexStats(
             stats,
@@ -62,29 +113,63 @@ public class EntryLocationIndex implements Closeable {
                 } catch (IOException e) {
                     return -1L;
                 }
-            });
+            },
+            () -> locationCache != null ? locationCache.size() : 0L,
+            () -> locationCache != null ? locationCache.count() : 0L);
     }
 
     @Override
     public void close() throws IOException {
         locationsDb.close();
+        if (locationRangesDb != null) {
+            locationRangesDb.close();
+        }
+        if (locationCache != null) {
+            locationCache.close();
+        }
     }
 
     public long getLocation(long ledgerId, long entryId) throws IOException {
+        if (locationCache == null) {
+            return getLocationFromDb(ledgerId, entryId);
+        }
+
+        long location = locationCache.get(ledgerId, entryId);
+        if (location != 0) {
+            stats.getLocationCacheHitCounter().inc();
+            return location;
+        }
+
+        stats.getLocationCacheMissCounter().inc();
+        long sequence = locationUpdatesSequence.get();
+        location = getLocationFromDb(ledgerId, entryId);
+        if (location != 0 && (sequence & 1) == 0 && locationUpdatesSequence.get() == sequence) {
+            locationCache.putIfAbsent(ledgerId, entryId, location);
+        }
+        return location;
+    }
+
+    private long getLocationFromDb(long ledgerId, long entryId) throws IOException {
         LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
         LongWrapper value = LongWrapper.get();
 
         long startTimeNanos = MathUtils.nowInNano();
         boolean operationSuccess = false;
         try {
-            if (locationsDb.get(key.array, value.array) < 0) {
+            long location = locationsDb.get(key.array, value.array) < 0 ? 0 : value.getValue();
+            if (locationRangesDb != null) {
+                // The entry may have been written again in a range after its single location, or the other way
+                // around: keep the most recent location
+                location = Math.max(location, getLocationFromRanges(ledgerId, entryId));
+            }
+            if (location == 0) {
                 if (log.isDebugEnabled()) {
                     log.debug("Entry not found {}@{} in db index", ledgerId, entryId);
                 }
                 return 0;
             }
             operationSuccess = true;
-            return value.getValue();
+            return location;
         } finally {
             key.recycle();
             value.recycle();
@@ -98,6 +183,29 @@ public class EntryLocationIndex implements Closeable {
         }
     }
 
+    private long getLocationFromRanges(long ledgerId, long entryId) throws IOException {
+        // Rewritten entries (e.g. on journal replay) can be stored in a range overlapping an older range: look for
+        // the latest range covering the entry, going back to the oldest range that could contain it
+        LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId + 1);
+        try {
+            while (true) {
+                Entry<byte[], byte[]> range = locationRangesDb.getFloor(key.array);
+                if (range == null || ArrayUtil.getLong(range.getKey(), 0) != ledgerId) {
+                    return 0;
+                }
+
+                long firstEntryId = ArrayUtil.getLong(range.getKey(), 8);
+                long location = EntryLocationRange.getLocation(range.getValue(), entryId - firstEntryId);
+                if (location != 0 || entryId - firstEntryId >= EntryLocationRange.MAX_ENTRIES) {
+                    return location;
+                }
+                key.set(ledgerId, firstEntryId);
+            }
+        } finally {
+            key.recycle();
+        }
+    }
+
     public long getLastEntryInLedger(long ledgerId) throws IOException {
         if (deletedLedgers.contains(ledgerId)) {
             // Ledger already deleted
@@ -119,30 +227,36 @@ public class EntryLocationIndex implements Closeable {
 
         long startTimeNanos = MathUtils.nowInNano();
         // Search the last entry in storage
-        Entry<byte[], byte[]> entry = locationsDb.getFloor(maxEntryId.array);
-        if (entry != null) {
+        long lastEntryId = -1;
+        try {
+            Entry<byte[], byte[]> entry = locationsDb.getFloor(maxEntryId.array);
+            if (entry != null && ArrayUtil.getLong(entry.getKey(), 0) == ledgerId) {
+                lastEntryId = ArrayUtil.getLong(entry.getKey(), 8);
+            }
+
+            if (locationRangesDb != null) {
+                Entry<byte[], byte[]> range = locationRangesDb.getFloor(maxEntryId.array);
+                if (range != null && ArrayUtil.getLong(range.getKey(), 0) == ledgerId) {
+                    long lastEntryIdInRange = ArrayUtil.getLong(range.getKey(), 8)
+                            + EntryLocationRange.count(range.getValue()) - 1;
+                    lastEntryId = Math.max(lastEntryId, lastEntryIdInRange);
+                }
+            }
+        } finally {
+            maxEntryId.recycle();
+        }
+
+        if (lastEntryId >= 0) {
             stats.getGetLastEntryInLedgerStats()
                     .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            if (log.isDebugEnabled()) {
+                log.debug("Found last page in storage db for ledger {} - last entry: {}", ledgerId, lastEntryId);
+            }
+            return lastEntryId;
         } else {
             stats.getGetLastEntryInLedgerStats()
                     .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
-        }
-        maxEntryId.recycle();
-
-        if (entry == null) {
             throw new Bookie.NoEntryException(ledgerId, -1);
-        } else {
-            long foundLedgerId = ArrayUtil.getLong(entry.getKey(), 0);
-            long lastEntryId = ArrayUtil.getLong(entry.getKey(), 8);
-
-            if (foundLedgerId == ledgerId) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Found last page in storage db for ledger {} - last entry: {}", ledgerId, lastEntryId);
-                }
-                return lastEntryId;
-            } else {
-                throw new Bookie.NoEntryException(ledgerId, -1);
-            }
         }
     }
 
@@ -157,6 +271,102 @@ public class EntryLocationIndex implements Closeable {
         return locationsDb.newBatch();
     }
 
+    /**
+     * Create a batch to add the locations of newly written entries, along with their sizes. When range encoding
+     * is enabled, the batch groups the consecutive entries written contiguously into the same entry log.
+     */
+    public LocationsBatch newLocationsBatch() {
+        return new LocationsBatch();
+    }
+
+    /**
+     * Batch of new entry locations.
+     *
+     * <p>The locations must be added in order of ledger and entry id, as done when flushing the write cache, to
+     * be grouped in ranges.
+     */
+    public class LocationsBatch implements Closeable {
+        private final Batch batch = locationsDb.newBatch();
+        private final Batch rangesBatch = rangeEncoding ? locationRangesDb.newBatch() : null;
+
+        // Current run of entries
+        private final int[] runEntrySizes = rangeEncoding ? new int[EntryLocationRange.MAX_ENTRIES] : null;
+        private int runCount = 0;
+        private long runLedgerId;
+        private long runFirstEntryId;
+        private long runFirstLocation;
+        private long runNextLocation;
+
+        public void add(long ledgerId, long entryId, long location, int entrySize) throws IOException {
+            if (!rangeEncoding) {
+                addLocation(batch, ledgerId, entryId, location);
+                return;
+            }
+
+            if (runCount > 0 && (ledgerId != runLedgerId || entryId != runFirstEntryId + runCount
+                    || location != runNextLocation || runCount == EntryLocationRange.MAX_ENTRIES)) {
+                closeRun();
+            }
+
+            if (runCount == 0) {
+                runLedgerId = ledgerId;
+                runFirstEntryId = entryId;
+                runFirstLocation = location;
+            }
+            runEntrySizes[runCount++] = entrySize;
+            runNextLocation = EntryLocationRange.nextLocation(location, entrySize);
+
+            if (locationCache != null) {
+                locationCache.put(ledgerId, entryId, location);
+            }
+        }
+
+        private void closeRun() throws IOException {
+            if (runCount == 1) {
+                // A single location takes less space in the locations db
+                addLocation(batch, runLedgerId, runFirstEntryId, runFirstLocation);
+            } else if (runCount > 1) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Add location range - ledger: {} -- entries: {}-{} -- location: {}", runLedgerId,
+                            runFirstEntryId, runFirstEntryId + runCount - 1, runFirstLocation);
+                }
+
+                LongPairWrapper key = LongPairWrapper.get(runLedgerId, runFirstEntryId);
+                try {
+                    rangesBatch.put(key.array,
+                            EntryLocationRange.encode(runFirstLocation, runEntrySizes, runCount));
+                } finally {
+                    key.recycle();
+                }
+            }
+            runCount = 0;
+        }
+
+        public void flush() throws IOException {
+            flush(true);
+        }
+
+        /**
+         * Write the locations in the index, without waiting for them to be durable if {@code sync} is false. They
+         * are then durable after the next {@link EntryLocationIndex#sync()}.
+         */
+        public void flush(boolean sync) throws IOException {
+            if (rangeEncoding) {
+                closeRun();
+                rangesBatch.flush(sync);
+            }
+            batch.flush(sync);
+        }
+
+        @Override
+        public void close() throws IOException {
+            batch.close();
+            if (rangesBatch != null) {
+                rangesBatch.close();
+            }
+        }
+    }
+
     public void addLocation(Batch batch, long ledgerId, long entryId, long location) throws IOException {
         LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
         LongWrapper value = LongWrapper.get(location);
@@ -171,6 +381,10 @@ public class EntryLocationIndex implements Closeable {
             key.recycle();
             value.recycle();
         }
+
+        if (locationCache != null) {
+            locationCache.put(ledgerId, entryId, location);
+        }
     }
 
     public void updateLocations(Iterable<EntryLocation> newLocations) throws IOException {
@@ -178,6 +392,7 @@ public class EntryLocationIndex implements Closeable {
             log.debug("Update locations -- {}", Iterables.size(newLocations));
         }
 
+        locationUpdatesSequence.incrementAndGet();
         try (Batch batch = newBatch()) {
             // Update all the ledger index pages with the new locations
             for (EntryLocation e : newLocations) {
@@ -188,6 +403,68 @@ public class EntryLocationIndex implements Closeable {
                 addLocation(batch, e.ledger, e.entry, e.location);
             }
             batch.flush();
+
+            if (locationRangesDb != null) {
+                removeMovedRanges(newLocations);
+            }
+        } finally {
+            locationUpdatesSequence.incrementAndGet();
+        }
+    }
+
+    /**
+     * Remove the ranges whose entries were all moved by the compaction. They point into entry logs that are going
+     * to be deleted, and are superseded by the new single locations.
+     */
+    private void removeMovedRanges(Iterable<EntryLocation> newLocations) throws IOException {
+        Set<LongPair> checkedRanges = new HashSet<>();
+        LongPairWrapper key = LongPairWrapper.get(-1, -1);
+        LongWrapper value = LongWrapper.get();
+        try (Batch rangesBatch = locationRangesDb.newBatch()) {
+            for (EntryLocation e : newLocations) {
+                key.set(e.ledger, e.entry);
+                Entry<byte[], byte[]> range = locationRangesDb.getFloor(key.array);
+                if (range == null || ArrayUtil.getLong(range.getKey(), 0) != e.ledger) {
+                    continue;
+                }
+
+                long firstEntryId = ArrayUtil.getLong(range.getKey(), 8);
+                int count = EntryLocationRange.count(range.getValue());
+                if (e.entry - firstEntryId >= count || !checkedRanges.add(new LongPair(e.ledger, firstEntryId))) {
+                    continue;
+                }
+
+                boolean moved = true;
+                for (int i = 0; i < count && moved; i++) {
+                    key.set(e.ledger, firstEntryId + i);
+                    moved = locationsDb.get(key.array, value.array) >= 0
+                            && value.getValue() > EntryLocationRange.getLocation(range.getValue(), i);
+                }
+                if (moved) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Remove moved location range - ledger: {} -- entries: {}-{}", e.ledger,
+                                firstEntryId, firstEntryId + count - 1);
+                    }
+                    rangesBatch.remove(range.getKey());
+                }
+            }
+            rangesBatch.flush();
+        } finally {
+            key.recycle();
+            value.recycle();
+        }
+    }
+
+    @VisibleForTesting
+    boolean hasLocationRange(long ledgerId, long firstEntryId) throws IOException {
+        if (locationRangesDb == null) {
+            return false;
+        }
+        LongPairWrapper key = LongPairWrapper.get(ledgerId, firstEntryId);
+        try {
+            return locationRangesDb.get(key.array) != null;
+        } finally {
+            key.recycle();
         }
     }
 
@@ -201,10 +478,20 @@ public class EntryLocationIndex implements Closeable {
         return locationsDb.getDBPath();
     }
 
+    void sync() throws IOException {
+        locationsDb.sync();
+        if (locationRangesDb != null) {
+            locationRangesDb.sync();
+        }
+    }
+
     public void compact() throws IOException {
         try {
             isCompacting = true;
             locationsDb.compact();
+            if (locationRangesDb != null) {
+                locationRangesDb.compact();
+            }
         } finally {
             isCompacting = false;
         }
@@ -227,7 +514,9 @@ public class EntryLocationIndex implements Closeable {
         log.info("Deleting indexes for ledgers: {}", ledgersToDelete);
         long startTime = System.nanoTime();
 
-        try (Batch batch = locationsDb.newBatch()) {
+        locationUpdatesSequence.incrementAndGet();
+        try (Batch batch = locationsDb.newBatch();
+             Batch rangesBatch = locationRangesDb != null ? locationRangesDb.newBatch() : null) {
             for (long ledgerId : ledgersToDelete) {
                 if (log.isDebugEnabled()) {
                     log.debug("Deleting indexes from ledger {}", ledgerId);
@@ -237,13 +526,28 @@ public class EntryLocationIndex implements Closeable {
                 lastKeyWrapper.set(ledgerId, Long.MAX_VALUE);
 
                 batch.deleteRange(firstKeyWrapper.array, lastKeyWrapper.array);
+                if (rangesBatch != null) {
+                    rangesBatch.deleteRange(firstKeyWrapper.array, lastKeyWrapper.array);
+                }
             }
 
+            if (rangesBatch != null) {
+                rangesBatch.flush();
+            }
             batch.flush();
+            if (locationCache != null) {
+                ConcurrentLongHashSet cachedLedgersToDelete = ConcurrentLongHashSet.newBuilder()
+                        .expectedItems(Math.max(ledgersToDelete.size(), 16))
+                        .concurrencyLevel(1)
+                        .build();
+                ledgersToDelete.forEach(cachedLedgersToDelete::add);
+                locationCache.removeLedgers(cachedLedgersToDelete);
+            }
             for (long ledgerId : ledgersToDelete) {
                 deletedLedgers.remove(ledgerId);
             }
         } finally {
+            locationUpdatesSequence.incrementAndGet();
             firstKeyWrapper.recycle();
             lastKeyWrapper.recycle();
         }
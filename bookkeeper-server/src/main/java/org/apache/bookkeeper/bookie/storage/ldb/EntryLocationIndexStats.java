@@ -24,6 +24,7 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER
 
 import java.util.function.Supplier;
 import lombok.Getter;
+import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -43,6 +44,10 @@ class EntryLocationIndexStats {
     private static final String ENTRIES_COUNT = "entries-count";
     private static final String LOOKUP_ENTRY_LOCATION = "lookup-entry-location";
     private static final String GET_LAST_ENTRY_IN_LEDGER = "get-last-entry-in-ledger";
+    private static final String LOCATION_CACHE_HITS = "entry-location-cache-hits";
+    private static final String LOCATION_CACHE_MISSES = "entry-location-cache-misses";
+    private static final String LOCATION_CACHE_SIZE = "entry-location-cache-size";
+    private static final String LOCATION_CACHE_COUNT = "entry-location-cache-count";
 
     @StatsDoc(
         name = ENTRIES_COUNT,
@@ -62,8 +67,34 @@ class EntryLocationIndexStats {
     )
     private final OpStatsLogger getLastEntryInLedgerStats;
 
+    @StatsDoc(
+            name = LOCATION_CACHE_HITS,
+            help = "number of entry location lookups served by the entry location cache"
+    )
+    private final Counter locationCacheHitCounter;
+
+    @StatsDoc(
+            name = LOCATION_CACHE_MISSES,
+            help = "number of entry location lookups that missed the entry location cache"
+    )
+    private final Counter locationCacheMissCounter;
+
+    @StatsDoc(
+        name = LOCATION_CACHE_SIZE,
+        help = "Memory used by the entry location cache, in bytes"
+    )
+    private final Gauge<Long> locationCacheSizeGauge;
+
+    @StatsDoc(
+        name = LOCATION_CACHE_COUNT,
+        help = "Current number of locations in the entry location cache"
+    )
+    private final Gauge<Long> locationCacheCountGauge;
+
     EntryLocationIndexStats(StatsLogger statsLogger,
-                            Supplier<Long> entriesCountSupplier) {
+                            Supplier<Long> entriesCountSupplier,
+                            Supplier<Long> locationCacheSizeSupplier,
+                            Supplier<Long> locationCacheCountSupplier) {
         entriesCountGauge = new Gauge<Long>() {
             @Override
             public Long getDefaultValue() {
@@ -78,6 +109,33 @@ class EntryLocationIndexStats {
         statsLogger.registerGauge(ENTRIES_COUNT, entriesCountGauge);
         lookupEntryLocationStats = statsLogger.getOpStatsLogger(LOOKUP_ENTRY_LOCATION);
         getLastEntryInLedgerStats = statsLogger.getOpStatsLogger(GET_LAST_ENTRY_IN_LEDGER);
+
+        locationCacheHitCounter = statsLogger.getCounter(LOCATION_CACHE_HITS);
+        locationCacheMissCounter = statsLogger.getCounter(LOCATION_CACHE_MISSES);
+        locationCacheSizeGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return locationCacheSizeSupplier.get();
+            }
+        };
+        statsLogger.registerGauge(LOCATION_CACHE_SIZE, locationCacheSizeGauge);
+        locationCacheCountGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return locationCacheCountSupplier.get();
+            }
+        };
+        statsLogger.registerGauge(LOCATION_CACHE_COUNT, locationCacheCountGauge);
     }
 
 }
@@ -0,0 +1,85 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+/**
+ * Encoding of a run of consecutive entries of a ledger, written contiguously into the same entry log, as a single
+ * record of the entry location index.
+ *
+ * <p>The record is keyed by (ledgerId, firstEntryId) and its value is composed of:
+ *
+ * <pre>
+ * location of the first entry : 8 bytes (log id and offset)
+ * number of entries           : 4 bytes
+ * size of each entry          : 4 bytes * number of entries
+ * </pre>
+ *
+ * <p>The entries are stored in the entry log as [size:int][entry], so the location of each entry of the run is
+ * derived from the location of the first entry and the size of the previous entries.
+ */
+class EntryLocationRange {
+
+    // Max number of entries in a single record, to bound both the record size and the number of older records to
+    // check when records overlap
+    static final int MAX_ENTRIES = 1024;
+
+    private static final int HEADER_SIZE = Long.BYTES + Integer.BYTES;
+    private static final int ENTRY_HEADER_SIZE = Integer.BYTES;
+
+    static byte[] encode(long firstLocation, int[] entrySizes, int count) {
+        byte[] value = new byte[HEADER_SIZE + count * Integer.BYTES];
+        ArrayUtil.setLong(value, 0, firstLocation);
+        ArrayUtil.setInt(value, 8, count);
+        for (int i = 0; i < count; i++) {
+            ArrayUtil.setInt(value, HEADER_SIZE + i * Integer.BYTES, entrySizes[i]);
+        }
+        return value;
+    }
+
+    static int count(byte[] value) {
+        return ArrayUtil.getInt(value, 8);
+    }
+
+    /**
+     * @param index position of the entry in the run, i.e. entryId - firstEntryId
+     * @return the location of the entry, or 0 if the entry is not part of the run
+     */
+    static long getLocation(byte[] value, long index) {
+        if (index < 0 || index >= count(value)) {
+            return 0;
+        }
+
+        long location = ArrayUtil.getLong(value, 0);
+        for (int i = 0; i < index; i++) {
+            location += ENTRY_HEADER_SIZE + ArrayUtil.getInt(value, HEADER_SIZE + i * Integer.BYTES);
+        }
+        return location;
+    }
+
+    /**
+     * @return the location of the entry following the given entry in the entry log, if written contiguously
+     */
+    static long nextLocation(long location, int entrySize) {
+        return location + ENTRY_HEADER_SIZE + entrySize;
+    }
+
+    private EntryLocationRange() {}
+}
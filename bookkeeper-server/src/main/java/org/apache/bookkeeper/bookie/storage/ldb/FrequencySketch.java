@@ -0,0 +1,137 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.util.internal.MathUtil;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate access frequency of (ledgerId, entryId) pairs, in the style of the TinyLFU sketch.
+ *
+ * <p>This is a count-min sketch with 4 rows of 4-bit counters. To keep the frequencies recent, all the counters
+ * are halved once the number of recorded accesses reaches 10 times the number of counters per row.
+ *
+ * <p>The sketch is updated on every read of the read cache, so it does not take any lock: the counters are
+ * updated with a compare-and-set of the word holding them, and the halving is done by the thread that records
+ * the access reaching the sample size.
+ */
+class FrequencySketch {
+
+    private static final int ROWS = 4;
+    private static final int MAX_FREQUENCY = 15;
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    // Each long packs 16 counters of 4 bits
+    private final AtomicLongArray table;
+    private final int counterMask;
+    private final int sampleSize;
+    private final AtomicInteger size = new AtomicInteger();
+
+    FrequencySketch(int expectedItems) {
+        int counters = MathUtil.findNextPositivePowerOfTwo(Math.max(expectedItems, 64));
+        this.table = new AtomicLongArray(counters * ROWS / 16);
+        this.counterMask = counters - 1;
+        this.sampleSize = 10 * counters;
+    }
+
+    /**
+     * Record an access to the entry.
+     *
+     * @return the estimated access frequency of the entry, including this access
+     */
+    int increment(long ledgerId, long entryId) {
+        long hash = hash(ledgerId, entryId);
+        int frequency = MAX_FREQUENCY;
+        for (int row = 0; row < ROWS; row++) {
+            frequency = Math.min(frequency, incrementCounter(counterIndex(hash, row)));
+        }
+
+        // Only one thread sees the size reaching the sample size, until the size is halved
+        if (size.incrementAndGet() == sampleSize) {
+            reset();
+        }
+        return frequency;
+    }
+
+    /**
+     * Get the estimated access frequency of the entry, without recording an access.
+     */
+    int frequency(long ledgerId, long entryId) {
+        long hash = hash(ledgerId, entryId);
+        int frequency = MAX_FREQUENCY;
+        for (int row = 0; row < ROWS; row++) {
+            int counter = counterIndex(hash, row);
+            frequency = Math.min(frequency, counterValue(table.get(counter >>> 4), counter));
+        }
+        return frequency;
+    }
+
+    private int incrementCounter(int counter) {
+        int index = counter >>> 4;
+        while (true) {
+            long word = table.get(index);
+            int value = counterValue(word, counter);
+            if (value == MAX_FREQUENCY) {
+                return value;
+            }
+            if (table.compareAndSet(index, word, word + (1L << counterShift(counter)))) {
+                return value + 1;
+            }
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length(); i++) {
+            long word;
+            do {
+                word = table.get(i);
+            } while (!table.compareAndSet(i, word, (word >>> 1) & RESET_MASK));
+        }
+        size.addAndGet(-sampleSize / 2);
+    }
+
+    private int counterIndex(long hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h ^= h >>> 32;
+        // Each row owns a separate range of counters
+        return row * (counterMask + 1) + ((int) h & counterMask);
+    }
+
+    private static int counterValue(long word, int counter) {
+        return (int) ((word >>> counterShift(counter)) & 0xF);
+    }
+
+    private static int counterShift(int counter) {
+        return (counter & 15) << 2;
+    }
+
+    private static long hash(long ledgerId, long entryId) {
+        long h = ledgerId * 0x9e3779b97f4a7c15L + entryId;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -179,6 +179,15 @@ public interface KeyValueStorage extends Closeable {
 
         void flush() throws IOException;
 
+        /**
+         * Write the batch in the storage, optionally without waiting for it to be durable.
+         *
+         * <p>A batch written without sync becomes durable with the next {@link KeyValueStorage#sync()}.
+         */
+        default void flush(boolean sync) throws IOException {
+            flush();
+        }
+
         default int batchCount() {
             return -1;
         }
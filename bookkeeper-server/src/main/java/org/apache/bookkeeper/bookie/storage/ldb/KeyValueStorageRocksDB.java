@@ -613,8 +613,13 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
 
         @Override
         public void flush() throws IOException {
+            flush(true);
+        }
+
+        @Override
+        public void flush(boolean sync) throws IOException {
             try {
-                db.write(optionSync, writeBatch);
+                db.write(sync ? optionSync : optionDontSync, writeBatch);
             } catch (RocksDBException e) {
                 throw new IOException("Failed to flush RocksDB batch", e);
             }
@@ -199,12 +199,16 @@ public class LedgersIndexRebuildOp {
     }
 
     private List<Journal> getJournals(ServerConfiguration conf) throws IOException {
-        List<Journal> journals = Lists.newArrayListWithCapacity(conf.getJournalDirs().length);
-        int idx = 0;
-        for (File journalDir : conf.getJournalDirs()) {
-            journals.add(new Journal(idx++, new File(journalDir, BookKeeperConstants.CURRENT_DIR), conf,
-                    new LedgerDirsManager(conf, conf.getLedgerDirs(),
-                            new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()))));
+        File[] journalDirs = conf.getJournalDirs();
+        List<Journal> journals = Lists.newArrayListWithCapacity(journalDirs.length);
+        for (int stripe = 0; stripe < conf.getJournalWriterStripes(); stripe++) {
+            for (int i = 0; i < journalDirs.length; i++) {
+                File journalDir = Journal.getStripeDirectory(
+                        new File(journalDirs[i], BookKeeperConstants.CURRENT_DIR), stripe);
+                journals.add(new Journal(Journal.getJournalIndex(i, stripe, journalDirs.length), journalDir, conf,
+                        new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()))));
+            }
         }
 
         return journals;
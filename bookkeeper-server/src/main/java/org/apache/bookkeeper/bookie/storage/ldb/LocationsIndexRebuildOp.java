@@ -37,7 +37,6 @@ import org.apache.bookkeeper.bookie.BookieImpl;
 import org.apache.bookkeeper.bookie.DefaultEntryLogger;
 import org.apache.bookkeeper.bookie.LedgerDirsManager;
 import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
-import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.util.DiskChecker;
@@ -47,6 +46,9 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Scan all entries in the entry log and rebuild the locations index.
+ *
+ * <p>The index is rebuilt in the format given by the configuration, so this is also the way to migrate an existing
+ * index to (or from) the range encoded format.
  */
 public class LocationsIndexRebuildOp {
     private final ServerConfiguration conf;
@@ -72,12 +74,18 @@ public class LocationsIndexRebuildOp {
             File ledgerDir = conf.getLedgerDirs()[i];
             File indexDir = indexDirs[i];
             String iBasePath = BookieImpl.getCurrentDirectory(indexDir).toString();
-            Path indexCurrentPath = FileSystems.getDefault().getPath(iBasePath, "locations");
             String timestamp = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(new Date());
-            Path backupPath = FileSystems.getDefault().getPath(iBasePath, "locations.BACKUP-" + timestamp);
-            Files.move(indexCurrentPath, backupPath);
-
-            LOG.info("Created locations index backup at {}", backupPath);
+            for (String dbName : new String[] { EntryLocationIndex.LOCATIONS_DB,
+                    EntryLocationIndex.LOCATION_RANGES_DB }) {
+                Path indexCurrentPath = FileSystems.getDefault().getPath(iBasePath, dbName);
+                if (!Files.exists(indexCurrentPath)) {
+                    continue;
+                }
+                Path backupPath = FileSystems.getDefault().getPath(iBasePath, dbName + ".BACKUP-" + timestamp);
+                Files.move(indexCurrentPath, backupPath);
+
+                LOG.info("Created locations index backup at {}", backupPath);
+            }
 
             File[] lDirs = new File[1];
             lDirs[0] = ledgerDir;
@@ -88,13 +96,14 @@ public class LocationsIndexRebuildOp {
             Set<Long> activeLedgers = getActiveLedgers(conf, KeyValueStorageRocksDB.factory, iBasePath);
             LOG.info("Found {} active ledgers in ledger manager", activeLedgers.size());
 
-            KeyValueStorage newIndex = KeyValueStorageRocksDB.factory.newKeyValueStorage(iBasePath, "locations",
-                    DbConfigType.Default, conf);
+            EntryLocationIndex newIndex = new EntryLocationIndex(conf, KeyValueStorageRocksDB.factory, iBasePath,
+                    NullStatsLogger.INSTANCE);
 
             int totalEntryLogs = entryLogs.size();
             int completedEntryLogs = 0;
             LOG.info("Scanning {} entry logs", totalEntryLogs);
-            AtomicReference<KeyValueStorage.Batch> batch = new AtomicReference<>(newIndex.newBatch());
+            AtomicReference<EntryLocationIndex.LocationsBatch> batch =
+                    new AtomicReference<>(newIndex.newLocationsBatch());
             AtomicInteger count = new AtomicInteger();
 
             for (long entryLogId : entryLogs) {
@@ -112,21 +121,13 @@ public class LocationsIndexRebuildOp {
                         }
 
                         // Update the ledger index page
-                        LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
-                        LongWrapper value = LongWrapper.get(location);
-
-                        try {
-                            batch.get().put(key.array, value.array);
-                        } finally {
-                            key.recycle();
-                            value.recycle();
-                        }
+                        batch.get().add(ledgerId, entryId, location, entry.readableBytes());
 
                         if (count.incrementAndGet() > BATCH_COMMIT_SIZE) {
                             batch.get().flush();
                             batch.get().close();
 
-                            batch.set(newIndex.newBatch());
+                            batch.set(newIndex.newLocationsBatch());
                             count.set(0);
                         }
                     }
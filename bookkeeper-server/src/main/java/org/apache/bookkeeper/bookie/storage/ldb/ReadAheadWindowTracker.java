@@ -0,0 +1,151 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * Tracks the access pattern of each ledger on read cache misses, to size the read-ahead of the ledger,
+ * similarly to the readahead window that Linux keeps for each file.
+ *
+ * <p>The window of a ledger starts at the configured read-ahead batch size. A miss on an entry right after
+ * the last read-ahead window means the ledger is read sequentially: the window doubles, up to the max
+ * window size. Any other miss is a random access and collapses the window to the min window size.
+ */
+class ReadAheadWindowTracker {
+
+    static final long WINDOW_CACHING_TIME_MINUTES = TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES;
+
+    private final int initialWindowSize;
+    private final int minWindowSize;
+    private final int maxWindowSize;
+
+    private final ConcurrentLongHashMap<Window> windows;
+
+    private final DbLedgerStorageStats stats;
+
+    private static class Window {
+        // Size, in number of entries, of the next read-ahead
+        int size;
+        // Entry that missed the read cache last time
+        long lastMissEntryId;
+        // First entry after the last read-ahead window
+        long nextEntryId;
+        long lastAccessed;
+    }
+
+    ReadAheadWindowTracker(int initialWindowSize, int minWindowSize, int maxWindowSize,
+                           DbLedgerStorageStats stats) {
+        checkArgument(0 < minWindowSize && minWindowSize <= initialWindowSize && initialWindowSize <= maxWindowSize,
+                "Read-ahead window sizes must satisfy 0 < min <= initial <= max");
+        this.initialWindowSize = initialWindowSize;
+        this.minWindowSize = minWindowSize;
+        this.maxWindowSize = maxWindowSize;
+        this.stats = stats;
+        this.windows = ConcurrentLongHashMap.<Window>newBuilder()
+                .expectedItems(16 * 1024)
+                .concurrencyLevel(Runtime.getRuntime().availableProcessors() * 2)
+                .build();
+    }
+
+    /**
+     * Record a read cache miss and compute the read-ahead window to use after it.
+     *
+     * @return the number of entries to read ahead after the missing entry
+     */
+    int onReadCacheMiss(long ledgerId, long entryId) {
+        Window window = windows.computeIfAbsent(ledgerId, l -> {
+            Window w = new Window();
+            w.size = initialWindowSize;
+            w.lastMissEntryId = -1;
+            w.nextEntryId = -1;
+            return w;
+        });
+
+        int windowSize;
+        synchronized (window) {
+            if (window.nextEntryId < 0) {
+                // First miss on this ledger, use the initial window
+            } else if (entryId > window.lastMissEntryId && entryId <= window.nextEntryId) {
+                // The reader went through the previous window, or is catching up with it
+                window.size = Math.min(window.size * 2, maxWindowSize);
+                stats.getReadAheadSequentialCounter().inc();
+            } else {
+                window.size = minWindowSize;
+                stats.getReadAheadRandomCounter().inc();
+            }
+
+            window.lastMissEntryId = entryId;
+            window.nextEntryId = entryId + 1 + window.size;
+            window.lastAccessed = System.currentTimeMillis();
+            windowSize = window.size;
+        }
+
+        stats.getReadAheadWindowSizeStats().registerSuccessfulValue(windowSize);
+        return windowSize;
+    }
+
+    /**
+     * Record the last entry actually read ahead after a miss, which may be before the end of the window if the
+     * read-ahead was stopped early (e.g. the next entry in the entry log belongs to another ledger).
+     */
+    void onReadAheadDone(long ledgerId, long lastMissEntryId, long lastReadAheadEntryId) {
+        Window window = windows.get(ledgerId);
+        if (window != null) {
+            synchronized (window) {
+                if (window.lastMissEntryId == lastMissEntryId) {
+                    window.nextEntryId = Math.max(lastReadAheadEntryId, lastMissEntryId) + 1;
+                }
+            }
+        }
+    }
+
+    void removeLedger(long ledgerId) {
+        windows.remove(ledgerId);
+    }
+
+    /**
+     * Evict the windows of the ledgers that were not read recently.
+     */
+    void removeStaleWindows() {
+        long staleTimestamp = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(WINDOW_CACHING_TIME_MINUTES);
+        windows.removeIf((ledgerId, window) -> {
+            synchronized (window) {
+                return window.lastAccessed < staleTimestamp;
+            }
+        });
+    }
+
+    @VisibleForTesting
+    int getWindowSize(long ledgerId) {
+        Window window = windows.get(ledgerId);
+        if (window == null) {
+            return initialWindowSize;
+        }
+        synchronized (window) {
+            return window.size;
+        }
+    }
+}
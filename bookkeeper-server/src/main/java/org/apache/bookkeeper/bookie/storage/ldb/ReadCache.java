@@ -31,6 +31,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
 import org.slf4j.Logger;
@@ -45,12 +46,22 @@ import org.slf4j.LoggerFactory;
  * ring-buffer fashion. When the read cache is full, the oldest segment
  * is cleared and rotated to make space for new entries to be added to
  * the read cache.
+ *
+ * <p>Optionally, the read cache can be made scan resistant. A part of the memory
+ * is then reserved to a protected area, holding the entries that were read
+ * multiple times, according to a frequency sketch, while in the main ring. Since
+ * each entry of a scan is only read once, a large scan can only rotate the main
+ * ring and cannot evict the frequently read entries from the protected area.
  */
 public class ReadCache implements Closeable {
     private static final Logger log = LoggerFactory.getLogger(ReadCache.class);
 
     private static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
 
+    // Sizing of the frequency sketch of a scan resistant cache
+    private static final int SKETCH_AVERAGE_ENTRY_SIZE = 1024;
+    private static final int MAX_SKETCH_EXPECTED_ENTRIES = 1 << 24;
+
     private final List<ByteBuf> cacheSegments;
     private final List<ConcurrentLongLongPairHashMap> cacheIndexes;
 
@@ -62,12 +73,45 @@ public class ReadCache implements Closeable {
     private ByteBufAllocator allocator;
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
+    // Area for the frequently read entries, when the cache is scan resistant
+    private final ReadCache protectedCache;
+    private final FrequencySketch frequencySketch;
+    private final int admissionThreshold;
+    private final ReadCacheStats stats;
+
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize) {
         this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE);
     }
 
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, null, null, 0, null);
+    }
+
+    /**
+     * Create a scan resistant read cache.
+     *
+     * @param protectedRatio the fraction of the cache memory reserved to the frequently read entries
+     * @param admissionThreshold the number of reads, while in the main ring, for an entry to be admitted in the
+     *                           protected area
+     */
+    static ReadCache newScanResistantReadCache(ByteBufAllocator allocator, long maxCacheSize, double protectedRatio,
+                                               int admissionThreshold, StatsLogger statsLogger) {
+        long protectedCacheSize = (long) (maxCacheSize * protectedRatio);
+        long mainCacheSize = maxCacheSize - protectedCacheSize;
+        int expectedEntries = (int) Math.min(MAX_SKETCH_EXPECTED_ENTRIES, mainCacheSize / SKETCH_AVERAGE_ENTRY_SIZE);
+        ReadCache protectedCache = new ReadCache(allocator, protectedCacheSize, DEFAULT_MAX_SEGMENT_SIZE);
+        return new ReadCache(allocator, mainCacheSize, DEFAULT_MAX_SEGMENT_SIZE, protectedCache,
+                new FrequencySketch(expectedEntries), admissionThreshold,
+                new ReadCacheStats(statsLogger, protectedCache::size, protectedCache::count));
+    }
+
+    private ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, ReadCache protectedCache,
+                      FrequencySketch frequencySketch, int admissionThreshold, ReadCacheStats stats) {
         this.allocator = allocator;
+        this.protectedCache = protectedCache;
+        this.frequencySketch = frequencySketch;
+        this.admissionThreshold = admissionThreshold;
+        this.stats = stats;
         int segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
         segmentSize = (int) (maxCacheSize / segmentsCount);
 
@@ -87,6 +131,9 @@ public class ReadCache implements Closeable {
     @Override
     public void close() {
         cacheSegments.forEach(ReferenceCountUtil::safeRelease);
+        if (protectedCache != null) {
+            protectedCache.close();
+        }
     }
 
     public void put(long ledgerId, long entryId, ByteBuf entry) {
@@ -136,7 +183,88 @@ public class ReadCache implements Closeable {
         }
     }
 
+    /**
+     * Insert a batch of entries of the same ledger, reserving the space for all of them in the
+     * current segment at once. The entry id of each entry is read from its header.
+     *
+     * <p>If the batch does not fit in the current segment, the entries are inserted one by one,
+     * rolling over to the next segment when needed.
+     *
+     * @param ledgerId the ledger the entries belong to
+     * @param entries the entries to insert
+     */
+    public void putAll(long ledgerId, List<ByteBuf> entries) {
+        int totalAlignedSize = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            int entrySize = entries.get(i).readableBytes();
+            if (entrySize > segmentSize || totalAlignedSize + align64(entrySize) > segmentSize) {
+                totalAlignedSize = -1;
+                break;
+            }
+            totalAlignedSize += align64(entrySize);
+        }
+
+        if (totalAlignedSize > 0) {
+            lock.readLock().lock();
+
+            try {
+                // Only reserve the space when the whole batch fits, so that the end of the segment is still
+                // used by the entries inserted one by one otherwise
+                int offset = currentSegmentOffset.get();
+                while (offset + totalAlignedSize <= segmentSize
+                        && !currentSegmentOffset.compareAndSet(offset, offset + totalAlignedSize)) {
+                    offset = currentSegmentOffset.get();
+                }
+                if (offset + totalAlignedSize <= segmentSize) {
+                    ByteBuf segment = cacheSegments.get(currentSegmentIdx);
+                    ConcurrentLongLongPairHashMap index = cacheIndexes.get(currentSegmentIdx);
+                    for (int i = 0; i < entries.size(); i++) {
+                        ByteBuf entry = entries.get(i);
+                        int entrySize = entry.readableBytes();
+                        long entryId = entry.getLong(entry.readerIndex() + 8);
+                        segment.setBytes(offset, entry, entry.readerIndex(), entrySize);
+                        index.put(ledgerId, entryId, offset, entrySize);
+                        offset += align64(entrySize);
+                    }
+                    return;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        // The batch does not fit in the current segment, insert each entry and roll-over when needed
+        for (int i = 0; i < entries.size(); i++) {
+            ByteBuf entry = entries.get(i);
+            put(ledgerId, entry.getLong(entry.readerIndex() + 8), entry);
+        }
+    }
+
     public ByteBuf get(long ledgerId, long entryId) {
+        if (protectedCache == null) {
+            return getFromSegments(ledgerId, entryId);
+        }
+
+        ByteBuf entry = protectedCache.getFromSegments(ledgerId, entryId);
+        if (entry != null) {
+            stats.getProtectedHitCounter().inc();
+            return entry;
+        }
+
+        entry = getFromSegments(ledgerId, entryId);
+        if (entry != null) {
+            stats.getProbationHitCounter().inc();
+            if (frequencySketch.increment(ledgerId, entryId) >= admissionThreshold) {
+                // The entry is read frequently, move it to the protected area where scans cannot evict it
+                protectedCache.put(ledgerId, entryId, entry);
+                removeFromSegments(ledgerId, entryId);
+                stats.getPromotionCounter().inc();
+            }
+        }
+        return entry;
+    }
+
+    private ByteBuf getFromSegments(long ledgerId, long entryId) {
         lock.readLock().lock();
 
         try {
@@ -165,7 +293,24 @@ public class ReadCache implements Closeable {
         return null;
     }
 
+    private void removeFromSegments(long ledgerId, long entryId) {
+        lock.readLock().lock();
+
+        try {
+            // The space of the entry in the segment is reclaimed when the segment is rotated
+            for (int i = 0; i < cacheIndexes.size(); i++) {
+                cacheIndexes.get(i).remove(ledgerId, entryId);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     public boolean hasEntry(long ledgerId, long entryId) {
+        if (protectedCache != null && protectedCache.hasEntry(ledgerId, entryId)) {
+            return true;
+        }
+
         lock.readLock().lock();
 
         try {
@@ -193,7 +338,7 @@ public class ReadCache implements Closeable {
         lock.readLock().lock();
 
         try {
-            long size = 0;
+            long size = protectedCache != null ? protectedCache.size() : 0;
             for (int i = 0; i < cacheIndexes.size(); i++) {
                 if (i == currentSegmentIdx) {
                     size += currentSegmentOffset.get();
@@ -217,7 +362,7 @@ public class ReadCache implements Closeable {
         lock.readLock().lock();
 
         try {
-            long count = 0;
+            long count = protectedCache != null ? protectedCache.count() : 0;
             for (int i = 0; i < cacheIndexes.size(); i++) {
                 count += cacheIndexes.get(i).size();
             }
@@ -0,0 +1,109 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+
+import java.util.function.Supplier;
+import lombok.Getter;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+
+/**
+ * A umbrella class for the stats of a scan resistant read cache.
+ */
+@StatsDoc(
+    name = BOOKIE_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "Scan resistant read cache stats"
+)
+@Getter
+class ReadCacheStats {
+
+    private static final String PROTECTED_HITS = "read-cache-protected-hits";
+    private static final String PROBATION_HITS = "read-cache-probation-hits";
+    private static final String PROMOTIONS = "read-cache-promotions";
+    private static final String PROTECTED_SIZE = "read-cache-protected-size";
+    private static final String PROTECTED_COUNT = "read-cache-protected-count";
+
+    @StatsDoc(
+        name = PROTECTED_HITS,
+        help = "number of read cache hits on entries admitted in the protected area as frequently read"
+    )
+    private final Counter protectedHitCounter;
+    @StatsDoc(
+        name = PROBATION_HITS,
+        help = "number of read cache hits on entries not admitted in the protected area"
+    )
+    private final Counter probationHitCounter;
+    @StatsDoc(
+        name = PROMOTIONS,
+        help = "number of entries admitted in the protected area"
+    )
+    private final Counter promotionCounter;
+    @StatsDoc(
+        name = PROTECTED_SIZE,
+        help = "Current number of bytes in the protected area of the read cache"
+    )
+    private final Gauge<Long> protectedSizeGauge;
+    @StatsDoc(
+        name = PROTECTED_COUNT,
+        help = "Current number of entries in the protected area of the read cache"
+    )
+    private final Gauge<Long> protectedCountGauge;
+
+    ReadCacheStats(StatsLogger stats,
+                   Supplier<Long> protectedSizeSupplier,
+                   Supplier<Long> protectedCountSupplier) {
+        protectedHitCounter = stats.getCounter(PROTECTED_HITS);
+        probationHitCounter = stats.getCounter(PROBATION_HITS);
+        promotionCounter = stats.getCounter(PROMOTIONS);
+
+        protectedSizeGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return protectedSizeSupplier.get();
+            }
+        };
+        stats.registerGauge(PROTECTED_SIZE, protectedSizeGauge);
+        protectedCountGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return protectedCountSupplier.get();
+            }
+        };
+        stats.registerGauge(PROTECTED_COUNT, protectedCountGauge);
+    }
+
+}
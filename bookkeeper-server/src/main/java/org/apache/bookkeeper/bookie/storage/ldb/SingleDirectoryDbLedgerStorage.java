@@ -31,19 +31,28 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.PrimitiveIterator.OfLong;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
@@ -78,6 +87,7 @@ import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.ThreadRegistry;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.mutable.MutableLong;
 import org.slf4j.Logger;
@@ -108,6 +118,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     // Cache where we insert entries for speculative reading
     private final ReadCache readCache;
 
+    // Per-ledger read-ahead windows, when adaptive read-ahead is enabled
+    private final ReadAheadWindowTracker readAheadWindowTracker;
+
     private final StampedLock writeCacheRotationLock = new StampedLock();
 
     protected final ReentrantLock flushMutex = new ReentrantLock();
@@ -124,6 +137,23 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 }
             });
 
+    private static final String dbStorageReadAheadExecutorName = "db-storage-readahead";
+    // Executor used to fill the read-ahead cache in background, when async read-ahead is enabled
+    private final ThreadPoolExecutor readAheadExecutor;
+
+    // Ledgers with a read-ahead operation already pending in the read-ahead executor
+    private final ConcurrentLongHashSet pendingReadAheadLedgers;
+
+    private static String dbStorageIndexFlushExecutorName = "db-storage-index-flush";
+    // Executor used to commit the location index sub-batches during the flush, when pipelined flush is enabled
+    private final ExecutorService indexFlushExecutor;
+    private final int pipelinedFlushBatchSize;
+
+    private static String dbStorageFlushWriterExecutorName = "db-storage-flush-writer";
+    // Executor used to write the entries of the write cache into several entry logs in parallel during the flush
+    private final ExecutorService flushWriterExecutor;
+    private final int flushWriters;
+
     // Executor used to for db index cleanup
     private final ScheduledExecutorService cleanupExecutor = Executors
             .newSingleThreadScheduledExecutor(new DefaultThreadFactory("db-storage-cleanup"));
@@ -145,8 +175,28 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     private static final long DEFAULT_MAX_THROTTLE_TIME_MILLIS = TimeUnit.SECONDS.toMillis(10);
 
+    private static final int DEFAULT_READ_AHEAD_ASYNC_MAX_PENDING_REQUESTS = 1024;
+    private static final int DEFAULT_READ_AHEAD_ADAPTIVE_MIN_BATCH_SIZE = 4;
+    private static final int DEFAULT_READ_AHEAD_ADAPTIVE_MAX_BATCH_SIZE_FACTOR = 8;
+    private static final double DEFAULT_READ_CACHE_PROTECTED_RATIO = 0.8;
+    private static final int DEFAULT_READ_CACHE_ADMISSION_THRESHOLD = 2;
+    // the entry location cache is disabled by default
+    private static final long DEFAULT_ENTRY_LOCATION_CACHE_MAX_SIZE_MB = 0;
+    private static final int DEFAULT_PIPELINED_FLUSH_BATCH_SIZE = 10_000;
+    private static final int DEFAULT_WRITE_CACHE_ARENAS = 0;
+
+    // Max number of location index sub-batches waiting to be committed, before the flush stops writing into the
+    // entry log
+    private static final int MAX_PENDING_INDEX_COMMITS = 2;
+
     private final long maxReadAheadBytesSize;
 
+    // Upper bound on the size of a single entry log range read while filling the read-ahead cache
+    private static final int MAX_READ_AHEAD_RANGE_SIZE = 4 * 1024 * 1024;
+
+    // An entry always starts with the ledger id and the entry id
+    private static final int MIN_ENTRY_SIZE = 2 * Long.BYTES;
+
     private final Counter flushExecutorTime;
     private final boolean singleLedgerDirs;
 
@@ -156,6 +206,20 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                                           long writeCacheSize, long readCacheSize, int readAheadCacheBatchSize,
                                           long readAheadCacheBatchBytesSize)
             throws IOException {
+        this(conf, ledgerManager, ledgerDirsManager, indexDirsManager, entryLogger, statsLogger, allocator,
+                writeCacheSize, readCacheSize, readAheadCacheBatchSize, readAheadCacheBatchBytesSize, 1);
+    }
+
+    /**
+     * @param entryLogWriters the number of logs the entry logger writes to in parallel, which is also the number
+     *                        of threads flushing the write cache into it
+     */
+    public SingleDirectoryDbLedgerStorage(ServerConfiguration conf, LedgerManager ledgerManager,
+                                          LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager,
+                                          EntryLogger entryLogger, StatsLogger statsLogger, ByteBufAllocator allocator,
+                                          long writeCacheSize, long readCacheSize, int readAheadCacheBatchSize,
+                                          long readAheadCacheBatchBytesSize, int entryLogWriters)
+            throws IOException {
         checkArgument(ledgerDirsManager.getAllLedgerDirs().size() == 1,
                 "Db implementation only allows for one storage dir");
 
@@ -178,8 +242,13 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 .scopeLabel("indexDir", indexBaseDir);
 
         this.writeCacheMaxSize = writeCacheSize;
-        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2);
-        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2);
+        int writeCacheArenas = conf.getInt(DbLedgerStorage.WRITE_CACHE_THREAD_ARENAS, DEFAULT_WRITE_CACHE_ARENAS);
+        int writeCacheArenaChunkSize = conf.getInt(DbLedgerStorage.WRITE_CACHE_ARENA_CHUNK_SIZE,
+                WriteCache.DEFAULT_ARENA_CHUNK_SIZE);
+        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2,
+                WriteCache.DEFAULT_MAX_SEGMENT_SIZE, writeCacheArenas, writeCacheArenaChunkSize);
+        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2,
+                WriteCache.DEFAULT_MAX_SEGMENT_SIZE, writeCacheArenas, writeCacheArenaChunkSize);
         this.singleLedgerDirs = conf.getLedgerDirs().length == 1;
 
         readCacheMaxSize = readCacheSize;
@@ -193,12 +262,70 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 DEFAULT_MAX_THROTTLE_TIME_MILLIS);
         maxThrottleTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxThrottleTimeMillis);
 
-        readCache = new ReadCache(allocator, readCacheMaxSize);
+        if (conf.getBoolean(DbLedgerStorage.READ_CACHE_SCAN_RESISTANT, false)) {
+            double protectedRatio = conf.getDouble(DbLedgerStorage.READ_CACHE_PROTECTED_RATIO,
+                    DEFAULT_READ_CACHE_PROTECTED_RATIO);
+            int admissionThreshold = conf.getInt(DbLedgerStorage.READ_CACHE_ADMISSION_THRESHOLD,
+                    DEFAULT_READ_CACHE_ADMISSION_THRESHOLD);
+            checkArgument(protectedRatio > 0 && protectedRatio < 1, "Read cache protected ratio must be in (0, 1)");
+            readCache = ReadCache.newScanResistantReadCache(allocator, readCacheMaxSize, protectedRatio,
+                    admissionThreshold, ledgerIndexDirStatsLogger);
+            log.info("Scan resistant read cache enabled, protected ratio: {}, admission threshold: {}",
+                    protectedRatio, admissionThreshold);
+        } else {
+            readCache = new ReadCache(allocator, readCacheMaxSize);
+        }
+
+        if (conf.getBoolean(DbLedgerStorage.READ_AHEAD_ASYNC, false)) {
+            int maxPendingReadAheads = conf.getInt(DbLedgerStorage.READ_AHEAD_ASYNC_MAX_PENDING_REQUESTS,
+                    DEFAULT_READ_AHEAD_ASYNC_MAX_PENDING_REQUESTS);
+            // Read-ahead is only an optimization, drop the requests that exceed the executor queue capacity
+            readAheadExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(maxPendingReadAheads),
+                    new DefaultThreadFactory(dbStorageReadAheadExecutorName) {
+                        @Override
+                        protected Thread newThread(Runnable r, String name) {
+                            return super.newThread(
+                                    ThreadRegistry.registerThread(r, dbStorageReadAheadExecutorName), name);
+                        }
+                    },
+                    new ThreadPoolExecutor.AbortPolicy());
+            // The queued read-aheads and the running one, with at least one item per section of the set
+            pendingReadAheadLedgers = ConcurrentLongHashSet.newBuilder()
+                    .expectedItems(Math.max(maxPendingReadAheads + 1, 16))
+                    .concurrencyLevel(16)
+                    .build();
+            log.info("Async read-ahead enabled, max pending read-ahead requests: {}", maxPendingReadAheads);
+        } else {
+            readAheadExecutor = null;
+            pendingReadAheadLedgers = null;
+        }
+
+        if (conf.getBoolean(DbLedgerStorage.PIPELINED_FLUSH, false)) {
+            pipelinedFlushBatchSize = conf.getInt(DbLedgerStorage.PIPELINED_FLUSH_BATCH_SIZE,
+                    DEFAULT_PIPELINED_FLUSH_BATCH_SIZE);
+            checkArgument(pipelinedFlushBatchSize > 0, "Pipelined flush batch size must be positive");
+            indexFlushExecutor = Executors.newSingleThreadExecutor(
+                    new DefaultThreadFactory(dbStorageIndexFlushExecutorName) {
+                        @Override
+                        protected Thread newThread(Runnable r, String name) {
+                            return super.newThread(
+                                    ThreadRegistry.registerThread(r, dbStorageIndexFlushExecutorName), name);
+                        }
+                    });
+            log.info("Pipelined flush enabled, location index sub-batch size: {}", pipelinedFlushBatchSize);
+        } else {
+            pipelinedFlushBatchSize = 0;
+            indexFlushExecutor = null;
+        }
 
         ledgerIndex = new LedgerMetadataIndex(conf,
                 KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
+        long entryLocationCacheMaxSize = conf.getLong(DbLedgerStorage.ENTRY_LOCATION_CACHE_MAX_SIZE_MB,
+                DEFAULT_ENTRY_LOCATION_CACHE_MAX_SIZE_MB) * 1024 * 1024;
         entryLocationIndex = new EntryLocationIndex(conf,
-                KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
+                KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger,
+                allocator, entryLocationCacheMaxSize);
 
         transientLedgerInfoCache = ConcurrentLongHashMap.<TransientLedgerInfo>newBuilder()
                 .expectedItems(16 * 1024)
@@ -209,6 +336,22 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES, TimeUnit.MINUTES);
 
         this.entryLogger = entryLogger;
+        if (entryLogWriters > 1) {
+            // One flush thread per entry log, since both split the ledgers by ledger id modulo the number of logs
+            flushWriters = entryLogWriters;
+            flushWriterExecutor = Executors.newFixedThreadPool(flushWriters,
+                    new DefaultThreadFactory(dbStorageFlushWriterExecutorName) {
+                        @Override
+                        protected Thread newThread(Runnable r, String name) {
+                            return super.newThread(
+                                    ThreadRegistry.registerThread(r, dbStorageFlushWriterExecutorName), name);
+                        }
+                    });
+            log.info("Flushing the write cache into {} entry logs in parallel", flushWriters);
+        } else {
+            flushWriters = 1;
+            flushWriterExecutor = null;
+        }
         gcThread = new GarbageCollectorThread(conf,
                 ledgerManager, ledgerDirsManager, this, entryLogger, ledgerIndexDirStatsLogger);
 
@@ -220,6 +363,22 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             () -> readCache.count()
         );
 
+        if (conf.getBoolean(DbLedgerStorage.READ_AHEAD_ADAPTIVE, false)) {
+            int minReadAheadBatchSize = conf.getInt(DbLedgerStorage.READ_AHEAD_ADAPTIVE_MIN_BATCH_SIZE,
+                    Math.min(DEFAULT_READ_AHEAD_ADAPTIVE_MIN_BATCH_SIZE, readAheadCacheBatchSize));
+            int maxReadAheadBatchSize = conf.getInt(DbLedgerStorage.READ_AHEAD_ADAPTIVE_MAX_BATCH_SIZE,
+                    DEFAULT_READ_AHEAD_ADAPTIVE_MAX_BATCH_SIZE_FACTOR * readAheadCacheBatchSize);
+            readAheadWindowTracker = new ReadAheadWindowTracker(readAheadCacheBatchSize, minReadAheadBatchSize,
+                    maxReadAheadBatchSize, dbLedgerStorageStats);
+            cleanupExecutor.scheduleAtFixedRate(readAheadWindowTracker::removeStaleWindows,
+                    ReadAheadWindowTracker.WINDOW_CACHING_TIME_MINUTES,
+                    ReadAheadWindowTracker.WINDOW_CACHING_TIME_MINUTES, TimeUnit.MINUTES);
+            log.info("Adaptive read-ahead enabled, batch size between {} and {} entries", minReadAheadBatchSize,
+                    maxReadAheadBatchSize);
+        } else {
+            readAheadWindowTracker = null;
+        }
+
         flushExecutorTime = ledgerIndexDirStatsLogger.getThreadScopedCounter("db-storage-thread-time");
 
         executor.submit(() -> {
@@ -342,6 +501,16 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     @Override
     public void shutdown() throws InterruptedException {
         try {
+            if (readAheadExecutor != null) {
+                // Drop the queued read-aheads but let the running one complete: interrupting a read would close the
+                // shared entry log channel it is reading from
+                readAheadExecutor.shutdown();
+                readAheadExecutor.getQueue().clear();
+                if (!readAheadExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    log.warn("Read-ahead executor did not terminate in time");
+                }
+            }
+
             flush();
 
             gcThread.shutdown();
@@ -350,6 +519,16 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             cleanupExecutor.shutdown();
             cleanupExecutor.awaitTermination(1, TimeUnit.SECONDS);
 
+            if (indexFlushExecutor != null) {
+                indexFlushExecutor.shutdown();
+                indexFlushExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            }
+
+            if (flushWriterExecutor != null) {
+                flushWriterExecutor.shutdown();
+                flushWriterExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            }
+
             ledgerIndex.close();
             entryLocationIndex.close();
 
@@ -578,6 +757,63 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
     }
 
+    @Override
+    public FileRegion getEntryRegion(long ledgerId, long entryId, int minEntrySize)
+            throws IOException, BookieException {
+        if (entryId == BookieProtocol.LAST_ADD_CONFIRMED) {
+            return null;
+        }
+
+        // Cached entries are served from memory
+        long stamp = writeCacheRotationLock.tryOptimisticRead();
+        WriteCache localWriteCache = writeCache;
+        WriteCache localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+        if (!writeCacheRotationLock.validate(stamp)) {
+            // Fallback to regular read lock approach
+            stamp = writeCacheRotationLock.readLock();
+            try {
+                localWriteCache = writeCache;
+                localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+            } finally {
+                writeCacheRotationLock.unlockRead(stamp);
+            }
+        }
+        if (localWriteCache.hasEntry(ledgerId, entryId) || localWriteCacheBeingFlushed.hasEntry(ledgerId, entryId)
+                || readCache.hasEntry(ledgerId, entryId)) {
+            return null;
+        }
+
+        long entryLocation = entryLocationIndex.getLocation(ledgerId, entryId);
+        if (entryLocation == 0) {
+            // Let the regular read report the missing entry
+            return null;
+        }
+
+        long readEntryStartNano = MathUtils.nowInNano();
+        try {
+            FileRegion region = entryLogger.readEntryRegion(ledgerId, entryId, entryLocation, minEntrySize);
+            if (region != null && readAheadExecutor != null) {
+                // Like a regular read, prefetch the next entries in the background. Without a read-ahead executor,
+                // the read-ahead is skipped rather than done inline, which would delay the sending of the region.
+                long nextEntryLocation = entryLocation + 4 /* size header */ + region.count();
+                int readAheadBatchSize = readAheadWindowTracker != null
+                        ? readAheadWindowTracker.onReadCacheMiss(ledgerId, entryId)
+                        : readAheadCacheBatchSize;
+                scheduleReadAhead(ledgerId, entryId, nextEntryLocation, (int) region.count(), readAheadBatchSize);
+            }
+            return region;
+        } catch (IOException e) {
+            // The entry might have been moved by the compaction, fall back to the regular read
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to get the region of entry {}@{}", ledgerId, entryId, e);
+            }
+            return null;
+        } finally {
+            dbLedgerStorageStats.getReadFromEntryLogTime().addLatency(
+                    MathUtils.elapsedNanos(readEntryStartNano), TimeUnit.NANOSECONDS);
+        }
+    }
+
     private ByteBuf doGetEntry(long ledgerId, long entryId) throws IOException, BookieException {
         if (log.isDebugEnabled()) {
             log.debug("Get Entry: {}@{}", ledgerId, entryId);
@@ -657,52 +893,119 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
         // Try to read more entries
         long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
-        fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation);
+        int readAheadBatchSize = readAheadWindowTracker != null
+                ? readAheadWindowTracker.onReadCacheMiss(ledgerId, entryId)
+                : readAheadCacheBatchSize;
+        if (readAheadExecutor != null) {
+            scheduleReadAhead(ledgerId, entryId, nextEntryLocation, entry.readableBytes(), readAheadBatchSize);
+        } else {
+            fillReadAheadCache(ledgerId, entryId, nextEntryLocation, entry.readableBytes(), readAheadBatchSize);
+        }
 
         return entry;
     }
 
-    private void fillReadAheadCache(long originalLedgerId, long firstEntryId, long firstEntryLocation) {
+    private void scheduleReadAhead(long ledgerId, long missedEntryId, long firstEntryLocation, int expectedEntrySize,
+                                   int readAheadBatchSize) {
+        if (!pendingReadAheadLedgers.add(ledgerId)) {
+            // There is already a read-ahead in progress for this ledger
+            dbLedgerStorageStats.getReadAheadSkippedCounter().inc();
+            return;
+        }
+
+        try {
+            readAheadExecutor.execute(() -> {
+                try {
+                    fillReadAheadCache(ledgerId, missedEntryId, firstEntryLocation, expectedEntrySize,
+                            readAheadBatchSize);
+                } finally {
+                    pendingReadAheadLedgers.remove(ledgerId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingReadAheadLedgers.remove(ledgerId);
+            dbLedgerStorageStats.getReadAheadSkippedCounter().inc();
+        }
+    }
+
+    private void fillReadAheadCache(long originalLedgerId, long missedEntryId, long firstEntryLocation,
+                                    int expectedEntrySize, int readAheadBatchSize) {
         long readAheadStartNano = MathUtils.nowInNano();
         int count = 0;
         long size = 0;
+        long lastEntryId = missedEntryId;
 
+        List<ByteBuf> entries = new ArrayList<>();
+        ByteBuf range = null;
         try {
             long firstEntryLogId = (firstEntryLocation >> 32);
             long currentEntryLogId = firstEntryLogId;
             long currentEntryLocation = firstEntryLocation;
+            int minRangeSize = 0;
+            boolean done = false;
+
+            while (!done && chargeReadAheadCache(count, size, readAheadBatchSize)
+                    && currentEntryLogId == firstEntryLogId) {
+                // Read, with a single I/O, a range of the entry log large enough to hold the entries that are still
+                // expected to be read ahead, and split it in place
+                int rangeSize = Math.max(minRangeSize,
+                        readAheadRangeSize(count, size, expectedEntrySize, readAheadBatchSize));
+                range = entryLogger.readEntriesRange(currentEntryLocation, rangeSize);
+
+                while (chargeReadAheadCache(count, size, readAheadBatchSize)
+                        && range.readableBytes() >= Integer.BYTES) {
+                    int entrySize = range.getInt(range.readerIndex());
+                    if (entrySize < MIN_ENTRY_SIZE || entrySize > maxReadAheadBytesSize) {
+                        // Reached the end of the data in the entry log
+                        done = true;
+                        break;
+                    }
 
-            while (chargeReadAheadCache(count, size) && currentEntryLogId == firstEntryLogId) {
-                ByteBuf entry = entryLogger.readEntry(originalLedgerId,
-                        firstEntryId, currentEntryLocation);
-
-                try {
-                    long currentEntryLedgerId = entry.getLong(0);
-                    long currentEntryId = entry.getLong(8);
+                    if (range.readableBytes() < Integer.BYTES + entrySize) {
+                        // The last entry is only partially included in the range, read it again with the next range
+                        minRangeSize = Integer.BYTES + entrySize;
+                        break;
+                    }
 
-                    if (currentEntryLedgerId != originalLedgerId) {
+                    ByteBuf entry = range.retainedSlice(range.readerIndex() + Integer.BYTES, entrySize);
+                    if (entry.getLong(0) != originalLedgerId) {
                         // Found an entry belonging to a different ledger, stopping read-ahead
+                        ReferenceCountUtil.release(entry);
+                        done = true;
                         break;
                     }
 
-                    // Insert entry in read cache
-                    readCache.put(originalLedgerId, currentEntryId, entry);
-
+                    entries.add(entry);
+                    lastEntryId = entry.getLong(8);
                     count++;
-                    firstEntryId++;
-                    size += entry.readableBytes();
+                    size += entrySize;
 
-                    currentEntryLocation += 4 + entry.readableBytes();
+                    range.skipBytes(Integer.BYTES + entrySize);
+                    currentEntryLocation += Integer.BYTES + entrySize;
                     currentEntryLogId = currentEntryLocation >> 32;
-                } finally {
-                    ReferenceCountUtil.release(entry);
                 }
+
+                if (range.writerIndex() < rangeSize) {
+                    // The range was cut short by the end of the entry log
+                    done = true;
+                }
+
+                // Insert the entries of this range in read cache
+                readCache.putAll(originalLedgerId, entries);
+                releaseAll(entries);
+                ReferenceCountUtil.release(range);
+                range = null;
             }
         } catch (Exception e) {
             if (log.isDebugEnabled()) {
                 log.debug("Exception during read ahead for ledger: {}: e", originalLedgerId, e);
             }
         } finally {
+            releaseAll(entries);
+            ReferenceCountUtil.release(range);
+            if (readAheadWindowTracker != null) {
+                readAheadWindowTracker.onReadAheadDone(originalLedgerId, missedEntryId, lastEntryId);
+            }
             dbLedgerStorageStats.getReadAheadBatchCountStats().registerSuccessfulValue(count);
             dbLedgerStorageStats.getReadAheadBatchSizeStats().registerSuccessfulValue(size);
             dbLedgerStorageStats.getReadAheadTime().addLatency(
@@ -710,17 +1013,54 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
     }
 
-    protected boolean chargeReadAheadCache(int currentReadAheadCount, long currentReadAheadBytes) {
+    /**
+     * Estimate the size of the entry log range to read for the next read-ahead batch, from the size of the
+     * entry that triggered the read-ahead and the remaining read-ahead limits.
+     */
+    private int readAheadRangeSize(int currentReadAheadCount, long currentReadAheadBytes, int expectedEntrySize,
+                                   int readAheadBatchSize) {
+        long readAheadBatchBytesSize = readAheadBatchBytesSize(readAheadBatchSize);
+        long remainingBytes = (readAheadBatchBytesSize > 0)
+                ? Math.min(readAheadBatchBytesSize, maxReadAheadBytesSize)
+                : maxReadAheadBytesSize;
+        remainingBytes -= currentReadAheadBytes;
+
+        long expectedBytes = (long) (readAheadBatchSize - currentReadAheadCount)
+                * (Integer.BYTES + expectedEntrySize);
+        long rangeSize = Math.min(expectedBytes, remainingBytes + Integer.BYTES + expectedEntrySize);
+        return (int) Math.max(Integer.BYTES + expectedEntrySize, Math.min(rangeSize, MAX_READ_AHEAD_RANGE_SIZE));
+    }
+
+    private static void releaseAll(List<ByteBuf> entries) {
+        for (int i = 0; i < entries.size(); i++) {
+            ReferenceCountUtil.release(entries.get(i));
+        }
+        entries.clear();
+    }
+
+    private boolean chargeReadAheadCache(int currentReadAheadCount, long currentReadAheadBytes,
+                                         int readAheadBatchSize) {
         // compatible with old logic
-        boolean chargeSizeCondition = currentReadAheadCount < readAheadCacheBatchSize
+        boolean chargeSizeCondition = currentReadAheadCount < readAheadBatchSize
                 && currentReadAheadBytes < maxReadAheadBytesSize;
-        if (chargeSizeCondition && readAheadCacheBatchBytesSize > 0) {
+        long readAheadBatchBytesSize = readAheadBatchBytesSize(readAheadBatchSize);
+        if (chargeSizeCondition && readAheadBatchBytesSize > 0) {
             // exact limits limit the size and count for each batch
-            chargeSizeCondition = currentReadAheadBytes < readAheadCacheBatchBytesSize;
+            chargeSizeCondition = currentReadAheadBytes < readAheadBatchBytesSize;
         }
         return chargeSizeCondition;
     }
 
+    /**
+     * The bytes limit of a read-ahead batch scales with the batch size, when the adaptive read-ahead resizes it.
+     */
+    private long readAheadBatchBytesSize(int readAheadBatchSize) {
+        if (readAheadCacheBatchBytesSize <= 0 || readAheadBatchSize == readAheadCacheBatchSize) {
+            return readAheadCacheBatchBytesSize;
+        }
+        return Math.max(1, readAheadCacheBatchBytesSize * readAheadBatchSize / readAheadCacheBatchSize);
+    }
+
     public ByteBuf getLastEntry(long ledgerId) throws IOException, BookieException {
         throwIfLimbo(ledgerId);
 
@@ -827,24 +1167,10 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             // Write all the pending entries into the entry logger and collect the offset
             // position for each entry
 
-            try (Batch batch = entryLocationIndex.newBatch()) {
-                writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
-                    long location = entryLogger.addEntry(ledgerId, entry);
-                    entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
-                });
-
-                long entryLoggerStart = MathUtils.nowInNano();
-                entryLogger.flush();
-                recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
-
-                long batchFlushStartTime = MathUtils.nowInNano();
-                batch.flush();
-
-                recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
-                if (log.isDebugEnabled()) {
-                    log.debug("DB batch flushed time : {} s",
-                            MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
-                }
+            if (indexFlushExecutor != null) {
+                flushWriteCachePipelined();
+            } else {
+                flushWriteCache();
             }
 
             long ledgerIndexStartTime = MathUtils.nowInNano();
@@ -893,6 +1219,174 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
     }
 
+    /**
+     * Write the entries of the write cache being flushed into the entry log, flush the entry log and then commit
+     * their locations into the location index.
+     */
+    private void flushWriteCache() throws IOException {
+        // One batch per flush thread, since each one adds the entries of its own partition of the ledgers
+        EntryLocationIndex.LocationsBatch[] batches = new EntryLocationIndex.LocationsBatch[flushWriters];
+        try {
+            for (int i = 0; i < flushWriters; i++) {
+                batches[i] = entryLocationIndex.newLocationsBatch();
+            }
+            writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
+                int entrySize = entry.readableBytes();
+                long location = entryLogger.addEntry(ledgerId, entry);
+                batches[flushPartition(ledgerId)].add(ledgerId, entryId, location, entrySize);
+            }, flushWriterExecutor, flushWriters);
+
+            long entryLoggerStart = MathUtils.nowInNano();
+            entryLogger.flush();
+            recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
+
+            long batchFlushStartTime = MathUtils.nowInNano();
+            if (flushWriters == 1) {
+                batches[0].flush();
+            } else {
+                for (EntryLocationIndex.LocationsBatch batch : batches) {
+                    batch.flush(false /* sync */);
+                }
+                entryLocationIndex.sync();
+            }
+
+            recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
+            if (log.isDebugEnabled()) {
+                log.debug("DB batch flushed time : {} s",
+                        MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
+            }
+        } finally {
+            for (EntryLocationIndex.LocationsBatch batch : batches) {
+                if (batch != null) {
+                    batch.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the partition of the write cache, and with it the flush thread, a ledger is flushed by
+     */
+    private int flushPartition(long ledgerId) {
+        return flushWriters == 1 ? 0 : (int) Math.floorMod(ledgerId, (long) flushWriters);
+    }
+
+    /**
+     * Write the entries of the write cache being flushed into the entry log, while the locations of the entries
+     * already written are committed into the location index in sub-batches, by the index flush thread.
+     *
+     * <p>Only the index commits are pipelined: the sub-batches are written without sync while the entries are
+     * added, and the index is synced once the entry log has been flushed, so that durable locations never point to
+     * entries that are not durable yet. The checkpoint is only marked as complete after that sync.
+     *
+     * <p>Each flush thread fills its own sub-batches, and only waits for a previous commit, when too many are
+     * pending, without holding the lock of the pending commits.
+     */
+    private void flushWriteCachePipelined() throws IOException {
+        Deque<Future<Void>> pendingCommits = new ArrayDeque<>();
+        EntryLocationIndex.LocationsBatch[] batches = new EntryLocationIndex.LocationsBatch[flushWriters];
+        int[] batchCounts = new int[flushWriters];
+        IOException exception = null;
+        try {
+            writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
+                int entrySize = entry.readableBytes();
+                long location = entryLogger.addEntry(ledgerId, entry);
+                int partition = flushPartition(ledgerId);
+                if (batches[partition] == null) {
+                    batches[partition] = entryLocationIndex.newLocationsBatch();
+                }
+                batches[partition].add(ledgerId, entryId, location, entrySize);
+
+                if (++batchCounts[partition] >= pipelinedFlushBatchSize) {
+                    Future<Void> oldestCommit = null;
+                    synchronized (pendingCommits) {
+                        if (pendingCommits.size() >= MAX_PENDING_INDEX_COMMITS) {
+                            oldestCommit = pendingCommits.removeFirst();
+                        }
+                    }
+                    if (oldestCommit != null) {
+                        waitForIndexCommit(oldestCommit);
+                    }
+                    Future<Void> commit = commitLocationsAsync(batches[partition]);
+                    batches[partition] = null;
+                    batchCounts[partition] = 0;
+                    synchronized (pendingCommits) {
+                        pendingCommits.add(commit);
+                    }
+                }
+            }, flushWriterExecutor, flushWriters);
+            for (int i = 0; i < flushWriters; i++) {
+                if (batches[i] != null) {
+                    pendingCommits.add(commitLocationsAsync(batches[i]));
+                    batches[i] = null;
+                }
+            }
+
+            // Flush the entry log while the last sub-batches are being committed
+            long entryLoggerStart = MathUtils.nowInNano();
+            entryLogger.flush();
+            recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
+        } catch (IOException e) {
+            exception = e;
+        } finally {
+            for (EntryLocationIndex.LocationsBatch batch : batches) {
+                if (batch != null) {
+                    batch.close();
+                }
+            }
+
+            // Always wait for all the sub-batches, since they must not be committed after the flush returns
+            long batchFlushStartTime = MathUtils.nowInNano();
+            while (!pendingCommits.isEmpty()) {
+                try {
+                    waitForIndexCommit(pendingCommits.removeFirst());
+                } catch (IOException e) {
+                    if (exception == null) {
+                        exception = e;
+                    }
+                }
+            }
+
+            if (exception == null) {
+                try {
+                    entryLocationIndex.sync();
+                    recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
+                } catch (IOException e) {
+                    exception = e;
+                }
+            }
+        }
+
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private Future<Void> commitLocationsAsync(EntryLocationIndex.LocationsBatch batch) {
+        return indexFlushExecutor.submit(() -> {
+            try {
+                batch.flush(false /* sync */);
+            } finally {
+                batch.close();
+            }
+            return null;
+        });
+    }
+
+    private static void waitForIndexCommit(Future<Void> commit) throws IOException {
+        try {
+            commit.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while committing the location index", ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IOException("Failed to commit the location index", ee.getCause());
+        }
+    }
+
     /**
      * Swap the current write cache with the replacement cache.
      */
@@ -945,6 +1439,10 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             listener.ledgerDeleted(ledgerId);
         }
 
+        if (readAheadWindowTracker != null) {
+            readAheadWindowTracker.removeLedger(ledgerId);
+        }
+
         TransientLedgerInfo tli = transientLedgerInfoCache.remove(ledgerId);
         if (tli != null) {
             tli.close();
@@ -990,6 +1488,16 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         return entryLogger;
     }
 
+    @VisibleForTesting
+    ReadCache getReadCache() {
+        return readCache;
+    }
+
+    @VisibleForTesting
+    ThreadPoolExecutor getReadAheadExecutor() {
+        return readAheadExecutor;
+    }
+
     @Override
     public long getLastAddConfirmed(long ledgerId) throws IOException, BookieException {
         throwIfLimbo(ledgerId);
@@ -22,15 +22,23 @@ package org.apache.bookkeeper.bookie.storage.ldb;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
+import com.google.common.annotations.VisibleForTesting;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
@@ -48,7 +56,17 @@ import org.slf4j.LoggerFactory;
  * until the cache is cleared.
  *
  * <p>There is the possibility to iterate through the stored entries in an ordered
- * way, by (ledgerId, entry).
+ * way, by (ledgerId, entry). To avoid sorting the whole cache at each flush, the
+ * entry ids of each ledger are also recorded in a run, as ranges of consecutive ids
+ * in the order in which they are added. Since entries are normally added in order,
+ * only the ledger ids need to be sorted when iterating, and the location of each
+ * entry is then read from the index. The number of ranges is bounded: past the
+ * bound, the runs are dropped and the iteration sorts the whole index instead.
+ *
+ * <p>Optionally, the space can be allocated through multiple arenas. Threads are mapped to an arena by their thread
+ * id, since Java does not expose the CPU a thread runs on. Each thread appends its entries to a chunk of the buffer
+ * owned by its arena, and only goes to the common offset to get a new chunk, so that concurrent writers do not all
+ * contend on the same offset counter.
  */
 public class WriteCache implements Closeable {
 
@@ -69,6 +87,11 @@ public class WriteCache implements Closeable {
             .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
             .build();
 
+    private final ConcurrentLongHashMap<LedgerRun> ledgerRuns = ConcurrentLongHashMap.<LedgerRun>newBuilder()
+            .expectedItems(4096)
+            .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+            .build();
+
     private final ByteBuf[] cacheSegments;
     private final int segmentsCount;
 
@@ -83,15 +106,64 @@ public class WriteCache implements Closeable {
 
     private final ConcurrentLongHashSet deletedLedgers = ConcurrentLongHashSet.newBuilder().build();
 
+    // Bound of the number of ranges in the ledger runs, and whether it was reached since the last clear
+    private final long maxRunRanges;
+    private final AtomicLong runRanges = new AtomicLong(0);
+    private volatile boolean runsDropped = false;
+
     private final ByteBufAllocator allocator;
 
+    // Allocation arenas, null when all the threads allocate from the common offset
+    private final Arena[] arenas;
+    private final int arenaChunkSize;
+
+    // Default maxSegmentSize set to 1Gb
+    static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
+    static final int DEFAULT_ARENA_CHUNK_SIZE = 128 * 1024;
+
+    // The ranges of the ledger runs take at most 16 bytes of heap for each KB of cache
+    private static final int CACHE_BYTES_PER_RUN_RANGE = 1024;
+    private static final int MIN_RUN_RANGES = 1024;
+
+    /**
+     * Arena owning a chunk of the cache, in which the entries are appended.
+     */
+    private static final class Arena {
+        volatile Chunk chunk = new Chunk(0, 0);
+    }
+
+    private static final class Chunk {
+        final long end;
+        final AtomicLong position;
+
+        Chunk(long start, long end) {
+            this.end = end;
+            this.position = new AtomicLong(start);
+        }
+    }
+
     public WriteCache(ByteBufAllocator allocator, long maxCacheSize) {
-        // Default maxSegmentSize set to 1Gb
-        this(allocator, maxCacheSize, 1 * 1024 * 1024 * 1024);
+        this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE);
     }
 
     public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, 0);
+    }
+
+    public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, int arenasCount) {
+        this(allocator, maxCacheSize, maxSegmentSize, arenasCount, DEFAULT_ARENA_CHUNK_SIZE);
+    }
+
+    /**
+     * @param arenasCount number of allocation arenas, or 0 to allocate all the entries from the common offset
+     * @param arenaChunkSize size of the chunks owned by the arenas, in the form of 2^n
+     */
+    public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, int arenasCount,
+                      int arenaChunkSize) {
         checkArgument(maxSegmentSize > 0);
+        checkArgument(arenasCount >= 0, "Number of arenas must not be negative");
+        checkArgument(arenaChunkSize >= 64 && arenaChunkSize == alignToPowerOfTwo(arenaChunkSize),
+                "Arena chunk size needs to be in form of 2^n and at least 64 bytes");
 
         long alignedMaxSegmentSize = alignToPowerOfTwo(maxSegmentSize);
         checkArgument(maxSegmentSize == alignedMaxSegmentSize, "Max segment size needs to be in form of 2^n");
@@ -103,6 +175,7 @@ public class WriteCache implements Closeable {
         this.segmentOffsetBits = 63 - Long.numberOfLeadingZeros(maxSegmentSize);
 
         this.segmentsCount = 1 + (int) (maxCacheSize / maxSegmentSize);
+        this.maxRunRanges = Math.max(MIN_RUN_RANGES, maxCacheSize / CACHE_BYTES_PER_RUN_RANGE);
 
         this.cacheSegments = new ByteBuf[segmentsCount];
 
@@ -113,6 +186,18 @@ public class WriteCache implements Closeable {
 
         int lastSegmentSize = (int) (maxCacheSize % maxSegmentSize);
         cacheSegments[segmentsCount - 1] = Unpooled.directBuffer(lastSegmentSize, lastSegmentSize);
+
+        if (arenasCount > 0) {
+            // Chunks never span over 2 segments, since segments are aligned to the chunk size
+            this.arenaChunkSize = Math.min(arenaChunkSize, maxSegmentSize);
+            this.arenas = new Arena[arenasCount];
+            for (int i = 0; i < arenasCount; i++) {
+                arenas[i] = new Arena();
+            }
+        } else {
+            this.arenaChunkSize = 0;
+            this.arenas = null;
+        }
     }
 
     public void clear() {
@@ -121,7 +206,16 @@ public class WriteCache implements Closeable {
         cacheCount.reset();
         index.clear();
         lastEntryMap.clear();
+        ledgerRuns.clear();
+        runRanges.set(0L);
+        runsDropped = false;
         deletedLedgers.clear();
+
+        if (arenas != null) {
+            for (Arena arena : arenas) {
+                arena.chunk = new Chunk(0, 0);
+            }
+        }
     }
 
     @Override
@@ -138,28 +232,14 @@ public class WriteCache implements Closeable {
         // cache line
         int alignedSize = align64(size);
 
-        long offset;
-        int localOffset;
-        int segmentIdx;
-
-        while (true) {
-            offset = cacheOffset.getAndAdd(alignedSize);
-            localOffset = (int) (offset & segmentOffsetMask);
-            segmentIdx = (int) (offset >>> segmentOffsetBits);
-
-            if ((offset + size) > maxCacheSize) {
-                // Cache is full
-                return false;
-            } else if (maxSegmentSize - localOffset < size) {
-                // If an entry is at the end of a segment, we need to get a new offset and try
-                // again in next segment
-                continue;
-            } else {
-                // Found a good offset
-                break;
-            }
+        long offset = arenas != null ? allocateFromArena(size, alignedSize) : allocate(size, alignedSize);
+        if (offset < 0) {
+            // Cache is full
+            return false;
         }
 
+        int localOffset = (int) (offset & segmentOffsetMask);
+        int segmentIdx = (int) (offset >>> segmentOffsetBits);
         cacheSegments[segmentIdx].setBytes(localOffset, entry, entry.readerIndex(), entry.readableBytes());
 
         // Update last entryId for ledger. This logic is to handle writes for the same
@@ -178,11 +258,81 @@ public class WriteCache implements Closeable {
         }
 
         index.put(ledgerId, entryId, offset, size);
+        if (!runsDropped) {
+            addToRun(ledgerId, entryId);
+        }
         cacheCount.increment();
         cacheSize.addAndGet(size);
         return true;
     }
 
+    /**
+     * Allocate space from the common offset.
+     *
+     * @return the offset of the allocated space, or -1 if the cache is full
+     */
+    private long allocate(int size, int alignedSize) {
+        while (true) {
+            long offset = cacheOffset.getAndAdd(alignedSize);
+            int localOffset = (int) (offset & segmentOffsetMask);
+
+            if ((offset + size) > maxCacheSize) {
+                // Cache is full
+                return -1;
+            } else if (maxSegmentSize - localOffset < size) {
+                // If an entry is at the end of a segment, we need to get a new offset and try
+                // again in next segment
+                continue;
+            } else {
+                // Found a good offset
+                return offset;
+            }
+        }
+    }
+
+    /**
+     * Allocate space from the chunk of the arena of the current thread.
+     *
+     * @return the offset of the allocated space, or -1 if the cache is full
+     */
+    private long allocateFromArena(int size, int alignedSize) {
+        if (alignedSize > arenaChunkSize) {
+            // Entries larger than a chunk are allocated from the common offset, keeping it aligned to the chunk size
+            int chunkAlignedSize = (alignedSize + arenaChunkSize - 1) / arenaChunkSize * arenaChunkSize;
+            return allocate(size, chunkAlignedSize);
+        }
+
+        Arena arena = arenas[(int) (Thread.currentThread().getId() % arenas.length)];
+        while (true) {
+            Chunk chunk = arena.chunk;
+            long offset = chunk.position.getAndAdd(alignedSize);
+            if (offset + size <= chunk.end) {
+                return offset;
+            }
+
+            // The chunk is exhausted, only one thread of the arena gets the next chunk
+            synchronized (arena) {
+                if (arena.chunk == chunk) {
+                    long chunkStart = allocate(size, arenaChunkSize);
+                    if (chunkStart < 0) {
+                        return -1;
+                    }
+                    arena.chunk = new Chunk(chunkStart, Math.min(chunkStart + arenaChunkSize, maxCacheSize));
+                }
+            }
+        }
+    }
+
+    private void addToRun(long ledgerId, long entryId) {
+        if (ledgerRuns.computeIfAbsent(ledgerId, l -> new LedgerRun()).add(entryId)
+                && runRanges.incrementAndGet() > maxRunRanges) {
+            // Too many entries added out of order or with gaps, iterate through the sorted index instead
+            runsDropped = true;
+            ledgerRuns.clear();
+            log.info("Dropped the ledger runs of the write cache after {} ranges", maxRunRanges);
+        }
+    }
+
     public ByteBuf get(long ledgerId, long entryId) {
         LongPair result = index.get(ledgerId, entryId);
         if (result == null) {
@@ -221,66 +371,199 @@ public class WriteCache implements Closeable {
         sortedEntriesLock.lock();
 
         try {
-            int entriesToSort = (int) index.size();
-            int arrayLen = entriesToSort * 4;
-            if (sortedEntries == null || sortedEntries.length < arrayLen) {
-                sortedEntries = new long[(int) (arrayLen * 2)];
-            }
-
             long startTime = MathUtils.nowInNano();
 
-            sortedEntriesIdx = 0;
-            index.forEach((ledgerId, entryId, offset, length) -> {
-                if (deletedLedgers.contains(ledgerId)) {
-                    // Ignore deleted ledgers
-                    return;
+            ByteBuf[] entrySegments = entrySegments();
+            if (runsDropped) {
+                long[] sortedEntries = sortedIndexEntries();
+                forEachSortedEntry(sortedEntries, entrySegments, consumer, 1, 0);
+            } else {
+                for (long ledgerId : sortedLedgerIds()) {
+                    forEachEntryOfLedger(ledgerId, entrySegments, consumer);
                 }
-
-                sortedEntries[sortedEntriesIdx] = ledgerId;
-                sortedEntries[sortedEntriesIdx + 1] = entryId;
-                sortedEntries[sortedEntriesIdx + 2] = offset;
-                sortedEntries[sortedEntriesIdx + 3] = length;
-                sortedEntriesIdx += 4;
-            });
-
-            if (log.isDebugEnabled()) {
-                log.debug("iteration took {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
             }
-            startTime = MathUtils.nowInNano();
 
-            // Sort entries by (ledgerId, entryId) maintaining the 4 items groups
-            ArrayGroupSort.sort(sortedEntries, 0, sortedEntriesIdx);
             if (log.isDebugEnabled()) {
-                log.debug("sorting {} ms", (MathUtils.elapsedNanos(startTime) / 1e6));
+                log.debug("entry log adding {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
             }
-            startTime = MathUtils.nowInNano();
+        } finally {
+            sortedEntriesLock.unlock();
+        }
+    }
+
+    /**
+     * Iterate through the stored entries with several threads of the executor.
+     *
+     * <p>The ledgers are split in {@code parallelism} partitions, by ledger id modulo {@code parallelism}, and each
+     * partition is iterated by one thread, in the same order as {@link #forEach(EntryConsumer)}. The consumer is then
+     * called concurrently, but the entries of a ledger are always passed in order by the same thread.
+     */
+    public void forEach(EntryConsumer consumer, ExecutorService executor, int parallelism) throws IOException {
+        if (parallelism <= 1) {
+            forEach(consumer);
+            return;
+        }
+
+        sortedEntriesLock.lock();
 
-            ByteBuf[] entrySegments = new ByteBuf[segmentsCount];
-            for (int i = 0; i < segmentsCount; i++) {
-                entrySegments[i] = cacheSegments[i].slice(0, cacheSegments[i].capacity());
+        try {
+            long startTime = MathUtils.nowInNano();
+            long[] ledgerIds = runsDropped ? null : sortedLedgerIds();
+            long[] sortedEntries = runsDropped ? sortedIndexEntries() : null;
+
+            List<Future<Void>> partitions = new ArrayList<>(parallelism);
+            for (int i = 0; i < parallelism; i++) {
+                final int partition = i;
+                partitions.add(executor.submit(() -> {
+                    ByteBuf[] entrySegments = entrySegments();
+                    if (sortedEntries != null) {
+                        forEachSortedEntry(sortedEntries, entrySegments, consumer, parallelism, partition);
+                        return null;
+                    }
+                    for (long ledgerId : ledgerIds) {
+                        if (Math.floorMod(ledgerId, (long) parallelism) == partition) {
+                            forEachEntryOfLedger(ledgerId, entrySegments, consumer);
+                        }
+                    }
+                    return null;
+                }));
             }
 
-            for (int i = 0; i < sortedEntriesIdx; i += 4) {
-                long ledgerId = sortedEntries[i];
-                long entryId = sortedEntries[i + 1];
-                long offset = sortedEntries[i + 2];
-                long length = sortedEntries[i + 3];
-
-                int localOffset = (int) (offset & segmentOffsetMask);
-                int segmentIdx = (int) (offset >>> segmentOffsetBits);
-                ByteBuf entry = entrySegments[segmentIdx];
-                entry.setIndex(localOffset, localOffset + (int) length);
-                consumer.accept(ledgerId, entryId, entry);
+            IOException exception = null;
+            for (Future<Void> partition : partitions) {
+                try {
+                    partition.get();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    if (exception == null) {
+                        exception = new IOException("Interrupted while iterating the write cache", ie);
+                    }
+                } catch (ExecutionException ee) {
+                    if (exception == null) {
+                        exception = ee.getCause() instanceof IOException ? (IOException) ee.getCause()
+                                : new IOException("Failed to iterate the write cache", ee.getCause());
+                    }
+                }
+            }
+            if (exception != null) {
+                throw exception;
             }
 
             if (log.isDebugEnabled()) {
-                log.debug("entry log adding {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
+                log.debug("entry log adding with {} threads {} ms", parallelism,
+                        MathUtils.elapsedNanos(startTime) / 1e6);
             }
         } finally {
             sortedEntriesLock.unlock();
         }
     }
 
+    private long[] sortedLedgerIds() {
+        long startTime = MathUtils.nowInNano();
+
+        long[] ledgerIds = new long[(int) ledgerRuns.size()];
+        int ledgersCount = 0;
+        for (long ledgerId : ledgerRuns.keys()) {
+            if (ledgersCount == ledgerIds.length) {
+                ledgerIds = Arrays.copyOf(ledgerIds, ledgersCount * 2 + 1);
+            }
+            ledgerIds[ledgersCount++] = ledgerId;
+        }
+        Arrays.sort(ledgerIds, 0, ledgersCount);
+
+        if (log.isDebugEnabled()) {
+            log.debug("sorting {} ledgers {} ms", ledgersCount, MathUtils.elapsedNanos(startTime) / 1e6);
+        }
+        return ledgersCount == ledgerIds.length ? ledgerIds : Arrays.copyOf(ledgerIds, ledgersCount);
+    }
+
+    private ByteBuf[] entrySegments() {
+        ByteBuf[] entrySegments = new ByteBuf[segmentsCount];
+        for (int i = 0; i < segmentsCount; i++) {
+            entrySegments[i] = cacheSegments[i].slice(0, cacheSegments[i].capacity());
+        }
+        return entrySegments;
+    }
+
+    /**
+     * Copy the entries of the index, except the ones of the deleted ledgers, and sort them by (ledgerId, entryId).
+     *
+     * @return groups of (ledgerId, entryId, offset, length)
+     */
+    private long[] sortedIndexEntries() {
+        long startTime = MathUtils.nowInNano();
+
+        long[] sortedEntries = new long[(int) index.size() * 4];
+        int[] sortedEntriesIdx = new int[1];
+        index.forEach((ledgerId, entryId, offset, length) -> {
+            if (deletedLedgers.contains(ledgerId) || sortedEntriesIdx[0] == sortedEntries.length) {
+                // Ignore deleted ledgers
+                return;
+            }
+
+            int i = sortedEntriesIdx[0];
+            sortedEntries[i] = ledgerId;
+            sortedEntries[i + 1] = entryId;
+            sortedEntries[i + 2] = offset;
+            sortedEntries[i + 3] = length;
+            sortedEntriesIdx[0] += 4;
+        });
+
+        // Sort entries by (ledgerId, entryId) maintaining the 4 items groups
+        ArrayGroupSort.sort(sortedEntries, 0, sortedEntriesIdx[0]);
+        if (log.isDebugEnabled()) {
+            log.debug("sorting {} entries {} ms", sortedEntriesIdx[0] / 4, MathUtils.elapsedNanos(startTime) / 1e6);
+        }
+        return sortedEntriesIdx[0] == sortedEntries.length ? sortedEntries
+                : Arrays.copyOf(sortedEntries, sortedEntriesIdx[0]);
+    }
+
+    private void forEachSortedEntry(long[] sortedEntries, ByteBuf[] entrySegments, EntryConsumer consumer,
+                                    int parallelism, int partition) throws IOException {
+        for (int i = 0; i < sortedEntries.length; i += 4) {
+            long ledgerId = sortedEntries[i];
+            if (parallelism > 1 && Math.floorMod(ledgerId, (long) parallelism) != partition) {
+                continue;
+            }
+            accept(ledgerId, sortedEntries[i + 1], sortedEntries[i + 2], sortedEntries[i + 3], entrySegments,
+                    consumer);
+        }
+    }
+
+    private void forEachEntryOfLedger(long ledgerId, ByteBuf[] entrySegments, EntryConsumer consumer)
+            throws IOException {
+        if (deletedLedgers.contains(ledgerId)) {
+            // Ignore deleted ledgers
+            return;
+        }
+
+        LedgerRun run = ledgerRuns.get(ledgerId);
+        long[] ranges = run.sort();
+        int runSize = run.size;
+        for (int i = 0; i < runSize; i += 2) {
+            for (long entryId = ranges[i]; entryId <= ranges[i + 1]; entryId++) {
+                LongPair location = index.get(ledgerId, entryId);
+                if (location != null) {
+                    accept(ledgerId, entryId, location.first, location.second, entrySegments, consumer);
+                }
+            }
+        }
+    }
+
+    private void accept(long ledgerId, long entryId, long offset, long length, ByteBuf[] entrySegments,
+                        EntryConsumer consumer) throws IOException {
+        int localOffset = (int) (offset & segmentOffsetMask);
+        int segmentIdx = (int) (offset >>> segmentOffsetBits);
+        ByteBuf entry = entrySegments[segmentIdx];
+        entry.setIndex(localOffset, localOffset + (int) length);
+        consumer.accept(ledgerId, entryId, entry);
+    }
+
+    @VisibleForTesting
+    boolean areLedgerRunsDropped() {
+        return runsDropped;
+    }
+
     public long size() {
         return cacheSize.get();
     }
@@ -304,8 +587,71 @@ public class WriteCache implements Closeable {
     }
 
     private final ReentrantLock sortedEntriesLock = new ReentrantLock();
-    private long[] sortedEntries;
-    private int sortedEntriesIdx;
+
+    // Most ledgers are written in order, runs start small and double when full
+    private static final int INITIAL_RUN_RANGES = 2;
+
+    /**
+     * Entry ids of a ledger, as ranges of consecutive ids in the order in which they were added to the cache.
+     */
+    private static final class LedgerRun {
+        // Pairs of (firstEntryId, lastEntryId)
+        private long[] ranges = new long[INITIAL_RUN_RANGES * 2];
+        private int size;
+        private boolean sorted = true;
+
+        /**
+         * @return whether a new range was started
+         */
+        synchronized boolean add(long entryId) {
+            if (size > 0) {
+                long lastEntryId = ranges[size - 1];
+                if (entryId == lastEntryId + 1) {
+                    ranges[size - 1] = entryId;
+                    return false;
+                } else if (entryId <= lastEntryId) {
+                    sorted = false;
+                }
+            }
+            if (size == ranges.length) {
+                ranges = Arrays.copyOf(ranges, ranges.length * 2);
+            }
+
+            ranges[size] = entryId;
+            ranges[size + 1] = entryId;
+            size += 2;
+            return true;
+        }
+
+        /**
+         * Sort the ranges and merge the overlapping ones, if the entries were not added in order. An entry added
+         * more than once is then only in one range.
+         */
+        synchronized long[] sort() {
+            if (!sorted) {
+                long[] groups = new long[size * 2];
+                for (int i = 0; i < size; i += 2) {
+                    groups[i * 2] = ranges[i];
+                    groups[i * 2 + 1] = ranges[i + 1];
+                }
+                ArrayGroupSort.sort(groups, 0, groups.length);
+
+                int merged = 0;
+                for (int i = 0; i < groups.length; i += 4) {
+                    if (merged > 0 && groups[i] <= ranges[merged - 1] + 1) {
+                        ranges[merged - 1] = Math.max(ranges[merged - 1], groups[i + 1]);
+                    } else {
+                        ranges[merged] = groups[i];
+                        ranges[merged + 1] = groups[i + 1];
+                        merged += 2;
+                    }
+                }
+                size = merged;
+                sorted = true;
+            }
+            return ranges;
+        }
+    }
 
     private static final Logger log = LoggerFactory.getLogger(WriteCache.class);
 }
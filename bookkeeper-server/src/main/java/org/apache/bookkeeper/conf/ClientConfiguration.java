@@ -204,6 +204,10 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     //For batch read api, it the batch read is not stable, we can fail back to single read by this config.
     protected static final String BATCH_READ_ENABLED = "batchReadEnabled";
 
+    // Coalescing of small add requests in a single frame, with the v2 wire protocol
+    protected static final String BATCHED_ADD_MAX_ENTRIES = "batchedAddMaxEntries";
+    protected static final String BATCHED_ADD_MAX_ENTRY_SIZE = "batchedAddMaxEntrySize";
+
     /**
      * Construct a default client-side configuration.
      */
@@ -2084,6 +2088,58 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return getBoolean(BATCH_READ_ENABLED, true);
     }
 
+    /**
+     * Get the max number of add requests coalesced in a single frame sent to a bookie.
+     *
+     * <p>When greater than 1, the small add requests issued while a channel is busy are sent together in a
+     * batched add frame. This is only used with the v2 wire protocol, and requires bookies that support batched
+     * add requests.
+     *
+     * <p>The default is 0, which disables the batching.
+     *
+     * @return the max number of add requests in a batch.
+     */
+    public int getBatchedAddMaxEntries() {
+        return getInt(BATCHED_ADD_MAX_ENTRIES, 0);
+    }
+
+    /**
+     * Set the max number of add requests coalesced in a single frame sent to a bookie.
+     *
+     * @param maxEntries
+     *          the max number of add requests in a batch, 0 or 1 to disable the batching.
+     * @return client configuration.
+     * @see #getBatchedAddMaxEntries()
+     */
+    public ClientConfiguration setBatchedAddMaxEntries(int maxEntries) {
+        setProperty(BATCHED_ADD_MAX_ENTRIES, maxEntries);
+        return this;
+    }
+
+    /**
+     * Get the max size of an add request to be coalesced with others, in bytes. Larger add requests are
+     * always sent on their own.
+     *
+     * <p>The default is 256 bytes.
+     *
+     * @return the max size of a batched add request.
+     */
+    public int getBatchedAddMaxEntrySize() {
+        return getInt(BATCHED_ADD_MAX_ENTRY_SIZE, 256);
+    }
+
+    /**
+     * Set the max size of an add request to be coalesced with others, in bytes.
+     *
+     * @param maxEntrySize
+     *          the max size of a batched add request.
+     * @return client configuration.
+     */
+    public ClientConfiguration setBatchedAddMaxEntrySize(int maxEntrySize) {
+        setProperty(BATCHED_ADD_MAX_ENTRY_SIZE, maxEntrySize);
+        return this;
+    }
+
     @Override
     protected ClientConfiguration getThis() {
         return this;
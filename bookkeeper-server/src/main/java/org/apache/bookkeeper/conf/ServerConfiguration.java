@@ -141,6 +141,7 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String JOURNAL_WRITE_DATA = "journalWriteData";
     protected static final String JOURNAL_ADAPTIVE_GROUP_WRITES = "journalAdaptiveGroupWrites";
     protected static final String JOURNAL_MAX_GROUP_WAIT_MSEC = "journalMaxGroupWaitMSec";
+    protected static final String JOURNAL_TARGET_ADD_LATENCY_MSEC = "journalTargetAddLatencyMSec";
     protected static final String JOURNAL_BUFFERED_WRITES_THRESHOLD = "journalBufferedWritesThreshold";
     protected static final String JOURNAL_BUFFERED_ENTRIES_THRESHOLD = "journalBufferedEntriesThreshold";
     protected static final String JOURNAL_FLUSH_WHEN_QUEUE_EMPTY = "journalFlushWhenQueueEmpty";
@@ -155,6 +156,11 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String JOURNAL_PAGECACHE_FLUSH_INTERVAL_MSEC = "journalPageCacheFlushIntervalMSec";
     protected static final String JOURNAL_CHANNEL_PROVIDER = "journalChannelProvider";
     protected static final String JOURNAL_REUSE_FILES = "journalReuseFiles";
+    protected static final String JOURNAL_LOAD_AWARE_ROUTING = "journalLoadAwareRouting";
+    protected static final String JOURNAL_WRITER_STRIPES = "journalWriterStripes";
+    protected static final String JOURNAL_REPLAY_MEMORY_MAPPED = "journalReplayMemoryMapped";
+    protected static final String NUM_JOURNAL_REPLAY_THREADS = "numJournalReplayThreads";
+    protected static final String NUM_JOURNAL_REPLAY_APPLY_THREADS = "numJournalReplayApplyThreads";
     // backpressure control
     protected static final String MAX_ADDS_IN_PROGRESS_LIMIT = "maxAddsInProgressLimit";
     protected static final String MAX_READS_IN_PROGRESS_LIMIT = "maxReadsInProgressLimit";
@@ -183,6 +189,11 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
 
     protected static final String SERVER_NUM_ACCEPTOR_THREADS = "serverNumAcceptorThreads";
     protected static final String SERVER_NUM_IO_THREADS = "serverNumIOThreads";
+    protected static final String SERVER_NUM_REUSE_PORT_LISTENERS = "serverNumReusePortListeners";
+    protected static final String SERVER_IO_THREADS_CPU_AFFINITY = "serverIOThreadsCpuAffinity";
+    protected static final String SERVER_SOCK_BUSY_POLL_MICROS = "serverSockBusyPollMicros";
+    protected static final String SERVER_EVENT_LOOP_LATENCY_PROBE_INTERVAL_MS = "serverEventLoopLatencyProbeIntervalMs";
+    protected static final String ZERO_COPY_READ_MIN_ENTRY_SIZE = "zeroCopyReadMinEntrySize";
 
     // Zookeeper Parameters
     protected static final String ZK_RETRY_BACKOFF_START_MS = "zkRetryBackoffStartMs";
@@ -228,6 +239,7 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String NUM_READ_WORKER_THREADS = "numReadWorkerThreads";
     protected static final String MAX_PENDING_READ_REQUESTS_PER_THREAD = "maxPendingReadRequestsPerThread";
     protected static final String MAX_PENDING_ADD_REQUESTS_PER_THREAD = "maxPendingAddRequestsPerThread";
+    protected static final String BATCH_ADDS_PER_CHANNEL_READ_ENABLED = "batchAddsPerChannelReadEnabled";
     protected static final String NUM_LONG_POLL_WORKER_THREADS = "numLongPollWorkerThreads";
     protected static final String NUM_HIGH_PRIORITY_WORKER_THREADS = "numHighPriorityWorkerThreads";
     protected static final String READ_WORKER_THREADS_THROTTLING_ENABLED = "readWorkerThreadsThrottlingEnabled";
@@ -1032,6 +1044,118 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the ledgers are assigned to the least loaded journal, instead of the journal given by the
+     * ledger id. A ledger stays on its journal as long as it has entries that are not covered by a checkpoint
+     * yet, so that the replayed records of a ledger always come from a single journal.
+     *
+     * @return true if the journal of a ledger is chosen by the journals load
+     */
+    public boolean getJournalLoadAwareRouting() {
+        return this.getBoolean(JOURNAL_LOAD_AWARE_ROUTING, false);
+    }
+
+    /**
+     * Set whether the ledgers are assigned to the least loaded journal.
+     *
+     * @param journalLoadAwareRouting
+     *          whether to assign the ledgers to the least loaded journal
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalLoadAwareRouting(boolean journalLoadAwareRouting) {
+        setProperty(JOURNAL_LOAD_AWARE_ROUTING, journalLoadAwareRouting);
+        return this;
+    }
+
+    /**
+     * Get the number of journal writer stripes in each journal directory. Each stripe has its own journal
+     * thread, force write thread and journal files.
+     *
+     * @return number of journal writer stripes per journal directory
+     */
+    public int getJournalWriterStripes() {
+        return this.getInt(JOURNAL_WRITER_STRIPES, 1);
+    }
+
+    /**
+     * Set the number of journal writer stripes in each journal directory.
+     *
+     * @param journalWriterStripes
+     *          number of journal writer stripes per journal directory
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalWriterStripes(int journalWriterStripes) {
+        setProperty(JOURNAL_WRITER_STRIPES, journalWriterStripes);
+        return this;
+    }
+
+    /**
+     * Whether the journal files are memory mapped when they are replayed on startup. The records are then
+     * passed to the replay as views of the mapped file, instead of being copied into a buffer.
+     *
+     * @return true if the journal files are memory mapped during the replay
+     */
+    public boolean getJournalReplayMemoryMapped() {
+        return this.getBoolean(JOURNAL_REPLAY_MEMORY_MAPPED, false);
+    }
+
+    /**
+     * Set whether the journal files are memory mapped when they are replayed on startup.
+     *
+     * @param journalReplayMemoryMapped
+     *          whether to memory map the journal files during the replay
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalReplayMemoryMapped(boolean journalReplayMemoryMapped) {
+        setProperty(JOURNAL_REPLAY_MEMORY_MAPPED, journalReplayMemoryMapped);
+        return this;
+    }
+
+    /**
+     * Get the number of threads used to replay the journals on startup. The journals are independent, so
+     * each thread replays a different journal.
+     *
+     * @return the number of journal replay threads
+     */
+    public int getNumJournalReplayThreads() {
+        return this.getInt(NUM_JOURNAL_REPLAY_THREADS, 1);
+    }
+
+    /**
+     * Set the number of threads used to replay the journals on startup.
+     *
+     * @param numJournalReplayThreads
+     *          number of journal replay threads
+     * @return server configuration
+     */
+    public ServerConfiguration setNumJournalReplayThreads(int numJournalReplayThreads) {
+        setProperty(NUM_JOURNAL_REPLAY_THREADS, numJournalReplayThreads);
+        return this;
+    }
+
+    /**
+     * Get the number of threads applying the replayed journal records to the ledger storage on startup. The
+     * records are partitioned by ledger id across the threads, so that the records of a ledger are applied in
+     * order. With 0 threads, the records are applied by the threads reading the journals.
+     *
+     * @return the number of journal replay apply threads
+     */
+    public int getNumJournalReplayApplyThreads() {
+        return this.getInt(NUM_JOURNAL_REPLAY_APPLY_THREADS, 0);
+    }
+
+    /**
+     * Set the number of threads applying the replayed journal records to the ledger storage on startup.
+     *
+     * @param numJournalReplayApplyThreads
+     *          number of journal replay apply threads
+     * @return server configuration
+     */
+    public ServerConfiguration setNumJournalReplayApplyThreads(int numJournalReplayApplyThreads) {
+        setProperty(NUM_JOURNAL_REPLAY_APPLY_THREADS, numJournalReplayApplyThreads);
+        return this;
+    }
+
     /**
      * Get max number of adds in progress. 0 == unlimited.
      *
@@ -1554,6 +1678,102 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get the number of listeners bound to the bookie port with SO_REUSEPORT.
+     *
+     * <p>With more than one listener, the kernel spreads the incoming connections across the listeners, so that
+     * they are accepted by different acceptor threads. The number of acceptor threads is raised to the number of
+     * listeners if {@link #getServerNumAcceptorThreads()} is lower. This is only supported by the epoll transport.
+     *
+     * @return the number of listeners
+     */
+    public int getServerNumReusePortListeners() {
+        return getInt(SERVER_NUM_REUSE_PORT_LISTENERS, 1);
+    }
+
+    /**
+     * Set the number of listeners bound to the bookie port with SO_REUSEPORT.
+     *
+     * @see #getServerNumReusePortListeners()
+     * @param numListeners number of listeners
+     * @return server configuration
+     */
+    public ServerConfiguration setServerNumReusePortListeners(int numListeners) {
+        setProperty(SERVER_NUM_REUSE_PORT_LISTENERS, Integer.toString(numListeners));
+        return this;
+    }
+
+    /**
+     * Whether to pin each IO thread to a dedicated CPU core.
+     *
+     * <p>IO threads are always pinned when busy wait is enabled. This allows to pin them without spinning.
+     *
+     * @return true if the IO threads are pinned to CPU cores
+     */
+    public boolean isServerIOThreadsCpuAffinity() {
+        return getBoolean(SERVER_IO_THREADS_CPU_AFFINITY, false);
+    }
+
+    /**
+     * Set whether to pin each IO thread to a dedicated CPU core.
+     *
+     * @see #isServerIOThreadsCpuAffinity()
+     * @param cpuAffinity whether to pin the IO threads
+     * @return server configuration
+     */
+    public ServerConfiguration setServerIOThreadsCpuAffinity(boolean cpuAffinity) {
+        setProperty(SERVER_IO_THREADS_CPU_AFFINITY, cpuAffinity);
+        return this;
+    }
+
+    /**
+     * Get the SO_BUSY_POLL value of the connections, in microseconds.
+     *
+     * <p>When positive, the kernel busy polls the device queue for up to this time on a blocking receive, instead of
+     * waiting for the interrupt. This is only supported by the epoll transport. 0 disables busy polling.
+     *
+     * @return the busy poll time in microseconds
+     */
+    public int getServerSockBusyPollMicros() {
+        return getInt(SERVER_SOCK_BUSY_POLL_MICROS, 0);
+    }
+
+    /**
+     * Set the SO_BUSY_POLL value of the connections, in microseconds.
+     *
+     * @see #getServerSockBusyPollMicros()
+     * @param busyPollMicros busy poll time in microseconds
+     * @return server configuration
+     */
+    public ServerConfiguration setServerSockBusyPollMicros(int busyPollMicros) {
+        setProperty(SERVER_SOCK_BUSY_POLL_MICROS, Integer.toString(busyPollMicros));
+        return this;
+    }
+
+    /**
+     * Get the interval at which the scheduling latency of each IO thread is sampled.
+     *
+     * <p>A probe task is scheduled on each event loop, and the delay between its deadline and its execution is
+     * recorded, per event loop. 0 disables the probe.
+     *
+     * @return the probe interval in milliseconds
+     */
+    public long getServerEventLoopLatencyProbeIntervalMs() {
+        return getLong(SERVER_EVENT_LOOP_LATENCY_PROBE_INTERVAL_MS, 1000);
+    }
+
+    /**
+     * Set the interval at which the scheduling latency of each IO thread is sampled.
+     *
+     * @see #getServerEventLoopLatencyProbeIntervalMs()
+     * @param intervalMs probe interval in milliseconds
+     * @return server configuration
+     */
+    public ServerConfiguration setServerEventLoopLatencyProbeIntervalMs(long intervalMs) {
+        setProperty(SERVER_EVENT_LOOP_LATENCY_PROBE_INTERVAL_MS, Long.toString(intervalMs));
+        return this;
+    }
+
     /**
      * Timeout to drain the socket on close.
      *
@@ -2045,6 +2265,32 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getBoolean(READ_WORKER_THREADS_THROTTLING_ENABLED, true);
     }
 
+    /**
+     * Get the minimum size of the entries that are sent straight from the entry log files, when read.
+     *
+     * <p>Entries at least this large that are not cached in memory are handed to Netty as a file region, so that
+     * the kernel sends them to the socket without copying them in memory (sendfile). This only applies to v2
+     * protocol reads on connections without TLS, with the epoll or NIO transport, and to entry logs written
+     * by the default entry logger. 0 disables zero copy reads.
+     *
+     * @return the minimum size of the entries read with zero copy, in bytes
+     */
+    public int getZeroCopyReadMinEntrySize() {
+        return getInt(ZERO_COPY_READ_MIN_ENTRY_SIZE, 0);
+    }
+
+    /**
+     * Set the minimum size of the entries that are sent straight from the entry log files, when read.
+     *
+     * @see #getZeroCopyReadMinEntrySize()
+     * @param minEntrySize minimum size of the entries read with zero copy, in bytes, or 0 to disable it
+     * @return server configuration
+     */
+    public ServerConfiguration setZeroCopyReadMinEntrySize(int minEntrySize) {
+        setProperty(ZERO_COPY_READ_MIN_ENTRY_SIZE, minEntrySize);
+        return this;
+    }
+
 
 
     /**
@@ -2118,6 +2364,28 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getInt(MAX_PENDING_ADD_REQUESTS_PER_THREAD, 10000);
     }
 
+    /**
+     * Whether the v2 add requests decoded from a single read of a connection are processed as one batch, when the
+     * read completes. The entries of the batch are then validated and enqueued in the journal together.
+     *
+     * @return true if the adds of a channel read are batched
+     */
+    public boolean isBatchAddsPerChannelReadEnabled() {
+        return getBoolean(BATCH_ADDS_PER_CHANNEL_READ_ENABLED, false);
+    }
+
+    /**
+     * Set whether the v2 add requests decoded from a single read of a connection are processed as one batch.
+     *
+     * @see #isBatchAddsPerChannelReadEnabled()
+     * @param enabled whether to batch the adds of a channel read
+     * @return server configuration
+     */
+    public ServerConfiguration setBatchAddsPerChannelReadEnabled(boolean enabled) {
+        setProperty(BATCH_ADDS_PER_CHANNEL_READ_ENABLED, enabled);
+        return this;
+    }
+
 
 
     /**
@@ -2375,6 +2643,32 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get the p99 latency, in milliseconds, targeted for the journal add entry requests.
+     *
+     * <p>When it is set, the journal tunes its group wait online, between 0 and the max group wait, from the
+     * observed arrival rate of the entries and the fsync latency of the journal, so that the p99 add entry
+     * latency stays below this target. Default is 0, which disables the tuning and always waits for the
+     * max group wait.
+     *
+     * @return the p99 add entry latency target, in milliseconds
+     */
+    public long getJournalTargetAddLatencyMSec() {
+        return getLong(JOURNAL_TARGET_ADD_LATENCY_MSEC, 0);
+    }
+
+    /**
+     * Set the p99 latency, in milliseconds, targeted for the journal add entry requests.
+     *
+     * @param journalTargetAddLatencyMSec
+     *          p99 add entry latency target in milliseconds, or 0 to disable the group wait tuning.
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalTargetAddLatencyMSec(long journalTargetAddLatencyMSec) {
+        setProperty(JOURNAL_TARGET_ADD_LATENCY_MSEC, journalTargetAddLatencyMSec);
+        return this;
+    }
+
     /**
      * Maximum bytes to buffer to impose on a journal write to achieve grouping.
      *
@@ -23,7 +23,6 @@ package org.apache.bookkeeper.proto;
 
 import io.netty.util.Recycler;
 import org.apache.bookkeeper.client.BKException;
-import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.net.BookieId;
 import org.slf4j.MDC;
 
@@ -88,13 +87,8 @@ class AddCompletion extends CompletionValue implements BookkeeperInternalCallbac
     }
 
     @Override
-    boolean maybeTimeout() {
-        if (MathUtils.elapsedNanos(startTime) >= perChannelBookieClient.addEntryTimeoutNanos) {
-            timeout();
-            return true;
-        } else {
-            return false;
-        }
+    long timeoutNanos() {
+        return perChannelBookieClient.addEntryTimeoutNanos;
     }
 
     @Override
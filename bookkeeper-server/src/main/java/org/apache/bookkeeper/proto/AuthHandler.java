@@ -107,6 +107,15 @@ class AuthHandler {
                             req.getProtocolVersion(), BookieProtocol.EUA,
                             req.getLedgerId(), req.getEntryId());
                     NettyChannelUtil.writeAndFlushWithVoidPromise(ctx.channel(), response);
+                } else if (req.getOpCode() == BookieProtocol.BATCH_ADD_ENTRY) {
+                    for (BookieProtocol.ParsedAddRequest add : ((BookieProtocol.BatchedAddRequest) req).getRequests()) {
+                        final BookieProtocol.AddResponse response = BookieProtocol.AddResponse.create(
+                                add.getProtocolVersion(), BookieProtocol.EUA,
+                                add.getLedgerId(), add.getEntryId());
+                        NettyChannelUtil.writeAndFlushWithVoidPromise(ctx.channel(), response);
+                        add.release();
+                        add.recycle();
+                    }
                 } else if (req.getOpCode() == BookieProtocol.READENTRY) {
                     final BookieProtocol.ReadResponse response = new BookieProtocol.ReadResponse(
                             req.getProtocolVersion(), BookieProtocol.EUA,
@@ -38,6 +38,7 @@ import io.netty.channel.DefaultEventLoopGroup;
 import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.group.ChannelGroup;
@@ -79,6 +80,7 @@ import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.net.BookieSocketAddress;
 import org.apache.bookkeeper.processor.RequestProcessor;
+import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.ThreadRegistry;
 import org.apache.bookkeeper.util.ByteBufList;
 import org.apache.bookkeeper.util.EventLoopUtil;
@@ -114,7 +116,8 @@ class BookieNettyServer {
 
     private final ByteBufAllocator allocator;
 
-    BookieNettyServer(ServerConfiguration conf, RequestProcessor processor, ByteBufAllocator allocator)
+    BookieNettyServer(ServerConfiguration conf, RequestProcessor processor, ByteBufAllocator allocator,
+                      StatsLogger statsLogger)
         throws IOException, KeeperException, InterruptedException, BookieException {
         this.allocator = allocator;
         this.maxFrameSize = conf.getNettyMaxFrameSizeBytes();
@@ -133,6 +136,8 @@ class BookieNettyServer {
             this.acceptorGroup = EventLoopUtil.getServerAcceptorGroup(conf,
                     new DefaultThreadFactory("bookie-acceptor"));
             allChannels = new CleanupChannelGroup(eventLoopGroup);
+            EventLoopLatencyProbe.start(eventLoopGroup, conf.getServerEventLoopLatencyProbeIntervalMs(),
+                    statsLogger);
         } else {
             this.eventLoopGroup = null;
             this.acceptorGroup = null;
@@ -324,13 +329,24 @@ class BookieNettyServer {
             bootstrap.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(
                     conf.getServerWriteBufferLowWaterMark(), conf.getServerWriteBufferHighWaterMark()));
 
+            int numListeners = conf.getServerNumReusePortListeners();
             if (eventLoopGroup instanceof IOUringEventLoopGroup){
                 bootstrap.channel(IOUringServerSocketChannel.class);
             } else if (eventLoopGroup instanceof EpollEventLoopGroup) {
                 bootstrap.channel(EpollServerSocketChannel.class);
+                if (numListeners > 1) {
+                    bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+                }
+                if (conf.getServerSockBusyPollMicros() > 0) {
+                    bootstrap.childOption(EpollChannelOption.SO_BUSY_POLL, conf.getServerSockBusyPollMicros());
+                }
             } else {
                 bootstrap.channel(NioServerSocketChannel.class);
             }
+            if (numListeners > 1 && !(eventLoopGroup instanceof EpollEventLoopGroup)) {
+                LOG.warn("SO_REUSEPORT listeners are only supported with epoll, binding a single listener");
+                numListeners = 1;
+            }
 
             bootstrap.childHandler(new ChannelInitializer<SocketChannel>() {
                 @Override
@@ -375,6 +391,16 @@ class BookieNettyServer {
                     // bus. We should get rid of this at some point
                     conf.setBookiePort(((InetSocketAddress) listen.localAddress()).getPort());
                 }
+
+                // The kernel spreads the incoming connections across the listeners sharing the port, which are
+                // registered on different acceptor threads
+                int port = ((InetSocketAddress) listen.localAddress()).getPort();
+                for (int i = 1; i < numListeners; i++) {
+                    bootstrap.bind(address.getAddress(), port).sync();
+                }
+                if (numListeners > 1) {
+                    LOG.info("Bound {} SO_REUSEPORT listeners to port {}", numListeners, port);
+                }
             }
 
         }
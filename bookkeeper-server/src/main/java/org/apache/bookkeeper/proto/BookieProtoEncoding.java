@@ -33,9 +33,12 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelOutboundHandlerAdapter;
 import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.CorruptedFrameException;
 import io.netty.util.ReferenceCountUtil;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.bookkeeper.proto.BookieProtocol.PacketHeader;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
@@ -89,6 +92,9 @@ public class BookieProtoEncoding {
     public static class RequestEnDeCoderPreV3 implements EnDecoder {
         final ExtensionRegistry extensionRegistry;
 
+        // Smallest add request of an add batch: the request type, the master key, the ledger id and the entry id
+        private static final int MIN_ADD_REQUEST_SIZE = 4 + BookieProtocol.MASTER_KEY_LENGTH + 8 + 8;
+
         //This empty master key is used when an empty password is provided which is the hash of an empty string
         private static final byte[] emptyPasswordMasterKey;
         static {
@@ -179,18 +185,41 @@ public class BookieProtoEncoding {
             long entryId = BookieProtocol.INVALID_ENTRY_ID;
 
             switch (opCode) {
-            case BookieProtocol.ADDENTRY: {
-                byte[] masterKey = readMasterKey(packet);
-
-                // Read ledger and entry id without advancing the reader index
-                ledgerId = packet.getLong(packet.readerIndex());
-                entryId = packet.getLong(packet.readerIndex() + 8);
-                // mark the reader index so that any resets will return to the
-                // start of the payload
-                packet.markReaderIndex();
-                return BookieProtocol.ParsedAddRequest.create(
-                        version, ledgerId, entryId, flags,
-                        masterKey, packet);
+            case BookieProtocol.ADDENTRY:
+                return decodeAddRequest(version, flags, packet);
+
+            case BookieProtocol.BATCH_ADD_ENTRY: {
+                int count = packet.readInt();
+                if (count < 0 || count > packet.readableBytes() / (4 /* frame size */ + MIN_ADD_REQUEST_SIZE)) {
+                    throw new CorruptedFrameException("Invalid number of add requests in add batch = " + count);
+                }
+                List<BookieProtocol.ParsedAddRequest> requests = new ArrayList<>(count);
+                try {
+                    for (int i = 0; i < count; i++) {
+                        int frameSize = packet.readableBytes() >= 4 ? packet.readInt() : -1;
+                        if (frameSize < MIN_ADD_REQUEST_SIZE || frameSize > packet.readableBytes()) {
+                            throw new CorruptedFrameException("Invalid add request size in add batch = "
+                                    + frameSize + ", remaining bytes = " + packet.readableBytes());
+                        }
+                        ByteBuf addPacket = packet.slice(packet.readerIndex(), frameSize);
+                        packet.skipBytes(frameSize);
+
+                        int addPacketHeader = addPacket.readInt();
+                        if (PacketHeader.getOpCode(addPacketHeader) != BookieProtocol.ADDENTRY) {
+                            throw new IllegalStateException("Received unknown request op code in add batch = "
+                                    + PacketHeader.getOpCode(addPacketHeader));
+                        }
+                        requests.add(decodeAddRequest(PacketHeader.getVersion(addPacketHeader),
+                                PacketHeader.getFlags(addPacketHeader), addPacket));
+                    }
+                } catch (RuntimeException e) {
+                    for (BookieProtocol.ParsedAddRequest request : requests) {
+                        request.release();
+                        request.recycle();
+                    }
+                    throw e;
+                }
+                return new BookieProtocol.BatchedAddRequest(version, flags, requests);
             }
 
             case BookieProtocol.READENTRY:
@@ -229,6 +258,20 @@ public class BookieProtoEncoding {
             }
         }
 
+        private static BookieProtocol.ParsedAddRequest decodeAddRequest(byte version, short flags, ByteBuf packet) {
+            byte[] masterKey = readMasterKey(packet);
+
+            // Read ledger and entry id without advancing the reader index
+            long ledgerId = packet.getLong(packet.readerIndex());
+            long entryId = packet.getLong(packet.readerIndex() + 8);
+            // mark the reader index so that any resets will return to the
+            // start of the payload
+            packet.markReaderIndex();
+            return BookieProtocol.ParsedAddRequest.create(
+                    version, ledgerId, entryId, flags,
+                    masterKey, packet);
+        }
+
         private static byte[] readMasterKey(ByteBuf packet) {
             byte[] masterKey = null;
 
@@ -267,6 +310,17 @@ public class BookieProtoEncoding {
 
         private static final int RESPONSE_HEADERS_SIZE = 24;
 
+        static ByteBuf encodeReadResponseHeaders(BookieProtocol.Response r, int payloadSize,
+                                                 ByteBufAllocator allocator) {
+            ByteBuf buf = allocator.buffer(4 /* frame size */ + RESPONSE_HEADERS_SIZE);
+            buf.writeInt(RESPONSE_HEADERS_SIZE + payloadSize);
+            buf.writeInt(PacketHeader.toInt(r.getProtocolVersion(), r.getOpCode(), (short) 0));
+            buf.writeInt(r.getErrorCode());
+            buf.writeLong(r.getLedgerId());
+            buf.writeLong(r.getEntryId());
+            return buf;
+        }
+
         @Override
         public Object encode(Object msg, ByteBufAllocator allocator)
                 throws Exception {
@@ -595,6 +649,12 @@ public class BookieProtoEncoding {
                 ctx.write(msg, promise);
             } else if (msg instanceof BookkeeperProtocol.Response) {
                 ctx.write(repV3.encode(msg, ctx.alloc()), promise);
+            } else if (msg instanceof BookieProtocol.FileRegionReadResponse) {
+                // The entry follows its headers as a file region, that the kernel sends straight from the file
+                BookieProtocol.FileRegionReadResponse rr = (BookieProtocol.FileRegionReadResponse) msg;
+                ctx.write(ResponseEnDeCoderPreV3.encodeReadResponseHeaders(rr, (int) rr.getData().count(),
+                        ctx.alloc()), ctx.voidPromise());
+                ctx.write(rr.getData(), promise);
             } else if (msg instanceof BookieProtocol.Response) {
                 ctx.write(repPreV3.encode(msg, ctx.alloc()), promise);
             } else {
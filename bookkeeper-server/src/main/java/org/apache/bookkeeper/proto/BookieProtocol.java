@@ -22,10 +22,12 @@ package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.ReferenceCounted;
+import java.util.List;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AuthMessage;
 import org.apache.bookkeeper.util.ByteBufList;
 
@@ -134,6 +136,12 @@ public interface BookieProtocol {
     byte WRITE_LAC = 5;
     byte GET_BOOKIE_INFO = 6;
     byte BATCH_READ_ENTRY = 7;
+    /**
+     * A batch of add entry requests sent in a single frame. The payload is a 4-byte integer with the number of
+     * requests, followed by each of them framed exactly as a {@link #ADDENTRY} request. Each entry of the batch
+     * gets its own add response.
+     */
+    byte BATCH_ADD_ENTRY = 8;
 
     /**
      * The error code that indicates success.
@@ -421,6 +429,27 @@ public interface BookieProtocol {
         }
     }
 
+    /**
+     * The add requests of a {@link #BATCH_ADD_ENTRY} frame, when processing them on the bookie side.
+     */
+    class BatchedAddRequest extends Request {
+        final List<ParsedAddRequest> requests;
+
+        BatchedAddRequest(byte protocolVersion, short flags, List<ParsedAddRequest> requests) {
+            init(protocolVersion, BATCH_ADD_ENTRY, -1, INVALID_ENTRY_ID, flags, null);
+            this.requests = requests;
+        }
+
+        List<ParsedAddRequest> getRequests() {
+            return requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Op(%d)[Entries:%d]", opCode, requests.size());
+        }
+    }
+
     /**
      * An authentication request.
      */
@@ -526,7 +555,63 @@ public interface BookieProtocol {
 
         @Override
         public ReferenceCounted retain(int increment) {
-            return data.retain(increment);
+            data.retain(increment);
+            return this;
+        }
+
+        @Override
+        public ReferenceCounted touch() {
+            data.touch();
+            return this;
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            data.touch(hint);
+            return this;
+        }
+
+        @Override
+        public boolean release() {
+            return data.release();
+        }
+
+        @Override
+        public boolean release(int decrement) {
+            return data.release(decrement);
+        }
+    }
+
+    /**
+     * A read response whose entry is sent straight from the storage file.
+     */
+    class FileRegionReadResponse extends Response implements ReferenceCounted {
+        final FileRegion data;
+
+        FileRegionReadResponse(byte protocolVersion, int errorCode, long ledgerId, long entryId, FileRegion data) {
+            init(protocolVersion, READENTRY, errorCode, ledgerId, entryId);
+            this.data = data;
+        }
+
+        FileRegion getData() {
+            return data;
+        }
+
+        @Override
+        public int refCnt() {
+            return data.refCnt();
+        }
+
+        @Override
+        public ReferenceCounted retain() {
+            data.retain();
+            return this;
+        }
+
+        @Override
+        public ReferenceCounted retain(int increment) {
+            data.retain(increment);
+            return this;
         }
 
         @Override
@@ -594,7 +679,8 @@ public interface BookieProtocol {
 
         @Override
         public ReferenceCounted retain(int increment) {
-            return data.retain(increment);
+            data.retain(increment);
+            return this;
         }
 
         @Override
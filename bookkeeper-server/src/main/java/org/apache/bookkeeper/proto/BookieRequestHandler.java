@@ -25,6 +25,8 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.group.ChannelGroup;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.processor.RequestProcessor;
@@ -39,15 +41,20 @@ public class BookieRequestHandler extends ChannelInboundHandlerAdapter {
 
     private final RequestProcessor requestProcessor;
     private final ChannelGroup allChannels;
+    private final boolean batchAddsPerChannelRead;
 
     private ChannelHandlerContext ctx;
 
     private ByteBuf pendingSendResponses = null;
     private int maxPendingResponsesSize = DEFAULT_PENDING_RESPONSE_SIZE;
 
+    // Add requests decoded from the current read, processed together when the read completes, if enabled
+    private List<BookieProtocol.ParsedAddRequest> pendingAdds = null;
+
     BookieRequestHandler(ServerConfiguration conf, RequestProcessor processor, ChannelGroup allChannels) {
         this.requestProcessor = processor;
         this.allChannels = allChannels;
+        this.batchAddsPerChannelRead = conf.isBatchAddsPerChannelReadEnabled();
     }
 
     public ChannelHandlerContext ctx() {
@@ -69,10 +76,13 @@ public class BookieRequestHandler extends ChannelInboundHandlerAdapter {
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         log.info("Channels disconnected: {}", ctx.channel());
+        releasePendingAdds();
     }
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        // The adds decoded before the error are not processed
+        releasePendingAdds();
         if (cause instanceof ClosedChannelException) {
             log.info("Client died before request could be completed on {}", ctx.channel(), cause);
             return;
@@ -87,9 +97,64 @@ public class BookieRequestHandler extends ChannelInboundHandlerAdapter {
             ctx.fireChannelRead(msg);
             return;
         }
+        if (!batchAddsPerChannelRead) {
+            requestProcessor.processRequest(msg, this);
+            return;
+        }
+        if (msg instanceof BookieProtocol.ParsedAddRequest) {
+            addPendingAdd((BookieProtocol.ParsedAddRequest) msg);
+            return;
+        } else if (msg instanceof BookieProtocol.BatchedAddRequest) {
+            ((BookieProtocol.BatchedAddRequest) msg).getRequests().forEach(this::addPendingAdd);
+            return;
+        }
+        // Keep the order of the requests
+        processPendingAdds();
         requestProcessor.processRequest(msg, this);
     }
 
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        processPendingAdds();
+        super.channelReadComplete(ctx);
+    }
+
+    private void addPendingAdd(BookieProtocol.ParsedAddRequest add) {
+        if (pendingAdds == null) {
+            pendingAdds = new ArrayList<>();
+        }
+        pendingAdds.add(add);
+    }
+
+    /**
+     * Process all the adds of the current read as a single batch, so that they are validated and enqueued in the
+     * journal together, and their responses are flushed together.
+     */
+    private void processPendingAdds() {
+        if (pendingAdds == null) {
+            return;
+        }
+        List<BookieProtocol.ParsedAddRequest> adds = pendingAdds;
+        pendingAdds = null;
+        if (adds.size() == 1) {
+            requestProcessor.processRequest(adds.get(0), this);
+        } else {
+            requestProcessor.processRequest(new BookieProtocol.BatchedAddRequest(
+                    BookieProtocol.CURRENT_PROTOCOL_VERSION, BookieProtocol.FLAG_NONE, adds), this);
+        }
+    }
+
+    private void releasePendingAdds() {
+        if (pendingAdds == null) {
+            return;
+        }
+        for (BookieProtocol.ParsedAddRequest add : pendingAdds) {
+            add.release();
+            add.recycle();
+        }
+        pendingAdds = null;
+    }
+
     public synchronized void prepareSendResponseV2(int rc, BookieProtocol.ParsedAddRequest req) {
         if (pendingSendResponses == null) {
             pendingSendResponses = ctx().alloc().directBuffer(maxPendingResponsesSize);
@@ -35,6 +35,8 @@ import io.netty.handler.ssl.SslHandler;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
@@ -131,6 +133,8 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     private final boolean throttleReadResponses;
 
+    private final int zeroCopyReadMinEntrySize;
+
     public BookieRequestProcessor(ServerConfiguration serverCfg, Bookie bookie, StatsLogger statsLogger,
                                   SecurityHandlerFactory shFactory, ByteBufAllocator allocator,
                                   ChannelGroup allChannels) throws SecurityException {
@@ -141,6 +145,7 @@ public class BookieRequestProcessor implements RequestProcessor {
         this.preserveMdcForTaskExecution = serverCfg.getPreserveMdcForTaskExecution();
         this.bookie = bookie;
         this.throttleReadResponses = serverCfg.isReadWorkerThreadsThrottlingEnabled();
+        this.zeroCopyReadMinEntrySize = serverCfg.getZeroCopyReadMinEntrySize();
         this.readThreadPool = createExecutor(
                 this.serverCfg.getNumReadWorkerThreads(),
                 "BookieReadThreadPool",
@@ -377,6 +382,10 @@ public class BookieRequestProcessor implements RequestProcessor {
                     checkArgument(r instanceof BookieProtocol.ParsedAddRequest);
                     processAddRequest((BookieProtocol.ParsedAddRequest) r, requestHandler);
                     break;
+                case BookieProtocol.BATCH_ADD_ENTRY:
+                    checkArgument(r instanceof BookieProtocol.BatchedAddRequest);
+                    processBatchedAddRequest((BookieProtocol.BatchedAddRequest) r, requestHandler);
+                    break;
                 case BookieProtocol.READENTRY:
                     checkArgument(r instanceof BookieProtocol.ReadRequest);
                     processReadRequest((BookieProtocol.ReadRequest) r, requestHandler);
@@ -651,7 +660,45 @@ public class BookieRequestProcessor implements RequestProcessor {
     }
 
     private void processAddRequest(final BookieProtocol.ParsedAddRequest r, final BookieRequestHandler requestHandler) {
-        WriteEntryProcessor write = WriteEntryProcessor.create(r, requestHandler, this);
+        executeAddRequest(WriteEntryProcessor.create(r, requestHandler, this));
+    }
+
+    private void processBatchedAddRequest(final BookieProtocol.BatchedAddRequest r,
+                                          final BookieRequestHandler requestHandler) {
+        // The entries that go to the same write thread are chained and added by a single task, in order, so that
+        // they are validated together and enqueued in the journal at once
+        Map<Object, WriteEntryProcessor> heads = new IdentityHashMap<>();
+        Map<Object, WriteEntryProcessor> tails = new IdentityHashMap<>();
+        for (BookieProtocol.ParsedAddRequest add : r.getRequests()) {
+            // Do not hold the throttling permits of the chains while waiting for more
+            if (addsSemaphore != null && addsSemaphore.availablePermits() == 0 && !heads.isEmpty()) {
+                heads.values().forEach(this::executeAddRequest);
+                heads.clear();
+                tails.clear();
+            }
+
+            WriteEntryProcessor write = WriteEntryProcessor.create(add, requestHandler, this);
+            Object thread = chooseWriteThread(add);
+            WriteEntryProcessor tail = tails.put(thread, write);
+            if (tail == null) {
+                heads.put(thread, write);
+            } else {
+                tail.nextInBatch = write;
+            }
+        }
+        heads.values().forEach(this::executeAddRequest);
+    }
+
+    private Object chooseWriteThread(BookieProtocol.ParsedAddRequest r) {
+        final OrderedExecutor threadPool = r.isHighPriority() ? highPriorityThreadPool : writeThreadPool;
+        if (null == threadPool) {
+            return Boolean.valueOf(r.isHighPriority());
+        }
+        return threadPool.chooseThread(r.getLedgerId());
+    }
+
+    private void executeAddRequest(WriteEntryProcessor write) {
+        final BookieProtocol.ParsedAddRequest r = write.request;
 
         // If it's a high priority add (usually as part of recovery process), we want to make sure it gets
         // executed as fast as possible, so bypass the normal writeThreadPool and execute in highPriorityThreadPool
@@ -672,15 +719,22 @@ public class BookieRequestProcessor implements RequestProcessor {
                     LOG.debug("Failed to process request to add entry at {}:{}. Too many pending requests", r.ledgerId,
                             r.entryId);
                 }
-                getRequestStats().getAddEntryRejectedCounter().inc();
-
-                write.sendWriteReqResponse(
-                    BookieProtocol.ETOOMANYREQUESTS,
-                    ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r),
-                    requestStats.getAddRequestStats());
-                r.release();
-                r.recycle();
-                write.recycle();
+                // Reject the following entries of the batch as well
+                WriteEntryProcessor rejected = write;
+                while (rejected != null) {
+                    getRequestStats().getAddEntryRejectedCounter().inc();
+
+                    WriteEntryProcessor next = rejected.nextInBatch;
+                    BookieProtocol.ParsedAddRequest request = rejected.request;
+                    rejected.sendWriteReqResponse(
+                        BookieProtocol.ETOOMANYREQUESTS,
+                        ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, request),
+                        requestStats.getAddRequestStats());
+                    request.release();
+                    request.recycle();
+                    rejected.recycle();
+                    rejected = next;
+                }
             }
         }
     }
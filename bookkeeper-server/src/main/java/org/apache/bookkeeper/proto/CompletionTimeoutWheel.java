@@ -0,0 +1,189 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.proto;
+
+import io.netty.util.internal.MathUtil;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiPredicate;
+
+/**
+ * Hashed timing wheel holding the deadlines of the pending completions of a channel.
+ *
+ * <p>Each completion is placed in the slot of the tick in which its deadline falls, so that a timeout check only
+ * needs to visit the slots of the ticks elapsed since the previous check, instead of every pending completion.
+ * Completions whose deadline is more than one wheel revolution away stay in their slot for the following rounds.
+ *
+ * <p>A completion records its own position in the wheel, so it is removed in constant time when its response
+ * arrives. The same completion value must not be added twice before being removed.
+ */
+class CompletionTimeoutWheel {
+
+    private static final int INITIAL_SLOT_CAPACITY = 16;
+
+    private static final class Slot {
+        CompletionKey[] keys = new CompletionKey[INITIAL_SLOT_CAPACITY];
+        CompletionValue[] values = new CompletionValue[INITIAL_SLOT_CAPACITY];
+        long[] deadlines = new long[INITIAL_SLOT_CAPACITY];
+        int size;
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final long tickNanos;
+
+    // Tick of the last timeout check. Its slot is checked again on the next one, since it was not over yet.
+    private volatile long lastTick;
+
+    CompletionTimeoutWheel(long tickNanos, long maxTimeoutNanos, long nowNanos) {
+        this.tickNanos = Math.max(1, tickNanos);
+        int ticks = (int) Math.min(maxTimeoutNanos / this.tickNanos + 2, 1 << 16);
+        this.slots = new Slot[MathUtil.findNextPositivePowerOfTwo(ticks)];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = slots.length - 1;
+        this.lastTick = Math.floorDiv(nowNanos, this.tickNanos);
+    }
+
+    void add(CompletionKey key, CompletionValue value, long deadlineNanos) {
+        // A deadline already behind the last check goes to the slot that is checked next
+        long tick = Math.max(Math.floorDiv(deadlineNanos, tickNanos), lastTick);
+        int slotIdx = (int) (tick & mask);
+        Slot slot = slots[slotIdx];
+        synchronized (slot) {
+            if (slot.size == slot.values.length) {
+                int newCapacity = slot.size * 2;
+                slot.keys = Arrays.copyOf(slot.keys, newCapacity);
+                slot.values = Arrays.copyOf(slot.values, newCapacity);
+                slot.deadlines = Arrays.copyOf(slot.deadlines, newCapacity);
+            }
+            int index = slot.size++;
+            slot.keys[index] = key;
+            slot.values[index] = value;
+            slot.deadlines[index] = deadlineNanos;
+            value.timeoutSlot = slotIdx;
+            value.timeoutIndex = index;
+        }
+    }
+
+    /**
+     * Remove a completion from the wheel. It is a no-op if the completion is not in the wheel anymore.
+     */
+    void remove(CompletionValue value) {
+        int slotIdx = value.timeoutSlot;
+        if (slotIdx < 0) {
+            return;
+        }
+        Slot slot = slots[slotIdx];
+        synchronized (slot) {
+            int index = value.timeoutIndex;
+            if (value.timeoutSlot == slotIdx && index < slot.size && slot.values[index] == value) {
+                removeAt(slot, index);
+            }
+        }
+    }
+
+    /**
+     * Pass every completion whose deadline is past to the expire function, and drop it from the wheel. The expire
+     * function is called without holding the lock of any slot, so the completions it times out can be added to
+     * or removed from the wheel by their callbacks.
+     *
+     * @return the number of completions for which the expire function returned true
+     */
+    int expire(long nowNanos, BiPredicate<CompletionKey, CompletionValue> expireFunction) {
+        long currentTick = Math.floorDiv(nowNanos, tickNanos);
+        long fromTick = lastTick;
+        if (currentTick - fromTick >= slots.length) {
+            // More than a revolution went by since the last check, every slot is due
+            fromTick = currentTick - mask;
+        }
+
+        List<CompletionKey> expiredKeys = new ArrayList<>();
+        List<CompletionValue> expiredValues = new ArrayList<>();
+        for (long tick = fromTick; tick <= currentTick; tick++) {
+            Slot slot = slots[(int) (tick & mask)];
+            synchronized (slot) {
+                int index = 0;
+                while (index < slot.size) {
+                    if (nowNanos - slot.deadlines[index] < 0) {
+                        // Not due yet, either later in this tick or in a later round
+                        index++;
+                        continue;
+                    }
+                    expiredKeys.add(slot.keys[index]);
+                    expiredValues.add(slot.values[index]);
+                    removeAt(slot, index);
+                }
+                maybeShrink(slot);
+            }
+        }
+        lastTick = Math.max(lastTick, currentTick);
+
+        int expired = 0;
+        for (int i = 0; i < expiredValues.size(); i++) {
+            if (expireFunction.test(expiredKeys.get(i), expiredValues.get(i))) {
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * @return the number of completions in the wheel
+     */
+    int size() {
+        int size = 0;
+        for (Slot slot : slots) {
+            synchronized (slot) {
+                size += slot.size;
+            }
+        }
+        return size;
+    }
+
+    private static void maybeShrink(Slot slot) {
+        int capacity = slot.values.length;
+        if (capacity > INITIAL_SLOT_CAPACITY && slot.size < capacity / 4) {
+            // Give back the memory taken by a burst of requests
+            int newCapacity = Math.max(INITIAL_SLOT_CAPACITY, slot.size * 2);
+            slot.keys = Arrays.copyOf(slot.keys, newCapacity);
+            slot.values = Arrays.copyOf(slot.values, newCapacity);
+            slot.deadlines = Arrays.copyOf(slot.deadlines, newCapacity);
+        }
+    }
+
+    private static void removeAt(Slot slot, int index) {
+        slot.values[index].timeoutSlot = -1;
+        int last = --slot.size;
+        if (index != last) {
+            // Move the last element in the hole
+            slot.keys[index] = slot.keys[last];
+            slot.values[index] = slot.values[last];
+            slot.deadlines[index] = slot.deadlines[last];
+            slot.values[index].timeoutIndex = index;
+        }
+        slot.keys[last] = null;
+        slot.values[last] = null;
+    }
+}
@@ -44,6 +44,10 @@ abstract class CompletionValue {
     protected Map<String, String> mdcContextMap;
     protected PerChannelBookieClient perChannelBookieClient;
 
+    // Position in the timeout wheel of the channel, guarded by the wheel slot
+    int timeoutSlot = -1;
+    int timeoutIndex;
+
     static final Logger LOG = LoggerFactory.getLogger(CompletionValue.class);
 
     public CompletionValue(String operationName,
@@ -77,8 +81,12 @@ abstract class CompletionValue {
         }
     }
 
+    long timeoutNanos() {
+        return perChannelBookieClient.readEntryTimeoutNanos;
+    }
+
     boolean maybeTimeout() {
-        if (MathUtils.elapsedNanos(startTime) >= perChannelBookieClient.readEntryTimeoutNanos) {
+        if (MathUtils.elapsedNanos(startTime) >= timeoutNanos()) {
             timeout();
             return true;
         } else {
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.EVENT_LOOP_LATENCY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SERVER_SCOPE;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+
+/**
+ * Samples the scheduling latency of an event loop.
+ *
+ * <p>The probe is a task that reschedules itself on the event loop, and records the delay between its deadline and
+ * its execution. This is the time a request read by a busy event loop waits before being processed.
+ */
+@StatsDoc(
+    name = SERVER_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "Bookie event loop stats"
+)
+class EventLoopLatencyProbe implements Runnable {
+
+    private final EventExecutor eventLoop;
+    private final long intervalNanos;
+    @StatsDoc(
+        name = EVENT_LOOP_LATENCY,
+        help = "scheduling latency of an IO thread, labeled by event loop"
+    )
+    private final OpStatsLogger latencyStats;
+    private long deadlineNanos;
+
+    private EventLoopLatencyProbe(EventExecutor eventLoop, long intervalNanos, OpStatsLogger latencyStats) {
+        this.eventLoop = eventLoop;
+        this.intervalNanos = intervalNanos;
+        this.latencyStats = latencyStats;
+    }
+
+    /**
+     * Start a probe on each event loop of the group. The probes stop when the group is shut down.
+     */
+    static void start(EventLoopGroup group, long intervalMs, StatsLogger statsLogger) {
+        if (intervalMs <= 0) {
+            return;
+        }
+        int index = 0;
+        for (EventExecutor eventLoop : group) {
+            OpStatsLogger latencyStats = statsLogger.scopeLabel("eventLoop", String.valueOf(index++))
+                    .getOpStatsLogger(EVENT_LOOP_LATENCY);
+            new EventLoopLatencyProbe(eventLoop, TimeUnit.MILLISECONDS.toNanos(intervalMs), latencyStats)
+                    .schedule();
+        }
+    }
+
+    private void schedule() {
+        deadlineNanos = MathUtils.nowInNano() + intervalNanos;
+        try {
+            eventLoop.schedule(this, intervalNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // The event loop is shutting down
+        }
+    }
+
+    @Override
+    public void run() {
+        latencyStats.registerSuccessfulEvent(Math.max(0, MathUtils.nowInNano() - deadlineNanos),
+                TimeUnit.NANOSECONDS);
+        if (!eventLoop.isShuttingDown()) {
+            schedule();
+        }
+    }
+}
@@ -23,7 +23,6 @@ package org.apache.bookkeeper.proto;
 
 import org.apache.bookkeeper.client.BKException;
 import org.apache.bookkeeper.client.BookieInfoReader;
-import org.apache.bookkeeper.common.util.MathUtils;
 
 class GetBookieInfoCompletion extends CompletionValue {
     final BookkeeperInternalCallbacks.GetBookieInfoCallback cb;
@@ -43,13 +42,8 @@ class GetBookieInfoCompletion extends CompletionValue {
     }
 
     @Override
-    boolean maybeTimeout() {
-        if (MathUtils.elapsedNanos(startTime) >= perChannelBookieClient.getBookieInfoTimeoutNanos) {
-            timeout();
-            return true;
-        } else {
-            return false;
-        }
+    long timeoutNanos() {
+        return perChannelBookieClient.getBookieInfoTimeoutNanos;
     }
 
     @Override
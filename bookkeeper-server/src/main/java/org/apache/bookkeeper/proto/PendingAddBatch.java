@@ -0,0 +1,99 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.util.ByteBufList;
+
+/**
+ * Add requests of a channel waiting to be sent together in a {@link BookieProtocol#BATCH_ADD_ENTRY} frame.
+ *
+ * <p>The frame is a {@link ByteBufList} of the batch header followed by the add requests, which are retained
+ * and not copied.
+ */
+class PendingAddBatch {
+
+    // Frame size, packet header and number of requests
+    private static final int BATCH_HEADER_SIZE = 12;
+
+    private final ByteBufAllocator allocator;
+    private final ByteBufList requests;
+    private final List<CompletionKey> keys;
+    private int requestsSize;
+
+    PendingAddBatch(ByteBufAllocator allocator, int maxEntries) {
+        this.allocator = allocator;
+        this.requests = ByteBufList.get();
+        this.keys = new ArrayList<>(maxEntries);
+    }
+
+    /**
+     * Append an add request, already framed as a {@link BookieProtocol#ADDENTRY} request.
+     */
+    void add(CompletionKey key, ByteBuf addRequest) {
+        requests.add(addRequest.retainedDuplicate());
+        requestsSize += addRequest.readableBytes();
+        keys.add(key);
+    }
+
+    int size() {
+        return keys.size();
+    }
+
+    /**
+     * @return the size of the frame, in bytes, not including its size field
+     */
+    int frameSize() {
+        return BATCH_HEADER_SIZE - 4 + requestsSize;
+    }
+
+    List<CompletionKey> keys() {
+        return keys;
+    }
+
+    /**
+     * Get the frame to send. The batch must not be used afterwards.
+     */
+    ByteBufList toFrame() {
+        if (keys.size() == 1) {
+            // A single request is sent as a regular add request
+            return requests;
+        }
+        ByteBuf header = allocator.buffer(BATCH_HEADER_SIZE);
+        header.writeInt(frameSize());
+        header.writeInt(BookieProtocol.PacketHeader.toInt(
+                BookieProtocol.CURRENT_PROTOCOL_VERSION, BookieProtocol.BATCH_ADD_ENTRY, BookieProtocol.FLAG_NONE));
+        header.writeInt(keys.size());
+        requests.prepend(header);
+        return requests;
+    }
+
+    /**
+     * Release the add requests of a batch that is not sent.
+     */
+    void release() {
+        requests.release();
+    }
+}
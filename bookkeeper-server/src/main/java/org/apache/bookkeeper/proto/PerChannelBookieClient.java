@@ -78,6 +78,7 @@ import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
@@ -174,6 +175,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
 
     private final ConcurrentOpenHashMap<CompletionKey, CompletionValue> completionObjects =
             ConcurrentOpenHashMap.<CompletionKey, CompletionValue>newBuilder().autoShrink(true).build();
+    // Deadlines of the completions in completionObjects, so that a timeout check only visits the expired ones
+    private final CompletionTimeoutWheel completionTimeouts;
 
     // Map that hold duplicated read requests. The idea is to only use this map (synchronized) when there is a duplicate
     // read request for the same ledgerId/entryId
@@ -303,6 +306,12 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     private final boolean useV2WireProtocol;
     protected final boolean preserveMdcForTaskExecution;
 
+    private final int batchedAddMaxEntries;
+    private final int batchedAddMaxEntrySize;
+    // Small v2 add requests waiting to be sent together, guarded by pendingAddBatchLock
+    private final Object pendingAddBatchLock = new Object();
+    private PendingAddBatch pendingAddBatch = null;
+
     /**
      * The following member variables do not need to be concurrent, or volatile
      * because they are always updated under a lock.
@@ -386,8 +395,14 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         this.addEntryTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getAddEntryTimeout());
         this.readEntryTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getReadEntryTimeout());
         this.getBookieInfoTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getBookieInfoTimeout());
+        this.completionTimeouts = new CompletionTimeoutWheel(
+                TimeUnit.SECONDS.toNanos(Math.max(1, conf.getTimeoutMonitorIntervalSec())),
+                Math.max(addEntryTimeoutNanos, Math.max(readEntryTimeoutNanos, getBookieInfoTimeoutNanos)),
+                MathUtils.nowInNano());
         this.startTLSTimeout = conf.getStartTLSTimeout();
         this.useV2WireProtocol = conf.getUseV2WireProtocol();
+        this.batchedAddMaxEntries = conf.getBatchedAddMaxEntries();
+        this.batchedAddMaxEntrySize = conf.getBatchedAddMaxEntrySize();
         this.preserveMdcForTaskExecution = conf.getPreserveMdcForTaskExecution();
 
         this.authProviderFactory = authProviderFactory;
@@ -680,7 +695,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         final CompletionKey completionKey = new TxnCompletionKey(txnId,
                                                                 OperationType.WRITE_LAC);
         // writeLac is mostly like addEntry hence uses addEntryTimeout
-        completionObjects.put(completionKey,
+        putCompletion(completionKey,
                               new WriteLacCompletion(completionKey, cb,
                                                      ctx, ledgerId, this));
 
@@ -719,7 +734,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         final CompletionKey completionKey = new TxnCompletionKey(txnId,
                                                                 OperationType.FORCE_LEDGER);
         // force is mostly like addEntry hence uses addEntryTimeout
-        completionObjects.put(completionKey,
+        putCompletion(completionKey,
                               new ForceLedgerCompletion(completionKey, cb,
                                                      ctx, ledgerId, this));
 
@@ -773,6 +788,17 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             }
             completionKey = EntryCompletionKey.acquireV2Key(ledgerId, entryId, OperationType.ADD_ENTRY);
 
+            if (batchedAddMaxEntries > 1) {
+                if (toSend instanceof ByteBuf && ((ByteBuf) toSend).readableBytes() <= batchedAddMaxEntrySize) {
+                    putCompletionKeyValue(completionKey,
+                            AddCompletion.acquireAddCompletion(completionKey, cb, ctx, ledgerId, entryId, this));
+                    addToBatch(channel, completionKey, (ByteBuf) toSend, allowFastFail);
+                    return;
+                }
+                // Do not overtake the adds waiting in the batch
+                flushAddBatch(channel);
+            }
+
             if (toSend instanceof ByteBuf) {
                 ByteBuf byteBuf = ((ByteBuf) toSend).retainedDuplicate();
                 request = byteBuf;
@@ -830,6 +856,103 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 cleanupActionAfterWrite);
     }
 
+    private void addToBatch(final Channel channel, final CompletionKey key, final ByteBuf addRequest,
+                            final boolean allowFastFail) {
+        if (channel == null) {
+            LOG.warn("Operation {} failed: channel == null", StringUtils.requestToString(addRequest));
+            errorOut(key);
+            return;
+        }
+        if (allowFastFail && !channel.isWritable()) {
+            LOG.warn("Operation {} failed: TooManyRequestsException", StringUtils.requestToString(addRequest));
+            errorOut(key, BKException.Code.TooManyRequestsException);
+            return;
+        }
+
+        boolean newBatch = false;
+        PendingAddBatch fullBatch = null;
+        PendingAddBatch previousBatch = null;
+        synchronized (pendingAddBatchLock) {
+            if (pendingAddBatch != null && pendingAddBatch.frameSize() + addRequest.readableBytes() > maxFrameSize) {
+                previousBatch = pendingAddBatch;
+                pendingAddBatch = null;
+            }
+            if (pendingAddBatch == null) {
+                pendingAddBatch = new PendingAddBatch(allocator, batchedAddMaxEntries);
+                newBatch = true;
+            }
+            pendingAddBatch.add(key, addRequest);
+            if (pendingAddBatch.size() >= batchedAddMaxEntries) {
+                fullBatch = pendingAddBatch;
+                pendingAddBatch = null;
+                newBatch = false;
+            }
+        }
+
+        // The batches are written outside of the lock, like the adds that are not batched
+        if (previousBatch != null) {
+            writeAddBatch(channel, previousBatch);
+        }
+        if (fullBatch != null) {
+            writeAddBatch(channel, fullBatch);
+        }
+
+        if (newBatch) {
+            // The adds issued until the event loop gets to this task are sent with this one
+            try {
+                channel.eventLoop().execute(() -> flushAddBatch(channel));
+            } catch (RejectedExecutionException e) {
+                flushAddBatch(channel);
+            }
+        }
+    }
+
+    private void flushAddBatch(final Channel channel) {
+        final PendingAddBatch batch;
+        synchronized (pendingAddBatchLock) {
+            batch = pendingAddBatch;
+            pendingAddBatch = null;
+        }
+        if (batch != null) {
+            writeAddBatch(channel, batch);
+        }
+    }
+
+    private void writeAddBatch(final Channel channel, final PendingAddBatch batch) {
+        final List<CompletionKey> keys = batch.keys();
+        ByteBufList frame = null;
+        try {
+            final long startTime = MathUtils.nowInNano();
+
+            ChannelPromise promise = channel.newPromise().addListener(future -> {
+                if (future.isSuccess()) {
+                    nettyOpLogger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                    for (CompletionKey key : keys) {
+                        CompletionValue completion = completionObjects.get(key);
+                        if (completion != null) {
+                            completion.setOutstanding();
+                        }
+                    }
+                } else {
+                    nettyOpLogger.registerFailedEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                    for (CompletionKey key : keys) {
+                        errorOut(key);
+                    }
+                }
+            });
+            frame = batch.toFrame();
+            channel.writeAndFlush(frame, promise);
+        } catch (Throwable e) {
+            LOG.warn("Batch of {} add requests failed", keys.size(), e);
+            if (frame == null) {
+                batch.release();
+            }
+            for (CompletionKey key : keys) {
+                errorOut(key);
+            }
+        }
+    }
+
     public void readLac(final long ledgerId, ReadLacCallback cb, Object ctx) {
         Object request = null;
         CompletionKey completionKey = null;
@@ -862,7 +985,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     public void getListOfEntriesOfLedger(final long ledgerId, GetListOfEntriesOfLedgerCallback cb) {
         final long txnId = getTxnId();
         final CompletionKey completionKey = new TxnCompletionKey(txnId, OperationType.GET_LIST_OF_ENTRIES_OF_LEDGER);
-        completionObjects.put(completionKey, new GetListOfEntriesOfLedgerCompletion(
+        putCompletion(completionKey, new GetListOfEntriesOfLedgerCompletion(
                 completionKey, cb, ledgerId, this));
 
         // Build the request.
@@ -1032,7 +1155,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     public void getBookieInfo(final long requested, GetBookieInfoCallback cb, Object ctx) {
         final long txnId = getTxnId();
         final CompletionKey completionKey = new TxnCompletionKey(txnId, OperationType.GET_BOOKIE_INFO);
-        completionObjects.put(completionKey,
+        putCompletion(completionKey,
                               new GetBookieInfoCompletion(
                                       completionKey, cb, ctx, this));
 
@@ -1057,8 +1180,18 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         return value.maybeTimeout();
     };
 
+    private final BiPredicate<CompletionKey, CompletionValue> timeoutExpired = (key, value) -> {
+        // The completion could have been just removed by its response
+        if (completionObjects.remove(key, value)) {
+            value.timeout();
+            return true;
+        } else {
+            return false;
+        }
+    };
+
     public void checkTimeoutOnPendingOperations() {
-        int timedOutOperations = completionObjects.removeIf(timeoutCheck);
+        int timedOutOperations = completionTimeouts.expire(MathUtils.nowInNano(), timeoutExpired);
 
         timedOutOperations += completionObjectsV2Conflicts.removeIf(timeoutCheck);
 
@@ -1217,7 +1350,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Removing completion key: {}", key);
         }
-        CompletionValue completion = completionObjects.remove(key);
+        CompletionValue completion = removeCompletion(key);
         if (completion != null) {
             completion.errorOut();
         } else {
@@ -1230,7 +1363,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Removing completion key: {}", key);
         }
-        CompletionValue completion = completionObjects.remove(key);
+        CompletionValue completion = removeCompletion(key);
         if (completion != null) {
             completion.errorOut(rc);
         } else {
@@ -1545,7 +1678,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             });
         }
 
-        completionObjects.remove(key);
+        removeCompletion(key);
     }
 
     void initTLSHandshake() {
@@ -1646,16 +1779,33 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         return new TxnCompletionKey(txnId, operationType);
     }
 
+    private void putCompletion(CompletionKey key, CompletionValue value) {
+        // Track the deadline before the completion is visible, so its removal always finds it in the wheel
+        completionTimeouts.add(key, value, value.startTime + value.timeoutNanos());
+        completionObjects.put(key, value);
+    }
+
     private void putCompletionKeyValue(CompletionKey key, CompletionValue value) {
+        completionTimeouts.add(key, value, value.startTime + value.timeoutNanos());
         CompletionValue existingValue = completionObjects.putIfAbsent(key, value);
         if (existingValue != null) { // will only happen for V2 keys, as V3 have unique txnid
-            // There's a pending read request on same ledger/entry. Use the multimap to track all of them
+            // There's a pending read request on same ledger/entry. Use the multimap to track all of them.
+            // The multimap is expected to be small, so it is still fully scanned on each timeout check.
+            completionTimeouts.remove(value);
             completionObjectsV2Conflicts.put(key, value);
         }
     }
 
-    private CompletionValue getCompletionValue(CompletionKey key) {
+    private CompletionValue removeCompletion(CompletionKey key) {
         CompletionValue completionValue = completionObjects.remove(key);
+        if (completionValue != null) {
+            completionTimeouts.remove(completionValue);
+        }
+        return completionValue;
+    }
+
+    private CompletionValue getCompletionValue(CompletionKey key) {
+        CompletionValue completionValue = removeCompletion(key);
         if (completionValue == null) {
             // If there's no completion object here, try in the multimap
             completionValue = completionObjectsV2Conflicts.removeAny(key).orElse(null);
@@ -1834,7 +1984,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         assert state == ConnectionState.CONNECTING;
         final long txnId = getTxnId();
         final CompletionKey completionKey = new TxnCompletionKey(txnId, OperationType.START_TLS);
-        completionObjects.put(completionKey,
+        putCompletion(completionKey,
                               new StartTLSCompletion(completionKey, this));
         BookkeeperProtocol.Request.Builder h = withRequestContext(BookkeeperProtocol.Request.newBuilder());
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
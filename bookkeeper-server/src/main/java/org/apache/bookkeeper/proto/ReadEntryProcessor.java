@@ -18,6 +18,11 @@
 package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.FileRegion;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.ssl.SslHandler;
 import io.netty.util.Recycler;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.ReferenceCounted;
@@ -128,9 +133,23 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
     }
 
     protected ReferenceCounted readData() throws Exception {
+        int zeroCopyMinEntrySize = requestProcessor.getZeroCopyReadMinEntrySize();
+        if (zeroCopyMinEntrySize > 0 && canSendFileRegion(requestHandler.ctx().channel())) {
+            FileRegion region = requestProcessor.getBookie().readEntryRegion(request.getLedgerId(),
+                    request.getEntryId(), zeroCopyMinEntrySize);
+            if (region != null) {
+                return region;
+            }
+        }
         return requestProcessor.getBookie().readEntry(request.getLedgerId(), request.getEntryId());
     }
 
+    private static boolean canSendFileRegion(Channel channel) {
+        // The region is written as is to the socket, so it can't go through TLS
+        return (channel instanceof EpollSocketChannel || channel instanceof NioSocketChannel)
+                && channel.pipeline().get(SslHandler.class) == null;
+    }
+
     private void sendResponse(ReferenceCounted data, int errorCode, long startTimeNanos) {
         final RequestStats stats = requestProcessor.getRequestStats();
         final OpStatsLogger logger = stats.getReadEntryStats();
@@ -151,6 +170,9 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
     }
 
     protected BookieProtocol.Response buildReadResponse(ReferenceCounted data) {
+        if (data instanceof FileRegion) {
+            return ResponseBuilder.buildFileRegionReadResponse((FileRegion) data, request);
+        }
         return ResponseBuilder.buildReadResponse((ByteBuf) data, request);
     }
 
@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.FileRegion;
 import org.apache.bookkeeper.util.ByteBufList;
 
 class ResponseBuilder {
@@ -48,6 +49,11 @@ class ResponseBuilder {
                 r.getLedgerId(), r.getEntryId(), data);
     }
 
+    static BookieProtocol.Response buildFileRegionReadResponse(FileRegion data, BookieProtocol.Request r) {
+        return new BookieProtocol.FileRegionReadResponse(r.getProtocolVersion(), BookieProtocol.EOK,
+                r.getLedgerId(), r.getEntryId(), data);
+    }
+
     static BookieProtocol.Response buildBatchedReadResponse(ByteBufList data, BookieProtocol.BatchedReadRequest r) {
         return new BookieProtocol.BatchedReadResponse(r.getProtocolVersion(), BookieProtocol.EOK,
                 r.getLedgerId(), r.getEntryId(), r.getRequestId(), data);
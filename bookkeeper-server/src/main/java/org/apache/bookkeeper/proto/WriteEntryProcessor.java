@@ -21,29 +21,39 @@ import com.google.common.annotations.VisibleForTesting;
 import io.netty.buffer.ByteBuf;
 import io.netty.util.Recycler;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.bookie.BookieException;
 import org.apache.bookkeeper.bookie.BookieException.OperationRejectedException;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookieProtocol.ParsedAddRequest;
-import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Processes add entry requests.
  */
-class WriteEntryProcessor extends PacketProcessorBase<ParsedAddRequest> implements WriteCallback {
+class WriteEntryProcessor extends PacketProcessorBase<ParsedAddRequest> implements Bookie.PendingAdd {
 
     private static final Logger LOG = LoggerFactory.getLogger(WriteEntryProcessor.class);
 
     long startTimeNanos;
 
+    // Next entry of a batched add request to be processed by the same task
+    WriteEntryProcessor nextInBatch;
+
+    // Entries of the batch being processed that are left to add to the bookie at once
+    private List<WriteEntryProcessor> pendingAdds;
+
     @Override
     protected void reset() {
         super.reset();
         startTimeNanos = -1L;
+        nextInBatch = null;
+        pendingAdds = null;
     }
 
     public static WriteEntryProcessor create(ParsedAddRequest request, BookieRequestHandler requestHandler,
@@ -54,6 +64,42 @@ class WriteEntryProcessor extends PacketProcessorBase<ParsedAddRequest> implemen
         return wep;
     }
 
+    @Override
+    public void run() {
+        if (nextInBatch == null) {
+            processEntry();
+            return;
+        }
+
+        // Validate the entries of the batch first, then add the accepted ones to the bookie together, so that
+        // they are enqueued in the journal with a single operation
+        final Bookie bookie = requestProcessor.getBookie();
+        final BookieRequestHandler handler = requestHandler;
+        List<WriteEntryProcessor> adds = new ArrayList<>();
+        WriteEntryProcessor processor = this;
+        while (processor != null) {
+            // The processor can be recycled once its entry is processed
+            WriteEntryProcessor next = processor.nextInBatch;
+            processor.nextInBatch = null;
+            if (processor.request.isRecoveryAdd() && !adds.isEmpty()) {
+                // A recovery add is applied on its own, so the entries before it are added first to keep the
+                // order of the entries of a ledger
+                bookie.addEntries(adds, handler);
+                adds = new ArrayList<>();
+            }
+            processor.pendingAdds = adds;
+            processor.processEntry();
+            processor = next;
+        }
+        if (!adds.isEmpty()) {
+            bookie.addEntries(adds, handler);
+        }
+    }
+
+    private void processEntry() {
+        super.run();
+    }
+
     @Override
     protected void processPacket() {
         if (requestProcessor.getBookie().isReadOnly()
@@ -70,7 +116,12 @@ class WriteEntryProcessor extends PacketProcessorBase<ParsedAddRequest> implemen
         }
 
         startTimeNanos = MathUtils.nowInNano();
-        int rc = BookieProtocol.EOK;
+        if (pendingAdds != null && !request.isRecoveryAdd()) {
+            pendingAdds.add(this);
+            pendingAdds = null;
+            return;
+        }
+
         ByteBuf addData = request.getData();
         try {
             if (request.isRecoveryAdd()) {
@@ -79,40 +130,56 @@ class WriteEntryProcessor extends PacketProcessorBase<ParsedAddRequest> implemen
                 requestProcessor.getBookie().addEntry(addData, false, this,
                         requestHandler, request.getMasterKey());
             }
-        } catch (OperationRejectedException e) {
+        } catch (Throwable t) {
+            addFailed(t);
+        }
+    }
+
+    @Override
+    public ByteBuf getEntry() {
+        return request.getData();
+    }
+
+    @Override
+    public byte[] getMasterKey() {
+        return request.getMasterKey();
+    }
+
+    @Override
+    public void addFailed(Throwable cause) {
+        int rc;
+        if (cause instanceof OperationRejectedException) {
             requestProcessor.getRequestStats().getAddEntryRejectedCounter().inc();
             // Avoid to log each occurrence of this exception as this can happen when the ledger storage is
             // unable to keep up with the write rate.
             if (LOG.isDebugEnabled()) {
-                LOG.debug("Operation rejected while writing {}", request, e);
+                LOG.debug("Operation rejected while writing {}", request, cause);
             }
             rc = BookieProtocol.ETOOMANYREQUESTS;
-        } catch (IOException e) {
-            LOG.error("Error writing {}", request, e);
+        } else if (cause instanceof IOException) {
+            LOG.error("Error writing {}", request, cause);
             rc = BookieProtocol.EIO;
-        } catch (BookieException.LedgerFencedException lfe) {
+        } else if (cause instanceof BookieException.LedgerFencedException) {
             LOG.warn("Write attempt on fenced ledger {} by client {}", request.getLedgerId(),
                     requestHandler.ctx().channel().remoteAddress());
             rc = BookieProtocol.EFENCED;
-        } catch (BookieException e) {
-            LOG.error("Unauthorized access to ledger {}", request.getLedgerId(), e);
+        } else if (cause instanceof BookieException) {
+            LOG.error("Unauthorized access to ledger {}", request.getLedgerId(), cause);
             rc = BookieProtocol.EUA;
-        } catch (Throwable t) {
+        } else {
             LOG.error("Unexpected exception while writing {}@{} : {}",
-                      request.ledgerId, request.entryId, t.getMessage(), t);
+                      request.ledgerId, request.entryId, cause.getMessage(), cause);
             // some bad request which cause unexpected exception
             rc = BookieProtocol.EBADREQ;
         }
 
-        if (rc != BookieProtocol.EOK) {
-            requestProcessor.getRequestStats().getAddEntryStats()
-                .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
-            sendWriteReqResponse(rc,
-                         ResponseBuilder.buildErrorResponse(rc, request),
-                         requestProcessor.getRequestStats().getAddRequestStats());
-            request.recycle();
-            recycle();
-        }
+        requestProcessor.getRequestStats().getAddEntryStats()
+            .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        sendWriteReqResponse(rc,
+                     ResponseBuilder.buildErrorResponse(rc, request),
+                     requestProcessor.getRequestStats().getAddRequestStats());
+        request.recycle();
+        recycle();
     }
 
     @Override
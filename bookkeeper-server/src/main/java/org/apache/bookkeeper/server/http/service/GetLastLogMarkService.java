@@ -74,11 +74,15 @@ public class GetLastLogMarkService implements HttpEndpointService {
                  */
                 Map<String, String> output = Maps.newHashMap();
 
-                List<Journal> journals = Lists.newArrayListWithCapacity(conf.getJournalDirs().length);
-                int idx = 0;
-                for (File journalDir : conf.getJournalDirs()) {
-                    journals.add(new Journal(idx++, journalDir, conf, new LedgerDirsManager(conf, conf.getLedgerDirs(),
-                      new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()))));
+                File[] journalDirs = conf.getJournalDirs();
+                List<Journal> journals = Lists.newArrayListWithCapacity(journalDirs.length);
+                for (int stripe = 0; stripe < conf.getJournalWriterStripes(); stripe++) {
+                    for (int i = 0; i < journalDirs.length; i++) {
+                        journals.add(new Journal(Journal.getJournalIndex(i, stripe, journalDirs.length),
+                            Journal.getStripeDirectory(journalDirs[i], stripe), conf,
+                            new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()))));
+                    }
                 }
                 for (Journal journal : journals) {
                     LogMark lastLogMark = journal.getLastLogMark().getCurMark();
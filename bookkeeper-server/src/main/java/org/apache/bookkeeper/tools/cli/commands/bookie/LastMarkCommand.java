@@ -63,13 +63,16 @@ public class LastMarkCommand extends BookieCommand<CliFlags> {
                     new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
             File[] journalDirs = conf.getJournalDirs();
 
-            for (int idx = 0; idx < journalDirs.length; idx++) {
-                Journal journal = new Journal(idx, journalDirs[idx], conf, dirsManager);
-                LogMark lastLogMark = journal.getLastLogMark().getCurMark();
-                LOG.info("LastLogMark : Journal Id - {}({}.txn), Pos - {}",
-                    lastLogMark.getLogFileId(),
-                    Long.toHexString(lastLogMark.getLogFileId()),
-                    lastLogMark.getLogFileOffset());
+            for (int stripe = 0; stripe < conf.getJournalWriterStripes(); stripe++) {
+                for (int i = 0; i < journalDirs.length; i++) {
+                    Journal journal = new Journal(Journal.getJournalIndex(i, stripe, journalDirs.length),
+                            Journal.getStripeDirectory(journalDirs[i], stripe), conf, dirsManager);
+                    LogMark lastLogMark = journal.getLastLogMark().getCurMark();
+                    LOG.info("LastLogMark : Journal Id - {}({}.txn), Pos - {}",
+                        lastLogMark.getLogFileId(),
+                        Long.toHexString(lastLogMark.getLogFileId()),
+                        lastLogMark.getLogFileOffset());
+                }
             }
             return true;
         } catch (IOException e) {
@@ -43,19 +43,29 @@ public class EventLoopUtil {
     private static final String ENABLE_IO_URING = "enable.io_uring";
 
     public static EventLoopGroup getClientEventLoopGroup(ClientConfiguration conf, ThreadFactory threadFactory) {
-        return getEventLoopGroup(threadFactory, conf.getNumIOThreads(), conf.isBusyWaitEnabled());
+        return getEventLoopGroup(threadFactory, conf.getNumIOThreads(), conf.isBusyWaitEnabled(),
+                conf.isBusyWaitEnabled());
     }
 
     public static EventLoopGroup getServerEventLoopGroup(ServerConfiguration conf, ThreadFactory threadFactory) {
-        return getEventLoopGroup(threadFactory, conf.getServerNumIOThreads(), conf.isBusyWaitEnabled());
+        return getEventLoopGroup(threadFactory, conf.getServerNumIOThreads(), conf.isBusyWaitEnabled(),
+                conf.isBusyWaitEnabled() || conf.isServerIOThreadsCpuAffinity());
     }
 
     public static EventLoopGroup getServerAcceptorGroup(ServerConfiguration conf, ThreadFactory threadFactory) {
-        return getEventLoopGroup(threadFactory, conf.getServerNumAcceptorThreads(), false);
+        int numThreads = conf.getServerNumAcceptorThreads();
+        int numListeners = conf.getServerNumReusePortListeners();
+        if (numListeners > numThreads) {
+            // Each SO_REUSEPORT listener is registered on its own acceptor thread
+            log.warn("serverNumAcceptorThreads ({}) is lower than serverNumReusePortListeners ({}),"
+                    + " starting {} acceptor threads", numThreads, numListeners, numListeners);
+            numThreads = numListeners;
+        }
+        return getEventLoopGroup(threadFactory, numThreads, false, false);
     }
 
     private static EventLoopGroup getEventLoopGroup(ThreadFactory threadFactory,
-            int numThreads, boolean enableBusyWait) {
+            int numThreads, boolean enableBusyWait, boolean enableCpuAffinity) {
         if (!SystemUtils.IS_OS_LINUX) {
             return new NioEventLoopGroup(numThreads, threadFactory);
         }
@@ -70,15 +80,20 @@ public class EventLoopUtil {
             return new IOUringEventLoopGroup(numThreads, threadFactory);
         } else {
             try {
+                EpollEventLoopGroup eventLoopGroup;
                 if (!enableBusyWait) {
                     // Regular Epoll based event loop
-                    return new EpollEventLoopGroup(numThreads, threadFactory);
+                    eventLoopGroup = new EpollEventLoopGroup(numThreads, threadFactory);
+                } else {
+                    // With low latency setting, put the Netty event loop on busy-wait loop to reduce cost of
+                    // context switches
+                    eventLoopGroup = new EpollEventLoopGroup(numThreads, threadFactory,
+                            () -> (selectSupplier, hasTasks) -> SelectStrategy.BUSY_WAIT);
                 }
 
-                // With low latency setting, put the Netty event loop on busy-wait loop to reduce cost of
-                // context switches
-                EpollEventLoopGroup eventLoopGroup = new EpollEventLoopGroup(numThreads, threadFactory,
-                        () -> (selectSupplier, hasTasks) -> SelectStrategy.BUSY_WAIT);
+                if (!enableCpuAffinity) {
+                    return eventLoopGroup;
+                }
 
                 // Enable CPU affinity on IO threads
                 for (int i = 0; i < numThreads; i++) {
@@ -0,0 +1,128 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the regions of the entries of {@link DefaultEntryLogger}.
+ */
+public class EntryRegionTest {
+
+    private File tmpDir;
+    private ServerConfiguration conf;
+    private DefaultEntryLogger entryLogger;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("entry-region").toFile();
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(tmpDir));
+        conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { tmpDir.toString() });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (entryLogger != null) {
+            entryLogger.close();
+        }
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((byte) entry.writerIndex());
+        }
+        return entry;
+    }
+
+    private static byte[] send(FileRegion region) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WritableByteChannel target = Channels.newChannel(out);
+        while (region.transferred() < region.count()) {
+            region.transferTo(target, region.transferred());
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testRegionSharesTheLogChannel() throws Exception {
+        // Write the entries in a log that is not the current log of the entry logger reading them
+        DefaultEntryLogger writer = new DefaultEntryLogger(conf);
+        ByteBuf small = entry(1L, 0L, 100);
+        ByteBuf large = entry(1L, 1L, 10000);
+        long smallLocation = writer.addEntry(1L, small.duplicate());
+        long largeLocation = writer.addEntry(1L, large.duplicate());
+        writer.flush();
+        writer.close();
+        long logId = largeLocation >> 32;
+
+        entryLogger = new DefaultEntryLogger(conf);
+        assertNull(entryLogger.readEntryRegion(1L, 0L, smallLocation, 1000));
+
+        FileRegion first = entryLogger.readEntryRegion(1L, 1L, largeLocation, 1000);
+        FileRegion second = entryLogger.readEntryRegion(1L, 1L, largeLocation, 1000);
+        assertEquals(large.readableBytes(), first.count());
+        DefaultEntryLogger.SharedLogChannel channel = ((DefaultEntryLogger.EntryRegion) first).channel;
+        assertSame(channel, ((DefaultEntryLogger.EntryRegion) second).channel);
+        assertSame(channel.fc, entryLogger.getChannelForLogId(logId).fileChannel);
+        // The mapping and the 2 regions
+        assertEquals(3, channel.refCnt());
+
+        assertArrayEquals(ByteBufUtil.getBytes(large), send(first));
+        assertTrue(first.release());
+        assertEquals(2, channel.refCnt());
+
+        // The log is removed while the second region is not sent yet
+        assertTrue(entryLogger.removeEntryLog(logId));
+        FileChannel fc = channel.fc;
+        assertTrue(fc.isOpen());
+        assertArrayEquals(ByteBufUtil.getBytes(large), send(second));
+        assertTrue(second.release());
+        assertEquals(0, channel.refCnt());
+        assertFalse(fc.isOpen());
+    }
+}
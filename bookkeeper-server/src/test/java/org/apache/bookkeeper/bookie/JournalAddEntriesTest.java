@@ -0,0 +1,163 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Tests for the add entries enqueued in the journal with a single operation.
+ */
+@RunWith(Parameterized.class)
+public class JournalAddEntriesTest {
+
+    @Parameterized.Parameters(name = "busyWait={0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] { { false }, { true } });
+    }
+
+    private static final int QUEUE_SIZE = 2;
+    private static final int ENTRY_SIZE = 100;
+
+    private final boolean busyWait;
+    private File dir;
+    private Journal journal;
+    private final AtomicInteger callbacks = new AtomicInteger();
+
+    public JournalAddEntriesTest(boolean busyWait) {
+        this.busyWait = busyWait;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("journal-add-entries").toFile();
+        File journalDir = new File(dir, "journal");
+        File ledgerDir = new File(dir, "ledger");
+        assertTrue(journalDir.mkdirs());
+        assertTrue(ledgerDir.mkdirs());
+        LedgerDirsManager ledgerDirsManager = mock(LedgerDirsManager.class);
+        when(ledgerDirsManager.getAllLedgerDirs()).thenReturn(Collections.singletonList(ledgerDir));
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalDirName(journalDir.getPath());
+        conf.setJournalQueueSize(QUEUE_SIZE);
+        conf.setBusyWaitEnabled(busyWait);
+        // The journal is not started, so that the entries stay in the queue
+        journal = new Journal(0, journalDir, conf, ledgerDirsManager);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private List<Journal.QueueEntry> prepare(List<ByteBuf> entries, int count) throws Exception {
+        List<Journal.QueueEntry> queueEntries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+            entry.writeLong(1L);
+            entry.writeLong(i);
+            entry.writerIndex(ENTRY_SIZE);
+            entries.add(entry);
+            queueEntries.add(journal.prepareAddEntry(entry, false,
+                    (rc, ledgerId, entryId, addr, ctx) -> callbacks.incrementAndGet(), null));
+        }
+        return queueEntries;
+    }
+
+    @Test
+    public void testAllEntriesEnqueued() throws Exception {
+        List<ByteBuf> entries = new ArrayList<>();
+        List<Journal.QueueEntry> queueEntries = prepare(entries, QUEUE_SIZE);
+        journal.logAddEntries(queueEntries);
+
+        assertEquals(QUEUE_SIZE, queueEntries.size());
+        assertEquals(QUEUE_SIZE, journal.getJournalQueueLength());
+        assertEquals(QUEUE_SIZE, journal.getEnqueuedEntries());
+        assertEquals(QUEUE_SIZE * ENTRY_SIZE, journal.getMemoryUsage());
+        for (ByteBuf entry : entries) {
+            // Retained until written in the journal
+            assertEquals(2, entry.refCnt());
+        }
+    }
+
+    @Test
+    public void testInterruptedWhileQueueIsFull() throws Exception {
+        List<ByteBuf> entries = new ArrayList<>();
+        List<Journal.QueueEntry> queueEntries = prepare(entries, QUEUE_SIZE + 1);
+        Journal.QueueEntry notEnqueued = queueEntries.get(QUEUE_SIZE);
+
+        CompletableFuture<Throwable> result = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                journal.logAddEntries(queueEntries);
+                result.complete(null);
+            } catch (Throwable t) {
+                result.complete(t);
+            }
+        });
+        thread.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (journal.getJournalQueueLength() < QUEUE_SIZE && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(QUEUE_SIZE, journal.getJournalQueueLength());
+        thread.interrupt();
+        assertTrue(result.get(30, TimeUnit.SECONDS) instanceof InterruptedException);
+
+        // Only the entry that is not in the queue is left in the list
+        assertEquals(1, queueEntries.size());
+        assertSame(notEnqueued, queueEntries.get(0));
+        assertEquals(QUEUE_SIZE, journal.getJournalQueueLength());
+
+        journal.cancelAddEntry(notEnqueued);
+        assertEquals(QUEUE_SIZE, journal.getEnqueuedEntries());
+        assertEquals(QUEUE_SIZE * ENTRY_SIZE, journal.getMemoryUsage());
+        assertEquals(2, entries.get(0).refCnt());
+        assertEquals(2, entries.get(1).refCnt());
+        assertEquals(1, entries.get(QUEUE_SIZE).refCnt());
+        assertEquals(0, callbacks.get());
+    }
+}
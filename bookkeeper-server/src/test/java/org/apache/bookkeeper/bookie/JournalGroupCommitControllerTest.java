@@ -0,0 +1,160 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Test;
+
+/**
+ * Tests for {@link JournalGroupCommitController}.
+ */
+public class JournalGroupCommitControllerTest {
+
+    private static final long MAX_GROUP_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final long TARGET_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long SYNC_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final JournalGroupCommitController controller = new JournalGroupCommitController(
+            MAX_GROUP_WAIT_NANOS, TARGET_LATENCY_NANOS, NullStatsLogger.INSTANCE);
+    private long nowNanos = System.nanoTime();
+
+    /**
+     * Run a control interval with the given arrivals and add latencies.
+     */
+    private void runInterval(int arrivals, long... latenciesNanos) {
+        for (long latencyNanos : latenciesNanos) {
+            controller.recordAddLatency(latencyNanos);
+        }
+        nowNanos += JournalGroupCommitController.CONTROL_INTERVAL_NANOS;
+        controller.onDequeue(arrivals, nowNanos, SYNC_LATENCY_NANOS);
+    }
+
+    private static long[] latencies(int count, long latencyNanos) {
+        long[] latencies = new long[count];
+        Arrays.fill(latencies, latencyNanos);
+        return latencies;
+    }
+
+    private static long[] concat(long[] first, long[] second) {
+        long[] all = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, all, first.length, second.length);
+        return all;
+    }
+
+    @Test
+    public void testBucketBoundaries() {
+        for (int value = 0; value < 4; value++) {
+            assertEquals(value, JournalGroupCommitController.bucket(value));
+            assertEquals(value, JournalGroupCommitController.bucketUpperBound(value));
+        }
+
+        // Each value falls in the first bucket whose upper bound is not below it
+        long[] values = { 4, 5, 7, 8, 9, 10, 15, 16, 1000, 1023, 1024, 123_456_789L, 1L << 40, (1L << 40) - 1,
+                Long.MAX_VALUE / 3, Long.MAX_VALUE };
+        for (long value : values) {
+            int bucket = JournalGroupCommitController.bucket(value);
+            assertTrue(JournalGroupCommitController.bucketUpperBound(bucket) >= value);
+            assertTrue(JournalGroupCommitController.bucketUpperBound(bucket - 1) < value);
+            // With 4 sub-buckets per power of 2, a bucket is at most 25% wider than its lower bound
+            long lowerBound = JournalGroupCommitController.bucketUpperBound(bucket - 1) + 1;
+            assertTrue((double) JournalGroupCommitController.bucketUpperBound(bucket) - lowerBound
+                    <= lowerBound / 4.0);
+        }
+
+        assertEquals(Long.MAX_VALUE, JournalGroupCommitController.bucketUpperBound(
+                JournalGroupCommitController.bucket(Long.MAX_VALUE)));
+        for (int bucket = 1; bucket <= JournalGroupCommitController.bucket(Long.MAX_VALUE); bucket++) {
+            assertTrue(JournalGroupCommitController.bucketUpperBound(bucket)
+                    > JournalGroupCommitController.bucketUpperBound(bucket - 1));
+        }
+    }
+
+    @Test
+    public void testP99Extraction() {
+        long fast = TimeUnit.MICROSECONDS.toNanos(100);
+        long slow = TimeUnit.MILLISECONDS.toNanos(10);
+        long fastBound = JournalGroupCommitController.bucketUpperBound(JournalGroupCommitController.bucket(fast));
+        long slowBound = JournalGroupCommitController.bucketUpperBound(JournalGroupCommitController.bucket(slow));
+
+        // 1 slow add out of 100 is not in the p99
+        runInterval(100, concat(latencies(99, fast), latencies(1, slow)));
+        assertEquals(fastBound, controller.getObservedP99Nanos());
+
+        // 2 slow adds out of 100 are
+        runInterval(100, concat(latencies(98, fast), latencies(2, slow)));
+        assertEquals(slowBound, controller.getObservedP99Nanos());
+
+        // Too few samples do not change the observed p99
+        runInterval(10, latencies(10, fast));
+        assertEquals(slowBound, controller.getObservedP99Nanos());
+
+        // The latencies of the previous intervals are not kept
+        runInterval(100, latencies(100, fast));
+        assertEquals(fastBound, controller.getObservedP99Nanos());
+    }
+
+    @Test
+    public void testNoUpdateBeforeEndOfInterval() {
+        controller.recordAddLatency(TimeUnit.MILLISECONDS.toNanos(100));
+        controller.onDequeue(1000, nowNanos + JournalGroupCommitController.CONTROL_INTERVAL_NANOS / 2,
+                SYNC_LATENCY_NANOS);
+        assertEquals(MAX_GROUP_WAIT_NANOS, controller.getGroupWaitNanos());
+        assertEquals(0, controller.getObservedP99Nanos());
+    }
+
+    @Test
+    public void testShrinkOnMiss() {
+        assertEquals(MAX_GROUP_WAIT_NANOS, controller.getGroupWaitNanos());
+
+        // 10000 entries/s with a fsync of 1ms would group entries, but the target is missed: no more wait
+        runInterval(1000, latencies(100, TimeUnit.MILLISECONDS.toNanos(10)));
+        assertEquals(0, controller.getGroupWaitNanos());
+    }
+
+    @Test
+    public void testGrowHalfway() {
+        runInterval(1000, latencies(100, TimeUnit.MILLISECONDS.toNanos(10)));
+        assertEquals(0, controller.getGroupWaitNanos());
+
+        // Within the target, the wait moves half way to the fsync latency at each interval
+        long fast = TimeUnit.MICROSECONDS.toNanos(100);
+        runInterval(1000, latencies(100, fast));
+        assertEquals(SYNC_LATENCY_NANOS / 2, controller.getGroupWaitNanos());
+        runInterval(1000, latencies(100, fast));
+        assertEquals(SYNC_LATENCY_NANOS / 2 + SYNC_LATENCY_NANOS / 4, controller.getGroupWaitNanos());
+    }
+
+    @Test
+    public void testNoWaitAtLowArrivalRate() {
+        // Less than one entry per fsync: grouping does not pay off, and the wait goes down half way
+        long fast = TimeUnit.MICROSECONDS.toNanos(100);
+        runInterval(20, latencies(20, fast));
+        assertEquals(MAX_GROUP_WAIT_NANOS / 2, controller.getGroupWaitNanos());
+        runInterval(20, latencies(20, fast));
+        assertEquals(MAX_GROUP_WAIT_NANOS / 4, controller.getGroupWaitNanos());
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Tests for the apply of the replayed journal records by {@link JournalReplayApplier}.
+ */
+public class JournalReplayApplierTest {
+
+    private static ByteBuffer record(long ledgerId, long entryId) {
+        ByteBuffer record = ByteBuffer.allocate(16);
+        record.putLong(ledgerId);
+        record.putLong(entryId);
+        record.flip();
+        return record;
+    }
+
+    @Test
+    public void testApplyInline() throws Exception {
+        Thread scanThread = Thread.currentThread();
+        List<Long> applied = new ArrayList<>();
+        try (JournalReplayApplier applier = new JournalReplayApplier((version, offset, entry) -> {
+            assertSame(scanThread, Thread.currentThread());
+            applied.add(entry.getLong(8));
+        }, 0, 1024, true)) {
+            JournalReplayApplier.Replay replay = applier.newReplay();
+            assertTrue(applier.isApplyingInline());
+            for (long entryId = 0; entryId < 10; entryId++) {
+                replay.process(JournalChannel.V6, entryId * 16, record(1L, entryId));
+                // Applied before process returns
+                assertEquals(entryId + 1, applied.size());
+            }
+            replay.awaitApplied();
+        }
+    }
+
+    @Test
+    public void testRecordsOfLedgerAppliedInOrder() throws Exception {
+        int numLedgers = 8;
+        int numEntries = 1000;
+        Map<Long, List<Long>> applied = new ConcurrentHashMap<>();
+        try (JournalReplayApplier applier = new JournalReplayApplier((version, offset, entry) -> {
+            long ledgerId = entry.getLong(entry.position());
+            applied.computeIfAbsent(ledgerId, id -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(entry.getLong(entry.position() + 8));
+        }, 4, 1024, true)) {
+            JournalReplayApplier.Replay replay = applier.newReplay();
+            assertFalse(applier.isApplyingInline());
+            for (long entryId = 0; entryId < numEntries; entryId++) {
+                for (long ledgerId = 0; ledgerId < numLedgers; ledgerId++) {
+                    replay.process(JournalChannel.V6, 0L, record(ledgerId, entryId));
+                }
+            }
+            replay.awaitApplied();
+        }
+
+        assertEquals(numLedgers, applied.size());
+        for (List<Long> entries : applied.values()) {
+            assertEquals(numEntries, entries.size());
+            for (int i = 0; i < numEntries; i++) {
+                assertEquals(i, entries.get(i).longValue());
+            }
+        }
+    }
+
+    @Test
+    public void testLedgersAppliedConcurrently() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch otherLedgerApplied = new CountDownLatch(1);
+        try (JournalReplayApplier applier = new JournalReplayApplier((version, offset, entry) -> {
+            if (entry.getLong(entry.position()) == 1L) {
+                blocked.countDown();
+                try {
+                    // Only released once the record of the other ledger is applied
+                    assertTrue(otherLedgerApplied.await(30, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            } else {
+                otherLedgerApplied.countDown();
+            }
+        }, 2, 1024, true)) {
+            JournalReplayApplier.Replay replay = applier.newReplay();
+            replay.process(JournalChannel.V6, 0L, record(1L, 0L));
+            assertTrue(blocked.await(30, TimeUnit.SECONDS));
+            // Ledger 2 is not in the same partition as ledger 1 with 2 threads
+            replay.process(JournalChannel.V6, 16L, record(2L, 0L));
+            replay.awaitApplied();
+            assertEquals(0, otherLedgerApplied.getCount());
+        }
+    }
+
+    @Test
+    public void testRecordsCopiedWhenScanReusesBuffer() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> applied = Collections.synchronizedList(new ArrayList<>());
+        try (JournalReplayApplier applier = new JournalReplayApplier((version, offset, entry) -> {
+            try {
+                release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            applied.add(entry.getLong(entry.position() + 8));
+        }, 1, 1024, true)) {
+            JournalReplayApplier.Replay replay = applier.newReplay();
+            ByteBuffer buffer = record(1L, 0L);
+            replay.process(JournalChannel.V6, 0L, buffer);
+            // The scan reads the next record in the same buffer
+            buffer.putLong(8, 1L);
+            replay.process(JournalChannel.V6, 16L, buffer);
+            release.countDown();
+            replay.awaitApplied();
+        }
+        assertEquals(2, applied.size());
+        assertEquals(0L, applied.get(0).longValue());
+        assertEquals(1L, applied.get(1).longValue());
+    }
+
+    @Test
+    public void testApplyFailure() throws Exception {
+        IOException failure = new IOException("Failed to add entry");
+        try (JournalReplayApplier applier = new JournalReplayApplier((version, offset, entry) -> {
+            if (entry.getLong(entry.position() + 8) == 5L) {
+                throw failure;
+            }
+        }, 2, 1024, false)) {
+            JournalReplayApplier.Replay replay = applier.newReplay();
+            for (long entryId = 0; entryId < 10; entryId++) {
+                replay.process(JournalChannel.V6, entryId * 16, record(1L, entryId));
+            }
+            try {
+                replay.awaitApplied();
+                fail("The apply failure should be reported");
+            } catch (IOException e) {
+                assertSame(failure, e);
+            }
+            // The next records are not applied anymore
+            try {
+                replay.process(JournalChannel.V6, 160L, record(1L, 10L));
+                fail("The apply failure should be reported");
+            } catch (IOException e) {
+                assertSame(failure, e);
+            }
+        }
+    }
+
+    @Test
+    public void testReplayDoesNotAwaitOtherReplays() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> applied = Collections.synchronizedList(new ArrayList<>());
+        try (JournalReplayApplier applier = new JournalReplayApplier((version, offset, entry) -> {
+            long ledgerId = entry.getLong(entry.position());
+            if (ledgerId == 1L) {
+                blocked.countDown();
+                try {
+                    release.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            applied.add(ledgerId);
+        }, 2, 1024, true)) {
+            JournalReplayApplier.Replay blockedReplay = applier.newReplay();
+            JournalReplayApplier.Replay replay = applier.newReplay();
+            blockedReplay.process(JournalChannel.V6, 0L, record(1L, 0L));
+            assertTrue(blocked.await(30, TimeUnit.SECONDS));
+            // Ledger 2 is not in the same partition as ledger 1 with 2 threads
+            replay.process(JournalChannel.V6, 0L, record(2L, 0L));
+            // Returns while the record of the other journal is still being applied
+            replay.awaitApplied();
+            assertEquals(Collections.singletonList(2L), applied);
+
+            release.countDown();
+            blockedReplay.awaitApplied();
+            assertEquals(2, applied.size());
+        }
+    }
+}
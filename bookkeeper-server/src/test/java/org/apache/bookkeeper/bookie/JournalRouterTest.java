@@ -0,0 +1,336 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+/**
+ * Tests for {@link JournalRouter}.
+ */
+public class JournalRouterTest {
+
+    /**
+     * Journal whose counters are set by the test.
+     */
+    private static Journal mockJournal(int index) {
+        Journal journal = mock(Journal.class);
+        when(journal.getIndex()).thenReturn(index);
+        return journal;
+    }
+
+    private static void setLoad(Journal journal, long enqueued, long synced, long checkpointed, long latencyNanos) {
+        when(journal.getEnqueuedEntries()).thenReturn(enqueued);
+        when(journal.getSyncedEntries()).thenReturn(synced);
+        when(journal.getCheckpointedEntries()).thenReturn(checkpointed);
+        when(journal.getSyncLatencyNanos()).thenReturn(latencyNanos);
+    }
+
+    private static List<Journal> mockJournals(int count) {
+        List<Journal> journals = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Journal journal = mockJournal(i);
+            setLoad(journal, 0, 0, 0, 0);
+            journals.add(journal);
+        }
+        return journals;
+    }
+
+    @Test
+    public void testRoutingByLedgerId() {
+        List<Journal> journals = mockJournals(3);
+        JournalRouter router = new JournalRouter(journals, false);
+        assertFalse(router.isLoadAware());
+
+        // The load is ignored
+        setLoad(journals.get(1), 1000, 0, 0, 1000);
+        for (long ledgerId = 0; ledgerId < 10; ledgerId++) {
+            assertSame(journals.get((int) (ledgerId % 3)), router.selectJournal(ledgerId));
+            router.recordWrite(ledgerId, router.selectJournal(ledgerId));
+            assertSame(journals.get((int) (ledgerId % 3)), router.getJournal(ledgerId));
+        }
+    }
+
+    @Test
+    public void testSingleJournalIsNotLoadAware() {
+        assertFalse(new JournalRouter(mockJournals(1), true).isLoadAware());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testJournalIndexMismatch() {
+        List<Journal> journals = mockJournals(2);
+        Collections.swap(journals, 0, 1);
+        new JournalRouter(journals, true);
+    }
+
+    @Test
+    public void testNewLedgerGoesToLeastLoadedJournal() {
+        List<Journal> journals = mockJournals(3);
+        JournalRouter router = new JournalRouter(journals, true);
+        assertTrue(router.isLoadAware());
+
+        // Journal 0 has many pending entries, journal 1 a slow fsync, journal 2 is the least loaded
+        setLoad(journals.get(0), 100, 0, 0, 1000);
+        setLoad(journals.get(1), 10, 9, 0, 1_000_000);
+        setLoad(journals.get(2), 10, 5, 0, 1000);
+        assertSame(journals.get(2), router.selectJournal(0));
+        assertSame(journals.get(2), router.selectJournal(1));
+
+        // Ties go to the journal given by the ledger id
+        for (Journal journal : journals) {
+            setLoad(journal, 0, 0, 0, 0);
+        }
+        assertSame(journals.get(1), router.selectJournal(4));
+    }
+
+    @Test
+    public void testLedgerSticksToItsJournalUntilCheckpointed() {
+        List<Journal> journals = mockJournals(2);
+        JournalRouter router = new JournalRouter(journals, true);
+        long ledgerId = 0;
+
+        setLoad(journals.get(1), 100, 100, 100, 0);
+        setLoad(journals.get(0), 100, 0, 0, 1000);
+        Journal journal = router.selectJournal(ledgerId);
+        assertSame(journals.get(1), journal);
+        setLoad(journals.get(1), 101, 100, 100, 0);
+        router.recordWrite(ledgerId, journal);
+        assertSame(journal, router.getJournal(ledgerId));
+
+        // Journal 1 becomes the most loaded one, but the entry is not synced
+        setLoad(journals.get(0), 0, 0, 0, 0);
+        setLoad(journals.get(1), 1000, 100, 100, 1000);
+        assertSame(journal, router.selectJournal(ledgerId));
+
+        // The entry is synced, but not checkpointed yet: it would be replayed from journal 1
+        setLoad(journals.get(1), 1000, 1000, 100, 1000);
+        assertSame(journal, router.selectJournal(ledgerId));
+        assertSame(journal, router.getJournal(ledgerId));
+
+        // Once checkpointed, the ledger can move to the least loaded journal
+        setLoad(journals.get(1), 2000, 1000, 101, 1000);
+        assertSame(journals.get(0), router.selectJournal(ledgerId));
+        router.recordWrite(ledgerId, journals.get(0));
+        assertSame(journals.get(0), router.getJournal(ledgerId));
+    }
+
+    @Test
+    public void testPendingWriteSticksToItsJournal() {
+        List<Journal> journals = mockJournals(2);
+        JournalRouter router = new JournalRouter(journals, true);
+        long ledgerId = 0;
+
+        // Prepared for journal 1, which has all its entries checkpointed, including the prepared one
+        setLoad(journals.get(0), 100, 0, 0, 1000);
+        setLoad(journals.get(1), 100, 100, 100, 0);
+        assertSame(journals.get(1), router.selectJournal(ledgerId));
+        router.recordPendingWrite(ledgerId, journals.get(1));
+
+        // The entry is not enqueued yet, the ledger does not move even if journal 1 becomes the most loaded
+        setLoad(journals.get(0), 0, 0, 0, 0);
+        setLoad(journals.get(1), 1000, 1000, 1000, 1000);
+        assertSame(journals.get(1), router.selectJournal(ledgerId));
+        assertSame(journals.get(1), router.getJournal(ledgerId));
+
+        // Enqueued after other entries: it is covered by the sequence read once enqueued
+        setLoad(journals.get(1), 1001, 1000, 1000, 1000);
+        router.completePendingWrite(ledgerId, journals.get(1), true);
+        assertSame(journals.get(1), router.selectJournal(ledgerId));
+        setLoad(journals.get(1), 1001, 1001, 1001, 1000);
+        assertSame(journals.get(0), router.selectJournal(ledgerId));
+    }
+
+    @Test
+    public void testPendingWriteKeepsHighestSequence() {
+        List<Journal> journals = mockJournals(2);
+        JournalRouter router = new JournalRouter(journals, true);
+        long ledgerId = 1;
+
+        setLoad(journals.get(0), 0, 0, 0, 1000);
+        router.recordPendingWrite(ledgerId, journals.get(1));
+        // Another entry of the ledger is written while the prepared one is not enqueued yet
+        setLoad(journals.get(1), 10, 0, 0, 0);
+        router.recordWrite(ledgerId, journals.get(1));
+        // The prepared entry is enqueued after it
+        setLoad(journals.get(1), 20, 0, 0, 0);
+        router.completePendingWrite(ledgerId, journals.get(1), true);
+        // A late record with a lower sequence does not move the sequence back
+        setLoad(journals.get(1), 15, 15, 15, 0);
+        router.recordWrite(ledgerId, journals.get(1));
+
+        setLoad(journals.get(1), 20, 20, 19, 0);
+        assertSame(journals.get(1), router.selectJournal(ledgerId));
+        setLoad(journals.get(1), 20, 20, 20, 1000);
+        setLoad(journals.get(0), 0, 0, 0, 0);
+        assertSame(journals.get(0), router.selectJournal(ledgerId));
+    }
+
+    @Test
+    public void testCancelledPendingWrite() {
+        List<Journal> journals = mockJournals(2);
+        JournalRouter router = new JournalRouter(journals, true);
+        long ledgerId = 1;
+
+        setLoad(journals.get(1), 0, 0, 0, 1000);
+        router.recordPendingWrite(ledgerId, journals.get(1));
+        router.recordPendingWrite(ledgerId, journals.get(1));
+        router.completePendingWrite(ledgerId, journals.get(1), false);
+        // One of the entries is still pending
+        assertSame(journals.get(1), router.selectJournal(ledgerId));
+        router.completePendingWrite(ledgerId, journals.get(1), false);
+        assertSame(journals.get(0), router.selectJournal(ledgerId));
+    }
+
+    @Test
+    public void testPrepareInterleavedWithEnqueue() throws Exception {
+        File dir = Files.createTempDirectory("journal-router").toFile();
+        try {
+            File journalDir = new File(dir, "journal");
+            File ledgerDir = new File(dir, "ledger");
+            assertTrue(journalDir.mkdirs());
+            assertTrue(ledgerDir.mkdirs());
+            LedgerDirsManager ledgerDirsManager = mock(LedgerDirsManager.class);
+            when(ledgerDirsManager.getAllLedgerDirs()).thenReturn(Collections.singletonList(ledgerDir));
+            when(ledgerDirsManager.getWritableLedgerDirsForNewLog()).thenReturn(Collections.singletonList(ledgerDir));
+
+            ServerConfiguration conf = new ServerConfiguration();
+            conf.setJournalDirName(journalDir.getPath());
+            Journal journal = new Journal(0, journalDir, conf, ledgerDirsManager);
+            // The other journal is never loaded, a ledger moves to it as soon as it can
+            Journal otherJournal = mockJournal(1);
+            setLoad(otherJournal, 0, 0, 0, 0);
+            JournalRouter router = new JournalRouter(Arrays.asList(journal, otherJournal), true);
+            long ledgerId = 1;
+            journal.start();
+            try {
+                // Prepared first, but enqueued after an entry of another ledger
+                CountDownLatch written = new CountDownLatch(2);
+                List<Journal.QueueEntry> prepared = new ArrayList<>();
+                prepared.add(journal.prepareAddEntry(entry(ledgerId, 0), false,
+                        (rc, ledger, entryId, addr, ctx) -> written.countDown(), null));
+                router.recordPendingWrite(ledgerId, journal);
+
+                journal.logAddEntry(2L, 0L, Unpooled.wrappedBuffer(new byte[100]), false,
+                        (rc, ledger, entryId, addr, ctx) -> written.countDown(), null);
+                router.recordWrite(2L, journal);
+                waitForSynced(journal, 1);
+                journal.checkpointComplete(journal.newCheckpoint(), false);
+                // As many entries are checkpointed as were prepared when the ledger was routed
+                assertEquals(1, journal.getCheckpointedEntries());
+                assertSame(journal, router.selectJournal(ledgerId));
+
+                journal.logAddEntries(prepared);
+                router.completePendingWrite(ledgerId, journal, true);
+                assertSame(journal, router.selectJournal(ledgerId));
+
+                assertTrue(written.await(30, TimeUnit.SECONDS));
+                waitForSynced(journal, 2);
+                journal.checkpointComplete(journal.newCheckpoint(), false);
+                assertSame(otherJournal, router.selectJournal(ledgerId));
+            } finally {
+                journal.shutdown();
+            }
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(100);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writerIndex(entry.capacity());
+        return entry;
+    }
+
+    private static void waitForSynced(Journal journal, long entries) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (journal.getSyncedEntries() < entries && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(entries, journal.getSyncedEntries());
+    }
+
+    @Test
+    public void testCheckpointedEntries() throws Exception {
+        File dir = Files.createTempDirectory("journal-router").toFile();
+        try {
+            File journalDir = new File(dir, "journal");
+            File ledgerDir = new File(dir, "ledger");
+            assertTrue(journalDir.mkdirs());
+            assertTrue(ledgerDir.mkdirs());
+            LedgerDirsManager ledgerDirsManager = mock(LedgerDirsManager.class);
+            when(ledgerDirsManager.getAllLedgerDirs()).thenReturn(Collections.singletonList(ledgerDir));
+            when(ledgerDirsManager.getWritableLedgerDirsForNewLog()).thenReturn(Collections.singletonList(ledgerDir));
+
+            ServerConfiguration conf = new ServerConfiguration();
+            conf.setJournalDirName(journalDir.getPath());
+            Journal journal = new Journal(0, journalDir, conf, ledgerDirsManager);
+            assertEquals(0, journal.getIndex());
+            journal.start();
+            try {
+                int entries = 10;
+                CountDownLatch written = new CountDownLatch(entries);
+                for (int i = 0; i < entries; i++) {
+                    journal.logAddEntry(1L, i, Unpooled.wrappedBuffer(new byte[100]), false,
+                            (rc, ledgerId, entryId, addr, ctx) -> written.countDown(), null);
+                }
+                assertTrue(written.await(30, TimeUnit.SECONDS));
+                assertEquals(entries, journal.getEnqueuedEntries());
+                assertEquals(entries, journal.getSyncedEntries());
+
+                // Entries are only checkpointed once a checkpoint covering them is complete
+                Checkpoint checkpoint = journal.newCheckpoint();
+                assertEquals(0, journal.getCheckpointedEntries());
+                journal.checkpointComplete(checkpoint, false);
+                assertEquals(entries, journal.getCheckpointedEntries());
+
+                // An older checkpoint does not move the counter back
+                journal.checkpointComplete(checkpoint, false);
+                assertEquals(entries, journal.getCheckpointedEntries());
+            } finally {
+                journal.shutdown();
+            }
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+}
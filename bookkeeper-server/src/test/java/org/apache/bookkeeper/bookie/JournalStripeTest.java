@@ -0,0 +1,221 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.discover.BookieServiceInfo;
+import org.apache.bookkeeper.discover.RegistrationManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the journal writer stripes of a journal directory.
+ */
+public class JournalStripeTest {
+
+    private File dir;
+    private File journalDir;
+    private LedgerDirsManager ledgerDirsManager;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("journal-stripes").toFile();
+        journalDir = new File(dir, "journal");
+        File ledgerDir = new File(dir, "ledger");
+        assertTrue(journalDir.mkdirs());
+        assertTrue(ledgerDir.mkdirs());
+        ledgerDirsManager = mock(LedgerDirsManager.class);
+        when(ledgerDirsManager.getAllLedgerDirs()).thenReturn(Collections.singletonList(ledgerDir));
+        when(ledgerDirsManager.getWritableLedgerDirsForNewLog()).thenReturn(Collections.singletonList(ledgerDir));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testStripeDirectories() throws Exception {
+        // The first stripe keeps the journal directory, so that existing journals are still replayed
+        assertEquals(journalDir, Journal.getStripeDirectory(journalDir, 0));
+        File stripeDir = Journal.getStripeDirectory(journalDir, 3);
+        assertEquals(journalDir, stripeDir.getParentFile());
+
+        assertEquals(-1, Journal.getStripe(stripeDir));
+        assertTrue(stripeDir.mkdirs());
+        assertEquals(3, Journal.getStripe(stripeDir));
+
+        for (String name : new String[] { "stripe-0", "stripe--1", "stripe-x", "current" }) {
+            File other = new File(journalDir, name);
+            assertTrue(other.mkdirs());
+            assertEquals(-1, Journal.getStripe(other));
+        }
+    }
+
+    @Test
+    public void testJournalIndex() {
+        // The first stripe of each directory keeps the index of the directory
+        assertEquals(0, Journal.getJournalIndex(0, 0, 2));
+        assertEquals(1, Journal.getJournalIndex(1, 0, 2));
+        assertEquals(2, Journal.getJournalIndex(0, 1, 2));
+        assertEquals(5, Journal.getJournalIndex(1, 2, 2));
+    }
+
+    @Test
+    public void testStripesKeepTheirOwnLastMark() throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalDirName(journalDir.getPath());
+        conf.setJournalWriterStripes(2);
+        File stripeDir = Journal.getStripeDirectory(journalDir, 1);
+        assertTrue(stripeDir.mkdirs());
+
+        Journal first = new Journal(Journal.getJournalIndex(0, 0, 1), journalDir, conf, ledgerDirsManager);
+        Journal second = new Journal(Journal.getJournalIndex(0, 1, 1), stripeDir, conf, ledgerDirsManager);
+        writeAndCheckpoint(first, 5);
+        writeAndCheckpoint(second, 1);
+        assertEquals(1, Journal.listJournalIds(journalDir, null).size());
+        assertEquals(1, Journal.listJournalIds(stripeDir, null).size());
+
+        // Each stripe reads back the mark of its own journal files
+        Journal firstReopened = new Journal(0, journalDir, conf, ledgerDirsManager);
+        Journal secondReopened = new Journal(1, stripeDir, conf, ledgerDirsManager);
+        assertEquals(0, first.getLastLogMark().getCurMark().compare(firstReopened.getLastLogMark().getCurMark()));
+        assertEquals(0, second.getLastLogMark().getCurMark().compare(secondReopened.getLastLogMark().getCurMark()));
+        assertEquals(Journal.listJournalIds(journalDir, null).get(0).longValue(),
+                firstReopened.getLastLogMark().getCurMark().getLogFileId());
+        assertEquals(Journal.listJournalIds(stripeDir, null).get(0).longValue(),
+                secondReopened.getLastLogMark().getCurMark().getLogFileId());
+        assertTrue(firstReopened.getLastLogMark().getCurMark().getLogFileOffset()
+                > secondReopened.getLastLogMark().getCurMark().getLogFileOffset());
+    }
+
+    @Test
+    public void testStartupFailsWithUnreplayedStripe() throws Exception {
+        File ledgerDir = new File(dir, "bookie-ledger");
+        ServerConfiguration conf = bookieConf(ledgerDir, 2);
+        File stripeDir = Journal.getStripeDirectory(BookieImpl.getCurrentDirectory(journalDir), 1);
+        assertTrue(stripeDir.mkdirs());
+        // The records of the second stripe are not covered by a checkpoint
+        write(new Journal(Journal.getJournalIndex(0, 1, 1), stripeDir, conf, bookieDirsManager(ledgerDir)), 5);
+
+        conf.setJournalWriterStripes(1);
+        try {
+            newBookie(conf);
+            fail("The records of the unused stripe would not be replayed");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains(stripeDir.getPath()));
+        }
+
+        // Starts with the stripe, and the stripe is not checked anymore
+        conf.setJournalWriterStripes(2);
+        newBookie(conf).shutdown();
+    }
+
+    @Test
+    public void testStartupWithCheckpointedUnusedStripe() throws Exception {
+        File ledgerDir = new File(dir, "bookie-ledger");
+        ServerConfiguration conf = bookieConf(ledgerDir, 2);
+        File stripeDir = Journal.getStripeDirectory(BookieImpl.getCurrentDirectory(journalDir), 1);
+        assertTrue(stripeDir.mkdirs());
+        // The last mark is written in the ledger directories of the bookie
+        writeAndCheckpoint(new Journal(Journal.getJournalIndex(0, 1, 1), stripeDir, conf, bookieDirsManager(ledgerDir)),
+                5);
+
+        // All the records of the second stripe are checkpointed, it can be dropped
+        conf.setJournalWriterStripes(1);
+        newBookie(conf).shutdown();
+    }
+
+    private ServerConfiguration bookieConf(File ledgerDir, int stripes) throws IOException {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalDirName(journalDir.getPath());
+        conf.setLedgerDirNames(new String[] { ledgerDir.getPath() });
+        conf.setJournalWriterStripes(stripes);
+        conf.setAllowLoopback(true);
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(journalDir));
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+        return conf;
+    }
+
+    private static LedgerDirsManager bookieDirsManager(File ledgerDir) throws Exception {
+        File currentDir = BookieImpl.getCurrentDirectory(ledgerDir);
+        LedgerDirsManager dirsManager = mock(LedgerDirsManager.class);
+        when(dirsManager.getAllLedgerDirs()).thenReturn(Collections.singletonList(currentDir));
+        when(dirsManager.getWritableLedgerDirsForNewLog()).thenReturn(Collections.singletonList(currentDir));
+        return dirsManager;
+    }
+
+    private static BookieImpl newBookie(ServerConfiguration conf) throws Exception {
+        DiskChecker diskChecker = new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold());
+        LedgerDirsManager dirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(), diskChecker);
+        return new BookieImpl(conf, mock(RegistrationManager.class), mock(LedgerStorage.class), diskChecker,
+                dirsManager, dirsManager, NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT,
+                BookieServiceInfo.NO_INFO);
+    }
+
+    private static void write(Journal journal, int entries) throws Exception {
+        journal.start();
+        try {
+            CountDownLatch written = new CountDownLatch(entries);
+            for (int i = 0; i < entries; i++) {
+                journal.logAddEntry(1L, i, Unpooled.wrappedBuffer(new byte[1000]), false,
+                        (rc, ledgerId, entryId, addr, ctx) -> written.countDown(), null);
+            }
+            assertTrue(written.await(30, TimeUnit.SECONDS));
+        } finally {
+            journal.shutdown();
+        }
+    }
+
+    private static void writeAndCheckpoint(Journal journal, int entries) throws Exception {
+        journal.start();
+        try {
+            CountDownLatch written = new CountDownLatch(entries);
+            for (int i = 0; i < entries; i++) {
+                journal.logAddEntry(1L, i, Unpooled.wrappedBuffer(new byte[1000]), false,
+                        (rc, ledgerId, entryId, addr, ctx) -> written.countDown(), null);
+            }
+            assertTrue(written.await(30, TimeUnit.SECONDS));
+            journal.checkpointComplete(journal.newCheckpoint(), false);
+        } finally {
+            journal.shutdown();
+        }
+    }
+}
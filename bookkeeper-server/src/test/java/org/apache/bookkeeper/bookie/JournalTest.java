@@ -4,6 +4,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.buffer.UnpooledByteBufAllocator;
+import org.apache.bookkeeper.bookie.Journal.JournalScanner;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookieRequestHandler;
@@ -12,6 +13,7 @@ import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.commons.io.FileUtils;
 import org.junit.*;
 
 import java.io.File;
@@ -20,6 +22,9 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
@@ -681,6 +686,262 @@ public class JournalTest {
         Assert.assertEquals(expectedPos, pos);
     }
 
+    private static ByteBuf journalEntry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(16 + 1000);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        // Compressible payload
+        for (int i = 0; i < 1000; i++) {
+            entry.writeByte((int) (entryId % 4));
+        }
+        return entry;
+    }
+
+    private static void writeJournal(File journalDir, int formatVersion, long ledgerId, int numEntries)
+            throws Exception {
+        LedgerDirsManager ldm = mock(LedgerDirsManager.class);
+        when(ldm.getAllLedgerDirs()).thenReturn(Collections.singletonList(journalDir));
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalFormatVersionToWrite(formatVersion);
+        conf.setJournalReuseFiles(false);
+        Journal journal = new Journal(JOURNAL_IDX, journalDir, conf, ldm);
+        journal.start();
+        try {
+            CountDownLatch latch = new CountDownLatch(numEntries);
+            for (int i = 0; i < numEntries; i++) {
+                journal.logAddEntry(ledgerId, i, journalEntry(ledgerId, i), false,
+                        (rc, l, e, addr, ctx) -> latch.countDown(), null);
+            }
+            Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+        } finally {
+            journal.shutdown();
+        }
+    }
+
+    private static List<ByteBuffer> replayJournals(File journalDir, boolean memoryMapped) throws IOException {
+        LedgerDirsManager ldm = mock(LedgerDirsManager.class);
+        when(ldm.getAllLedgerDirs()).thenReturn(Collections.singletonList(journalDir));
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalReplayMemoryMapped(memoryMapped);
+        Journal journal = new Journal(JOURNAL_IDX, journalDir, conf, ldm);
+        List<ByteBuffer> entries = new ArrayList<>();
+        for (long journalId : Journal.listJournalIds(journalDir, null)) {
+            journal.scanJournal(journalId, 0L, (version, offset, entry) -> {
+                ByteBuffer copy = ByteBuffer.allocate(entry.remaining());
+                copy.put(entry.duplicate()).flip();
+                entries.add(copy);
+            }, false);
+        }
+        return entries;
+    }
+
+    private static void assertJournalEntries(List<ByteBuffer> entries, long ledgerId, int firstEntry,
+                                             int numEntries) {
+        for (int i = 0; i < numEntries; i++) {
+            ByteBuf expected = journalEntry(ledgerId, i);
+            Assert.assertEquals(expected.nioBuffer(), entries.get(firstEntry + i));
+            expected.release();
+        }
+    }
+
+    private static File newTempJournalDir() throws IOException {
+        File dir = Files.createTempDirectory("journal").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    @Test
+    public void testV7CompressedBatchesRoundTrip() throws Exception {
+        Assume.assumeTrue(JournalBatchCompressor.isAvailable());
+        File journalDir = newTempJournalDir();
+        try {
+            writeJournal(journalDir, JournalChannel.V7, 1L, 100);
+
+            // The compressed journal is smaller than the records it holds
+            File journalFile = new File(journalDir,
+                    Long.toHexString(Journal.listJournalIds(journalDir, null).get(0)) + ".txn");
+            try (FileChannel fc = new RandomAccessFile(journalFile, "r").getChannel()) {
+                ByteBuffer header = ByteBuffer.allocate(8);
+                fc.read(header, 0);
+                header.flip();
+                header.getInt();
+                Assert.assertEquals(JournalChannel.V7, header.getInt());
+                ByteBuffer mask = ByteBuffer.allocate(4);
+                fc.read(mask, JournalChannel.HEADER_SIZE);
+                mask.flip();
+                Assert.assertEquals(JournalBatchCompressor.COMPRESSED_BATCH_MASK, mask.getInt());
+            }
+
+            for (boolean memoryMapped : new boolean[] { false, true }) {
+                List<ByteBuffer> entries = replayJournals(journalDir, memoryMapped);
+                Assert.assertEquals(100, entries.size());
+                assertJournalEntries(entries, 1L, 0, 100);
+            }
+        } finally {
+            FileUtils.deleteDirectory(journalDir);
+        }
+    }
+
+    @Test
+    public void testMixedV6AndV7Replay() throws Exception {
+        File journalDir = newTempJournalDir();
+        try {
+            writeJournal(journalDir, JournalChannel.V6, 1L, 50);
+            // Make sure the second journal file gets a new id
+            Thread.sleep(5);
+            writeJournal(journalDir, JournalChannel.V7, 2L, 50);
+            Assert.assertEquals(2, Journal.listJournalIds(journalDir, null).size());
+
+            for (boolean memoryMapped : new boolean[] { false, true }) {
+                List<ByteBuffer> entries = replayJournals(journalDir, memoryMapped);
+                Assert.assertEquals(100, entries.size());
+                assertJournalEntries(entries, 1L, 0, 50);
+                assertJournalEntries(entries, 2L, 50, 50);
+            }
+        } finally {
+            FileUtils.deleteDirectory(journalDir);
+        }
+    }
+
+    private static long scanJournal(File journalDir, long journalId, long journalPos, boolean memoryMapped,
+                                    List<Long> offsets, List<ByteBuffer> entries) throws IOException {
+        LedgerDirsManager ldm = mock(LedgerDirsManager.class);
+        when(ldm.getAllLedgerDirs()).thenReturn(Collections.singletonList(journalDir));
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalReplayMemoryMapped(memoryMapped);
+        Journal journal = new Journal(JOURNAL_IDX, journalDir, conf, ldm);
+        return journal.scanJournal(journalId, journalPos, (version, offset, entry) -> {
+            offsets.add(offset);
+            ByteBuffer copy = ByteBuffer.allocate(entry.remaining());
+            copy.put(entry.duplicate()).flip();
+            entries.add(copy);
+        }, false);
+    }
+
+    @Test
+    public void testMappedReplayMatchesChannelReplay() throws Exception {
+        File journalDir = newTempJournalDir();
+        try {
+            writeJournal(journalDir, JournalChannel.V6, 1L, 50);
+            long journalId = Journal.listJournalIds(journalDir, null).get(0);
+            File journalFile = new File(journalDir, Long.toHexString(journalId) + ".txn");
+
+            List<Long> offsets = new ArrayList<>();
+            List<ByteBuffer> entries = new ArrayList<>();
+            long endPos = scanJournal(journalDir, journalId, 0L, false, offsets, entries);
+            Assert.assertEquals(50, entries.size());
+
+            // The last record was not fully written when the bookie stopped
+            try (FileChannel fc = new RandomAccessFile(journalFile, "rw").getChannel()) {
+                fc.truncate(endPos - 4);
+                fc.position(endPos - 4);
+                writeJournalEntry(fc, 1016, new byte[10]);
+                fc.force(true);
+            }
+
+            List<Long> channelOffsets = new ArrayList<>();
+            List<ByteBuffer> channelEntries = new ArrayList<>();
+            long channelEndPos = scanJournal(journalDir, journalId, 0L, false, channelOffsets, channelEntries);
+            List<Long> mappedOffsets = new ArrayList<>();
+            List<ByteBuffer> mappedEntries = new ArrayList<>();
+            long mappedEndPos = scanJournal(journalDir, journalId, 0L, true, mappedOffsets, mappedEntries);
+            Assert.assertEquals(offsets, channelOffsets);
+            Assert.assertEquals(offsets, mappedOffsets);
+            Assert.assertEquals(channelEndPos, mappedEndPos);
+            assertJournalEntries(mappedEntries, 1L, 0, 50);
+
+            // Scan resumed from the lastLogMark
+            mappedOffsets.clear();
+            mappedEntries.clear();
+            Assert.assertEquals(channelEndPos,
+                    scanJournal(journalDir, journalId, offsets.get(10), true, mappedOffsets, mappedEntries));
+            Assert.assertEquals(offsets.subList(10, 50), mappedOffsets);
+            Assert.assertEquals(40, mappedEntries.size());
+            for (int i = 0; i < 40; i++) {
+                Assert.assertEquals(entries.get(10 + i), mappedEntries.get(i));
+            }
+        } finally {
+            FileUtils.deleteDirectory(journalDir);
+        }
+    }
+
+    @Test
+    public void testCorruptCompressedBatch() throws Exception {
+        File journalDir = newTempJournalDir();
+        try {
+            long journalId = System.currentTimeMillis();
+            File journalFile = new File(journalDir, Long.toHexString(journalId) + ".txn");
+            long batchEnd;
+            try (FileChannel fc = new RandomAccessFile(journalFile, "rw").getChannel()) {
+                ByteBuffer header = ByteBuffer.allocate(JournalChannel.HEADER_SIZE);
+                header.put("BKLG".getBytes(StandardCharsets.UTF_8));
+                header.putInt(JournalChannel.V7);
+                header.position(JournalChannel.HEADER_SIZE);
+                header.flip();
+                fc.write(header);
+                writeJournalEntry(fc, 4, "test".getBytes(StandardCharsets.UTF_8));
+                // A batch that is not valid Snappy data
+                byte[] garbage = new byte[32];
+                Arrays.fill(garbage, (byte) 0xff);
+                ByteBuffer batch = ByteBuffer.allocate(8 + garbage.length);
+                batch.putInt(JournalBatchCompressor.COMPRESSED_BATCH_MASK);
+                batch.putInt(garbage.length);
+                batch.put(garbage);
+                batch.flip();
+                fc.write(batch);
+                batchEnd = fc.position();
+                writeJournalEntry(fc, 4, "next".getBytes(StandardCharsets.UTF_8));
+                fc.force(true);
+            }
+
+            for (boolean memoryMapped : new boolean[] { false, true }) {
+                LedgerDirsManager ldm = mock(LedgerDirsManager.class);
+                when(ldm.getAllLedgerDirs()).thenReturn(Collections.singletonList(journalDir));
+                ServerConfiguration conf = new ServerConfiguration();
+                conf.setJournalReplayMemoryMapped(memoryMapped);
+                Journal journal = new Journal(JOURNAL_IDX, journalDir, conf, ldm);
+                List<String> replayed = new ArrayList<>();
+                JournalScanner scanner = (version, offset, entry) ->
+                        replayed.add(StandardCharsets.UTF_8.decode(entry).toString());
+                try {
+                    journal.scanJournal(journalId, 0L, scanner, false);
+                    Assert.fail("The corrupt batch should not be replayed");
+                } catch (IOException e) {
+                    // expected
+                }
+                Assert.assertEquals(Collections.singletonList("test"), replayed);
+
+                // The rest of the file is skipped when invalid records are skipped
+                replayed.clear();
+                Assert.assertEquals(batchEnd, journal.scanJournal(journalId, 0L, scanner, true));
+                Assert.assertEquals(Collections.singletonList("test"), replayed);
+            }
+        } finally {
+            FileUtils.deleteDirectory(journalDir);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testScanJournal_NegativeCompressedBatchLen_Throws() throws Exception {
+        long journalId = System.currentTimeMillis();
+        File journalFile = new File(JOURNAL_DIRECTORY, Long.toHexString(journalId) + ".txn");
+        try (FileChannel fc = new RandomAccessFile(journalFile, "rw").getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(JournalChannel.HEADER_SIZE);
+            header.put("BKLG".getBytes(StandardCharsets.UTF_8));
+            header.putInt(JournalChannel.V7);
+            header.position(JournalChannel.HEADER_SIZE);
+            header.flip();
+            fc.write(header);
+            ByteBuffer buf = ByteBuffer.allocate(8);
+            buf.putInt(JournalBatchCompressor.COMPRESSED_BATCH_MASK);
+            buf.putInt(-16);
+            buf.flip();
+            fc.write(buf);
+            fc.force(true);
+        }
+        journal.scanJournal(journalId, 0L, (v, o, e) -> {}, false);
+    }
+
     // Test che verifica la cancellazione dei vecchi journal file quando maxBackupJournals è 1
     @Test
     public void testCheckpointComplete_DeletesOldJournals() throws Exception {
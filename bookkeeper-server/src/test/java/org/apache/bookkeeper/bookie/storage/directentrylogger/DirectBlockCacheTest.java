@@ -0,0 +1,344 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+import org.apache.bookkeeper.slogger.Slogger;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Tests for the block cache of the direct entry log readers, {@link DirectBlockCache}.
+ */
+public class DirectBlockCacheTest {
+
+    private static final int BLOCK_SIZE = Buffer.ALIGNMENT;
+
+    private final List<Buffer> buffers = new ArrayList<>();
+    private final AtomicInteger readersCreated = new AtomicInteger();
+    private File tmpDir;
+    private ExecutorService writeExecutor;
+    private ExecutorService flushExecutor;
+
+    @After
+    public void tearDown() throws Exception {
+        for (Buffer buffer : buffers) {
+            buffer.free();
+        }
+        if (writeExecutor != null) {
+            writeExecutor.shutdownNow();
+            flushExecutor.shutdownNow();
+        }
+        if (tmpDir != null) {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    private Buffer block(int value) throws Exception {
+        Buffer block = new Buffer(new NativeIOImpl(), ByteBufAllocator.DEFAULT, BLOCK_SIZE);
+        buffers.add(block);
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            block.buffer.setByte(i, value);
+        }
+        return block;
+    }
+
+    private static DirectBlockCache newCache(int blocks, int concurrencyLevel) {
+        return new DirectBlockCache(ByteBufAllocator.DEFAULT, (long) blocks * BLOCK_SIZE, BLOCK_SIZE,
+                concurrencyLevel, mock(Counter.class), mock(Counter.class));
+    }
+
+    private static int read(DirectBlockCache cache, int logId, long offset, int size) {
+        ByteBuf buf = Unpooled.buffer(size);
+        try {
+            return cache.read(logId, offset, buf, size);
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testReadCachedBlock() throws Exception {
+        Counter hits = mock(Counter.class);
+        Counter misses = mock(Counter.class);
+        try (DirectBlockCache cache = new DirectBlockCache(ByteBufAllocator.DEFAULT, 4L * BLOCK_SIZE, BLOCK_SIZE,
+                1, hits, misses)) {
+            ByteBuf buf = Unpooled.buffer(BLOCK_SIZE);
+            assertEquals(-1, cache.read(1, 0L, buf, 10));
+            assertEquals(0, buf.readableBytes());
+
+            cache.put(1, BLOCK_SIZE, block(7), BLOCK_SIZE);
+            assertEquals(1, cache.count());
+            assertEquals(10, cache.read(1, BLOCK_SIZE + 100, buf, 10));
+            assertEquals(10, buf.readableBytes());
+            while (buf.isReadable()) {
+                assertEquals(7, buf.readByte());
+            }
+            // A read going past the end of the block only gets the bytes of the block
+            buf.clear();
+            assertEquals(100, cache.read(1, 2 * BLOCK_SIZE - 100, buf, 1000));
+            assertEquals(-1, cache.read(2, BLOCK_SIZE, buf, 10));
+            buf.release();
+
+            verify(hits, times(2)).inc();
+            verify(misses, times(2)).inc();
+        }
+    }
+
+    @Test
+    public void testClockEviction() throws Exception {
+        try (DirectBlockCache cache = newCache(2, 1)) {
+            cache.put(1, 0L, block(1), BLOCK_SIZE);
+            cache.put(1, BLOCK_SIZE, block(2), BLOCK_SIZE);
+            // The first block gets a second chance
+            assertEquals(10, read(cache, 1, 0L, 10));
+
+            cache.put(1, 2 * BLOCK_SIZE, block(3), BLOCK_SIZE);
+            assertEquals(2, cache.count());
+            assertEquals(10, read(cache, 1, 0L, 10));
+            assertEquals(-1, read(cache, 1, BLOCK_SIZE, 10));
+            assertEquals(10, read(cache, 1, 2 * BLOCK_SIZE, 10));
+
+            // Both blocks are referenced, the hand clears them and evicts the one it first went past
+            cache.put(1, 3 * BLOCK_SIZE, block(4), BLOCK_SIZE);
+            assertEquals(2, cache.count());
+            assertEquals(-1, read(cache, 1, 0L, 10));
+            assertEquals(10, read(cache, 1, 2 * BLOCK_SIZE, 10));
+            assertEquals(10, read(cache, 1, 3 * BLOCK_SIZE, 10));
+        }
+    }
+
+    @Test
+    public void testPutReplacesBlock() throws Exception {
+        try (DirectBlockCache cache = newCache(2, 1)) {
+            cache.put(1, 0L, block(1), 100);
+            cache.put(1, 0L, block(2), BLOCK_SIZE);
+            assertEquals(1, cache.count());
+            ByteBuf buf = Unpooled.buffer(BLOCK_SIZE);
+            assertEquals(BLOCK_SIZE, cache.read(1, 0L, buf, BLOCK_SIZE));
+            assertEquals(2, buf.getByte(BLOCK_SIZE - 1));
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testPartialLastBlock() throws Exception {
+        try (DirectBlockCache cache = newCache(2, 1)) {
+            cache.put(1, BLOCK_SIZE, block(5), 100);
+            // Only the valid bytes of the block are read
+            assertEquals(50, read(cache, 1, BLOCK_SIZE + 50, 100));
+            assertEquals(100, read(cache, 1, BLOCK_SIZE, 1000));
+            // Past the valid bytes, the block is not in the cache
+            assertEquals(-1, read(cache, 1, BLOCK_SIZE + 100, 10));
+            assertEquals(-1, read(cache, 1, 2 * BLOCK_SIZE - 1, 1));
+        }
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        try (DirectBlockCache cache = newCache(16, 4)) {
+            for (int logId = 1; logId <= 2; logId++) {
+                for (int i = 0; i < 4; i++) {
+                    cache.put(logId, (long) i * BLOCK_SIZE, block(i), BLOCK_SIZE);
+                }
+            }
+            assertEquals(8, cache.count());
+
+            cache.invalidate(1);
+            assertEquals(4, cache.count());
+            for (int i = 0; i < 4; i++) {
+                assertEquals(-1, read(cache, 1, (long) i * BLOCK_SIZE, 10));
+                assertEquals(10, read(cache, 2, (long) i * BLOCK_SIZE, 10));
+            }
+
+            // The slots of the invalidated blocks are reused
+            for (int i = 0; i < 4; i++) {
+                cache.put(3, (long) i * BLOCK_SIZE, block(i), BLOCK_SIZE);
+            }
+            assertEquals(8, cache.count());
+        }
+    }
+
+    private DirectEntryLogger newEntryLogger(long maxFileSize, long blockCacheSize) throws Exception {
+        Assume.assumeTrue("O_DIRECT is only supported on Linux", SystemUtils.IS_OS_LINUX);
+        tmpDir = Files.createTempDirectory("block-cache").toFile();
+        File ledgerDir = new File(tmpDir, "current");
+        assertTrue(ledgerDir.mkdirs());
+        LedgerDirsManager ledgerDirsManager = mock(LedgerDirsManager.class);
+        when(ledgerDirsManager.getAllLedgerDirs()).thenReturn(Collections.singletonList(ledgerDir));
+        writeExecutor = Executors.newSingleThreadExecutor();
+        flushExecutor = Executors.newSingleThreadExecutor();
+        return new DirectEntryLogger(ledgerDir, new EntryLogIdsImpl(ledgerDirsManager, Slogger.NULL),
+                new NativeIOImpl(), ByteBufAllocator.DEFAULT, writeExecutor, flushExecutor,
+                maxFileSize, 1024 * 1024, 1024 * 1024, 1024 * 1024, 64 * 1024, 4, 300, 1,
+                blockCacheSize, BLOCK_SIZE, Slogger.NULL, NullStatsLogger.INSTANCE) {
+            @Override
+            LogReader newDirectReader(int logId) throws IOException {
+                readersCreated.incrementAndGet();
+                return super.newDirectReader(logId);
+            }
+        };
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((byte) entryId);
+        }
+        return entry;
+    }
+
+    private static void checkEntry(DirectEntryLogger entryLogger, long entryId, long location) throws Exception {
+        ByteBuf expected = entry(1L, entryId, 300 + (int) entryId);
+        ByteBuf read = entryLogger.readEntry(1L, entryId, location);
+        try {
+            assertEquals(expected, read);
+        } finally {
+            read.release();
+            expected.release();
+        }
+    }
+
+    @Test
+    public void testReaderUsesCacheOnceLogIsFlushed() throws Exception {
+        DirectEntryLogger entryLogger = newEntryLogger(64 * 1024, 1024 * 1024);
+        try {
+            List<Long> locations = new ArrayList<>();
+            for (long entryId = 0; entryId < 10; entryId++) {
+                locations.add(entryLogger.addEntry(1L, entry(1L, entryId, 300 + (int) entryId)));
+            }
+            entryLogger.flush();
+
+            // The log is still written, so its blocks are not cached
+            for (int i = 0; i < locations.size(); i++) {
+                checkEntry(entryLogger, i, locations.get(i));
+            }
+            assertEquals(1, readersCreated.get());
+            assertEquals(0, entryLogger.getBlockCache().count());
+
+            // Roll the log and wait for it to be closed
+            entryLogger.addEntry(1L, entry(1L, 100L, 63 * 1024));
+            entryLogger.flush();
+            assertTrue(entryLogger.getFlushedLogIds().contains(locations.get(0) >> 32));
+
+            // The same reader now reads through the block cache
+            for (int i = 0; i < locations.size(); i++) {
+                checkEntry(entryLogger, i, locations.get(i));
+            }
+            assertEquals(1, readersCreated.get());
+            assertTrue(entryLogger.getBlockCache().count() > 0);
+        } finally {
+            entryLogger.close();
+        }
+    }
+
+    @Test
+    public void testRemoveEntryLogInvalidatesBlocks() throws Exception {
+        DirectEntryLogger entryLogger = newEntryLogger(64 * 1024, 1024 * 1024);
+        try {
+            List<Long> locations = new ArrayList<>();
+            for (long entryId = 0; entryId < 10; entryId++) {
+                locations.add(entryLogger.addEntry(1L, entry(1L, entryId, 300 + (int) entryId)));
+            }
+            // Roll the log and wait for it to be closed
+            entryLogger.addEntry(1L, entry(1L, 100L, 63 * 1024));
+            entryLogger.flush();
+
+            for (int i = 0; i < locations.size(); i++) {
+                checkEntry(entryLogger, i, locations.get(i));
+            }
+            long cachedBlocks = entryLogger.getBlockCache().count();
+            assertTrue(cachedBlocks > 0);
+
+            assertTrue(entryLogger.removeEntryLog(locations.get(0) >> 32));
+            assertEquals(0, entryLogger.getBlockCache().count());
+        } finally {
+            entryLogger.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        // Smaller than the log, so that the readers also evict blocks
+        DirectEntryLogger entryLogger = newEntryLogger(256 * 1024, 16L * BLOCK_SIZE);
+        ExecutorService readExecutor = Executors.newFixedThreadPool(4);
+        try {
+            List<Long> locations = new ArrayList<>();
+            for (long entryId = 0; entryId < 500; entryId++) {
+                locations.add(entryLogger.addEntry(1L, entry(1L, entryId, 300 + (int) entryId)));
+            }
+            // Roll the logs and wait for them to be closed
+            for (long entryId = 1000; entryId < 1003; entryId++) {
+                entryLogger.addEntry(1L, entry(1L, entryId, 100 * 1024));
+            }
+            entryLogger.flush();
+
+            List<Future<?>> readers = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                int first = thread;
+                readers.add(readExecutor.submit(() -> {
+                    for (int round = 0; round < 3; round++) {
+                        for (int i = first; i < locations.size(); i += 3) {
+                            checkEntry(entryLogger, i, locations.get(i));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+            assertEquals(16, entryLogger.getBlockCache().count());
+        } finally {
+            readExecutor.shutdownNow();
+            entryLogger.close();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Tests for {@link DirectFileChannel}, with pwrite and O_DSYNC and with io_uring.
+ */
+@RunWith(Parameterized.class)
+public class DirectFileChannelTest {
+
+    @Parameterized.Parameters(name = "useIoUring={0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] { { false }, { true } });
+    }
+
+    private final boolean useIoUring;
+    private NativeIO nativeIO;
+    private File dir;
+    private File file;
+    private DirectFileChannel channel;
+
+    public DirectFileChannelTest(boolean useIoUring) {
+        this.useIoUring = useIoUring;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue("O_DIRECT is only supported on Linux", SystemUtils.IS_OS_LINUX);
+        nativeIO = new NativeIOImpl();
+        if (useIoUring) {
+            try {
+                nativeIO.io_uring_close(nativeIO.io_uring_init(2));
+            } catch (NativeIOException | LinkageError e) {
+                Assume.assumeNoException("io_uring is not available", e);
+            }
+        }
+
+        dir = Files.createTempDirectory("direct-file-channel").toFile();
+        file = new File(dir, "test.txn");
+        assertTrue(file.createNewFile());
+        channel = new DirectFileChannel(file.getPath(), nativeIO, 8192, useIoUring);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (channel != null) {
+            channel.close();
+        }
+        if (dir != null) {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testUnalignedWrites() throws Exception {
+        byte[] data = randomBytes(20000);
+        int offset = 0;
+        for (int length : new int[] { 1, 100, 4095, 4097, 9000, 2707 }) {
+            assertEquals(length, channel.write(ByteBuffer.wrap(data, offset, length)));
+            offset += length;
+        }
+
+        assertEquals(data.length, channel.position());
+        // The last block is padded with zeros
+        assertEquals(5 * 4096, channel.size());
+        // With io_uring, the writes are only queued until they are completed
+        channel.completeWrites();
+        assertArrayEquals(data, Arrays.copyOf(Files.readAllBytes(file.toPath()), data.length));
+        assertArrayEquals(data, readFully(0, data.length));
+    }
+
+    @Test
+    public void testGatheringWriteAndScatteringRead() throws Exception {
+        byte[] first = randomBytes(1000);
+        byte[] second = randomBytes(5000);
+        byte[] third = randomBytes(300);
+        ByteBuffer[] srcs = { ByteBuffer.allocate(10), ByteBuffer.wrap(first), ByteBuffer.wrap(second),
+                ByteBuffer.wrap(third) };
+        assertEquals(6300, channel.write(srcs, 1, 3));
+        assertEquals(10, srcs[0].remaining());
+        assertEquals(6300, channel.position());
+
+        channel.position(0);
+        ByteBuffer[] dsts = { ByteBuffer.allocate(1000), ByteBuffer.allocate(5000), ByteBuffer.allocate(1000) };
+        assertEquals(7000, channel.read(dsts, 0, 3));
+        assertEquals(7000, channel.position());
+        assertArrayEquals(first, dsts[0].array());
+        assertArrayEquals(second, dsts[1].array());
+        // The end of the last block reads as zeros
+        byte[] expected = Arrays.copyOf(third, 1000);
+        assertArrayEquals(expected, dsts[2].array());
+
+        // Short read at the end of the file, then end of file
+        ByteBuffer[] tail = { ByteBuffer.allocate(1000), ByteBuffer.allocate(1000) };
+        assertEquals(2 * 4096 - 7000, channel.read(tail, 0, 2));
+        assertEquals(2 * 4096 - 8000, tail[1].position());
+        assertEquals(-1, channel.read(tail, 1, 1));
+    }
+
+    @Test
+    public void testTruncate() throws Exception {
+        byte[] data = randomBytes(10000);
+        channel.write(ByteBuffer.wrap(data));
+
+        channel.truncate(5000);
+        assertEquals(5000, channel.size());
+        assertEquals(5000, channel.position());
+        channel.force(false);
+        assertEquals(5000, file.length());
+
+        // Writing again in the middle of the truncated block must not bring back the old data
+        byte[] tail = randomBytes(100);
+        channel.write(ByteBuffer.wrap(tail));
+        byte[] expected = Arrays.copyOf(data, 5100);
+        System.arraycopy(tail, 0, expected, 5000, 100);
+        assertArrayEquals(expected, readFully(0, 5100));
+        assertArrayEquals(new byte[4096 * 2 - 5100], readFully(5100, 4096 * 2 - 5100));
+
+        // Truncating to a larger size does not change the file
+        channel.truncate(1_000_000);
+        assertEquals(4096 * 2, channel.size());
+    }
+
+    @Test
+    public void testTransfers() throws Exception {
+        byte[] data = randomBytes(200_000);
+        assertEquals(data.length, channel.transferFrom(
+                Channels.newChannel(new ByteArrayInputStream(data)), 0, data.length));
+        assertArrayEquals(data, readFully(0, data.length));
+
+        // No bytes are transferred past the end of the file
+        assertEquals(0, channel.transferFrom(
+                Channels.newChannel(new ByteArrayInputStream(data)), channel.size() + 1, 10));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long transferred = 0;
+        while (transferred < data.length) {
+            transferred += channel.transferTo(transferred, data.length - transferred, Channels.newChannel(out));
+        }
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    public void testMappings() throws Exception {
+        byte[] data = randomBytes(4096);
+        channel.write(ByteBuffer.wrap(data));
+
+        MappedByteBuffer readOnly = channel.map(FileChannel.MapMode.READ_ONLY, 0, 4096);
+        byte[] mapped = new byte[4096];
+        readOnly.get(mapped);
+        assertArrayEquals(data, mapped);
+
+        // Changes through a writable mapping are kept by the next writes of the same block
+        byte[] data2 = randomBytes(100);
+        channel.write(ByteBuffer.wrap(data2));
+        MappedByteBuffer writable = channel.map(FileChannel.MapMode.READ_WRITE, 4096, 100);
+        writable.put(0, (byte) 42);
+        channel.force(false);
+        byte[] data3 = randomBytes(100);
+        channel.write(ByteBuffer.wrap(data3));
+
+        byte[] expected = new byte[200];
+        System.arraycopy(data2, 0, expected, 0, 100);
+        expected[0] = 42;
+        System.arraycopy(data3, 0, expected, 100, 100);
+        assertArrayEquals(expected, readFully(4096, 200));
+    }
+
+    @Test
+    public void testLocks() throws Exception {
+        channel.write(ByteBuffer.wrap(randomBytes(10)));
+
+        FileLock lock = channel.tryLock(0, Long.MAX_VALUE, false);
+        assertNotNull(lock);
+        assertTrue(lock.isValid());
+        lock.release();
+
+        FileLock shared = channel.lock(0, Long.MAX_VALUE, true);
+        assertTrue(shared.isShared());
+        shared.release();
+    }
+
+    private byte[] readFully(long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                break;
+            }
+        }
+        return buf.array();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
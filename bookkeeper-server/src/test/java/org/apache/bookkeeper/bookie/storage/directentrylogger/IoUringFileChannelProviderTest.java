@@ -0,0 +1,288 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.BookieFileChannel;
+import org.apache.bookkeeper.bookie.Journal;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Tests for the batched io_uring writes of the journal files, and for the fallback to pwrite and O_DSYNC.
+ */
+public class IoUringFileChannelProviderTest {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private File dir;
+    private File file;
+    private NativeIO nativeIO;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue("O_DIRECT is only supported on Linux", SystemUtils.IS_OS_LINUX);
+        dir = Files.createTempDirectory("io-uring").toFile();
+        file = new File(dir, "test.txn");
+        assertTrue(file.createNewFile());
+        nativeIO = spy(new NativeIOImpl());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (dir != null) {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    private void assumeIoUring() {
+        try {
+            nativeIO.io_uring_close(nativeIO.io_uring_init(2));
+        } catch (NativeIOException | LinkageError e) {
+            Assume.assumeNoException("io_uring is not available", e);
+        }
+        Mockito.clearInvocations(nativeIO);
+    }
+
+    private void failIoUringInit() throws Exception {
+        doThrow(new NativeIOException("Operation not supported", 95)).when(nativeIO).io_uring_init(anyInt());
+    }
+
+    /**
+     * Write the data in chunks of the size of the journal write buffer, like the flushes of a buffered channel.
+     */
+    private static void writeChunks(DirectFileChannel channel, byte[] data) throws Exception {
+        for (int offset = 0; offset < data.length; offset += BUFFER_SIZE) {
+            channel.write(ByteBuffer.wrap(data, offset, Math.min(BUFFER_SIZE, data.length - offset)));
+        }
+    }
+
+    private void checkFile(byte[] data) throws Exception {
+        assertArrayEquals(data, Arrays.copyOf(Files.readAllBytes(file.toPath()), data.length));
+    }
+
+    @Test
+    public void testWritesOfFlushSubmittedTogether() throws Exception {
+        assumeIoUring();
+        // Unaligned, so that each chunk starts in the middle of the last block of the previous one
+        byte[] data = randomBytes(5 * BUFFER_SIZE - 100);
+        try (DirectFileChannel channel = new DirectFileChannel(file.getPath(), nativeIO, BUFFER_SIZE, true)) {
+            writeChunks(channel, data);
+            verify(nativeIO, never()).io_uring_submit(anyLong(), anyInt(), Mockito.anyBoolean());
+
+            channel.completeWrites();
+            checkFile(data);
+            // All the writes and a single fdatasync, with a single submit
+            verify(nativeIO, times(1)).io_uring_submit(anyLong(), anyInt(), eq(true));
+            verify(nativeIO, never()).io_uring_submit(anyLong(), anyInt(), eq(false));
+            verify(nativeIO, atLeast(5)).io_uring_queue_write(anyLong(), anyInt(), anyLong(), anyInt(), anyLong());
+            verify(nativeIO, never()).pwrite(anyInt(), anyLong(), anyInt(), anyLong());
+
+            // Nothing left to submit
+            channel.completeWrites();
+            channel.force(false);
+            verify(nativeIO, times(1)).io_uring_submit(anyLong(), anyInt(), eq(true));
+        }
+    }
+
+    @Test
+    public void testWritesSubmittedWhenBuffersAreUsed() throws Exception {
+        assumeIoUring();
+        byte[] data = randomBytes(3 * DirectFileChannel.IO_URING_QUEUE_DEPTH * BUFFER_SIZE + 1000);
+        try (DirectFileChannel channel = new DirectFileChannel(file.getPath(), nativeIO, BUFFER_SIZE, true)) {
+            writeChunks(channel, data);
+            verify(nativeIO, atLeast(2)).io_uring_submit(anyLong(), anyInt(), eq(false));
+            verify(nativeIO, never()).io_uring_submit(anyLong(), anyInt(), eq(true));
+
+            // The writes submitted without a sync are synced by the next force
+            channel.force(false);
+            verify(nativeIO, times(1)).io_uring_submit(anyLong(), anyInt(), eq(true));
+            checkFile(data);
+        }
+    }
+
+    @Test
+    public void testWriteElsewhereAndReads() throws Exception {
+        assumeIoUring();
+        byte[] data = randomBytes(3 * BUFFER_SIZE + 10);
+        byte[] more = randomBytes(BUFFER_SIZE);
+        byte[] prealloc = randomBytes(512);
+        long preallocPosition = 1024 * 1024 - 512;
+        try (DirectFileChannel channel = new DirectFileChannel(file.getPath(), nativeIO, BUFFER_SIZE, true)) {
+            writeChunks(channel, data);
+            // Like the preallocation of the journal, past the end of the file and not at the start of a block
+            channel.write(ByteBuffer.wrap(prealloc), preallocPosition);
+            verify(nativeIO, times(1)).io_uring_submit(anyLong(), anyInt(), eq(false));
+            // The next write continues the last block of the data, which is read back
+            channel.write(ByteBuffer.wrap(more));
+            assertEquals(1024 * 1024, channel.size());
+
+            // The reads see the queued writes
+            ByteBuffer read = ByteBuffer.allocate(data.length + more.length);
+            while (read.hasRemaining() && channel.read(read, read.position()) > 0) {
+                // Read until the end of the data
+            }
+            byte[] expected = Arrays.copyOf(data, data.length + more.length);
+            System.arraycopy(more, 0, expected, data.length, more.length);
+            assertArrayEquals(expected, read.array());
+
+            channel.completeWrites();
+            checkFile(expected);
+            byte[] onDisk = Files.readAllBytes(file.toPath());
+            assertEquals(1024 * 1024, onDisk.length);
+            assertArrayEquals(prealloc, Arrays.copyOfRange(onDisk, (int) preallocPosition, onDisk.length));
+        }
+    }
+
+    @Test
+    public void testChannelFallsBackWhenRingInitFails() throws Exception {
+        failIoUringInit();
+        byte[] data = randomBytes(3 * BUFFER_SIZE + 10);
+        try (DirectFileChannel channel = new DirectFileChannel(file.getPath(), nativeIO, BUFFER_SIZE, true)) {
+            writeChunks(channel, data);
+            // Synchronous writes, with O_DSYNC
+            checkFile(data);
+            verify(nativeIO, atLeast(3)).pwrite(anyInt(), anyLong(), anyInt(), anyLong());
+            verify(nativeIO, never()).io_uring_queue_write(anyLong(), anyInt(), anyLong(), anyInt(), anyLong());
+            verify(nativeIO).open(eq(file.getPath()), eq(NativeIO.O_CREAT | NativeIO.O_WRONLY | NativeIO.O_DIRECT
+                    | NativeIO.O_DSYNC), anyInt());
+            channel.completeWrites();
+            verify(nativeIO, never()).io_uring_submit(anyLong(), anyInt(), Mockito.anyBoolean());
+        }
+    }
+
+    @Test
+    public void testProviderFallsBackWhenIoUringInitFails() throws Exception {
+        failIoUringInit();
+        DirectFileChannelProvider provider = new DirectFileChannelProvider(nativeIO, true);
+        assertFalse(provider.isUsingIoUring());
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalWriteBufferSizeKB(BUFFER_SIZE / 1024);
+        BookieFileChannel channel = provider.open(file, conf);
+        try {
+            byte[] data = randomBytes(BUFFER_SIZE + 10);
+            channel.getFileChannel().write(ByteBuffer.wrap(data));
+            checkFile(data);
+            verify(nativeIO, never()).io_uring_queue_write(anyLong(), anyInt(), anyLong(), anyInt(), anyLong());
+        } finally {
+            provider.close(channel);
+            provider.close();
+        }
+    }
+
+    @Test
+    public void testJournalWrittenThroughIoUring() throws Exception {
+        assumeIoUring();
+        File journalDir = new File(dir, "journal");
+        File ledgerDir = new File(dir, "ledger");
+        assertTrue(journalDir.mkdirs());
+        assertTrue(ledgerDir.mkdirs());
+        LedgerDirsManager ledgerDirsManager = Mockito.mock(LedgerDirsManager.class);
+        Mockito.when(ledgerDirsManager.getAllLedgerDirs()).thenReturn(Collections.singletonList(ledgerDir));
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalDirName(journalDir.getPath());
+        conf.setJournalChannelProvider(IoUringFileChannelProvider.class.getName());
+        conf.setJournalWriteBufferSizeKB(4);
+        Journal journal = new Journal(0, journalDir, conf, ledgerDirsManager);
+        journal.start();
+        int entries = 100;
+        try {
+            CountDownLatch written = new CountDownLatch(entries);
+            for (int i = 0; i < entries; i++) {
+                // Larger than the write buffer, so that each flush is made of several writes
+                ByteBuf entry = Unpooled.buffer(1000 + 100 * i);
+                entry.writeLong(1L);
+                entry.writeLong(i);
+                entry.writeBytes(randomBytes(entry.writableBytes()));
+                journal.logAddEntry(1L, i, entry, false,
+                        (rc, ledgerId, entryId, addr, ctx) -> {
+                            if (rc == 0) {
+                                written.countDown();
+                            }
+                        }, null);
+            }
+            assertTrue(written.await(30, TimeUnit.SECONDS));
+        } finally {
+            journal.shutdown();
+        }
+
+        List<Long> replayed = new ArrayList<>();
+        Journal reopened = new Journal(0, journalDir, conf, ledgerDirsManager);
+        for (long journalId : Journal.listJournalIds(journalDir, null)) {
+            reopened.scanJournal(journalId, 0L, (version, offset, entry) -> {
+                long ledgerId = entry.getLong();
+                long entryId = entry.getLong();
+                if (ledgerId == 1L) {
+                    assertEquals(1000 + 100 * entryId, entry.remaining() + 16);
+                    replayed.add(entryId);
+                }
+            }, false);
+        }
+        assertEquals(entries, replayed.size());
+        for (int i = 0; i < entries; i++) {
+            assertEquals(i, replayed.get(i).longValue());
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the read-ahead of {@link DbLedgerStorage} done in background by the read-ahead executor.
+ */
+public class DbLedgerStorageAsyncReadAheadTest {
+
+    private static final int ENTRIES = 100;
+
+    private File tmpDir;
+    private DbLedgerStorage storage;
+    private SingleDirectoryDbLedgerStorage singleDirStorage;
+
+    // Blocks the range reads of the read-ahead until released
+    private final CountDownLatch readAheadReleased = new CountDownLatch(1);
+    private final CountDownLatch readAheadStarted = new CountDownLatch(1);
+    // First entry of each range read by the read-aheads
+    private final Set<String> rangeStarts = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean readAheadInterrupted = new AtomicBoolean();
+    private volatile boolean blockReadAhead = false;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("bkTest").toFile();
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(tmpDir));
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setAllowLoopback(true);
+        conf.setLedgerDirNames(new String[] { tmpDir.toString() });
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_MAX_SIZE_MB, 16);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_MAX_SIZE_MB, 16);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_ASYNC, true);
+        // One read-ahead running and one queued at most
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_ASYNC_MAX_PENDING_REQUESTS, 1);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+
+        storage = new DbLedgerStorage() {
+            @Override
+            protected SingleDirectoryDbLedgerStorage newSingleDirectoryDbLedgerStorage(ServerConfiguration conf,
+                    LedgerManager ledgerManager, LedgerDirsManager ledgerDirsManager,
+                    LedgerDirsManager indexDirsManager, EntryLogger entryLogger, StatsLogger statsLogger,
+                    long writeCacheSize, long readCacheSize, int readAheadCacheBatchSize,
+                    long readAheadCacheBatchBytesSize, int entryLogWriters) throws IOException {
+                EntryLogger blockingEntryLogger = spy(entryLogger);
+                doAnswer(invocation -> {
+                    if (blockReadAhead) {
+                        readAheadStarted.countDown();
+                        try {
+                            readAheadReleased.await();
+                        } catch (InterruptedException e) {
+                            readAheadInterrupted.set(true);
+                            throw new IOException(e);
+                        }
+                    }
+                    ByteBuf range = (ByteBuf) invocation.callRealMethod();
+                    // Ledger and entry ids after the size header of the first entry
+                    rangeStarts.add(range.getLong(range.readerIndex() + 4) + "@"
+                            + range.getLong(range.readerIndex() + 12));
+                    return range;
+                }).when(blockingEntryLogger).readEntriesRange(anyLong(), anyInt());
+                return super.newSingleDirectoryDbLedgerStorage(conf, ledgerManager, ledgerDirsManager,
+                        indexDirsManager, blockingEntryLogger, statsLogger, writeCacheSize, readCacheSize,
+                        readAheadCacheBatchSize, readAheadCacheBatchBytesSize, entryLogWriters);
+            }
+        };
+        storage.initialize(conf, mock(LedgerManager.class), ledgerDirsManager, ledgerDirsManager,
+                NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT);
+        singleDirStorage = storage.getLedgerStorageList().get(0);
+
+        for (long ledgerId = 1; ledgerId <= 4; ledgerId++) {
+            storage.setMasterKey(ledgerId, "key".getBytes());
+            for (long entryId = 0; entryId < ENTRIES; entryId++) {
+                storage.addEntry(entry(ledgerId, entryId));
+            }
+        }
+        storage.flush();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        readAheadReleased.countDown();
+        if (storage != null) {
+            storage.shutdown();
+        }
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(128);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        // Last add confirmed
+        entry.writeLong(entryId - 1);
+        entry.writeBytes(("entry-" + ledgerId + "-" + entryId).getBytes());
+        return entry;
+    }
+
+    private void readEntry(long ledgerId, long entryId) throws Exception {
+        ByteBuf read = storage.getEntry(ledgerId, entryId);
+        assertEquals(entry(ledgerId, entryId), read);
+        read.release();
+    }
+
+    private void waitForReadAheads() throws Exception {
+        // Runs after the read-aheads submitted before, on the single read-ahead thread
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!done.isDone() && System.nanoTime() < deadline) {
+            try {
+                singleDirStorage.getReadAheadExecutor().execute(() -> done.complete(null));
+            } catch (RejectedExecutionException e) {
+                Thread.sleep(10);
+                continue;
+            }
+            done.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testReadAheadInBackground() throws Exception {
+        ReadCache readCache = singleDirStorage.getReadCache();
+        readEntry(1, 0);
+        waitForReadAheads();
+
+        // The next entries of the ledger, and only them, are in the read cache
+        assertTrue(readCache.hasEntry(1, 1));
+        assertTrue(readCache.hasEntry(1, 50));
+        assertFalse(readCache.hasEntry(2, 0));
+        for (long entryId = 0; entryId < ENTRIES; entryId++) {
+            readEntry(1, entryId);
+        }
+    }
+
+    @Test
+    public void testReadAheadsDroppedWhenExecutorIsBusy() throws Exception {
+        ReadCache readCache = singleDirStorage.getReadCache();
+        blockReadAhead = true;
+        readEntry(1, 0);
+        assertTrue(readAheadStarted.await(30, TimeUnit.SECONDS));
+        // Queued behind the running read-ahead
+        readEntry(2, 0);
+        // Rejected, the queue is full
+        readEntry(3, 0);
+        // Skipped, a read-ahead of the ledger is already pending
+        readEntry(1, 80);
+
+        // The reads do not wait for the read-aheads
+        readAheadReleased.countDown();
+        waitForReadAheads();
+        assertTrue(rangeStarts.contains("1@1"));
+        assertTrue(rangeStarts.contains("2@1"));
+        assertFalse(rangeStarts.contains("3@1"));
+        assertFalse(rangeStarts.contains("1@81"));
+        assertTrue(readCache.hasEntry(1, 1));
+        assertTrue(readCache.hasEntry(2, 1));
+        assertFalse(readCache.hasEntry(3, 1));
+
+        // A new read-ahead of a ledger can be scheduled once the previous one is done
+        readEntry(3, 10);
+        waitForReadAheads();
+        assertTrue(readCache.hasEntry(3, 11));
+    }
+
+    @Test
+    public void testShutdownWithPendingReadAheads() throws Exception {
+        blockReadAhead = true;
+        readEntry(1, 0);
+        assertTrue(readAheadStarted.await(30, TimeUnit.SECONDS));
+        readEntry(2, 0);
+
+        CompletableFuture<Void> shutdown = CompletableFuture.runAsync(() -> {
+            try {
+                storage.shutdown();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(100);
+        readAheadReleased.countDown();
+        shutdown.get(30, TimeUnit.SECONDS);
+        storage = null;
+
+        // The running read-ahead is not interrupted and the queued one is dropped
+        assertFalse(readAheadInterrupted.get());
+        assertTrue(rangeStarts.contains("1@1"));
+        assertFalse(rangeStarts.contains("2@1"));
+        assertTrue(singleDirStorage.getReadAheadExecutor().isTerminated());
+    }
+}
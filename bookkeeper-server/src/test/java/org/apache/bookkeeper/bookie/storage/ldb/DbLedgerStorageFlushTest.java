@@ -0,0 +1,162 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Tests the flush of the write cache of {@link DbLedgerStorage} into one or several entry logs, with and without
+ * pipelined location index commits.
+ */
+@RunWith(Parameterized.class)
+public class DbLedgerStorageFlushTest {
+
+    @Parameterized.Parameters(name = "entryLogWriters={0}, pipelined={1}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] { { 1, false }, { 1, true }, { 3, false }, { 3, true } });
+    }
+
+    private static final int LEDGERS = 10;
+    private static final int ENTRIES = 200;
+
+    private final int entryLogWriters;
+    private final boolean pipelined;
+    private File tmpDir;
+    private ServerConfiguration conf;
+    private LedgerDirsManager ledgerDirsManager;
+    private DbLedgerStorage storage;
+
+    public DbLedgerStorageFlushTest(int entryLogWriters, boolean pipelined) {
+        this.entryLogWriters = entryLogWriters;
+        this.pipelined = pipelined;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        // Several entry logs are only written by the direct entry logger
+        Assume.assumeTrue(entryLogWriters == 1 || SystemUtils.IS_OS_LINUX);
+        tmpDir = Files.createTempDirectory("bkTest").toFile();
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(tmpDir));
+
+        conf = new ServerConfiguration();
+        conf.setAllowLoopback(true);
+        conf.setLedgerDirNames(new String[] { tmpDir.toString() });
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_MAX_SIZE_MB, 16);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_MAX_SIZE_MB, 16);
+        if (entryLogWriters > 1) {
+            conf.setProperty(DbLedgerStorage.DIRECT_IO_ENTRYLOGGER, true);
+            conf.setProperty(DbLedgerStorage.DIRECT_IO_ENTRYLOGGER_WRITERS, entryLogWriters);
+            conf.setProperty(DbLedgerStorage.DIRECT_IO_ENTRYLOGGER_TOTAL_WRITEBUFFER_SIZE_MB, 16);
+            conf.setProperty(DbLedgerStorage.DIRECT_IO_ENTRYLOGGER_TOTAL_READBUFFER_SIZE_MB, 16);
+            conf.setProperty(DbLedgerStorage.DIRECT_IO_ENTRYLOGGER_READBUFFER_SIZE_MB, 1);
+            conf.setNumReadWorkerThreads(1);
+            conf.setProperty(DbLedgerStorage.DIRECT_IO_ENTRYLOGGER_BLOCK_CACHE_SIZE_MB, 0);
+        }
+        conf.setProperty(DbLedgerStorage.PIPELINED_FLUSH, pipelined);
+        // Several sub-batches per flush thread
+        conf.setProperty(DbLedgerStorage.PIPELINED_FLUSH_BATCH_SIZE, 50);
+        ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        storage = newStorage();
+    }
+
+    private DbLedgerStorage newStorage() throws Exception {
+        DbLedgerStorage storage = new DbLedgerStorage();
+        storage.initialize(conf, mock(LedgerManager.class), ledgerDirsManager, ledgerDirsManager,
+                NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT);
+        return storage;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (storage != null) {
+            storage.shutdown();
+        }
+        if (tmpDir != null) {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(1024);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        // Last add confirmed
+        entry.writeLong(entryId - 1);
+        entry.writeBytes(("entry-" + ledgerId + "-" + entryId).getBytes());
+        return entry;
+    }
+
+    private void checkEntries(DbLedgerStorage storage) throws Exception {
+        for (long ledgerId = 0; ledgerId < LEDGERS; ledgerId++) {
+            for (long entryId = 0; entryId < ENTRIES; entryId++) {
+                ByteBuf expected = entry(ledgerId, entryId);
+                ByteBuf read = storage.getEntry(ledgerId, entryId);
+                assertEquals(expected, read);
+                read.release();
+            }
+            assertEquals(ENTRIES - 2, storage.getLastAddConfirmed(ledgerId));
+        }
+    }
+
+    @Test
+    public void testFlush() throws Exception {
+        for (long ledgerId = 0; ledgerId < LEDGERS; ledgerId++) {
+            storage.setMasterKey(ledgerId, "key".getBytes());
+        }
+        // Interleave the ledgers, so that each flush thread gets entries of several ledgers
+        for (long entryId = 0; entryId < ENTRIES; entryId++) {
+            for (long ledgerId = 0; ledgerId < LEDGERS; ledgerId++) {
+                storage.addEntry(entry(ledgerId, entryId));
+            }
+        }
+        storage.flush();
+        checkEntries(storage);
+
+        // The locations are in the index after a restart
+        storage.shutdown();
+        storage = newStorage();
+        checkEntries(storage);
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Tests for the checkpoint of the ledger directories of {@link DbLedgerStorage}, one after the other or in
+ * parallel.
+ */
+@RunWith(Parameterized.class)
+public class DbLedgerStorageParallelCheckpointTest {
+
+    private static final int NUM_DIRS = 2;
+
+    @Parameterized.Parameters(name = "parallelCheckpoint={0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] { { false }, { true } });
+    }
+
+    private final boolean parallelCheckpoint;
+    private final List<File> tmpDirs = new ArrayList<>();
+    private DbLedgerStorage storage;
+
+    // Thread flushing the entry log of each directory
+    private final Map<Integer, String> flushThreads = new ConcurrentHashMap<>();
+    private volatile IOException flushFailure;
+
+    public DbLedgerStorageParallelCheckpointTest(boolean parallelCheckpoint) {
+        this.parallelCheckpoint = parallelCheckpoint;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        String[] ledgerDirs = new String[NUM_DIRS];
+        for (int i = 0; i < NUM_DIRS; i++) {
+            File tmpDir = Files.createTempDirectory("bkTest").toFile();
+            BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(tmpDir));
+            tmpDirs.add(tmpDir);
+            ledgerDirs[i] = tmpDir.toString();
+        }
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setAllowLoopback(true);
+        conf.setLedgerDirNames(ledgerDirs);
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_MAX_SIZE_MB, 16);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_MAX_SIZE_MB, 16);
+        if (parallelCheckpoint) {
+            conf.setProperty(DbLedgerStorage.PARALLEL_CHECKPOINT, true);
+        }
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+
+        storage = new DbLedgerStorage() {
+            private int dirIndex = 0;
+
+            @Override
+            protected SingleDirectoryDbLedgerStorage newSingleDirectoryDbLedgerStorage(ServerConfiguration conf,
+                    LedgerManager ledgerManager, LedgerDirsManager ledgerDirsManager,
+                    LedgerDirsManager indexDirsManager, EntryLogger entryLogger, StatsLogger statsLogger,
+                    long writeCacheSize, long readCacheSize, int readAheadCacheBatchSize,
+                    long readAheadCacheBatchBytesSize, int entryLogWriters) throws IOException {
+                final int dir = dirIndex++;
+                EntryLogger flushTrackingEntryLogger = spy(entryLogger);
+                doAnswer(invocation -> {
+                    flushThreads.put(dir, Thread.currentThread().getName());
+                    if (dir == 0 && flushFailure != null) {
+                        throw flushFailure;
+                    }
+                    return invocation.callRealMethod();
+                }).when(flushTrackingEntryLogger).flush();
+                return super.newSingleDirectoryDbLedgerStorage(conf, ledgerManager, ledgerDirsManager,
+                        indexDirsManager, flushTrackingEntryLogger, statsLogger, writeCacheSize, readCacheSize,
+                        readAheadCacheBatchSize, readAheadCacheBatchBytesSize, entryLogWriters);
+            }
+        };
+        storage.initialize(conf, mock(LedgerManager.class), ledgerDirsManager, ledgerDirsManager,
+                NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        flushFailure = null;
+        if (storage != null) {
+            storage.shutdown();
+        }
+        for (File tmpDir : tmpDirs) {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(128);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        // Last add confirmed
+        entry.writeLong(entryId - 1);
+        entry.writeBytes(("entry-" + ledgerId + "-" + entryId).getBytes());
+        return entry;
+    }
+
+    private void addEntries() throws Exception {
+        // Ledger 0 is stored in the first directory and ledger 1 in the second one
+        for (long ledgerId = 0; ledgerId < NUM_DIRS; ledgerId++) {
+            storage.setMasterKey(ledgerId, "key".getBytes());
+            for (long entryId = 0; entryId < 10; entryId++) {
+                storage.addEntry(entry(ledgerId, entryId));
+            }
+        }
+    }
+
+    @Test
+    public void testCheckpointFlushesAllDirectories() throws Exception {
+        addEntries();
+        storage.flush();
+
+        assertEquals(NUM_DIRS, flushThreads.size());
+        for (String flushThread : flushThreads.values()) {
+            // Sequential checkpoints run on the caller thread
+            assertEquals(parallelCheckpoint, flushThread.startsWith("db-storage-checkpoint"));
+        }
+        for (SingleDirectoryDbLedgerStorage ls : storage.getLedgerStorageList()) {
+            assertFalse(ls.isFlushRequired());
+        }
+
+        for (long ledgerId = 0; ledgerId < NUM_DIRS; ledgerId++) {
+            ByteBuf read = storage.getEntry(ledgerId, 5);
+            assertEquals(entry(ledgerId, 5), read);
+            read.release();
+        }
+    }
+
+    @Test
+    public void testFailureInOneDirectory() throws Exception {
+        addEntries();
+        flushFailure = new IOException("Failed to flush the entry log");
+        try {
+            storage.flush();
+            fail("The failure of the first directory should be reported");
+        } catch (IOException e) {
+            assertSame(flushFailure, e);
+        }
+
+        // The second directory is flushed anyway
+        assertEquals(NUM_DIRS, flushThreads.size());
+        assertFalse(storage.getLedgerStorageList().get(1).isFlushRequired());
+
+        // The next checkpoint flushes the first directory
+        flushFailure = null;
+        storage.flush();
+        for (long ledgerId = 0; ledgerId < NUM_DIRS; ledgerId++) {
+            for (long entryId = 0; entryId < 10; entryId++) {
+                ByteBuf read = storage.getEntry(ledgerId, entryId);
+                assertEquals(entry(ledgerId, entryId), read);
+                read.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the pipelined commits of the location index during the flush of the write cache of
+ * {@link DbLedgerStorage}.
+ */
+public class DbLedgerStoragePipelinedFlushTest {
+
+    private static final int ENTRIES = 100;
+
+    private File tmpDir;
+    private DbLedgerStorage storage;
+    private SingleDirectoryDbLedgerStorage singleDirStorage;
+
+    // Whether the locations of the first entries were committed while the entry log was being flushed
+    private final AtomicBoolean indexCommittedBeforeEntryLogFlush = new AtomicBoolean();
+    private volatile IOException entryLogFlushFailure;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("bkTest").toFile();
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(tmpDir));
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setAllowLoopback(true);
+        conf.setLedgerDirNames(new String[] { tmpDir.toString() });
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_MAX_SIZE_MB, 16);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_MAX_SIZE_MB, 16);
+        conf.setProperty(DbLedgerStorage.PIPELINED_FLUSH, true);
+        conf.setProperty(DbLedgerStorage.PIPELINED_FLUSH_BATCH_SIZE, 10);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+
+        storage = new DbLedgerStorage() {
+            @Override
+            protected SingleDirectoryDbLedgerStorage newSingleDirectoryDbLedgerStorage(ServerConfiguration conf,
+                    LedgerManager ledgerManager, LedgerDirsManager ledgerDirsManager,
+                    LedgerDirsManager indexDirsManager, EntryLogger entryLogger, StatsLogger statsLogger,
+                    long writeCacheSize, long readCacheSize, int readAheadCacheBatchSize,
+                    long readAheadCacheBatchBytesSize, int entryLogWriters) throws IOException {
+                EntryLogger flushCheckingEntryLogger = spy(entryLogger);
+                doAnswer(invocation -> {
+                    // The sub-batch of the first entries is committed by the index flush thread, without waiting
+                    // for the entry log flush
+                    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                    while (System.nanoTime() < deadline) {
+                        if (singleDirStorage.getEntryLocationIndex().getLocation(1, 0) != 0) {
+                            indexCommittedBeforeEntryLogFlush.set(true);
+                            break;
+                        }
+                        Thread.sleep(10);
+                    }
+                    if (entryLogFlushFailure != null) {
+                        throw entryLogFlushFailure;
+                    }
+                    return invocation.callRealMethod();
+                }).when(flushCheckingEntryLogger).flush();
+                return super.newSingleDirectoryDbLedgerStorage(conf, ledgerManager, ledgerDirsManager,
+                        indexDirsManager, flushCheckingEntryLogger, statsLogger, writeCacheSize, readCacheSize,
+                        readAheadCacheBatchSize, readAheadCacheBatchBytesSize, entryLogWriters);
+            }
+        };
+        storage.initialize(conf, mock(LedgerManager.class), ledgerDirsManager, ledgerDirsManager,
+                NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT);
+        singleDirStorage = storage.getLedgerStorageList().get(0);
+
+        storage.setMasterKey(1, "key".getBytes());
+        for (long entryId = 0; entryId < ENTRIES; entryId++) {
+            storage.addEntry(entry(1, entryId));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (storage != null) {
+            storage.shutdown();
+        }
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(128);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        // Last add confirmed
+        entry.writeLong(entryId - 1);
+        entry.writeBytes(("entry-" + ledgerId + "-" + entryId).getBytes());
+        return entry;
+    }
+
+    private void checkEntries() throws Exception {
+        for (long entryId = 0; entryId < ENTRIES; entryId++) {
+            ByteBuf read = storage.getEntry(1, entryId);
+            assertEquals(entry(1, entryId), read);
+            read.release();
+        }
+    }
+
+    @Test
+    public void testIndexCommittedBeforeEntryLogFlush() throws Exception {
+        storage.flush();
+        assertTrue(indexCommittedBeforeEntryLogFlush.get());
+
+        // All the sub-batches are committed once the flush returns
+        EntryLocationIndex index = singleDirStorage.getEntryLocationIndex();
+        for (long entryId = 0; entryId < ENTRIES; entryId++) {
+            assertTrue(index.getLocation(1, entryId) != 0);
+        }
+        checkEntries();
+    }
+
+    @Test
+    public void testEntryLogFlushFailure() throws Exception {
+        entryLogFlushFailure = new IOException("Failed to flush the entry log");
+        try {
+            storage.flush();
+            fail("The entry log flush failure should be reported");
+        } catch (IOException e) {
+            assertSame(entryLogFlushFailure, e);
+        }
+        assertTrue(indexCommittedBeforeEntryLogFlush.get());
+
+        // The entries are still served from the write cache being flushed
+        checkEntries();
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for {@link EntryLocationCache}.
+ */
+public class EntryLocationCacheTest {
+
+    // 1024 buckets of 4 slots
+    private final EntryLocationCache cache = new EntryLocationCache(UnpooledByteBufAllocator.DEFAULT,
+            1024 * 4 * 3 * Long.BYTES, 8);
+
+    @After
+    public void tearDown() {
+        cache.close();
+    }
+
+    private static ConcurrentLongHashSet ledgers(long... ledgerIds) {
+        ConcurrentLongHashSet set = ConcurrentLongHashSet.newBuilder().expectedItems(16).concurrencyLevel(1).build();
+        for (long ledgerId : ledgerIds) {
+            set.add(ledgerId);
+        }
+        return set;
+    }
+
+    @Test
+    public void testPutAndGet() {
+        assertEquals(0, cache.get(1, 0));
+        cache.put(1, 0, 100);
+        cache.put(1, 1, 200);
+        assertEquals(100, cache.get(1, 0));
+        assertEquals(200, cache.get(1, 1));
+        assertEquals(0, cache.get(2, 0));
+        assertEquals(2, cache.count());
+
+        // Updated location
+        cache.put(1, 0, 300);
+        assertEquals(300, cache.get(1, 0));
+        assertEquals(2, cache.count());
+
+        // The existing location is kept
+        cache.putIfAbsent(1, 1, 400);
+        assertEquals(200, cache.get(1, 1));
+        cache.putIfAbsent(1, 2, 500);
+        assertEquals(500, cache.get(1, 2));
+        assertEquals(3, cache.count());
+    }
+
+    @Test
+    public void testBoundedSize() {
+        long size = cache.size();
+        for (long entryId = 0; entryId < 100_000; entryId++) {
+            cache.put(1, entryId, entryId + 1);
+        }
+        assertEquals(size, cache.size());
+        assertTrue(cache.count() <= 1024 * 4);
+
+        // The cached locations are the right ones
+        int found = 0;
+        for (long entryId = 0; entryId < 100_000; entryId++) {
+            long location = cache.get(1, entryId);
+            if (location != 0) {
+                assertEquals(entryId + 1, location);
+                found++;
+            }
+        }
+        assertEquals(cache.count(), found);
+    }
+
+    @Test
+    public void testRemoveLedgers() {
+        for (long ledgerId = 1; ledgerId <= 4; ledgerId++) {
+            for (long entryId = 0; entryId < 100; entryId++) {
+                cache.put(ledgerId, entryId, entryId + 1);
+            }
+        }
+        long count = cache.count();
+
+        cache.removeLedgers(ledgers(2, 4, 5));
+        long remaining = 0;
+        for (long ledgerId = 1; ledgerId <= 4; ledgerId++) {
+            for (long entryId = 0; entryId < 100; entryId++) {
+                long location = cache.get(ledgerId, entryId);
+                if (ledgerId % 2 == 0) {
+                    assertEquals(0, location);
+                } else if (location != 0) {
+                    remaining++;
+                }
+            }
+        }
+        assertEquals(remaining, cache.count());
+        assertTrue(remaining < count);
+
+        // No-op with no ledgers
+        cache.removeLedgers(ledgers());
+        assertEquals(remaining, cache.count());
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (long ledgerId = 1; ledgerId <= 4; ledgerId++) {
+            final long ledger = ledgerId;
+            Thread thread = new Thread(() -> {
+                try {
+                    for (long entryId = 0; entryId < 10_000; entryId++) {
+                        cache.put(ledger, entryId, ledger << 32 | (entryId + 1));
+                        long location = cache.get(ledger, entryId - 10);
+                        // Either evicted or the right location
+                        assertTrue(location == 0 || location == (ledger << 32 | (entryId - 9)));
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (int i = 0; i < 10; i++) {
+            cache.removeLedgers(ledgers(1));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+
+        cache.removeLedgers(ledgers(1, 2, 3, 4));
+        assertEquals(0, cache.count());
+    }
+}
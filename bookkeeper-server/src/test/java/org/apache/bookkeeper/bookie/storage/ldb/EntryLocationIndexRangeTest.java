@@ -0,0 +1,326 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.EntryLocation;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the range encoded records of {@link EntryLocationIndex}.
+ */
+public class EntryLocationIndexRangeTest {
+
+    private static final int ENTRY_SIZE = 100;
+
+    private File tmpDir;
+    private EntryLocationIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("location-ranges").toFile();
+        index = newIndex(true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (index != null) {
+            index.close();
+        }
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private EntryLocationIndex newIndex(boolean rangeEncoding) throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setProperty(DbLedgerStorage.ENTRY_LOCATION_INDEX_RANGE_ENCODING, rangeEncoding);
+        return new EntryLocationIndex(conf, KeyValueStorageRocksDB.factory, tmpDir.getAbsolutePath(),
+                NullStatsLogger.INSTANCE);
+    }
+
+    private static long location(long logId, long offset) {
+        return (logId << 32) | offset;
+    }
+
+    /**
+     * Location of the n-th entry written contiguously from the given location.
+     */
+    private static long skip(long location, int n) {
+        return location + n * (4 /* size header */ + ENTRY_SIZE);
+    }
+
+    /**
+     * Add entries written contiguously from the given location, and return the location following them.
+     */
+    private static long addRun(EntryLocationIndex.LocationsBatch batch, long ledgerId, long firstEntryId,
+                               int count, long location) throws Exception {
+        for (int i = 0; i < count; i++) {
+            batch.add(ledgerId, firstEntryId + i, location, ENTRY_SIZE);
+            location = EntryLocationRange.nextLocation(location, ENTRY_SIZE);
+        }
+        return location;
+    }
+
+    private void checkRun(long ledgerId, long firstEntryId, int count, long location) throws Exception {
+        for (int i = 0; i < count; i++) {
+            assertEquals(location, index.getLocation(ledgerId, firstEntryId + i));
+            location = EntryLocationRange.nextLocation(location, ENTRY_SIZE);
+        }
+    }
+
+    private boolean hasRangesDb() {
+        return Files.exists(Paths.get(tmpDir.getAbsolutePath(), EntryLocationIndex.LOCATION_RANGES_DB));
+    }
+
+    @Test
+    public void testRangeEncoding() throws Exception {
+        assertTrue(hasRangesDb());
+        long first = location(1, 1024);
+        long second = location(2, 1024);
+        try (EntryLocationIndex.LocationsBatch batch = index.newLocationsBatch()) {
+            // Interleaved ledgers, a gap in the entry log and a log switch all break the runs
+            long next = addRun(batch, 1, 0, 10, first);
+            next = addRun(batch, 2, 0, 5, next);
+            next = addRun(batch, 1, 10, 10, next + 4096);
+            addRun(batch, 1, 20, 3, second);
+            // Single entry
+            addRun(batch, 3, 0, 1, location(3, 1024));
+            batch.flush();
+        }
+
+        checkRun(1, 0, 10, first);
+        checkRun(2, 0, 5, skip(first, 10));
+        checkRun(1, 10, 10, skip(first, 15) + 4096);
+        checkRun(1, 20, 3, second);
+        checkRun(3, 0, 1, location(3, 1024));
+        assertEquals(0, index.getLocation(1, 23));
+        assertEquals(0, index.getLocation(2, 5));
+        assertEquals(0, index.getLocation(4, 0));
+
+        assertEquals(22, index.getLastEntryInLedger(1));
+        assertEquals(4, index.getLastEntryInLedger(2));
+        assertEquals(0, index.getLastEntryInLedger(3));
+    }
+
+    @Test
+    public void testRunsLongerThanMaxEntries() throws Exception {
+        int count = 2 * EntryLocationRange.MAX_ENTRIES + 10;
+        long first = location(1, 1024);
+        try (EntryLocationIndex.LocationsBatch batch = index.newLocationsBatch()) {
+            addRun(batch, 1, 0, count, first);
+            batch.flush();
+        }
+        checkRun(1, 0, count, first);
+        assertEquals(count - 1, index.getLastEntryInLedger(1));
+    }
+
+    @Test
+    public void testRewrittenEntries() throws Exception {
+        long first = location(1, 1024);
+        long replayed = location(5, 1024);
+        long rewritten = location(6, 1024);
+        try (EntryLocationIndex.LocationsBatch batch = index.newLocationsBatch()) {
+            addRun(batch, 1, 0, 10, first);
+            batch.flush();
+        }
+        // Entries written again, e.g. on journal replay, in ranges overlapping the first one
+        try (EntryLocationIndex.LocationsBatch batch = index.newLocationsBatch()) {
+            addRun(batch, 1, 5, 10, replayed);
+            addRun(batch, 1, 2, 2, rewritten);
+            batch.flush();
+        }
+
+        checkRun(1, 0, 2, first);
+        checkRun(1, 2, 2, rewritten);
+        assertEquals(skip(first, 4), index.getLocation(1, 4));
+        checkRun(1, 5, 10, replayed);
+        assertEquals(14, index.getLastEntryInLedger(1));
+    }
+
+    @Test
+    public void testSingleLocationsTakePrecedence() throws Exception {
+        long first = location(1, 1024);
+        try (EntryLocationIndex.LocationsBatch batch = index.newLocationsBatch()) {
+            addRun(batch, 1, 0, 10, first);
+            batch.flush();
+        }
+
+        // Entry moved by the compaction
+        long compacted = location(7, 1024);
+        index.updateLocations(Collections.singletonList(new EntryLocation(1, 3, compacted)));
+        assertEquals(compacted, index.getLocation(1, 3));
+        checkRun(1, 0, 3, first);
+        checkRun(1, 4, 6, skip(first, 4));
+    }
+
+    @Test
+    public void testRangeNewerThanSingleLocation() throws Exception {
+        long single = location(1, 1024);
+        try (EntryLocationIndex.LocationsBatch batch = index.newLocationsBatch()) {
+            addRun(batch, 1, 3, 1, single);
+            batch.flush();
+        }
+        assertEquals(single, index.getLocation(1, 3));
+
+        // Entry written again in a range, e.g. on journal replay
+        long replayed = location(5, 1024);
+        try (EntryLocationIndex.LocationsBatch batch = index.newLocationsBatch()) {
+            addRun(batch, 1, 0, 10, replayed);
+            batch.flush();
+        }
+        checkRun(1, 0, 10, replayed);
+
+        // Written again as a single location
+        long rewritten = location(6, 1024);
+        try (EntryLocationIndex.LocationsBatch batch = index.newLocationsBatch()) {
+            addRun(batch, 1, 3, 1, rewritten);
+            batch.flush();
+        }
+        assertEquals(rewritten, index.getLocation(1, 3));
+        checkRun(1, 0, 3, replayed);
+        checkRun(1, 4, 6, skip(replayed, 4));
+    }
+
+    @Test
+    public void testMovedRangesRemoved() throws Exception {
+        long first = location(1, 1024);
+        try (EntryLocationIndex.LocationsBatch batch = index.newLocationsBatch()) {
+            addRun(batch, 1, 0, 10, first);
+            addRun(batch, 2, 0, 10, skip(first, 10));
+            batch.flush();
+        }
+        assertTrue(index.hasLocationRange(1, 0));
+        assertTrue(index.hasLocationRange(2, 0));
+
+        // The compaction moves the entries of the first ledger in 2 batches
+        long compacted = location(7, 1024);
+        List<EntryLocation> moved = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            moved.add(new EntryLocation(1, i, skip(compacted, i)));
+        }
+        index.updateLocations(moved);
+        // Some entries of the range are still in the compacted log
+        assertTrue(index.hasLocationRange(1, 0));
+        checkRun(1, 0, 5, compacted);
+        checkRun(1, 5, 5, skip(first, 5));
+
+        moved.clear();
+        for (int i = 5; i < 10; i++) {
+            moved.add(new EntryLocation(1, i, skip(compacted, i)));
+        }
+        index.updateLocations(moved);
+        assertFalse(index.hasLocationRange(1, 0));
+        checkRun(1, 0, 10, compacted);
+        assertEquals(9, index.getLastEntryInLedger(1));
+
+        // The ranges of the other ledgers are kept
+        assertTrue(index.hasLocationRange(2, 0));
+        checkRun(2, 0, 10, skip(first, 10));
+    }
+
+    @Test
+    public void testBatchFlushedWithoutSync() throws Exception {
+        long first = location(1, 1024);
+        try (EntryLocationIndex.LocationsBatch batch = index.newLocationsBatch()) {
+            addRun(batch, 1, 0, 10, first);
+            addRun(batch, 2, 0, 1, location(2, 1024));
+            batch.flush(false);
+        }
+        // Visible before the sync
+        checkRun(1, 0, 10, first);
+        checkRun(2, 0, 1, location(2, 1024));
+
+        index.sync();
+        index.close();
+        index = newIndex(true);
+        checkRun(1, 0, 10, first);
+        checkRun(2, 0, 1, location(2, 1024));
+    }
+
+    @Test
+    public void testRangesReadAfterDisablingRangeEncoding() throws Exception {
+        long first = location(1, 1024);
+        try (EntryLocationIndex.LocationsBatch batch = index.newLocationsBatch()) {
+            addRun(batch, 1, 0, 10, first);
+            batch.flush();
+        }
+        index.close();
+
+        index = newIndex(false);
+        checkRun(1, 0, 10, first);
+        // New locations are single locations
+        long second = location(2, 1024);
+        try (EntryLocationIndex.LocationsBatch batch = index.newLocationsBatch()) {
+            addRun(batch, 1, 10, 10, second);
+            batch.flush();
+        }
+        checkRun(1, 10, 10, second);
+        assertEquals(19, index.getLastEntryInLedger(1));
+    }
+
+    @Test
+    public void testNoRangesDbWhenNeverEnabled() throws Exception {
+        index.close();
+        FileUtils.deleteDirectory(tmpDir);
+        assertTrue(tmpDir.mkdirs());
+        index = newIndex(false);
+        assertFalse(hasRangesDb());
+    }
+
+    @Test
+    public void testDeletedLedgerRangesRemoved() throws Exception {
+        try (EntryLocationIndex.LocationsBatch batch = index.newLocationsBatch()) {
+            addRun(batch, 1, 0, 10, location(1, 1024));
+            addRun(batch, 2, 0, 10, location(2, 1024));
+            batch.flush();
+        }
+
+        index.delete(1);
+        index.removeOffsetFromDeletedLedgers();
+        assertEquals(0, index.getLocation(1, 0));
+        assertEquals(0, index.getLocation(1, 9));
+        try {
+            index.getLastEntryInLedger(1);
+            fail("The ledger should be deleted");
+        } catch (Bookie.NoEntryException e) {
+            // expected
+        }
+        checkRun(2, 0, 10, location(2, 1024));
+        assertFalse(index.hasLocationRange(1, 0));
+        assertTrue(index.hasLocationRange(2, 0));
+    }
+}
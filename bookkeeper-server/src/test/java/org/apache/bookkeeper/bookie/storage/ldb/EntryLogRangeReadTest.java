@@ -0,0 +1,203 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.DefaultEntryLogger;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.bookie.storage.directentrylogger.DirectEntryLogger;
+import org.apache.bookkeeper.bookie.storage.directentrylogger.EntryLogIdsImpl;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.slogger.Slogger;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Tests for {@link EntryLogger#readEntriesRange(long, int)}.
+ */
+@RunWith(Parameterized.class)
+public class EntryLogRangeReadTest {
+
+    @Parameterized.Parameters(name = "directIO={0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] { { false }, { true } });
+    }
+
+    private final boolean directIO;
+    private File tmpDir;
+    private ExecutorService writeExecutor;
+    private ExecutorService flushExecutor;
+    private EntryLogger entryLogger;
+
+    public EntryLogRangeReadTest(boolean directIO) {
+        this.directIO = directIO;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("range-read").toFile();
+        if (directIO) {
+            Assume.assumeTrue("O_DIRECT is only supported on Linux", SystemUtils.IS_OS_LINUX);
+            File ledgerDir = new File(tmpDir, "current");
+            assertTrue(ledgerDir.mkdirs());
+            LedgerDirsManager ledgerDirsManager = mock(LedgerDirsManager.class);
+            when(ledgerDirsManager.getAllLedgerDirs()).thenReturn(Collections.singletonList(ledgerDir));
+            writeExecutor = Executors.newSingleThreadExecutor();
+            flushExecutor = Executors.newSingleThreadExecutor();
+            entryLogger = new DirectEntryLogger(ledgerDir, new EntryLogIdsImpl(ledgerDirsManager, Slogger.NULL),
+                    new NativeIOImpl(), ByteBufAllocator.DEFAULT, writeExecutor, flushExecutor,
+                    1024 * 1024, 64 * 1024, 1024 * 1024, 1024 * 1024, 64 * 1024, 1, 300,
+                    Slogger.NULL, NullStatsLogger.INSTANCE);
+        } else {
+            BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(tmpDir));
+            ServerConfiguration conf = new ServerConfiguration();
+            conf.setLedgerDirNames(new String[] { tmpDir.toString() });
+            entryLogger = new DefaultEntryLogger(conf);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (entryLogger != null) {
+            entryLogger.close();
+        }
+        if (writeExecutor != null) {
+            writeExecutor.shutdownNow();
+            flushExecutor.shutdownNow();
+        }
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((byte) entryId);
+        }
+        return entry;
+    }
+
+    private List<ByteBuf> addEntries(List<Long> locations) throws Exception {
+        List<ByteBuf> entries = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ByteBuf entry = entry(1L, i, 100 + 50 * i);
+            entries.add(entry);
+            locations.add(entryLogger.addEntry(1L, entry.duplicate()));
+        }
+        return entries;
+    }
+
+    /**
+     * Check that the range holds the [size][entry] records of the given entries, in order.
+     */
+    private static void checkRange(ByteBuf range, List<ByteBuf> entries) {
+        for (ByteBuf expected : entries) {
+            assertEquals(expected.readableBytes(), range.readInt());
+            assertEquals(expected, range.readSlice(expected.readableBytes()));
+        }
+    }
+
+    @Test
+    public void testReadRange() throws Exception {
+        List<Long> locations = new ArrayList<>();
+        List<ByteBuf> entries = addEntries(locations);
+        entryLogger.flush();
+
+        // The whole range, from the third entry
+        int size = 0;
+        for (ByteBuf entry : entries.subList(2, 10)) {
+            size += 4 + entry.readableBytes();
+        }
+        ByteBuf range = entryLogger.readEntriesRange(locations.get(2), size);
+        assertEquals(size, range.readableBytes());
+        checkRange(range, entries.subList(2, 10));
+        range.release();
+
+        // A range ending in the middle of an entry
+        int firstSize = 4 + entries.get(0).readableBytes();
+        range = entryLogger.readEntriesRange(locations.get(0), firstSize + 10);
+        assertEquals(firstSize + 10, range.readableBytes());
+        checkRange(range, entries.subList(0, 1));
+        assertEquals(entries.get(1).readableBytes(), range.readInt());
+        assertEquals(entries.get(1).slice(0, 6), range.readSlice(6));
+        range.release();
+    }
+
+    @Test
+    public void testReadRangeOfCurrentLog() throws Exception {
+        // The direct entry logger only reads the flushed logs
+        Assume.assumeFalse(directIO);
+        List<Long> locations = new ArrayList<>();
+        List<ByteBuf> entries = addEntries(locations);
+
+        // The range stops at the end of the written entries
+        ByteBuf range = entryLogger.readEntriesRange(locations.get(5), 1024 * 1024);
+        checkRange(range, entries.subList(5, 10));
+        assertEquals(0, range.readableBytes());
+        range.release();
+    }
+
+    @Test
+    public void testReadRangePastEndOfLog() throws Exception {
+        List<Long> locations = new ArrayList<>();
+        List<ByteBuf> entries = addEntries(locations);
+        entryLogger.flush();
+
+        long last = locations.get(9);
+        long end = last + entries.get(9).readableBytes() + 4 + 1024 * 1024;
+        try {
+            entryLogger.readEntriesRange(end, 1024).release();
+            fail("There are no entries past the end of the log");
+        } catch (Bookie.NoEntryException e) {
+            // expected
+        }
+    }
+}
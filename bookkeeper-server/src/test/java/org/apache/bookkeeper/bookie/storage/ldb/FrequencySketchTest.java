@@ -0,0 +1,110 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+/**
+ * Tests for {@link FrequencySketch}.
+ */
+public class FrequencySketchTest {
+
+    @Test
+    public void testIncrement() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        assertEquals(0, sketch.frequency(1, 0));
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(i, sketch.increment(1, 0));
+        }
+        assertEquals(5, sketch.frequency(1, 0));
+        assertEquals(1, sketch.increment(1, 1));
+        assertEquals(1, sketch.increment(2, 0));
+    }
+
+    @Test
+    public void testFrequencySaturates() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment(1, 0);
+        }
+        assertEquals(15, sketch.frequency(1, 0));
+        // The neighbour counters are not affected by the saturated ones
+        assertTrue(sketch.frequency(1, 1) <= 1);
+    }
+
+    @Test
+    public void testReset() {
+        // 64 counters per row, the counters are halved after 640 accesses
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 10; i++) {
+            sketch.increment(1, 0);
+        }
+        assertEquals(10, sketch.frequency(1, 0));
+
+        // Other entries, until the sample size is reached
+        for (int i = 10; i < 640; i++) {
+            sketch.increment(2, i);
+        }
+        assertTrue(sketch.frequency(1, 0) <= 7);
+        assertTrue(sketch.frequency(1, 0) >= 5);
+    }
+
+    @Test
+    public void testConcurrentIncrements() throws Exception {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        int numThreads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                // Each thread increments the same entries once
+                for (long entryId = 0; entryId < 100; entryId++) {
+                    sketch.increment(1, entryId);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // No increment is lost, 800 accesses is below the sample size
+        for (long entryId = 0; entryId < 100; entryId++) {
+            assertTrue(sketch.frequency(1, entryId) >= numThreads);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Test;
+
+/**
+ * Tests for the read-ahead windows of {@link ReadAheadWindowTracker}.
+ */
+public class ReadAheadWindowTrackerTest {
+
+    private final ReadAheadWindowTracker tracker = new ReadAheadWindowTracker(100, 10, 1000,
+            new DbLedgerStorageStats(NullStatsLogger.INSTANCE, () -> 0L, () -> 0L, () -> 0L, () -> 0L));
+
+    @Test
+    public void testSequentialReadsGrowWindow() {
+        assertEquals(100, tracker.onReadCacheMiss(1, 0));
+        tracker.onReadAheadDone(1, 0, 100);
+        // Missed right after the read-ahead window
+        assertEquals(200, tracker.onReadCacheMiss(1, 101));
+        tracker.onReadAheadDone(1, 101, 301);
+        assertEquals(400, tracker.onReadCacheMiss(1, 302));
+        tracker.onReadAheadDone(1, 302, 702);
+        assertEquals(800, tracker.onReadCacheMiss(1, 703));
+        tracker.onReadAheadDone(1, 703, 1503);
+        // Up to the max window
+        assertEquals(1000, tracker.onReadCacheMiss(1, 1504));
+        assertEquals(1000, tracker.getWindowSize(1));
+
+        // The other ledgers are not affected
+        assertEquals(100, tracker.getWindowSize(2));
+        assertEquals(100, tracker.onReadCacheMiss(2, 0));
+    }
+
+    @Test
+    public void testRandomReadsShrinkWindow() {
+        assertEquals(100, tracker.onReadCacheMiss(1, 0));
+        tracker.onReadAheadDone(1, 0, 100);
+        // Past the read-ahead window
+        assertEquals(10, tracker.onReadCacheMiss(1, 5000));
+        tracker.onReadAheadDone(1, 5000, 5010);
+        // Before the last miss
+        assertEquals(10, tracker.onReadCacheMiss(1, 20));
+        tracker.onReadAheadDone(1, 20, 30);
+
+        // Sequential again
+        assertEquals(20, tracker.onReadCacheMiss(1, 31));
+    }
+
+    @Test
+    public void testMissInsideWindowIsSequential() {
+        assertEquals(100, tracker.onReadCacheMiss(1, 0));
+        // The read-ahead is still running, the reader is catching up with it
+        assertEquals(200, tracker.onReadCacheMiss(1, 50));
+    }
+
+    @Test
+    public void testReadAheadStoppedEarly() {
+        assertEquals(100, tracker.onReadCacheMiss(1, 0));
+        // The next entry in the entry log belongs to another ledger
+        tracker.onReadAheadDone(1, 0, 20);
+        // Not right after the entries read ahead
+        assertEquals(10, tracker.onReadCacheMiss(1, 80));
+        tracker.onReadAheadDone(1, 80, 85);
+        assertEquals(20, tracker.onReadCacheMiss(1, 86));
+    }
+
+    @Test
+    public void testReadAheadDoneOfPreviousMissIgnored() {
+        assertEquals(100, tracker.onReadCacheMiss(1, 0));
+        assertEquals(200, tracker.onReadCacheMiss(1, 50));
+        // Completion of the read-ahead of the first miss, after the second miss
+        tracker.onReadAheadDone(1, 0, 10);
+        assertEquals(400, tracker.onReadCacheMiss(1, 251));
+    }
+
+    @Test
+    public void testRemoveLedger() {
+        assertEquals(100, tracker.onReadCacheMiss(1, 0));
+        assertEquals(200, tracker.onReadCacheMiss(1, 50));
+        tracker.removeLedger(1);
+        assertEquals(100, tracker.getWindowSize(1));
+        assertEquals(100, tracker.onReadCacheMiss(1, 100));
+        // No-op for an unknown ledger
+        tracker.onReadAheadDone(2, 0, 10);
+        assertEquals(100, tracker.getWindowSize(2));
+    }
+
+    @Test
+    public void testRecentWindowsNotStale() {
+        assertEquals(100, tracker.onReadCacheMiss(1, 0));
+        assertEquals(200, tracker.onReadCacheMiss(1, 50));
+        tracker.removeStaleWindows();
+        assertEquals(200, tracker.getWindowSize(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWindowSizes() {
+        new ReadAheadWindowTracker(10, 100, 1000,
+                new DbLedgerStorageStats(NullStatsLogger.INSTANCE, () -> 0L, () -> 0L, () -> 0L, () -> 0L));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for the admission of the frequently read entries in the protected area of the scan resistant
+ * {@link ReadCache}.
+ */
+public class ReadCacheAdmissionTest {
+
+    private static final int CACHE_SIZE = 64 * 1024;
+    private static final int ENTRY_SIZE = 1024;
+    private static final int ADMISSION_THRESHOLD = 3;
+
+    // Protected area and main ring with 2 segments of 16KB each
+    private final ReadCache cache = ReadCache.newScanResistantReadCache(UnpooledByteBufAllocator.DEFAULT,
+            CACHE_SIZE, 0.5, ADMISSION_THRESHOLD, NullStatsLogger.INSTANCE);
+
+    @After
+    public void tearDown() {
+        cache.close();
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((byte) entryId);
+        }
+        return entry;
+    }
+
+    private void read(long ledgerId, long entryId) {
+        ByteBuf entry = cache.get(ledgerId, entryId);
+        assertNotNull(entry);
+        assertEquals(entry(ledgerId, entryId), entry);
+        entry.release();
+    }
+
+    @Test
+    public void testPromotionMovesEntry() {
+        for (long entryId = 0; entryId < 10; entryId++) {
+            cache.put(1, entryId, entry(1, entryId));
+        }
+        assertEquals(10, cache.count());
+
+        for (int i = 0; i < ADMISSION_THRESHOLD; i++) {
+            read(1, 5);
+        }
+        // The promoted entry is only held once
+        assertEquals(10, cache.count());
+        assertTrue(cache.hasEntry(1, 5));
+        read(1, 5);
+        assertEquals(10, cache.count());
+    }
+
+    @Test
+    public void testScanDoesNotEvictProtectedEntries() {
+        cache.put(1, 0, entry(1, 0));
+        cache.put(1, 1, entry(1, 1));
+        for (int i = 0; i < ADMISSION_THRESHOLD; i++) {
+            read(1, 0);
+        }
+
+        // A scan, larger than the main ring, reading each entry once
+        for (long entryId = 0; entryId < 100; entryId++) {
+            cache.put(2, entryId, entry(2, entryId));
+            read(2, entryId);
+        }
+
+        // The entry read once was evicted from the main ring, the frequently read one was not
+        assertFalse(cache.hasEntry(1, 1));
+        assertNull(cache.get(1, 1));
+        read(1, 0);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests for the batch insertion of {@link ReadCache}.
+ */
+public class ReadCacheTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+
+    private static ByteBuf entry(long ledgerId, long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((byte) entryId);
+        }
+        return entry;
+    }
+
+    private static List<ByteBuf> entries(long ledgerId, long firstEntryId, int count, int size) {
+        List<ByteBuf> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            entries.add(entry(ledgerId, firstEntryId + i, size));
+        }
+        return entries;
+    }
+
+    private static void checkEntries(ReadCache cache, List<ByteBuf> entries) {
+        for (ByteBuf expected : entries) {
+            ByteBuf entry = cache.get(expected.getLong(0), expected.getLong(8));
+            assertNotNull(entry);
+            assertEquals(expected, entry);
+            entry.release();
+        }
+    }
+
+    @Test
+    public void testPutAllInCurrentSegment() {
+        ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 2 * SEGMENT_SIZE, SEGMENT_SIZE);
+        List<ByteBuf> entries = entries(1, 0, 3, 100);
+        cache.putAll(1, entries);
+
+        assertEquals(3, cache.count());
+        // Each entry is aligned to 64 bytes
+        assertEquals(3 * 128, cache.size());
+        checkEntries(cache, entries);
+        cache.close();
+    }
+
+    @Test
+    public void testPutAllFallbackUsesEndOfSegment() {
+        ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 2 * SEGMENT_SIZE, SEGMENT_SIZE);
+        cache.put(1, 0, entry(1, 0, 700));
+        List<ByteBuf> entries = entries(2, 0, 3, 100);
+        cache.putAll(2, entries);
+
+        // The first 2 entries fill the end of the first segment, the last one rolls over to the second segment
+        assertEquals(4, cache.count());
+        assertEquals(SEGMENT_SIZE + 128, cache.size());
+        checkEntries(cache, entries);
+        assertEquals(1, cache.get(1, 0).getLong(0));
+        cache.close();
+    }
+
+    @Test
+    public void testPutAllLargerThanSegment() {
+        ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 2 * SEGMENT_SIZE, SEGMENT_SIZE);
+        List<ByteBuf> entries = entries(1, 0, 10, 100);
+        cache.putAll(1, entries);
+
+        assertEquals(10, cache.count());
+        assertEquals(SEGMENT_SIZE + 2 * 128, cache.size());
+        checkEntries(cache, entries);
+        cache.close();
+    }
+
+    @Test
+    public void testPutAllSkipsEntryLargerThanSegment() {
+        ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 2 * SEGMENT_SIZE, SEGMENT_SIZE);
+        List<ByteBuf> entries = entries(1, 0, 2, 100);
+        entries.add(entry(1, 2, SEGMENT_SIZE + 1));
+        cache.putAll(1, entries);
+
+        assertEquals(2, cache.count());
+        checkEntries(cache, entries.subList(0, 2));
+        cache.close();
+    }
+}
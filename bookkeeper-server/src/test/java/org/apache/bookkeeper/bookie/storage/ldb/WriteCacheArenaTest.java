@@ -0,0 +1,167 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+/**
+ * Tests for the allocation of the {@link WriteCache} space through arenas.
+ */
+public class WriteCacheArenaTest {
+
+    private static ByteBuf entry(long ledgerId, long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((byte) entryId);
+        }
+        return entry;
+    }
+
+    private static void checkEntry(WriteCache cache, long ledgerId, long entryId, int size) {
+        ByteBuf entry = cache.get(ledgerId, entryId);
+        assertNotNull(entry);
+        assertEquals(entry(ledgerId, entryId, size), entry);
+        entry.release();
+    }
+
+    @Test
+    public void testPutFromArena() {
+        WriteCache cache = new WriteCache(UnpooledByteBufAllocator.DEFAULT, 64 * 1024, 16 * 1024, 4, 1024);
+        for (long entryId = 0; entryId < 100; entryId++) {
+            assertTrue(cache.put(1, entryId, entry(1, entryId, 100)));
+        }
+        assertEquals(100, cache.count());
+        assertEquals(100 * 100, cache.size());
+        for (long entryId = 0; entryId < 100; entryId++) {
+            checkEntry(cache, 1, entryId, 100);
+        }
+        cache.close();
+    }
+
+    @Test
+    public void testEntriesLargerThanChunk() {
+        WriteCache cache = new WriteCache(UnpooledByteBufAllocator.DEFAULT, 64 * 1024, 16 * 1024, 4, 1024);
+        assertTrue(cache.put(1, 0, entry(1, 0, 100)));
+        // Allocated from the common offset
+        assertTrue(cache.put(1, 1, entry(1, 1, 3000)));
+        assertTrue(cache.put(1, 2, entry(1, 2, 100)));
+        checkEntry(cache, 1, 0, 100);
+        checkEntry(cache, 1, 1, 3000);
+        checkEntry(cache, 1, 2, 100);
+        cache.close();
+    }
+
+    @Test
+    public void testChunksDoNotSpanSegments() {
+        // Chunks of 1KB in segments of 4KB, with entries that do not divide the chunk size
+        WriteCache cache = new WriteCache(UnpooledByteBufAllocator.DEFAULT, 16 * 1024, 4 * 1024, 2, 1024);
+        long entryId = 0;
+        while (cache.put(1, entryId, entry(1, entryId, 300))) {
+            entryId++;
+        }
+        // 3 entries of 320 aligned bytes per chunk, 16 chunks
+        assertEquals(48, entryId);
+        for (long i = 0; i < entryId; i++) {
+            checkEntry(cache, 1, i, 300);
+        }
+        cache.close();
+    }
+
+    @Test
+    public void testCacheFull() {
+        WriteCache cache = new WriteCache(UnpooledByteBufAllocator.DEFAULT, 4 * 1024, 4 * 1024, 2, 1024);
+        for (long entryId = 0; entryId < 4; entryId++) {
+            assertTrue(cache.put(1, entryId, entry(1, entryId, 1024)));
+        }
+        assertFalse(cache.put(1, 4, entry(1, 4, 64)));
+        assertNull(cache.get(1, 4));
+
+        // The space is reused after clearing the cache
+        cache.clear();
+        assertTrue(cache.isEmpty());
+        for (long entryId = 0; entryId < 4; entryId++) {
+            assertTrue(cache.put(2, entryId, entry(2, entryId, 1024)));
+        }
+        checkEntry(cache, 2, 3, 1024);
+        assertNull(cache.get(1, 0));
+        cache.close();
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        int numThreads = 8;
+        int entriesPerThread = 1000;
+        WriteCache cache = new WriteCache(UnpooledByteBufAllocator.DEFAULT, 4 * 1024 * 1024, 1024 * 1024, 4, 4096);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            final long ledgerId = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (long entryId = 0; entryId < entriesPerThread; entryId++) {
+                        assertTrue(cache.put(ledgerId, entryId, entry(ledgerId, entryId, 100 + (int) entryId % 200)));
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+
+        assertEquals(numThreads * entriesPerThread, cache.count());
+        for (long ledgerId = 0; ledgerId < numThreads; ledgerId++) {
+            for (long entryId = 0; entryId < entriesPerThread; entryId++) {
+                checkEntry(cache, ledgerId, entryId, 100 + (int) entryId % 200);
+            }
+        }
+        cache.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidChunkSize() {
+        new WriteCache(UnpooledByteBufAllocator.DEFAULT, 64 * 1024, 16 * 1024, 4, 1000);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for the ordered iteration of the {@link WriteCache} entries, through the ledger runs.
+ */
+public class WriteCacheForEachTest {
+
+    private final WriteCache cache = new WriteCache(UnpooledByteBufAllocator.DEFAULT, 1024 * 1024, 256 * 1024);
+
+    @After
+    public void tearDown() {
+        cache.close();
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId, int version) {
+        ByteBuf entry = Unpooled.buffer(64);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeInt(version);
+        return entry;
+    }
+
+    /**
+     * @return the (ledgerId, entryId, version) of each entry, in iteration order
+     */
+    private List<String> forEach() throws Exception {
+        List<String> entries = new ArrayList<>();
+        cache.forEach((ledgerId, entryId, entry) -> {
+            assertEquals(ledgerId, entry.getLong(entry.readerIndex()));
+            assertEquals(entryId, entry.getLong(entry.readerIndex() + 8));
+            entries.add(ledgerId + "@" + entryId + "v" + entry.getInt(entry.readerIndex() + 16));
+        });
+        return entries;
+    }
+
+    private static List<String> expected(long ledgerId, long... entryIds) {
+        List<String> entries = new ArrayList<>();
+        for (long entryId : entryIds) {
+            entries.add(ledgerId + "@" + entryId + "v0");
+        }
+        return entries;
+    }
+
+    @Test
+    public void testInterleavedLedgers() throws Exception {
+        for (long entryId = 0; entryId < 5; entryId++) {
+            for (long ledgerId = 3; ledgerId >= 1; ledgerId--) {
+                cache.put(ledgerId, entryId, entry(ledgerId, entryId, 0));
+            }
+        }
+
+        List<String> expected = new ArrayList<>();
+        for (long ledgerId = 1; ledgerId <= 3; ledgerId++) {
+            expected.addAll(expected(ledgerId, 0, 1, 2, 3, 4));
+        }
+        assertEquals(expected, forEach());
+    }
+
+    @Test
+    public void testEntriesWithGaps() throws Exception {
+        // Entries of a ledger striped over several bookies
+        for (long entryId : new long[] { 0, 1, 3, 4, 6, 7, 9 }) {
+            cache.put(1, entryId, entry(1, entryId, 0));
+        }
+        assertEquals(expected(1, 0, 1, 3, 4, 6, 7, 9), forEach());
+    }
+
+    @Test
+    public void testEntriesOutOfOrderAndRewritten() throws Exception {
+        for (long entryId : new long[] { 5, 6, 7, 0, 1, 2, 10, 3 }) {
+            cache.put(1, entryId, entry(1, entryId, 0));
+        }
+        // Added again, only the last copy is iterated
+        cache.put(1, 6, entry(1, 6, 1));
+        cache.put(1, 1, entry(1, 1, 1));
+
+        assertEquals(Arrays.asList("1@0v0", "1@1v1", "1@2v0", "1@3v0", "1@5v0", "1@6v1", "1@7v0", "1@10v0"), forEach());
+        // Iterated again, from the sorted run
+        assertEquals(Arrays.asList("1@0v0", "1@1v1", "1@2v0", "1@3v0", "1@5v0", "1@6v1", "1@7v0", "1@10v0"), forEach());
+    }
+
+    @Test
+    public void testDeletedLedgersSkipped() throws Exception {
+        for (long ledgerId = 1; ledgerId <= 3; ledgerId++) {
+            cache.put(ledgerId, 0, entry(ledgerId, 0, 0));
+        }
+        cache.deleteLedger(2);
+
+        List<String> expected = new ArrayList<>(expected(1, 0));
+        expected.addAll(expected(3, 0));
+        assertEquals(expected, forEach());
+    }
+
+    @Test
+    public void testRunsDroppedPastBound() throws Exception {
+        // Each entry starts a new range, past the bound of 1024 ranges of the cache
+        for (long entryId = 0; entryId < 2400; entryId += 2) {
+            cache.put(1, entryId, entry(1, entryId, 0));
+        }
+        cache.put(2, 0, entry(2, 0, 0));
+        cache.put(1, 0, entry(1, 0, 1));
+        assertTrue(cache.areLedgerRunsDropped());
+
+        List<String> entries = forEach();
+        assertEquals(1201, entries.size());
+        assertEquals("1@0v1", entries.get(0));
+        for (int i = 1; i < 1200; i++) {
+            assertEquals("1@" + (2 * i) + "v0", entries.get(i));
+        }
+        assertEquals("2@0v0", entries.get(1200));
+
+        // The runs are recorded again after clearing the cache
+        cache.clear();
+        assertFalse(cache.areLedgerRunsDropped());
+        cache.put(1, 1, entry(1, 1, 0));
+        cache.put(1, 0, entry(1, 0, 0));
+        assertEquals(expected(1, 0, 1), forEach());
+    }
+
+    @Test
+    public void testParallelForEach() throws Exception {
+        int numLedgers = 10;
+        for (long entryId = 0; entryId < 100; entryId++) {
+            for (long ledgerId = 0; ledgerId < numLedgers; ledgerId++) {
+                cache.put(ledgerId, entryId, entry(ledgerId, entryId, 0));
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Map<Long, List<Long>> entries = new ConcurrentHashMap<>();
+            Map<Long, String> threads = new ConcurrentHashMap<>();
+            cache.forEach((ledgerId, entryId, entry) -> {
+                entries.computeIfAbsent(ledgerId, l -> Collections.synchronizedList(new ArrayList<>()))
+                        .add(entryId);
+                // All the entries of a ledger are passed by the same thread
+                assertEquals(Thread.currentThread().getName(),
+                        threads.computeIfAbsent(ledgerId, l -> Thread.currentThread().getName()));
+            }, executor, 3);
+
+            assertEquals(numLedgers, entries.size());
+            for (List<Long> ledgerEntries : entries.values()) {
+                assertEquals(100, ledgerEntries.size());
+                for (int i = 0; i < 100; i++) {
+                    assertEquals(i, ledgerEntries.get(i).longValue());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
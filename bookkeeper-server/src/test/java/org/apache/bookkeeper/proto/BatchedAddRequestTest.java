@@ -0,0 +1,197 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import com.google.protobuf.ExtensionRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.handler.codec.CorruptedFrameException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link BookieProtocol#BATCH_ADD_ENTRY} frames.
+ */
+public class BatchedAddRequestTest {
+
+    private final BookieProtoEncoding.RequestEnDeCoderPreV3 decoder =
+            new BookieProtoEncoding.RequestEnDeCoderPreV3(ExtensionRegistry.newInstance());
+
+    /**
+     * Add request framed as the client sends it.
+     */
+    private static ByteBuf addRequest(long ledgerId, long entryId, int payloadSize) {
+        ByteBuf request = Unpooled.buffer();
+        request.writeInt(0);
+        request.writeInt(BookieProtocol.PacketHeader.toInt(
+                BookieProtocol.CURRENT_PROTOCOL_VERSION, BookieProtocol.ADDENTRY, BookieProtocol.FLAG_NONE));
+        request.writeBytes(new byte[BookieProtocol.MASTER_KEY_LENGTH]);
+        request.writeLong(ledgerId);
+        request.writeLong(entryId);
+        request.writeBytes(new byte[payloadSize]);
+        request.setInt(0, request.readableBytes() - 4);
+        return request;
+    }
+
+    private static PendingAddBatch batch(List<ByteBuf> requests) {
+        PendingAddBatch batch = new PendingAddBatch(UnpooledByteBufAllocator.DEFAULT, requests.size());
+        for (ByteBuf request : requests) {
+            batch.add(mock(CompletionKey.class), request);
+        }
+        return batch;
+    }
+
+    /**
+     * Frame as passed to the decoder, without its size field.
+     */
+    private static ByteBuf toPacket(PendingAddBatch batch) {
+        int frameSize = batch.frameSize();
+        ByteBufList frame = batch.toFrame();
+        ByteBuf packet = ByteBufList.coalesce(frame);
+        frame.release();
+        assertEquals(frameSize, packet.readInt());
+        assertEquals(frameSize, packet.readableBytes());
+        return packet;
+    }
+
+    @Test
+    public void testBatchRoundTrip() throws Exception {
+        List<ByteBuf> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            requests.add(addRequest(1L, i, 10 * i));
+        }
+        PendingAddBatch batch = batch(requests);
+        assertEquals(3, batch.size());
+        assertEquals(3, batch.keys().size());
+
+        ByteBuf packet = toPacket(batch);
+        // The add requests are not copied in the frame
+        for (ByteBuf request : requests) {
+            assertEquals(1, request.refCnt());
+        }
+
+        BookieProtocol.BatchedAddRequest decoded = (BookieProtocol.BatchedAddRequest) decoder.decode(packet);
+        assertEquals(BookieProtocol.BATCH_ADD_ENTRY, decoded.getOpCode());
+        assertEquals(3, decoded.getRequests().size());
+        for (int i = 0; i < 3; i++) {
+            BookieProtocol.ParsedAddRequest add = decoded.getRequests().get(i);
+            assertEquals(1L, add.getLedgerId());
+            assertEquals(i, add.getEntryId());
+            // Ledger id, entry id and payload
+            assertEquals(16 + 10 * i, add.getData().readableBytes());
+            add.release();
+            add.recycle();
+        }
+        packet.release();
+    }
+
+    @Test
+    public void testSingleRequestIsSentAsAdd() throws Exception {
+        ByteBuf request = addRequest(2L, 5L, 100);
+        PendingAddBatch batch = batch(Collections.singletonList(request));
+        ByteBufList frame = batch.toFrame();
+        assertEquals(request.readableBytes(), frame.readableBytes());
+        ByteBuf packet = ByteBufList.coalesce(frame);
+        frame.release();
+        assertEquals(request, packet);
+        assertEquals(1, request.refCnt());
+        packet.release();
+    }
+
+    @Test
+    public void testReleaseUnsentBatch() {
+        ByteBuf request = addRequest(2L, 5L, 100);
+        PendingAddBatch batch = batch(Collections.singletonList(request));
+        assertEquals(2, request.refCnt());
+        batch.release();
+        assertEquals(1, request.refCnt());
+    }
+
+    private ByteBuf batchPacket(int count, ByteBuf... requests) {
+        ByteBuf packet = Unpooled.buffer();
+        packet.writeInt(BookieProtocol.PacketHeader.toInt(
+                BookieProtocol.CURRENT_PROTOCOL_VERSION, BookieProtocol.BATCH_ADD_ENTRY, BookieProtocol.FLAG_NONE));
+        packet.writeInt(count);
+        for (ByteBuf request : requests) {
+            packet.writeBytes(request);
+        }
+        return packet;
+    }
+
+    private void assertCorrupted(ByteBuf packet) throws Exception {
+        try {
+            decoder.decode(packet);
+            fail("The batch should be rejected");
+        } catch (CorruptedFrameException e) {
+            // expected
+        }
+        // The requests decoded before the error are released
+        assertEquals(1, packet.refCnt());
+        packet.release();
+    }
+
+    @Test
+    public void testInvalidCount() throws Exception {
+        assertCorrupted(batchPacket(-1, addRequest(1L, 0L, 10)));
+        // More requests than the frame can hold
+        assertCorrupted(batchPacket(2, addRequest(1L, 0L, 10)));
+        assertCorrupted(batchPacket(Integer.MAX_VALUE, addRequest(1L, 0L, 10)));
+    }
+
+    @Test
+    public void testInvalidRequestSize() throws Exception {
+        ByteBuf negative = addRequest(1L, 1L, 10);
+        negative.setInt(0, -1);
+        assertCorrupted(batchPacket(2, addRequest(1L, 0L, 10), negative));
+
+        ByteBuf oversized = addRequest(1L, 1L, 10);
+        oversized.setInt(0, oversized.readableBytes());
+        assertCorrupted(batchPacket(2, addRequest(1L, 0L, 10), oversized));
+
+        ByteBuf tooSmall = addRequest(1L, 1L, 10);
+        tooSmall.setInt(0, 8);
+        assertCorrupted(batchPacket(2, addRequest(1L, 0L, 10), tooSmall));
+    }
+
+    @Test
+    public void testValidBatchPacket() throws Exception {
+        ByteBuf packet = batchPacket(2, addRequest(1L, 0L, 10), addRequest(1L, 1L, 0));
+        BookieProtocol.BatchedAddRequest decoded = (BookieProtocol.BatchedAddRequest) decoder.decode(packet);
+        assertEquals(2, decoded.getRequests().size());
+        assertTrue(packet.refCnt() > 1);
+        for (BookieProtocol.ParsedAddRequest add : decoded.getRequests()) {
+            add.release();
+            add.recycle();
+        }
+        assertEquals(1, packet.refCnt());
+        packet.release();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.processor.RequestProcessor;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.EventLoopUtil;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assume;
+import org.junit.Test;
+import org.mockito.MockedStatic;
+
+/**
+ * Tests for the listeners bound by {@link BookieNettyServer}.
+ */
+public class BookieNettyServerTest {
+
+    private static ServerConfiguration newConf(int numListeners) {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setBookiePort(0);
+        conf.setAllowLoopback(true);
+        conf.setServerNumReusePortListeners(numListeners);
+        conf.setServerSockBusyPollMicros(50);
+        conf.setServerEventLoopLatencyProbeIntervalMs(10);
+        return conf;
+    }
+
+    /**
+     * Count the TCP sockets listening on the port, from the socket tables of the kernel.
+     */
+    private static int countListeners(int port) throws IOException {
+        String localPort = String.format(":%04X", port);
+        int listeners = 0;
+        for (String table : new String[] { "/proc/net/tcp", "/proc/net/tcp6" }) {
+            if (!Files.exists(Paths.get(table))) {
+                continue;
+            }
+            List<String> lines = Files.readAllLines(Paths.get(table));
+            for (String line : lines.subList(1, lines.size())) {
+                String[] fields = line.trim().split("\\s+");
+                // The state of a listening socket is 0A
+                if (fields[1].endsWith(localPort) && "0A".equals(fields[3])) {
+                    listeners++;
+                }
+            }
+        }
+        return listeners;
+    }
+
+    private static void connect(int port) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("127.0.0.1", port), 10000);
+        }
+    }
+
+    @Test
+    public void testReusePortListenersWithEpoll() throws Exception {
+        Assume.assumeTrue(SystemUtils.IS_OS_LINUX && Epoll.isAvailable());
+        ServerConfiguration conf = newConf(3);
+        BookieNettyServer server = new BookieNettyServer(conf, mock(RequestProcessor.class),
+                ByteBufAllocator.DEFAULT, NullStatsLogger.INSTANCE);
+        try {
+            assertTrue(server.eventLoopGroup instanceof EpollEventLoopGroup);
+            server.start();
+            int port = conf.getBookiePort();
+            assertTrue(port > 0);
+            assertEquals(3, countListeners(port));
+            for (int i = 0; i < 10; i++) {
+                connect(port);
+            }
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testSingleListenerWithNio() throws Exception {
+        Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+        ServerConfiguration conf = newConf(3);
+        BookieNettyServer server;
+        try (MockedStatic<EventLoopUtil> eventLoopUtil = mockStatic(EventLoopUtil.class)) {
+            eventLoopUtil.when(() -> EventLoopUtil.getServerEventLoopGroup(any(), any()))
+                    .thenReturn(new NioEventLoopGroup(2));
+            eventLoopUtil.when(() -> EventLoopUtil.getServerAcceptorGroup(any(), any()))
+                    .thenReturn(new NioEventLoopGroup(3));
+            server = new BookieNettyServer(conf, mock(RequestProcessor.class), ByteBufAllocator.DEFAULT,
+                    NullStatsLogger.INSTANCE);
+        }
+        try {
+            // The epoll options are ignored, and the bookie starts with a single listener
+            server.start();
+            int port = conf.getBookiePort();
+            assertTrue(port > 0);
+            assertEquals(1, countListeners(port));
+            connect(port);
+        } finally {
+            server.shutdown();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.group.ChannelGroup;
+import java.io.IOException;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.processor.RequestProcessor;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Tests for the add requests held by {@link BookieRequestHandler} until the end of a read, when enabled.
+ */
+public class BookieRequestHandlerTest {
+
+    private final RequestProcessor processor = mock(RequestProcessor.class);
+    private final BookieRequestHandler handler = new BookieRequestHandler(
+            new ServerConfiguration().setBatchAddsPerChannelReadEnabled(true), processor, mock(ChannelGroup.class));
+    private final ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+
+    public BookieRequestHandlerTest() {
+        when(ctx.channel()).thenReturn(mock(Channel.class));
+    }
+
+    private static BookieProtocol.ParsedAddRequest addRequest(ByteBuf data, long entryId) {
+        return BookieProtocol.ParsedAddRequest.create(BookieProtocol.CURRENT_PROTOCOL_VERSION, 1L, entryId,
+                BookieProtocol.FLAG_NONE, new byte[BookieProtocol.MASTER_KEY_LENGTH], data);
+    }
+
+    @Test
+    public void testAddsProcessedAtEndOfRead() throws Exception {
+        ByteBuf data = Unpooled.buffer(16);
+        handler.channelRead(ctx, addRequest(data, 0));
+        handler.channelRead(ctx, addRequest(data, 1));
+        verify(processor, never()).processRequest(any(), any());
+
+        handler.channelReadComplete(ctx);
+        ArgumentCaptor<Object> request = ArgumentCaptor.forClass(Object.class);
+        verify(processor).processRequest(request.capture(), any());
+        assertTrue(request.getValue() instanceof BookieProtocol.BatchedAddRequest);
+        assertEquals(2, ((BookieProtocol.BatchedAddRequest) request.getValue()).getRequests().size());
+
+        // Nothing left to release
+        handler.channelInactive(ctx);
+        assertEquals(3, data.refCnt());
+    }
+
+    @Test
+    public void testAddsNotHeldByDefault() throws Exception {
+        BookieRequestHandler defaultHandler =
+                new BookieRequestHandler(new ServerConfiguration(), processor, mock(ChannelGroup.class));
+        ByteBuf data = Unpooled.buffer(16);
+        BookieProtocol.ParsedAddRequest first = addRequest(data, 0);
+        BookieProtocol.ParsedAddRequest second = addRequest(data, 1);
+        defaultHandler.channelRead(ctx, first);
+        verify(processor).processRequest(first, defaultHandler);
+        defaultHandler.channelRead(ctx, second);
+        verify(processor).processRequest(second, defaultHandler);
+
+        defaultHandler.channelReadComplete(ctx);
+        verify(processor, times(2)).processRequest(any(), any());
+    }
+
+    @Test
+    public void testAddsReleasedOnChannelInactive() throws Exception {
+        ByteBuf data = Unpooled.buffer(16);
+        handler.channelRead(ctx, addRequest(data, 0));
+        handler.channelRead(ctx, addRequest(data, 1));
+        assertEquals(3, data.refCnt());
+
+        handler.channelInactive(ctx);
+        assertEquals(1, data.refCnt());
+        handler.channelReadComplete(ctx);
+        verify(processor, never()).processRequest(any(), any());
+    }
+
+    @Test
+    public void testAddsReleasedOnException() throws Exception {
+        ByteBuf data = Unpooled.buffer(16);
+        handler.channelRead(ctx, addRequest(data, 0));
+        assertEquals(2, data.refCnt());
+
+        handler.exceptionCaught(ctx, new IOException("Corrupted frame"));
+        assertEquals(1, data.refCnt());
+        verify(ctx).close();
+        handler.channelReadComplete(ctx);
+        verify(processor, never()).processRequest(any(), any());
+    }
+}
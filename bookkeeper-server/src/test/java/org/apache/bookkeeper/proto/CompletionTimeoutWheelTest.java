@@ -0,0 +1,230 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.junit.Test;
+
+/**
+ * Tests for the timing wheel of the completion timeouts, {@link CompletionTimeoutWheel}.
+ */
+public class CompletionTimeoutWheelTest {
+
+    private static final long TICK_NANOS = 1000;
+    // 10 ticks, rounded up to a wheel of 16 slots
+    private static final long MAX_TIMEOUT_NANOS = 8 * TICK_NANOS;
+    private static final long REVOLUTION_NANOS = 16 * TICK_NANOS;
+
+    private final List<CompletionValue> expired = new ArrayList<>();
+    private final BiPredicate<CompletionKey, CompletionValue> expireAll = (key, value) -> {
+        assertEquals(((PendingCompletion) value).key, key);
+        expired.add(value);
+        return true;
+    };
+
+    private static class PendingCompletion extends CompletionValue {
+        final CompletionKey key;
+
+        PendingCompletion(long txnId) {
+            super("Test", null, 0L, txnId, null);
+            this.key = new TxnCompletionKey(txnId, OperationType.ADD_ENTRY);
+        }
+
+        @Override
+        public void errorOut() {
+        }
+
+        @Override
+        public void errorOut(int rc) {
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response) {
+        }
+    }
+
+    private static PendingCompletion add(CompletionTimeoutWheel wheel, long txnId, long deadlineNanos) {
+        PendingCompletion value = new PendingCompletion(txnId);
+        wheel.add(value.key, value, deadlineNanos);
+        return value;
+    }
+
+    @Test
+    public void testAddRemoveExpire() {
+        long now = 100 * TICK_NANOS;
+        CompletionTimeoutWheel wheel = new CompletionTimeoutWheel(TICK_NANOS, MAX_TIMEOUT_NANOS, now);
+        PendingCompletion first = add(wheel, 1, now + 2 * TICK_NANOS);
+        PendingCompletion second = add(wheel, 2, now + 2 * TICK_NANOS + 10);
+        PendingCompletion third = add(wheel, 3, now + 5 * TICK_NANOS);
+        assertEquals(3, wheel.size());
+
+        wheel.remove(second);
+        assertEquals(2, wheel.size());
+        // Removing a completion that is not in the wheel anymore is a no-op
+        wheel.remove(second);
+        assertEquals(2, wheel.size());
+
+        assertEquals(0, wheel.expire(now + TICK_NANOS, expireAll));
+        // The deadline is checked within the tick
+        assertEquals(0, wheel.expire(now + 2 * TICK_NANOS - 1, expireAll));
+        assertEquals(1, wheel.expire(now + 2 * TICK_NANOS + 20, expireAll));
+        assertEquals(Arrays.asList(first), expired);
+        assertEquals(1, wheel.size());
+
+        wheel.remove(first);
+        assertEquals(1, wheel.size());
+        assertEquals(1, wheel.expire(now + 6 * TICK_NANOS, expireAll));
+        assertEquals(Arrays.asList(first, third), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testRemoveFromSameSlot() {
+        long now = 0;
+        CompletionTimeoutWheel wheel = new CompletionTimeoutWheel(TICK_NANOS, MAX_TIMEOUT_NANOS, now);
+        List<PendingCompletion> values = new ArrayList<>();
+        // More than the initial capacity of a slot
+        for (int i = 0; i < 40; i++) {
+            values.add(add(wheel, i, now + 3 * TICK_NANOS + i));
+        }
+        // The last completions are moved in the holes of the removed ones
+        for (int i = 0; i < 40; i += 2) {
+            wheel.remove(values.get(i));
+        }
+        assertEquals(20, wheel.size());
+        for (int i = 1; i < 40; i += 4) {
+            wheel.remove(values.get(i));
+        }
+        assertEquals(10, wheel.size());
+
+        assertEquals(10, wheel.expire(now + 4 * TICK_NANOS, expireAll));
+        for (int i = 3; i < 40; i += 4) {
+            assertTrue(expired.contains(values.get(i)));
+        }
+    }
+
+    @Test
+    public void testDeadlineBehindLastCheck() {
+        long now = 100 * TICK_NANOS;
+        CompletionTimeoutWheel wheel = new CompletionTimeoutWheel(TICK_NANOS, MAX_TIMEOUT_NANOS, now);
+        assertEquals(0, wheel.expire(now + 3 * TICK_NANOS, expireAll));
+        PendingCompletion late = add(wheel, 1, now);
+        assertEquals(1, wheel.expire(now + 3 * TICK_NANOS + 1, expireAll));
+        assertEquals(Arrays.asList(late), expired);
+    }
+
+    @Test
+    public void testWrapAround() {
+        long now = 100 * TICK_NANOS;
+        CompletionTimeoutWheel wheel = new CompletionTimeoutWheel(TICK_NANOS, MAX_TIMEOUT_NANOS, now);
+        List<PendingCompletion> added = new ArrayList<>();
+        // Go around the wheel several times, a check on every tick
+        for (int tick = 0; tick < 100; tick++) {
+            long time = now + tick * TICK_NANOS;
+            added.add(add(wheel, tick, time + MAX_TIMEOUT_NANOS));
+            wheel.expire(time, expireAll);
+            // Each completion expires on the tick of its deadline, not before
+            int expectedExpired = Math.max(0, tick - (int) (MAX_TIMEOUT_NANOS / TICK_NANOS) + 1);
+            assertEquals(added.subList(0, expectedExpired), expired);
+        }
+        assertEquals(100 - expired.size(), wheel.size());
+    }
+
+    @Test
+    public void testDeadlineInLaterRound() {
+        long now = 100 * TICK_NANOS;
+        CompletionTimeoutWheel wheel = new CompletionTimeoutWheel(TICK_NANOS, MAX_TIMEOUT_NANOS, now);
+        // Longer than the wheel, in the same slot as a completion of the current round
+        PendingCompletion current = add(wheel, 1, now + 2 * TICK_NANOS);
+        PendingCompletion nextRound = add(wheel, 2, now + 2 * TICK_NANOS + REVOLUTION_NANOS);
+
+        assertEquals(1, wheel.expire(now + 3 * TICK_NANOS, expireAll));
+        assertEquals(Arrays.asList(current), expired);
+        assertEquals(0, wheel.expire(now + REVOLUTION_NANOS + TICK_NANOS, expireAll));
+        assertEquals(1, wheel.expire(now + REVOLUTION_NANOS + 3 * TICK_NANOS, expireAll));
+        assertEquals(Arrays.asList(current, nextRound), expired);
+    }
+
+    @Test
+    public void testLagOfMoreThanOneRevolution() {
+        long now = 100 * TICK_NANOS;
+        CompletionTimeoutWheel wheel = new CompletionTimeoutWheel(TICK_NANOS, MAX_TIMEOUT_NANOS, now);
+        // A completion in every slot of the wheel
+        for (int i = 0; i < 16; i++) {
+            add(wheel, i, now + i * TICK_NANOS);
+        }
+        PendingCompletion notDue = add(wheel, 100, now + 5 * REVOLUTION_NANOS);
+
+        // The check is late by several revolutions, every slot is visited once
+        assertEquals(16, wheel.expire(now + 3 * REVOLUTION_NANOS, expireAll));
+        assertEquals(16, expired.size());
+        assertFalse(expired.contains(notDue));
+        assertEquals(1, wheel.size());
+
+        assertEquals(1, wheel.expire(now + 6 * REVOLUTION_NANOS, expireAll));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testExpireFunctionResult() {
+        long now = 0;
+        CompletionTimeoutWheel wheel = new CompletionTimeoutWheel(TICK_NANOS, MAX_TIMEOUT_NANOS, now);
+        add(wheel, 1, now + TICK_NANOS);
+        add(wheel, 2, now + TICK_NANOS);
+        // Only the completions the function times out are counted, all of them leave the wheel
+        assertEquals(1, wheel.expire(now + 2 * TICK_NANOS, (key, value) -> value.entryId == 1));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test(timeout = 60000)
+    public void testExpireFunctionCalledOutsideSlotLock() throws Exception {
+        long now = 0;
+        CompletionTimeoutWheel wheel = new CompletionTimeoutWheel(TICK_NANOS, MAX_TIMEOUT_NANOS, now);
+        add(wheel, 1, now + TICK_NANOS);
+        PendingCompletion sameSlot = add(wheel, 2, now + TICK_NANOS + REVOLUTION_NANOS);
+
+        assertEquals(1, wheel.expire(now + 2 * TICK_NANOS, (key, value) -> {
+            // A callback running on another thread uses the slot that is being checked
+            CompletableFuture<Void> callback = CompletableFuture.runAsync(() -> {
+                wheel.remove(sameSlot);
+                add(wheel, 3, now + TICK_NANOS + REVOLUTION_NANOS);
+            });
+            try {
+                callback.get(30, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new AssertionError("The slot lock is held while expiring", e);
+            }
+            return true;
+        }));
+        assertEquals(1, wheel.size());
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.proto;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.EVENT_LOOP_LATENCY;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+/**
+ * Tests for the scheduling latency probe of the event loops, {@link EventLoopLatencyProbe}.
+ */
+public class EventLoopLatencyProbeTest {
+
+    private final StatsLogger statsLogger = mock(StatsLogger.class);
+    private final StatsLogger[] loopStatsLoggers = { mock(StatsLogger.class), mock(StatsLogger.class) };
+    private final OpStatsLogger[] latencyStats = { mock(OpStatsLogger.class), mock(OpStatsLogger.class) };
+
+    public EventLoopLatencyProbeTest() {
+        for (int i = 0; i < 2; i++) {
+            when(statsLogger.scopeLabel("eventLoop", String.valueOf(i))).thenReturn(loopStatsLoggers[i]);
+            when(loopStatsLoggers[i].getOpStatsLogger(EVENT_LOOP_LATENCY)).thenReturn(latencyStats[i]);
+        }
+    }
+
+    @Test
+    public void testLatencyRecordedPerEventLoop() throws Exception {
+        EventLoopGroup group = new DefaultEventLoopGroup(2);
+        try {
+            EventLoopLatencyProbe.start(group, 5, statsLogger);
+            // The probe keeps rescheduling itself on each event loop
+            for (OpStatsLogger stats : latencyStats) {
+                verify(stats, timeout(10000).atLeast(3)).registerSuccessfulEvent(anyLong(), eq(TimeUnit.NANOSECONDS));
+            }
+        } finally {
+            group.shutdownGracefully(0, 10, TimeUnit.MILLISECONDS).await();
+        }
+    }
+
+    @Test
+    public void testProbeDisabled() {
+        EventLoopGroup group = mock(EventLoopGroup.class);
+        EventLoopLatencyProbe.start(group, 0, statsLogger);
+        Mockito.verifyNoInteractions(group, statsLogger);
+    }
+
+    @Test
+    public void testProbeStopsWhenGroupShutsDown() {
+        EventExecutor eventLoop = mock(EventExecutor.class);
+        EventLoopGroup group = mock(EventLoopGroup.class);
+        when(group.iterator()).thenReturn(Arrays.asList(eventLoop).iterator());
+
+        EventLoopLatencyProbe.start(group, 10, statsLogger);
+        ArgumentCaptor<Runnable> probe = ArgumentCaptor.forClass(Runnable.class);
+        verify(eventLoop).schedule(probe.capture(), eq(TimeUnit.MILLISECONDS.toNanos(10)), eq(TimeUnit.NANOSECONDS));
+
+        // While the group is running, each execution schedules the next one
+        probe.getValue().run();
+        verify(latencyStats[0]).registerSuccessfulEvent(anyLong(), eq(TimeUnit.NANOSECONDS));
+        verify(eventLoop, Mockito.times(2)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+
+        // Once the group is shutting down, the probe records its last sample and is not scheduled again
+        when(eventLoop.isShuttingDown()).thenReturn(true);
+        probe.getValue().run();
+        verify(latencyStats[0], Mockito.times(2)).registerSuccessfulEvent(anyLong(), eq(TimeUnit.NANOSECONDS));
+        verify(eventLoop, Mockito.times(2)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void testProbeRejectedByTerminatedEventLoop() {
+        EventExecutor eventLoop = mock(EventExecutor.class);
+        EventLoopGroup group = mock(EventLoopGroup.class);
+        when(group.iterator()).thenReturn(Arrays.asList(eventLoop).iterator());
+        doThrow(new RejectedExecutionException("terminated"))
+                .when(eventLoop).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+
+        // The probe is not started, without failing
+        EventLoopLatencyProbe.start(group, 10, statsLogger);
+        verify(latencyStats[0], never()).registerSuccessfulEvent(anyLong(), any(TimeUnit.class));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Test;
+
+/**
+ * Tests for the processing of the chained entries of a batched add request by {@link WriteEntryProcessor}.
+ */
+public class WriteEntryProcessorTest {
+
+    private final Bookie bookie = mock(Bookie.class);
+    private final BookieRequestProcessor requestProcessor = mock(BookieRequestProcessor.class);
+    private final BookieRequestHandler requestHandler = mock(BookieRequestHandler.class);
+    private final List<String> applied = new ArrayList<>();
+
+    public WriteEntryProcessorTest() throws Exception {
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(mock(Channel.class));
+        when(requestHandler.ctx()).thenReturn(ctx);
+        when(requestProcessor.getBookie()).thenReturn(bookie);
+        when(requestProcessor.getRequestStats()).thenReturn(new RequestStats(NullStatsLogger.INSTANCE));
+
+        doAnswer(invocation -> {
+            List<? extends Bookie.PendingAdd> adds = invocation.getArgument(0);
+            for (Bookie.PendingAdd add : adds) {
+                applied.add("add-" + add.getEntry().getLong(8));
+            }
+            return null;
+        }).when(bookie).addEntries(any(), any());
+        doAnswer(invocation -> {
+            ByteBuf entry = invocation.getArgument(0);
+            applied.add("recovery-" + entry.getLong(8));
+            return null;
+        }).when(bookie).recoveryAddEntry(any(), any(), any(), any());
+    }
+
+    private WriteEntryProcessor write(long entryId, boolean recovery) {
+        ByteBuf data = Unpooled.buffer(16);
+        data.writeLong(1L);
+        data.writeLong(entryId);
+        BookieProtocol.ParsedAddRequest request = BookieProtocol.ParsedAddRequest.create(
+                BookieProtocol.CURRENT_PROTOCOL_VERSION, 1L, entryId,
+                recovery ? BookieProtocol.FLAG_RECOVERY_ADD : BookieProtocol.FLAG_NONE,
+                new byte[BookieProtocol.MASTER_KEY_LENGTH], data);
+        return WriteEntryProcessor.create(request, requestHandler, requestProcessor);
+    }
+
+    private static WriteEntryProcessor chain(WriteEntryProcessor... writes) {
+        for (int i = 0; i < writes.length - 1; i++) {
+            writes[i].nextInBatch = writes[i + 1];
+        }
+        return writes[0];
+    }
+
+    @Test
+    public void testBatchAddedTogether() {
+        chain(write(0, false), write(1, false), write(2, false)).run();
+        assertEquals(Arrays.asList("add-0", "add-1", "add-2"), applied);
+    }
+
+    @Test
+    public void testRecoveryAddKeepsOrderOfBatch() {
+        chain(write(0, false), write(1, false), write(2, true), write(3, false), write(4, true)).run();
+        // The adds before a recovery add are applied before it
+        assertEquals(Arrays.asList("add-0", "add-1", "recovery-2", "add-3", "recovery-4"), applied);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.util;
+
+import static org.junit.Assert.assertEquals;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.junit.Test;
+
+/**
+ * Tests for {@link EventLoopUtil}.
+ */
+public class EventLoopUtilTest {
+
+    private static int acceptorThreads(int numAcceptorThreads, int numListeners) throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setProperty("serverNumAcceptorThreads", numAcceptorThreads);
+        conf.setServerNumReusePortListeners(numListeners);
+        EventLoopGroup group = EventLoopUtil.getServerAcceptorGroup(conf, new DefaultThreadFactory("test"));
+        try {
+            int threads = 0;
+            for (EventExecutor ignored : group) {
+                threads++;
+            }
+            return threads;
+        } finally {
+            group.shutdownGracefully().await();
+        }
+    }
+
+    @Test
+    public void testAcceptorThreadPerListener() throws Exception {
+        assertEquals(1, acceptorThreads(1, 1));
+        assertEquals(3, acceptorThreads(3, 2));
+        // Each listener gets its own acceptor thread
+        assertEquals(4, acceptorThreads(1, 4));
+    }
+}
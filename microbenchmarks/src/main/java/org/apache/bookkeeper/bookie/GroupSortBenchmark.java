@@ -21,11 +21,15 @@
 
 package org.apache.bookkeeper.bookie;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import java.util.Arrays;
 import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.bookie.storage.ldb.ArrayGroupSort;
+import org.apache.bookkeeper.bookie.storage.ldb.WriteCache;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Fork;
 import org.openjdk.jmh.annotations.Level;
@@ -34,6 +38,7 @@ import org.openjdk.jmh.annotations.OutputTimeUnit;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Warmup;
 
 @OutputTimeUnit(TimeUnit.SECONDS)
@@ -116,4 +121,61 @@ public class GroupSortBenchmark {
     public void reverseSortedArraySort(GroupSortBenchmark.TestState s) {
         Arrays.sort(s.reverseSortedItems);
     }
+
+    /**
+     * Compare the cost of getting the write cache entries in order at flush time, with the full sort of the
+     * (ledgerId, entryId, offset, length) groups and with the per-ledger runs of the write cache.
+     */
+    @State(Scope.Benchmark)
+    public static class WriteCacheState {
+        private static final int LEDGERS = 100;
+        private static final int ENTRY_SIZE = 64;
+
+        private final long[] cacheItems = new long[N * 4];
+        private long[] items;
+
+        private WriteCache writeCache;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            writeCache = new WriteCache(PooledByteBufAllocator.DEFAULT, (long) N * ENTRY_SIZE);
+            ByteBuf entry = Unpooled.wrappedBuffer(new byte[ENTRY_SIZE]);
+
+            // Entries of multiple ledgers, interleaved as they come from different clients
+            Random r = ThreadLocalRandom.current();
+            long[] nextEntryIds = new long[LEDGERS];
+            for (int i = 0; i < N; i++) {
+                int ledgerId = r.nextInt(LEDGERS);
+                long entryId = nextEntryIds[ledgerId]++;
+                writeCache.put(ledgerId, entryId, entry);
+
+                cacheItems[i * 4] = ledgerId;
+                cacheItems[i * 4 + 1] = entryId;
+                cacheItems[i * 4 + 2] = (long) i * ENTRY_SIZE;
+                cacheItems[i * 4 + 3] = ENTRY_SIZE;
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void setupInvocation() {
+            items = Arrays.copyOf(cacheItems, cacheItems.length);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            writeCache.close();
+        }
+    }
+
+    @Benchmark
+    public void writeCacheFullGroupSort(GroupSortBenchmark.WriteCacheState s) {
+        ArrayGroupSort.sort(s.items);
+    }
+
+    @Benchmark
+    public long writeCacheSortedRuns(GroupSortBenchmark.WriteCacheState s) throws Exception {
+        long[] sum = new long[1];
+        s.writeCache.forEach((ledgerId, entryId, entry) -> sum[0] += entryId);
+        return sum[0];
+    }
 }
@@ -0,0 +1,132 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compare the lookup latency of the entry location index, with one record per entry and with range encoding.
+ *
+ * <p>The size of the locations db for each format is printed at the end of the setup.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class EntryLocationIndexBenchmark {
+
+    private static final int LEDGERS = 10;
+    private static final int ENTRY_SIZE = 1024;
+    private static final int FLUSH_ENTRIES_PER_LEDGER = 10_000;
+    private static final long ENTRY_LOG_SIZE_LIMIT = 1024L * 1024 * 1024;
+
+    @State(Scope.Benchmark)
+    public static class TestState {
+
+        @Param({"false", "true"})
+        private boolean rangeEncoding;
+
+        @Param({"100000"})
+        private int entriesPerLedger;
+
+        private File indexDir;
+        private EntryLocationIndex index;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            indexDir = Files.createTempDirectory("entry-location-index").toFile();
+            ServerConfiguration conf = new ServerConfiguration();
+            conf.setProperty(DbLedgerStorage.ENTRY_LOCATION_INDEX_RANGE_ENCODING, rangeEncoding);
+            index = new EntryLocationIndex(conf, KeyValueStorageRocksDB.factory, indexDir.getPath(),
+                    NullStatsLogger.INSTANCE);
+
+            // Simulate the checkpoints of the write cache, where the entries of each ledger are written
+            // contiguously into the current entry log
+            long logId = 0;
+            long offset = 1024;
+            for (int firstEntryId = 0; firstEntryId < entriesPerLedger; firstEntryId += FLUSH_ENTRIES_PER_LEDGER) {
+                try (EntryLocationIndex.LocationsBatch batch = index.newLocationsBatch()) {
+                    for (long ledgerId = 0; ledgerId < LEDGERS; ledgerId++) {
+                        int lastEntryId = Math.min(firstEntryId + FLUSH_ENTRIES_PER_LEDGER, entriesPerLedger);
+                        for (long entryId = firstEntryId; entryId < lastEntryId; entryId++) {
+                            if (offset > ENTRY_LOG_SIZE_LIMIT) {
+                                logId++;
+                                offset = 1024;
+                            }
+                            batch.add(ledgerId, entryId, (logId << 32L) | (offset + 4), ENTRY_SIZE);
+                            offset += 4 + ENTRY_SIZE;
+                        }
+                    }
+                    batch.flush();
+                }
+            }
+
+            index.compact();
+            index.sync();
+            System.out.printf("%nEntry location index size (range encoding: %s): %.2f MB%n", rangeEncoding,
+                    dbSize(indexDir.toPath()) / 1024.0 / 1024.0);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws IOException {
+            index.close();
+            FileUtils.deleteDirectory(indexDir);
+        }
+
+        private static long dbSize(Path path) throws IOException {
+            try (Stream<Path> files = Files.walk(path)) {
+                return files.map(Path::toFile).filter(File::isFile).mapToLong(File::length).sum();
+            }
+        }
+    }
+
+    @Benchmark
+    public long lookupRandomEntry(TestState s) throws IOException {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        return s.index.getLocation(r.nextInt(LEDGERS), r.nextInt(s.entriesPerLedger));
+    }
+
+    @Benchmark
+    public long lookupLastEntry(TestState s) throws IOException {
+        return s.index.getLastEntryInLedger(ThreadLocalRandom.current().nextInt(LEDGERS));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measure the throughput of the write cache inserts with an increasing number of writer threads, with all the
+ * threads allocating from the same offset and with allocation arenas.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class WriteCacheBenchmark {
+
+    private static final long CACHE_SIZE = 256 * 1024 * 1024;
+
+    @State(Scope.Benchmark)
+    public static class TestState {
+
+        @Param({"0", "16"})
+        private int arenas;
+
+        @Param({"1024"})
+        private int entrySize;
+
+        private final AtomicLong ledgerIdGenerator = new AtomicLong();
+
+        private WriteCache cache;
+        private ByteBuf entry;
+
+        // Incremented each time the cache is cleared
+        private volatile long generation;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+            cache = new WriteCache(allocator, CACHE_SIZE, WriteCache.DEFAULT_MAX_SEGMENT_SIZE, arenas);
+            byte[] data = new byte[entrySize];
+            ThreadLocalRandom.current().nextBytes(data);
+            entry = allocator.directBuffer(entrySize);
+            entry.writeBytes(data);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            cache.close();
+            entry.release();
+        }
+
+        /**
+         * Clear the cache once it is full, unless another thread already did it.
+         */
+        synchronized void clear(long fullGeneration) {
+            if (generation == fullGeneration) {
+                cache.clear();
+                generation++;
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class WriterState {
+        private long ledgerId;
+        private long entryId;
+
+        @Setup(Level.Trial)
+        public void setup(TestState s) {
+            // Each writer appends to its own ledger
+            ledgerId = s.ledgerIdGenerator.incrementAndGet();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean put1Thread(TestState s, WriterState w) {
+        return put(s, w);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean put4Threads(TestState s, WriterState w) {
+        return put(s, w);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean put16Threads(TestState s, WriterState w) {
+        return put(s, w);
+    }
+
+    private static boolean put(TestState s, WriterState w) {
+        long generation = s.generation;
+        boolean inserted = s.cache.put(w.ledgerId, w.entryId++, s.entry);
+        if (!inserted) {
+            s.clear(generation);
+        }
+        return inserted;
+    }
+}
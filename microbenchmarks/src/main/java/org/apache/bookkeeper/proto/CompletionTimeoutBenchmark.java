@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.util.collections.ConcurrentOpenHashMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compare the timeout check of the pending completions of a channel done with a scan of all of them, against the
+ * one done with {@link CompletionTimeoutWheel}.
+ *
+ * <p>The pending completions were sent within the last tick, as with a bookie that responds in time, except for
+ * the given percentage that is past its timeout. Those are added back after each check, so that every invocation
+ * finds the same number of timed out completions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class CompletionTimeoutBenchmark {
+
+    private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    @Param({"1000", "10000", "100000"})
+    int pendingOps;
+
+    @Param({"0", "1"})
+    int timedOutPercent;
+
+    private ConcurrentOpenHashMap<CompletionKey, CompletionValue> completionObjects;
+    private CompletionTimeoutWheel completionTimeouts;
+    private final List<CompletionValue> expired = new ArrayList<>();
+    private final long now = 10 * TIMEOUT_NANOS;
+
+    private final BiPredicate<CompletionKey, CompletionValue> scanCheck = (key, value) -> {
+        if (now - value.startTime >= value.timeoutNanos()) {
+            expired.add(value);
+            return true;
+        } else {
+            return false;
+        }
+    };
+
+    private final BiPredicate<CompletionKey, CompletionValue> wheelExpired = (key, value) -> {
+        if (completionObjects.remove(key, value)) {
+            expired.add(value);
+            return true;
+        } else {
+            return false;
+        }
+    };
+
+    private static class PendingCompletion extends CompletionValue {
+        final CompletionKey key;
+
+        PendingCompletion(CompletionKey key) {
+            super("Benchmark", null, 0L, 0L, null);
+            this.key = key;
+        }
+
+        @Override
+        long timeoutNanos() {
+            return TIMEOUT_NANOS;
+        }
+
+        @Override
+        public void errorOut() {
+        }
+
+        @Override
+        public void errorOut(int rc) {
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response) {
+        }
+    }
+
+    @Setup
+    public void prepare() {
+        completionObjects = ConcurrentOpenHashMap.<CompletionKey, CompletionValue>newBuilder().build();
+        completionTimeouts = new CompletionTimeoutWheel(TICK_NANOS, TIMEOUT_NANOS, now - TICK_NANOS);
+        int timedOutOps = pendingOps * timedOutPercent / 100;
+        for (int i = 0; i < pendingOps; i++) {
+            PendingCompletion value = new PendingCompletion(new TxnCompletionKey(i, OperationType.ADD_ENTRY));
+            if (i < timedOutOps) {
+                value.startTime = now - TIMEOUT_NANOS - TICK_NANOS * i / pendingOps;
+            } else {
+                value.startTime = now - TICK_NANOS * i / pendingOps;
+            }
+            completionTimeouts.add(value.key, value, value.startTime + value.timeoutNanos());
+            completionObjects.put(value.key, value);
+        }
+    }
+
+    @Benchmark
+    public int scan() {
+        int timedOut = completionObjects.removeIf(scanCheck);
+        for (CompletionValue value : expired) {
+            completionObjects.put(((PendingCompletion) value).key, value);
+        }
+        expired.clear();
+        return timedOut;
+    }
+
+    @Benchmark
+    public int wheel() {
+        int timedOut = completionTimeouts.expire(now, wheelExpired);
+        for (CompletionValue value : expired) {
+            CompletionKey key = ((PendingCompletion) value).key;
+            completionTimeouts.add(key, value, value.startTime + value.timeoutNanos());
+            completionObjects.put(key, value);
+        }
+        expired.clear();
+        return timedOut;
+    }
+}
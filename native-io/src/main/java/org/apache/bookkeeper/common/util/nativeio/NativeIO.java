@@ -64,4 +64,32 @@ public interface NativeIO {
     long pread(int fd, long pointer, long size, long offset) throws NativeIOException;
 
     int close(int fd) throws NativeIOException;
+
+    /**
+     * io_uring is a linux-only interface, and writes through it need Linux 5.6 or later, so callers must
+     * handle the possibility that it does not exist.
+     *
+     * @return the address of the io_uring instance, which must be used by one thread at a time
+     */
+    long io_uring_init(int entries) throws NativeIOException;
+
+    /**
+     * Add a write to the submission queue of the io_uring instance, without submitting it. The memory must stay
+     * valid until the write is submitted and completed with {@link #io_uring_submit}. One entry of the queue is
+     * kept for the fdatasync of the submit, so an instance created with n entries queues n - 1 writes at most.
+     */
+    void io_uring_queue_write(long ring, int fd, long pointer, int count, long offset) throws NativeIOException;
+
+    /**
+     * Submit the queued writes and, when sync is set, an fdatasync of the file that only starts once they are
+     * done. All the requests are submitted and waited for with a single io_uring_enter call.
+     *
+     * <p>io_uring_enter is retried a bounded number of times on EINTR, EAGAIN and EBUSY, any other error is
+     * raised. The ring must not be used anymore after an error raised once the requests were submitted.
+     *
+     * @return the number of bytes written by the queued writes, less than the bytes queued on a short write
+     */
+    long io_uring_submit(long ring, int fd, boolean sync) throws NativeIOException;
+
+    void io_uring_close(long ring) throws NativeIOException;
 }
@@ -74,4 +74,25 @@ public class NativeIOImpl implements NativeIO {
     public long pread(int fd, long pointer, long size, long offset) throws NativeIOException {
         return NativeIOJni.pread(fd, pointer, size, offset);
     }
+
+    @Override
+    public long io_uring_init(int entries) throws NativeIOException {
+        return NativeIOJni.io_uring_init(entries);
+    }
+
+    @Override
+    public void io_uring_queue_write(long ring, int fd, long pointer, int count, long offset)
+            throws NativeIOException {
+        NativeIOJni.io_uring_queue_write(ring, fd, pointer, count, offset);
+    }
+
+    @Override
+    public long io_uring_submit(long ring, int fd, boolean sync) throws NativeIOException {
+        return NativeIOJni.io_uring_submit(ring, fd, sync);
+    }
+
+    @Override
+    public void io_uring_close(long ring) throws NativeIOException {
+        NativeIOJni.io_uring_close(ring);
+    }
 }
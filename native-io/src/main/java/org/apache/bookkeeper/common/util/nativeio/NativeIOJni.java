@@ -49,6 +49,15 @@ class NativeIOJni {
 
     static native int close(int fd) throws NativeIOException;
 
+    static native long io_uring_init(int entries) throws NativeIOException;
+
+    static native void io_uring_queue_write(long ring, int fd, long pointer, int count, long offset)
+            throws NativeIOException;
+
+    static native long io_uring_submit(long ring, int fd, boolean sync) throws NativeIOException;
+
+    static native void io_uring_close(long ring) throws NativeIOException;
+
     static {
         try {
             if (SystemUtils.IS_OS_MAC_OSX) {
@@ -28,6 +28,15 @@
 
 #include <org_apache_bookkeeper_common_util_nativeio_NativeIOJni.h>
 
+#if defined(__linux__) && defined(__has_include)
+#if __has_include(<linux/io_uring.h>)
+#include <linux/io_uring.h>
+#include <sys/mman.h>
+#include <sys/syscall.h>
+#define HAVE_IO_URING 1
+#endif
+#endif
+
 #ifdef _WIN32
 
 #define fsync(fd) fflush(fd)
@@ -311,3 +320,277 @@ JNIEXPORT void JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJ
      free((const void*) pointer);
 }
 
+#ifdef HAVE_IO_URING
+
+/*
+ * Minimal io_uring instance, used through the raw system calls to not depend on liburing.
+ * It is not thread safe: each instance must be used by one thread at a time.
+ */
+struct uring {
+    int fd;
+    unsigned sq_entries;
+    // Writes added to the submission queue and not submitted yet, and the bytes they write
+    unsigned queued;
+    long long queued_bytes;
+    unsigned *sq_tail;
+    unsigned *sq_mask;
+    unsigned *sq_array;
+    struct io_uring_sqe *sqes;
+    unsigned *cq_head;
+    unsigned *cq_tail;
+    unsigned *cq_mask;
+    struct io_uring_cqe *cqes;
+    void *sq_ring;
+    size_t sq_ring_size;
+    void *cq_ring;
+    size_t cq_ring_size;
+    size_t sqes_size;
+};
+
+static void uring_unmap(struct uring *ring) {
+    if (ring->sqes != NULL && ring->sqes != MAP_FAILED) {
+        munmap(ring->sqes, ring->sqes_size);
+    }
+    if (ring->cq_ring != NULL && ring->cq_ring != MAP_FAILED && ring->cq_ring != ring->sq_ring) {
+        munmap(ring->cq_ring, ring->cq_ring_size);
+    }
+    if (ring->sq_ring != NULL && ring->sq_ring != MAP_FAILED) {
+        munmap(ring->sq_ring, ring->sq_ring_size);
+    }
+}
+
+// Bound on the consecutive retries of io_uring_enter on EINTR, EAGAIN and EBUSY
+#define URING_MAX_RETRIES 1000
+#define URING_RETRY_DELAY_US 100
+
+static int uring_supports(int opcode, struct io_uring_probe *probe) {
+    return opcode <= probe->last_op && (probe->ops[opcode].flags & IO_URING_OP_SUPPORTED);
+}
+
+static void uring_push(struct uring *ring, unsigned *tail, struct io_uring_sqe *sqe) {
+    unsigned index = *tail & *ring->sq_mask;
+    ring->sqes[index] = *sqe;
+    ring->sq_array[index] = index;
+    (*tail)++;
+}
+
+#endif
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    io_uring_init
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_io_1uring_1init
+    (JNIEnv * env, jclass clazz, jint entries) {
+#ifdef HAVE_IO_URING
+    struct io_uring_params params;
+    memset(&params, 0, sizeof(params));
+
+    int fd = syscall(__NR_io_uring_setup, entries, &params);
+    if (fd < 0) {
+        throwExceptionWithErrno(env, "Failed to setup io_uring");
+        return 0;
+    }
+
+    // Writes and fsyncs are only available from Linux 5.6, like the probe itself
+    size_t probe_size = sizeof(struct io_uring_probe) + 256 * sizeof(struct io_uring_probe_op);
+    struct io_uring_probe *probe = calloc(1, probe_size);
+    int res = syscall(__NR_io_uring_register, fd, IORING_REGISTER_PROBE, probe, 256);
+    if (res < 0 || !(params.features & IORING_FEAT_SINGLE_MMAP)
+            || !uring_supports(IORING_OP_WRITE, probe) || !uring_supports(IORING_OP_FSYNC, probe)) {
+        free(probe);
+        close(fd);
+        errno = EOPNOTSUPP;
+        throwExceptionWithErrno(env, "io_uring does not support writes");
+        return 0;
+    }
+    free(probe);
+
+    struct uring *ring = calloc(1, sizeof(struct uring));
+    ring->fd = fd;
+    ring->sq_entries = params.sq_entries;
+    ring->sq_ring_size = params.sq_off.array + params.sq_entries * sizeof(unsigned);
+    ring->cq_ring_size = params.cq_off.cqes + params.cq_entries * sizeof(struct io_uring_cqe);
+    if (ring->cq_ring_size > ring->sq_ring_size) {
+        ring->sq_ring_size = ring->cq_ring_size;
+    }
+    ring->cq_ring_size = ring->sq_ring_size;
+    ring->sqes_size = params.sq_entries * sizeof(struct io_uring_sqe);
+
+    ring->sq_ring = mmap(NULL, ring->sq_ring_size, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                         fd, IORING_OFF_SQ_RING);
+    ring->cq_ring = ring->sq_ring;
+    ring->sqes = mmap(NULL, ring->sqes_size, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                      fd, IORING_OFF_SQES);
+    if (ring->sq_ring == MAP_FAILED || ring->sqes == MAP_FAILED) {
+        int err = errno;
+        uring_unmap(ring);
+        free(ring);
+        close(fd);
+        errno = err;
+        throwExceptionWithErrno(env, "Failed to map io_uring");
+        return 0;
+    }
+
+    char *sq = ring->sq_ring;
+    ring->sq_tail = (unsigned *) (sq + params.sq_off.tail);
+    ring->sq_mask = (unsigned *) (sq + params.sq_off.ring_mask);
+    ring->sq_array = (unsigned *) (sq + params.sq_off.array);
+    char *cq = ring->cq_ring;
+    ring->cq_head = (unsigned *) (cq + params.cq_off.head);
+    ring->cq_tail = (unsigned *) (cq + params.cq_off.tail);
+    ring->cq_mask = (unsigned *) (cq + params.cq_off.ring_mask);
+    ring->cqes = (struct io_uring_cqe *) (cq + params.cq_off.cqes);
+
+    return (jlong) ring;
+#else
+    throwException(env, "io_uring is not available");
+    return 0;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    io_uring_queue_write
+ * Signature: (JIJIJ)V
+ */
+JNIEXPORT void JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_io_1uring_1queue_1write
+    (JNIEnv * env, jclass clazz, jlong ringPointer, jint fd, jlong pointer, jint count, jlong offset) {
+#ifdef HAVE_IO_URING
+    struct uring *ring = (struct uring *) ringPointer;
+    // Keep an entry for the fdatasync of the submit
+    if (ring->queued + 1 >= ring->sq_entries) {
+        errno = EBUSY;
+        throwExceptionWithErrno(env, "io_uring submission queue is full");
+        return;
+    }
+
+    struct io_uring_sqe sqe;
+    unsigned tail = *ring->sq_tail;
+    memset(&sqe, 0, sizeof(sqe));
+    sqe.opcode = IORING_OP_WRITE;
+    sqe.fd = fd;
+    sqe.addr = (unsigned long) pointer;
+    sqe.len = count;
+    sqe.off = offset;
+    sqe.user_data = 0;
+    uring_push(ring, &tail, &sqe);
+    // Only read by the kernel on io_uring_enter
+    __atomic_store_n(ring->sq_tail, tail, __ATOMIC_RELEASE);
+    ring->queued++;
+    ring->queued_bytes += count;
+#else
+    throwException(env, "io_uring is not available");
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    io_uring_submit
+ * Signature: (JIZ)J
+ */
+JNIEXPORT jlong JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_io_1uring_1submit
+    (JNIEnv * env, jclass clazz, jlong ringPointer, jint fd, jboolean sync) {
+#ifdef HAVE_IO_URING
+    struct uring *ring = (struct uring *) ringPointer;
+    unsigned tail = *ring->sq_tail;
+    if (sync) {
+        struct io_uring_sqe sqe;
+        memset(&sqe, 0, sizeof(sqe));
+        sqe.opcode = IORING_OP_FSYNC;
+        sqe.fd = fd;
+        sqe.fsync_flags = IORING_FSYNC_DATASYNC;
+        // The fdatasync only starts once all the writes queued before it are complete. Unlike a link, the writes
+        // still run in parallel and a failed write does not cancel the others.
+        sqe.flags = IOSQE_IO_DRAIN;
+        sqe.user_data = 1;
+        uring_push(ring, &tail, &sqe);
+        __atomic_store_n(ring->sq_tail, tail, __ATOMIC_RELEASE);
+    }
+
+    int requests = ring->queued + (sync ? 1 : 0);
+    long long expected = ring->queued_bytes;
+    ring->queued = 0;
+    ring->queued_bytes = 0;
+    int submitted = 0;
+    int completed = 0;
+    int retries = 0;
+    long long written = 0;
+    int write_error = 0;
+    int sync_error = 0;
+    unsigned head = *ring->cq_head;
+    while (completed < requests) {
+        if (head == __atomic_load_n(ring->cq_tail, __ATOMIC_ACQUIRE)) {
+            int res = syscall(__NR_io_uring_enter, ring->fd, requests - submitted, requests - completed,
+                              IORING_ENTER_GETEVENTS, NULL, 0);
+            if (res >= 0) {
+                submitted += res;
+                retries = 0;
+                continue;
+            }
+            // Only retry the transient errors, and not forever
+            if ((errno == EINTR || errno == EAGAIN || errno == EBUSY) && retries < URING_MAX_RETRIES) {
+                retries++;
+                if (errno != EINTR) {
+                    usleep(URING_RETRY_DELAY_US);
+                }
+                continue;
+            }
+            // Take back the requests the kernel did not consume. When some were submitted, the ring can still
+            // complete them later and must not be used anymore
+            int err = errno;
+            __atomic_store_n(ring->sq_tail, *ring->sq_tail - (requests - submitted), __ATOMIC_RELEASE);
+            errno = err;
+            throwExceptionWithErrno(env, submitted == 0 ? "Failed to submit to io_uring"
+                                                        : "Failed to wait for io_uring completions");
+            return -1;
+        }
+
+        struct io_uring_cqe *cqe = &ring->cqes[head & *ring->cq_mask];
+        if (cqe->user_data == 1) {
+            if (cqe->res < 0) {
+                sync_error = -cqe->res;
+            }
+        } else if (cqe->res < 0) {
+            write_error = -cqe->res;
+        } else {
+            written += cqe->res;
+        }
+        head++;
+        completed++;
+        __atomic_store_n(ring->cq_head, head, __ATOMIC_RELEASE);
+    }
+
+    if (write_error != 0) {
+        errno = write_error;
+        throwExceptionWithErrno(env, "Failed to write on file");
+        return -1;
+    }
+    if (sync_error != 0) {
+        errno = sync_error;
+        throwExceptionWithErrno(env, "Failed to fsync");
+        return -1;
+    }
+    // A short write is reported by the caller, which compares with the bytes it queued
+    return written < expected ? written : expected;
+#else
+    throwException(env, "io_uring is not available");
+    return -1;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    io_uring_close
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_io_1uring_1close
+    (JNIEnv * env, jclass clazz, jlong ringPointer) {
+#ifdef HAVE_IO_URING
+    struct uring *ring = (struct uring *) ringPointer;
+    uring_unmap(ring);
+    close(ring->fd);
+    free(ring);
+#endif
+}